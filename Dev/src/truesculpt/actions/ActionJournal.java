@@ -0,0 +1,243 @@
+package truesculpt.actions;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+
+// Append only memory mapped file receiving data of cold actions, records are read back on demand.
+// Sealed actions never change so a record stays valid after its action is read back.
+// Space of removed records is reclaimed by compaction when the end of the mapping is reached, the mapping
+// doubles up to the max size when the records are mostly live, so a short history keeps a small file.
+public class ActionJournal
+{
+	public static final String FILE_NAME = "History.journal";
+	private static final int COPY_CHUNK_SIZE = 64 * 1024;
+	private static final int INITIAL_MAP_SIZE = 4 * 1024 * 1024;
+
+	private static class Record
+	{
+		int mOffset;
+		int mLength;
+	}
+
+	private final String mFileName;
+	private final int mMaxSize;
+	private RandomAccessFile mFile = null;
+	private MappedByteBuffer mBuffer = null;
+	private int mMappedSize = 0;
+	private int mWriteOffset = 0;
+	private int mLiveBytes = 0;
+	private final HashMap<BaseAction, Record> mRecords = new HashMap<BaseAction, Record>();
+
+	public ActionJournal(String strFileName, int nMaxSize)
+	{
+		mFileName = strFileName;
+		mMaxSize = nMaxSize;
+	}
+
+	private void Open() throws IOException
+	{
+		if (mBuffer == null)
+		{
+			mFile = new RandomAccessFile(mFileName, "rw");
+			Map(Math.min(INITIAL_MAP_SIZE, mMaxSize));
+			mWriteOffset = 0;
+			mLiveBytes = 0;
+		}
+	}
+
+	// mapping starts at the beginning of the file so offsets of records are kept
+	private void Map(int nSize) throws IOException
+	{
+		mBuffer = mFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, nSize);
+		mMappedSize = nSize;
+	}
+
+	private void GrowMapping(int nMinSize) throws IOException
+	{
+		int nSize = mMappedSize;
+		while (nSize < nMinSize)
+		{
+			nSize *= 2;
+		}
+		Map(Math.min(nSize, mMaxSize));
+	}
+
+	public boolean Contains(BaseAction action)
+	{
+		return mRecords.containsKey(action);
+	}
+
+	// false if there is no room even after compaction, caller must remove records first
+	public boolean Write(BaseAction action) throws IOException
+	{
+		Open();
+
+		int nLength = action.GetSpillSize();
+		if (mLiveBytes + nLength > mMaxSize)
+		{
+			return false;
+		}
+		if (mWriteOffset + nLength > mMappedSize)
+		{
+			if (2 * (mLiveBytes + nLength) <= mMappedSize)
+			{
+				Compact();// mostly dead records
+			}
+			else if (mWriteOffset + nLength <= mMaxSize)
+			{
+				GrowMapping(mWriteOffset + nLength);
+			}
+			else
+			{
+				Compact();
+				if (mWriteOffset + nLength > mMappedSize)
+				{
+					GrowMapping(mWriteOffset + nLength);
+				}
+			}
+		}
+
+		mBuffer.position(mWriteOffset);
+		action.WriteData(mBuffer);
+
+		Record record = new Record();
+		record.mOffset = mWriteOffset;
+		record.mLength = nLength;
+		mRecords.put(action, record);
+		mWriteOffset += nLength;
+		mLiveBytes += nLength;
+		return true;
+	}
+
+	public void Read(BaseAction action)
+	{
+		Record record = mRecords.get(action);
+		mBuffer.position(record.mOffset);
+		action.ReadData(mBuffer);
+	}
+
+	public void Remove(BaseAction action)
+	{
+		Record record = mRecords.remove(action);
+		if (record != null)
+		{
+			mLiveBytes -= record.mLength;
+			if (mRecords.isEmpty())
+			{
+				mWriteOffset = 0;
+			}
+		}
+	}
+
+	// live records moved to the beginning of the file in offset order
+	private void Compact()
+	{
+		ArrayList<Record> records = new ArrayList<Record>(mRecords.values());
+		Collections.sort(records, new Comparator<Record>()
+		{
+			@Override
+			public int compare(Record r1, Record r2)
+			{
+				return r1.mOffset - r2.mOffset;
+			}
+		});
+
+		byte[] chunk = new byte[COPY_CHUNK_SIZE];
+		int nDest = 0;
+		for (Record record : records)
+		{
+			if (record.mOffset != nDest)
+			{
+				for (int nDone = 0; nDone < record.mLength; nDone += COPY_CHUNK_SIZE)
+				{
+					int nSize = Math.min(COPY_CHUNK_SIZE, record.mLength - nDone);
+					mBuffer.position(record.mOffset + nDone);
+					mBuffer.get(chunk, 0, nSize);
+					mBuffer.position(nDest + nDone);
+					mBuffer.put(chunk, 0, nSize);
+				}
+				record.mOffset = nDest;
+			}
+			nDest += record.mLength;
+		}
+		mWriteOffset = nDest;
+	}
+
+	public int getLiveBytes()
+	{
+		return mLiveBytes;
+	}
+
+	public int getMaxSize()
+	{
+		return mMaxSize;
+	}
+
+	// file is deleted, history is not kept between sessions
+	public void Close()
+	{
+		mRecords.clear();
+		mBuffer = null;
+		mMappedSize = 0;
+		mWriteOffset = 0;
+		mLiveBytes = 0;
+		if (mFile != null)
+		{
+			try
+			{
+				mFile.close();
+			}
+			catch (IOException e)
+			{
+				e.printStackTrace();
+			}
+			mFile = null;
+		}
+		new File(mFileName).delete();
+	}
+
+	// bulk copies through views, buffer position is advanced after the values
+	static void PutInts(ByteBuffer buffer, int[] values, int nCount)
+	{
+		buffer.asIntBuffer().put(values, 0, nCount);
+		buffer.position(buffer.position() + nCount * 4);
+	}
+
+	static void GetInts(ByteBuffer buffer, int[] values, int nCount)
+	{
+		buffer.asIntBuffer().get(values, 0, nCount);
+		buffer.position(buffer.position() + nCount * 4);
+	}
+
+	static void PutFloats(ByteBuffer buffer, float[] values, int nCount)
+	{
+		buffer.asFloatBuffer().put(values, 0, nCount);
+		buffer.position(buffer.position() + nCount * 4);
+	}
+
+	static void GetFloats(ByteBuffer buffer, float[] values, int nCount)
+	{
+		buffer.asFloatBuffer().get(values, 0, nCount);
+		buffer.position(buffer.position() + nCount * 4);
+	}
+
+	static void PutShorts(ByteBuffer buffer, short[] values, int nCount)
+	{
+		buffer.asShortBuffer().put(values, 0, nCount);
+		buffer.position(buffer.position() + nCount * 2);
+	}
+
+	static void GetShorts(ByteBuffer buffer, short[] values, int nCount)
+	{
+		buffer.asShortBuffer().get(values, 0, nCount);
+		buffer.position(buffer.position() + nCount * 2);
+	}
+}
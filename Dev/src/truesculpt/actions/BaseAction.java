@@ -1,5 +1,7 @@
 package truesculpt.actions;
 
+import java.nio.ByteBuffer;
+
 import truesculpt.main.Managers;
 
 public abstract class BaseAction
@@ -8,6 +10,8 @@ public abstract class BaseAction
 	Managers mManagers = null;
 	protected static int mnActionCounter = 0;
 
+	protected static final int OBJECT_BYTE_SIZE = 64;// rough cost of an action without data
+
 	public BaseAction()
 	{
 	}
@@ -22,6 +26,76 @@ public abstract class BaseAction
 
 	abstract public int GetChangeCount();
 
+	// recording is over, storage can be compacted, called once when added to history
+	public void Seal()
+	{
+
+	}
+
+	// approximate memory used while data is resident
+	public int GetByteSize()
+	{
+		return OBJECT_BYTE_SIZE;
+	}
+
+	// data can be written to the history journal and released, only big sealed actions
+	public boolean CanSpill()
+	{
+		return false;
+	}
+
+	public boolean IsResident()
+	{
+		return true;
+	}
+
+	// exact size written by WriteData
+	public int GetSpillSize()
+	{
+		return 0;
+	}
+
+	public void WriteData(ByteBuffer buffer)
+	{
+
+	}
+
+	// restores data released by ReleaseData
+	public void ReadData(ByteBuffer buffer)
+	{
+
+	}
+
+	public void ReleaseData()
+	{
+
+	}
+
+	// false if the previous state can only be rebuilt from a keyframe and the following actions
+	public boolean CanUndoDirectly()
+	{
+		return true;
+	}
+
+	// vertex coords or colors are changed
+	public boolean ChangesMesh()
+	{
+		return false;
+	}
+
+	// effect is entirely in vertex coords and colors, skipped when a keyframe is restored
+	public boolean IsCapturedByKeyframe()
+	{
+		return false;
+	}
+
+	// history jumps, values are written without normal or display update and changed vertices are marked in refresh.
+	// False if not supported, DoAction or UndoAction is used instead.
+	public boolean ApplyDeferred(boolean bDo, HistoryRefresh refresh)
+	{
+		return false;
+	}
+
 	public String getDescription()
 	{
 		return mStrDescription;
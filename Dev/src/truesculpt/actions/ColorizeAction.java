@@ -1,45 +1,157 @@
 package truesculpt.actions;
 
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import truesculpt.main.R;
 import truesculpt.mesh.Mesh;
 import truesculpt.mesh.Vertex;
+import truesculpt.utils.IntSlotMap;
 
+// One entry per painted vertex in parallel primitive arrays, a vertex painted again keeps its first old color.
+// Sorted by vertex index and trimmed once sealed.
 public class ColorizeAction extends BaseAction
 {
-	private class VertexColorChange
+	private final int INITIAL_CAPACITY = 256;
+
+	private int mCount = 0;
+	private int[] mIndices = new int[INITIAL_CAPACITY];
+	private int[] mOldColors = new int[INITIAL_CAPACITY];
+	private int[] mNewColors = new int[INITIAL_CAPACITY];
+
+	private IntSlotMap mSlots = new IntSlotMap();// null once sealed
+	private boolean mbResident = true;// arrays are null when data is in history journal
+
+	public ColorizeAction()
+	{
+		super();
+		setDescription("Painting");
+	}
+
+	@Override
+	public void Seal()
 	{
-		public VertexColorChange(int newColor, Vertex vertex)
+		if (mSlots == null)
 		{
-			super();
-			this.newColor = newColor;
-			this.oldColor = vertex.Color;
-			this.vertex = vertex;
+			return;
 		}
+		mSlots = null;
+
+		// sort by vertex index, index and slot packed in a long
+		long[] keys = new long[mCount];
+		for (int i = 0; i < mCount; i++)
+		{
+			keys[i] = ((long) mIndices[i] << 32) | i;
+		}
+		Arrays.sort(keys);
+
+		int[] indices = new int[mCount];
+		int[] oldColors = new int[mCount];
+		int[] newColors = new int[mCount];
+		for (int i = 0; i < mCount; i++)
+		{
+			int nSlot = (int) (keys[i] & 0xFFFFFFFFL);
+			indices[i] = mIndices[nSlot];
+			oldColors[i] = mOldColors[nSlot];
+			newColors[i] = mNewColors[nSlot];
+		}
+		mIndices = indices;
+		mOldColors = oldColors;
+		mNewColors = newColors;
+	}
+
+	@Override
+	public int GetByteSize()
+	{
+		return OBJECT_BYTE_SIZE + (mbResident ? GetSpillSize() : 0);
+	}
 
-		int newColor = -1;
-		int oldColor = -1;
-		Vertex vertex = null;
+	@Override
+	public boolean CanSpill()
+	{
+		return mSlots == null && mCount > 0;
 	}
 
-	private final ArrayList<VertexColorChange> mVertexChanges = new ArrayList<VertexColorChange>();
+	@Override
+	public boolean IsResident()
+	{
+		return mbResident;
+	}
 
-	public ColorizeAction()
+	@Override
+	public int GetSpillSize()
 	{
-		super();
-		setDescription("Painting");
+		return mCount * 12;
+	}
+
+	@Override
+	public void WriteData(ByteBuffer buffer)
+	{
+		ActionJournal.PutInts(buffer, mIndices, mCount);
+		ActionJournal.PutInts(buffer, mOldColors, mCount);
+		ActionJournal.PutInts(buffer, mNewColors, mCount);
+	}
+
+	@Override
+	public void ReadData(ByteBuffer buffer)
+	{
+		mIndices = new int[mCount];
+		mOldColors = new int[mCount];
+		mNewColors = new int[mCount];
+		ActionJournal.GetInts(buffer, mIndices, mCount);
+		ActionJournal.GetInts(buffer, mOldColors, mCount);
+		ActionJournal.GetInts(buffer, mNewColors, mCount);
+		mbResident = true;
+	}
+
+	@Override
+	public void ReleaseData()
+	{
+		mIndices = null;
+		mOldColors = null;
+		mNewColors = null;
+		mbResident = false;
 	}
 
 	@Override
 	public boolean DoAction()
 	{
+		Seal();
+
+		Mesh mesh = getManagers().getMeshManager().getMesh();
+		for (int i = 0; i < mCount; i++)
+		{
+			Vertex vertex = mesh.mVertexList.get(mIndices[i]);
+			vertex.Color = mNewColors[i];
+			mesh.UpdateVertexColor(vertex);
+		}
+		return true;
+	}
+
+	@Override
+	public boolean ApplyDeferred(boolean bDo, HistoryRefresh refresh)
+	{
+		Seal();
+
 		Mesh mesh = getManagers().getMeshManager().getMesh();
-		for (VertexColorChange change : mVertexChanges)
+		int[] colors = bDo ? mNewColors : mOldColors;
+		for (int i = 0; i < mCount; i++)
 		{
-			change.vertex.Color = change.newColor;
-			mesh.UpdateVertexColor(change.vertex);
+			mesh.mVertexList.get(mIndices[i]).Color = colors[i];
 		}
+		refresh.MarkColored(mIndices, mCount);
+		return true;
+	}
+
+	@Override
+	public boolean ChangesMesh()
+	{
+		return true;
+	}
+
+	@Override
+	public boolean IsCapturedByKeyframe()
+	{
 		return true;
 	}
 
@@ -59,23 +171,57 @@ public class ColorizeAction extends BaseAction
 	public boolean UndoAction()
 	{
 		Mesh mesh = getManagers().getMeshManager().getMesh();
-		for (VertexColorChange change : mVertexChanges)
+		for (int i = 0; i < mCount; i++)
 		{
-			change.vertex.Color = change.oldColor;
-			mesh.UpdateVertexColor(change.vertex);
+			Vertex vertex = mesh.mVertexList.get(mIndices[i]);
+			vertex.Color = mOldColors[i];
+			mesh.UpdateVertexColor(vertex);
 		}
 		return true;
 	}
 
+	// vertex color is the original value, vertex is only painted by DoAction
 	public void AddVertexColorChange(int newColor, Vertex vertex)
 	{
-		mVertexChanges.add(new VertexColorChange(newColor, vertex));
+		if (mSlots == null)
+		{
+			throw new IllegalStateException("Colorize action is sealed");
+		}
+
+		int nSlot = mSlots.Get(vertex.Index);
+		if (nSlot < 0)
+		{
+			nSlot = mCount++;
+			if (mCount > mIndices.length)
+			{
+				Grow(mIndices.length * 2);
+			}
+			mSlots.Put(vertex.Index, nSlot);
+			mIndices[nSlot] = vertex.Index;
+			mOldColors[nSlot] = vertex.Color;
+		}
+		mNewColors[nSlot] = newColor;
+	}
+
+	private void Grow(int nCapacity)
+	{
+		int[] indices = new int[nCapacity];
+		System.arraycopy(mIndices, 0, indices, 0, mIndices.length);
+		mIndices = indices;
+
+		int[] oldColors = new int[nCapacity];
+		System.arraycopy(mOldColors, 0, oldColors, 0, mOldColors.length);
+		mOldColors = oldColors;
+
+		int[] newColors = new int[nCapacity];
+		System.arraycopy(mNewColors, 0, newColors, 0, mNewColors.length);
+		mNewColors = newColors;
 	}
 
 	@Override
 	public int GetChangeCount()
 	{
-		return mVertexChanges.size();
+		return mCount;
 	}
 
 }
@@ -0,0 +1,111 @@
+package truesculpt.actions;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import truesculpt.mesh.Mesh;
+import truesculpt.mesh.Vertex;
+
+// Deflated copy of all vertex coords and colors at a given history position, restored instead of undoing
+// or redoing many actions one by one
+public class HistoryKeyframe
+{
+	private static final int VERTEX_BYTE_SIZE = 16;// 3 floats and a color
+
+	private final int mPosition;
+	private final int mVertexCount;
+	private final byte[] mData;
+
+	private HistoryKeyframe(int nPosition, int nVertexCount, byte[] data)
+	{
+		mPosition = nPosition;
+		mVertexCount = nVertexCount;
+		mData = data;
+	}
+
+	public static HistoryKeyframe Capture(Mesh mesh, int nPosition)
+	{
+		int nVertexCount = mesh.mVertexList.size();
+		ByteBuffer raw = ByteBuffer.allocate(nVertexCount * VERTEX_BYTE_SIZE);
+		for (Vertex vertex : mesh.mVertexList)
+		{
+			raw.putFloat(vertex.Coord[0]);
+			raw.putFloat(vertex.Coord[1]);
+			raw.putFloat(vertex.Coord[2]);
+			raw.putInt(vertex.Color);
+		}
+
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		deflater.setInput(raw.array());
+		deflater.finish();
+		ByteArrayOutputStream out = new ByteArrayOutputStream(raw.capacity() / 2);
+		byte[] chunk = new byte[16 * 1024];
+		while (!deflater.finished())
+		{
+			int nSize = deflater.deflate(chunk);
+			out.write(chunk, 0, nSize);
+		}
+		deflater.end();
+
+		return new HistoryKeyframe(nPosition, nVertexCount, out.toByteArray());
+	}
+
+	// false if mesh topology changed since capture
+	public boolean Restore(Mesh mesh)
+	{
+		if (mesh.mVertexList.size() != mVertexCount)
+		{
+			return false;
+		}
+
+		byte[] raw = new byte[mVertexCount * VERTEX_BYTE_SIZE];
+		Inflater inflater = new Inflater();
+		inflater.setInput(mData);
+		try
+		{
+			int nDone = 0;
+			while (nDone < raw.length && !inflater.finished())
+			{
+				nDone += inflater.inflate(raw, nDone, raw.length - nDone);
+			}
+		}
+		catch (DataFormatException e)
+		{
+			e.printStackTrace();
+			return false;
+		}
+		finally
+		{
+			inflater.end();
+		}
+
+		ByteBuffer buffer = ByteBuffer.wrap(raw);
+		for (Vertex vertex : mesh.mVertexList)
+		{
+			vertex.Coord[0] = buffer.getFloat();
+			vertex.Coord[1] = buffer.getFloat();
+			vertex.Coord[2] = buffer.getFloat();
+			vertex.Color = buffer.getInt();
+		}
+		return true;
+	}
+
+	// number of actions applied since history start
+	public int getPosition()
+	{
+		return mPosition;
+	}
+
+	public int getVertexCount()
+	{
+		return mVertexCount;
+	}
+
+	public int GetByteSize()
+	{
+		return mData.length;
+	}
+}
@@ -0,0 +1,64 @@
+package truesculpt.actions;
+
+import java.util.BitSet;
+
+import truesculpt.mesh.Mesh;
+
+// Vertices changed during a history jump, normals, octree and display are updated once at the end
+public class HistoryRefresh
+{
+	private final BitSet mMoved = new BitSet();
+	private final BitSet mColored = new BitSet();
+	private boolean mbAll = false;
+
+	public void MarkMoved(int[] indices, int nCount)
+	{
+		for (int i = 0; i < nCount; i++)
+		{
+			mMoved.set(indices[i]);
+		}
+	}
+
+	public void MarkColored(int[] indices, int nCount)
+	{
+		for (int i = 0; i < nCount; i++)
+		{
+			mColored.set(indices[i]);
+		}
+	}
+
+	public void MarkAll()
+	{
+		mbAll = true;
+	}
+
+	public void Flush(Mesh mesh)
+	{
+		if (mbAll)
+		{
+			mesh.UpdateAllVertices();
+		}
+		else
+		{
+			int nCount = mMoved.cardinality();
+			if (nCount > 0)
+			{
+				int[] indices = new int[nCount];
+				int n = 0;
+				for (int i = mMoved.nextSetBit(0); i >= 0; i = mMoved.nextSetBit(i + 1))
+				{
+					indices[n++] = i;
+				}
+				mesh.UpdateMovedVertices(indices, nCount);
+			}
+			for (int i = mColored.nextSetBit(0); i >= 0; i = mColored.nextSetBit(i + 1))
+			{
+				mesh.UpdateVertexColor(mesh.mVertexList.get(i));
+			}
+		}
+
+		mMoved.clear();
+		mColored.clear();
+		mbAll = false;
+	}
+}
@@ -0,0 +1,70 @@
+package truesculpt.actions;
+
+import truesculpt.main.R;
+import truesculpt.mesh.Mesh;
+import truesculpt.mesh.SculptLayer;
+
+// weight or visibility change of a sculpt layer, cost is proportional to the layer footprint
+public class LayerChangeAction extends BaseAction
+{
+	private final SculptLayer mLayer;
+	private final float mOldWeight;
+	private final boolean mbOldVisible;
+	private final float mNewWeight;
+	private final boolean mbNewVisible;
+
+	public LayerChangeAction(SculptLayer layer, float newWeight, boolean bNewVisible)
+	{
+		super();
+		setDescription("Layer " + layer.getName());
+
+		mLayer = layer;
+		mOldWeight = layer.getWeight();
+		mbOldVisible = layer.isVisible();
+		mNewWeight = newWeight;
+		mbNewVisible = bNewVisible;
+	}
+
+	// coords are recomposited, not captured by keyframes since layer state is not
+	@Override
+	public boolean ChangesMesh()
+	{
+		return true;
+	}
+
+	@Override
+	public boolean DoAction()
+	{
+		Mesh mesh = getManagers().getMeshManager().getMesh();
+		mesh.SetLayerState(mLayer, mNewWeight, mbNewVisible);
+		getManagers().getMeshManager().NotifyListeners();
+		return true;
+	}
+
+	@Override
+	public String GetActionName()
+	{
+		return "Layer";
+	}
+
+	@Override
+	public int GetImageResourceID()
+	{
+		return R.drawable.largetiles;
+	}
+
+	@Override
+	public boolean UndoAction()
+	{
+		Mesh mesh = getManagers().getMeshManager().getMesh();
+		mesh.SetLayerState(mLayer, mOldWeight, mbOldVisible);
+		getManagers().getMeshManager().NotifyListeners();
+		return true;
+	}
+
+	@Override
+	public int GetChangeCount()
+	{
+		return 1;
+	}
+}
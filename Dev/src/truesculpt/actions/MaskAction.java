@@ -0,0 +1,90 @@
+package truesculpt.actions;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import truesculpt.main.R;
+import truesculpt.mesh.Mesh;
+import truesculpt.mesh.VertexMask;
+
+public class MaskAction extends BaseAction
+{
+	private class VertexMaskChange
+	{
+		public VertexMaskChange(int oldValue, int newValue)
+		{
+			super();
+			this.oldValue = oldValue;
+			this.newValue = newValue;
+		}
+
+		int oldValue = 0;
+		int newValue = 0;
+	}
+
+	private final HashMap<Integer, VertexMaskChange> mVertexChanges = new HashMap<Integer, VertexMaskChange>();
+
+	public MaskAction()
+	{
+		super();
+		setDescription("Masking");
+	}
+
+	@Override
+	public boolean DoAction()
+	{
+		Mesh mesh = getManagers().getMeshManager().getMesh();
+		VertexMask mask = mesh.getMask();
+		for (Map.Entry<Integer, VertexMaskChange> change : mVertexChanges.entrySet())
+		{
+			mask.SetValue(change.getKey(), change.getValue().newValue);
+			mesh.UpdateVertexColor(mesh.mVertexList.get(change.getKey()));
+		}
+		return true;
+	}
+
+	@Override
+	public String GetActionName()
+	{
+		return "Mask";
+	}
+
+	@Override
+	public int GetImageResourceID()
+	{
+		return R.drawable.flag;
+	}
+
+	@Override
+	public boolean UndoAction()
+	{
+		Mesh mesh = getManagers().getMeshManager().getMesh();
+		VertexMask mask = mesh.getMask();
+		for (Map.Entry<Integer, VertexMaskChange> change : mVertexChanges.entrySet())
+		{
+			mask.SetValue(change.getKey(), change.getValue().oldValue);
+			mesh.UpdateVertexColor(mesh.mVertexList.get(change.getKey()));
+		}
+		return true;
+	}
+
+	// value before the stroke is kept at first change of a vertex
+	public void AddVertexMaskChange(int nVertexIndex, int oldValue, int newValue)
+	{
+		VertexMaskChange change = mVertexChanges.get(nVertexIndex);
+		if (change == null)
+		{
+			mVertexChanges.put(nVertexIndex, new VertexMaskChange(oldValue, newValue));
+		}
+		else
+		{
+			change.newValue = newValue;
+		}
+	}
+
+	@Override
+	public int GetChangeCount()
+	{
+		return mVertexChanges.size();
+	}
+}
@@ -1,109 +1,349 @@
 package truesculpt.actions;
 
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
 
 import truesculpt.main.R;
-import truesculpt.mesh.HalfEdge;
 import truesculpt.mesh.Mesh;
+import truesculpt.mesh.SculptLayer;
+import truesculpt.mesh.SmoothingEngine;
 import truesculpt.mesh.Vertex;
-import truesculpt.utils.MatrixUtils;
+import truesculpt.utils.IntSlotMap;
 
-public class SculptAction extends BaseAction
+// Changed vertices in parallel primitive arrays. While recording, vertices are found through a slot map,
+// once sealed indices are sorted, arrays trimmed and new coords optionally replaced by 16 bits deltas to original coords.
+public class SculptAction extends BaseAction implements SmoothingEngine.IPositionSource
 {
-	private class VertexCoordChange
+	private final int INITIAL_CAPACITY = 256;
+	private final float QUANTIZATION_MAX = Short.MAX_VALUE;
+
+	private int mCount = 0;
+	private int[] mIndices = new int[INITIAL_CAPACITY];
+	private float[] mOrig = new float[INITIAL_CAPACITY * 3];
+	private float[] mNew = new float[INITIAL_CAPACITY * 3];// null if quantized
+	private short[] mDeltas = null;
+	private float mDeltaStep = 0;
+
+	private IntSlotMap mSlots = new IntSlotMap();// null once sealed
+	private boolean mbSealed = false;
+	private boolean mbQuantized = false;
+	private boolean mbResident = true;// arrays are null when data is in history journal
+
+	public SculptAction()
+	{
+		super();
+		setDescription("Sculpting");
+	}
+
+	// layer receiving the displacement, resolved at first do
+	private boolean mbLayerResolved = false;
+	private SculptLayer mLayer = null;
+	private float mLayerScale = 1;
+
+	// stroke displacement is stored in active layer divided by its weight, so that coords stay base plus weighted layers
+	private void ResolveLayer(Mesh mesh)
 	{
-		public VertexCoordChange(float[] vNew, Vertex vertex)
+		mbLayerResolved = true;
+
+		SculptLayer layer = mesh.getActiveLayer();
+		if (layer == null || layer.getEffectiveWeight() == 0)
 		{
-			super();
-			MatrixUtils.copy(vertex.Coord, Vorig);
-			MatrixUtils.copy(vNew, this.Vnew);
-			this.vertex = vertex;
+			return;// base shape
 		}
+		mLayer = layer;
+		mLayerScale = 1 / layer.getEffectiveWeight();
+	}
 
-		float[] Vorig = new float[3];
-		float[] Vnew = new float[3];
-		Vertex vertex = null;
+	// offsets are rebuilt from stored values, not kept in memory between do and undo
+	private void AddToLayer(float scale)
+	{
+		float[] offsets = new float[mCount * 3];
+		float[] vNew = new float[3];
+		for (int i = 0; i < mCount; i++)
+		{
+			GetNew(i, vNew);
+			int nOffset = i * 3;
+			offsets[nOffset] = vNew[0] - mOrig[nOffset];
+			offsets[nOffset + 1] = vNew[1] - mOrig[nOffset + 1];
+			offsets[nOffset + 2] = vNew[2] - mOrig[nOffset + 2];
+		}
+		mLayer.AddOffsets(mIndices, offsets, mCount, scale);
 	}
 
-	private final HashMap<Integer, VertexCoordChange> mVertexChanges = new HashMap<Integer, VertexCoordChange>();
+	@Override
+	public void Seal()
+	{
+		if (mbSealed)
+		{
+			return;
+		}
+		mbSealed = true;
+		mSlots = null;
 
-	public SculptAction()
+		// sort by vertex index, index and slot packed in a long
+		long[] keys = new long[mCount];
+		for (int i = 0; i < mCount; i++)
+		{
+			keys[i] = ((long) mIndices[i] << 32) | i;
+		}
+		Arrays.sort(keys);
+
+		int[] indices = new int[mCount];
+		float[] orig = new float[mCount * 3];
+		float[] vNew = new float[mCount * 3];
+		for (int i = 0; i < mCount; i++)
+		{
+			int nSlot = (int) (keys[i] & 0xFFFFFFFFL);
+			indices[i] = mIndices[nSlot];
+			System.arraycopy(mOrig, nSlot * 3, orig, i * 3, 3);
+			System.arraycopy(mNew, nSlot * 3, vNew, i * 3, 3);
+		}
+		mIndices = indices;
+		mOrig = orig;
+		mNew = vNew;
+
+		boolean bQuantize = getManagers() == null || getManagers().getActionsManager().getQuantizeSculptDeltas();
+		if (bQuantize)
+		{
+			float maxDelta = 0;
+			for (int i = 0; i < mCount * 3; i++)
+			{
+				maxDelta = Math.max(maxDelta, Math.abs(mNew[i] - mOrig[i]));
+			}
+			mDeltaStep = maxDelta > 0 ? maxDelta / QUANTIZATION_MAX : 1;
+			mDeltas = new short[mCount * 3];
+			for (int i = 0; i < mCount * 3; i++)
+			{
+				mDeltas[i] = (short) Math.round((mNew[i] - mOrig[i]) / mDeltaStep);
+			}
+			mNew = null;
+			mbQuantized = true;
+		}
+	}
+
+	@Override
+	public int GetByteSize()
 	{
-		super();
-		setDescription("Sculpting");
+		return OBJECT_BYTE_SIZE + (mbResident ? GetSpillSize() : 0);
 	}
 
-	private final HashSet<Integer> faces = new HashSet<Integer>();
-	private final HashSet<Integer> vertices = new HashSet<Integer>();
+	@Override
+	public boolean CanSpill()
+	{
+		return mbSealed && mCount > 0;
+	}
 
 	@Override
-	public boolean DoAction()
+	public boolean IsResident()
 	{
-		Mesh mesh = getManagers().getMeshManager().getMesh();
-		for (Map.Entry<Integer, VertexCoordChange> change : mVertexChanges.entrySet())
+		return mbResident;
+	}
+
+	@Override
+	public int GetSpillSize()
+	{
+		return mCount * (4 + 12 + (mbQuantized ? 6 : 12));
+	}
+
+	@Override
+	public void WriteData(ByteBuffer buffer)
+	{
+		ActionJournal.PutInts(buffer, mIndices, mCount);
+		ActionJournal.PutFloats(buffer, mOrig, mCount * 3);
+		if (mbQuantized)
 		{
-			MatrixUtils.copy(change.getValue().Vnew, change.getValue().vertex.Coord);
+			ActionJournal.PutShorts(buffer, mDeltas, mCount * 3);
 		}
+		else
+		{
+			ActionJournal.PutFloats(buffer, mNew, mCount * 3);
+		}
+	}
 
-		// update normals and publish value after all updates
-		faces.clear();
-		vertices.clear();
-		for (Map.Entry<Integer, VertexCoordChange> change : mVertexChanges.entrySet())
+	@Override
+	public void ReadData(ByteBuffer buffer)
+	{
+		mIndices = new int[mCount];
+		mOrig = new float[mCount * 3];
+		ActionJournal.GetInts(buffer, mIndices, mCount);
+		ActionJournal.GetFloats(buffer, mOrig, mCount * 3);
+		if (mbQuantized)
+		{
+			mDeltas = new short[mCount * 3];
+			ActionJournal.GetShorts(buffer, mDeltas, mCount * 3);
+		}
+		else
+		{
+			mNew = new float[mCount * 3];
+			ActionJournal.GetFloats(buffer, mNew, mCount * 3);
+		}
+		mbResident = true;
+	}
+
+	@Override
+	public void ReleaseData()
+	{
+		mIndices = null;
+		mOrig = null;
+		mNew = null;
+		mDeltas = null;
+		mbResident = false;
+	}
+
+	private void GetNew(int nSlot, float[] res)
+	{
+		int nOffset = nSlot * 3;
+		if (mNew != null)
+		{
+			res[0] = mNew[nOffset];
+			res[1] = mNew[nOffset + 1];
+			res[2] = mNew[nOffset + 2];
+		}
+		else
 		{
-			vertices.add(change.getValue().vertex.Index);
-			for (HalfEdge edge : change.getValue().vertex.OutLinkedEdges)
+			res[0] = mOrig[nOffset] + mDeltas[nOffset] * mDeltaStep;
+			res[1] = mOrig[nOffset + 1] + mDeltas[nOffset + 1] * mDeltaStep;
+			res[2] = mOrig[nOffset + 2] + mDeltas[nOffset + 2] * mDeltaStep;
+		}
+	}
+
+	// slot of vertex, -1 if not changed
+	private int Find(int nVertexIndex)
+	{
+		if (!mbSealed)
+		{
+			return mSlots.Get(nVertexIndex);
+		}
+
+		int nLow = 0;
+		int nHigh = mCount - 1;
+		while (nLow <= nHigh)
+		{
+			int nMid = (nLow + nHigh) >>> 1;
+			int nCurr = mIndices[nMid];
+			if (nCurr < nVertexIndex)
 			{
-				faces.add(edge.Face);
-				vertices.add(edge.V1);
+				nLow = nMid + 1;
 			}
+			else if (nCurr > nVertexIndex)
+			{
+				nHigh = nMid - 1;
+			}
+			else
+			{
+				return nMid;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public boolean DoAction()
+	{
+		Seal();
+
+		Mesh mesh = getManagers().getMeshManager().getMesh();
+		ApplyValues(mesh, true);
+
+		// update normals and publish value after all updates
+		mesh.UpdateMovedVertices(mIndices, mCount);
+		return true;
+	}
+
+	// coords and layer only, no normal or display update
+	private void ApplyValues(Mesh mesh, boolean bDo)
+	{
+		if (bDo && !mbLayerResolved)
+		{
+			ResolveLayer(mesh);
 		}
-		for (Integer index : faces)
+		if (mLayer != null)
 		{
-			mesh.ComputeFaceEdgesNormal(index);
+			AddToLayer(bDo ? mLayerScale : -mLayerScale);
 		}
-		// outer bound of modified vertices must update it's normal too (face
-		// changed)
-		for (Integer index : vertices)
+
+		for (int i = 0; i < mCount; i++)
 		{
-			mesh.ComputeVertexNormal(index);
-			mesh.UpdateVertexValue(index);
+			if (bDo)
+			{
+				GetNew(i, mesh.mVertexList.get(mIndices[i]).Coord);
+			}
+			else
+			{
+				System.arraycopy(mOrig, i * 3, mesh.mVertexList.get(mIndices[i]).Coord, 0, 3);
+			}
 		}
+	}
+
+	@Override
+	public boolean ApplyDeferred(boolean bDo, HistoryRefresh refresh)
+	{
+		Seal();
+
+		ApplyValues(getManagers().getMeshManager().getMesh(), bDo);
+		refresh.MarkMoved(mIndices, mCount);
+		return true;
+	}
+
+	@Override
+	public boolean ChangesMesh()
+	{
 		return true;
 	}
 
+	// layer offsets are not in keyframes
+	@Override
+	public boolean IsCapturedByKeyframe()
+	{
+		return mLayer == null;
+	}
+
+	// actions are only built and applied on mesh worker thread
+	private static SmoothingEngine sSmoother = null;
 	private static float[] temp = new float[3];
 
-	public void DoSmoothAll(Mesh mesh)
+	// smoothes new values of all changed vertices while recording, unchanged neighbours are kept fixed
+	public void DoSmoothAll(Mesh mesh, int nIterations)
 	{
-		if (mesh != null)
+		if (mesh != null && mCount > 0 && !mbSealed)
 		{
-			for (Map.Entry<Integer, VertexCoordChange> change : mVertexChanges.entrySet())
+			if (sSmoother == null)
+			{
+				sSmoother = new SmoothingEngine();
+			}
+
+			ArrayList<Vertex> region = new ArrayList<Vertex>(mCount);
+			for (int i = 0; i < mCount; i++)
 			{
-				Vertex vertex = change.getValue().vertex;
-				int nSurroundingVertices = vertex.OutLinkedEdges.size();
-				MatrixUtils.zero(temp);
-				for (HalfEdge edge : vertex.OutLinkedEdges)
-				{
-					VertexCoordChange other = mVertexChanges.get(edge.V1);
-					if (other == null)
-					{
-						MatrixUtils.plus(mesh.mVertexList.get(edge.V1).Coord, temp, temp);
-					}
-					else
-					{
-						MatrixUtils.plus(other.Vnew, temp, temp);
-					}
-				}
-				MatrixUtils.scalarMultiply(temp, 1.0f / nSurroundingVertices);
+				region.add(mesh.mVertexList.get(mIndices[i]));
+			}
+
+			int nCount = sSmoother.Setup(mesh, region, this);
+			sSmoother.Run(nIterations, SmoothingEngine.DEFAULT_LAMBDA, SmoothingEngine.DEFAULT_MU);
+			for (int i = 0; i < nCount; i++)
+			{
+				sSmoother.GetResult(i, temp);
+				System.arraycopy(temp, 0, mNew, Find(sSmoother.GetVertexIndex(i)) * 3, 3);
 			}
 		}
 	}
 
-	public void DoSmoothBorder()
+	// new value if vertex is changed by this action, current coord otherwise
+	@Override
+	public void GetPosition(Vertex vertex, float[] res)
 	{
-
+		int nSlot = Find(vertex.Index);
+		if (nSlot >= 0)
+		{
+			GetNew(nSlot, res);
+		}
+		else
+		{
+			res[0] = vertex.Coord[0];
+			res[1] = vertex.Coord[1];
+			res[2] = vertex.Coord[2];
+		}
 	}
 
 	@Override
@@ -121,44 +361,55 @@ public class SculptAction extends BaseAction
 	@Override
 	public boolean UndoAction()
 	{
-		// update normals and publish value after all updates
 		Mesh mesh = getManagers().getMeshManager().getMesh();
-		for (Map.Entry<Integer, VertexCoordChange> change : mVertexChanges.entrySet())
+		ApplyValues(mesh, false);
+
+		// update normals and publish value after all updates
+		mesh.UpdateMovedVertices(mIndices, mCount);
+		return true;
+	}
+
+	// vertex coord is the original value, vertex is only moved by DoAction
+	public void AddNewVertexValue(float[] vNew, Vertex vertex)
+	{
+		if (mbSealed)
 		{
-			MatrixUtils.copy(change.getValue().Vorig, change.getValue().vertex.Coord);
+			throw new IllegalStateException("Sculpt action is sealed");
 		}
-		// update normals and publish value after all updates
-		faces.clear();
-		vertices.clear();
-		for (Map.Entry<Integer, VertexCoordChange> change : mVertexChanges.entrySet())
+
+		int nSlot = mSlots.Get(vertex.Index);
+		if (nSlot < 0)
 		{
-			vertices.add(change.getValue().vertex.Index);
-			for (HalfEdge edge : change.getValue().vertex.OutLinkedEdges)
+			nSlot = mCount++;
+			if (mCount > mIndices.length)
 			{
-				faces.add(edge.Face);
-				vertices.add(edge.V1);
+				Grow(mIndices.length * 2);
 			}
+			mSlots.Put(vertex.Index, nSlot);
+			mIndices[nSlot] = vertex.Index;
+			System.arraycopy(vertex.Coord, 0, mOrig, nSlot * 3, 3);
 		}
-		for (Integer index : faces)
-		{
-			mesh.ComputeFaceEdgesNormal(index);
-		}
-		for (Integer index : vertices)
-		{
-			mesh.ComputeVertexNormal(index);
-			mesh.UpdateVertexValue(index);
-		}
-		return true;
+		System.arraycopy(vNew, 0, mNew, nSlot * 3, 3);
 	}
 
-	public void AddNewVertexValue(float[] vNew, Vertex vertex)
+	private void Grow(int nCapacity)
 	{
-		mVertexChanges.put(vertex.Index, new VertexCoordChange(vNew, vertex));
+		int[] indices = new int[nCapacity];
+		System.arraycopy(mIndices, 0, indices, 0, mIndices.length);
+		mIndices = indices;
+
+		float[] orig = new float[nCapacity * 3];
+		System.arraycopy(mOrig, 0, orig, 0, mOrig.length);
+		mOrig = orig;
+
+		float[] vNew = new float[nCapacity * 3];
+		System.arraycopy(mNew, 0, vNew, 0, mNew.length);
+		mNew = vNew;
 	}
 
 	@Override
 	public int GetChangeCount()
 	{
-		return mVertexChanges.size();
+		return mCount;
 	}
 }
@@ -0,0 +1,205 @@
+package truesculpt.actions;
+
+import truesculpt.main.R;
+import truesculpt.managers.ToolsManager;
+import truesculpt.managers.ToolsManager.GlobalToolState;
+import truesculpt.mesh.Mesh;
+import truesculpt.mesh.SculptLayer;
+import truesculpt.renderer.MainRenderer;
+import truesculpt.tools.base.BaseTool;
+import truesculpt.tools.base.ToolParameters;
+
+// Analytic description of a stroke: tool, its parameters, random seed, camera and resampled screen path.
+// Replaying it on the same mesh state gives the same result, it cannot be undone directly, the manager
+// restores a keyframe and replays the following strokes instead.
+public class StrokeAction extends BaseAction
+{
+	private final GlobalToolState mToolState;
+	private final ToolParameters mParameters;
+	private final long mSeed;
+	private final float[] mModelView = new float[16];
+	private final float[] mProjection = new float[16];
+	private final int[] mViewPort = new int[4];
+
+	private final float mStartX;
+	private final float mStartY;
+	private float mStopX = 0;
+	private float mStopY = 0;
+	private float[] mPath = new float[32];// x,y of dabs
+	private int mPointCount = 0;
+	private int mChangeCount = 0;
+
+	public StrokeAction(ToolsManager toolsManager, ToolParameters parameters, MainRenderer renderer, long seed, float xStart, float yStart)
+	{
+		super();
+		mStartX = xStart;
+		mStartY = yStart;
+		mToolState = toolsManager.GetGlobalToolState();
+		mParameters = parameters;
+		mSeed = seed;
+		renderer.GetCamera(mModelView, mProjection, mViewPort);
+		setDescription("Stroke " + mToolState.toString());
+	}
+
+	// only strokes whose effect is in vertex coords and colors are logged, other ones keep their action
+	public static boolean CanReplace(BaseAction action, Mesh mesh)
+	{
+		if (action instanceof ColorizeAction)
+		{
+			return true;
+		}
+		if (action instanceof SculptAction)
+		{
+			SculptLayer layer = mesh.getActiveLayer();
+			return layer == null || layer.getEffectiveWeight() == 0;
+		}
+		return false;
+	}
+
+	public void AddPoint(float x, float y)
+	{
+		if ((mPointCount + 1) * 2 > mPath.length)
+		{
+			float[] path = new float[mPath.length * 2];
+			System.arraycopy(mPath, 0, path, 0, mPointCount * 2);
+			mPath = path;
+		}
+		mPath[mPointCount * 2] = x;
+		mPath[mPointCount * 2 + 1] = y;
+		mPointCount++;
+	}
+
+	public void SetStop(float x, float y)
+	{
+		mStopX = x;
+		mStopY = y;
+	}
+
+	// used for history jump cost estimation
+	public void setChangeCount(int nChangeCount)
+	{
+		mChangeCount = nChangeCount;
+	}
+
+	public float getStartX()
+	{
+		return mStartX;
+	}
+
+	public float getStartY()
+	{
+		return mStartY;
+	}
+
+	public float getStopX()
+	{
+		return mStopX;
+	}
+
+	public float getStopY()
+	{
+		return mStopY;
+	}
+
+	public ToolParameters getParameters()
+	{
+		return mParameters;
+	}
+
+	public long getSeed()
+	{
+		return mSeed;
+	}
+
+	public int getPointCount()
+	{
+		return mPointCount;
+	}
+
+	public float getX(int i)
+	{
+		return mPath[i * 2];
+	}
+
+	public float getY(int i)
+	{
+		return mPath[i * 2 + 1];
+	}
+
+	@Override
+	public void Seal()
+	{
+		if (mPath.length > mPointCount * 2)
+		{
+			float[] path = new float[mPointCount * 2];
+			System.arraycopy(mPath, 0, path, 0, mPointCount * 2);
+			mPath = path;
+		}
+	}
+
+	// tool reads the recorded parameters, only the camera is overridden during replay
+	@Override
+	public boolean DoAction()
+	{
+		MainRenderer renderer = getManagers().getRendererManager().getMainRenderer();
+		renderer.SetCameraOverride(mModelView, mProjection, mViewPort);
+		try
+		{
+			mToolState.getCurrentTool().Replay(this);
+		}
+		finally
+		{
+			renderer.ClearCameraOverride();
+		}
+		return true;
+	}
+
+	@Override
+	public boolean UndoAction()
+	{
+		return false;
+	}
+
+	@Override
+	public boolean CanUndoDirectly()
+	{
+		return false;
+	}
+
+	@Override
+	public boolean ChangesMesh()
+	{
+		return true;
+	}
+
+	@Override
+	public boolean IsCapturedByKeyframe()
+	{
+		return true;
+	}
+
+	@Override
+	public int GetByteSize()
+	{
+		return OBJECT_BYTE_SIZE * 3 + (16 + 16 + 4 + 4) * 4 + mParameters.GetByteSize() + mPath.length * 4;
+	}
+
+	@Override
+	public String GetActionName()
+	{
+		return "Stroke";
+	}
+
+	@Override
+	public int GetImageResourceID()
+	{
+		BaseTool tool = mToolState.getCurrentTool();
+		return tool != null ? tool.GetIcon() : R.drawable.draw;
+	}
+
+	@Override
+	public int GetChangeCount()
+	{
+		return mChangeCount;
+	}
+}
@@ -0,0 +1,97 @@
+package truesculpt.actions;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import truesculpt.main.R;
+import truesculpt.mesh.PaintTexture;
+
+// Copies of changed texture tiles, before and after the stroke
+public class TexturePaintAction extends BaseAction
+{
+	private final PaintTexture mTexture;
+	private final HashMap<Integer, byte[]> mOldTiles = new HashMap<Integer, byte[]>();
+	private final HashMap<Integer, byte[]> mNewTiles = new HashMap<Integer, byte[]>();
+	private final long[] mSavedTiles;// fast test during painting
+
+	public TexturePaintAction(PaintTexture texture)
+	{
+		super();
+		setDescription("Texture painting");
+
+		mTexture = texture;
+		mSavedTiles = new long[(texture.getTileCount() >> 6) + 1];
+	}
+
+	// to call before first change of a tile during the stroke
+	public void SaveOriginalTile(int nTile)
+	{
+		if ((mSavedTiles[nTile >> 6] & (1L << nTile)) == 0)
+		{
+			mSavedTiles[nTile >> 6] |= (1L << nTile);
+
+			byte[] data = PaintTexture.NewTileData();
+			mTexture.CopyTile(nTile, data);
+			mOldTiles.put(nTile, data);
+		}
+	}
+
+	// end of stroke, keeps final content of changed tiles
+	public void SaveNewTiles()
+	{
+		synchronized (mTexture)
+		{
+			for (Integer nTile : mOldTiles.keySet())
+			{
+				byte[] data = PaintTexture.NewTileData();
+				mTexture.CopyTile(nTile, data);
+				mNewTiles.put(nTile, data);
+			}
+		}
+	}
+
+	@Override
+	public boolean DoAction()
+	{
+		synchronized (mTexture)
+		{
+			for (Map.Entry<Integer, byte[]> tile : mNewTiles.entrySet())
+			{
+				mTexture.SetTile(tile.getKey(), tile.getValue());
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public String GetActionName()
+	{
+		return "Texture paint";
+	}
+
+	@Override
+	public int GetImageResourceID()
+	{
+		return R.drawable.brush;
+	}
+
+	@Override
+	public boolean UndoAction()
+	{
+		synchronized (mTexture)
+		{
+			for (Map.Entry<Integer, byte[]> tile : mOldTiles.entrySet())
+			{
+				mTexture.SetTile(tile.getKey(), tile.getValue());
+			}
+		}
+		return true;
+	}
+
+	// one change per tile
+	@Override
+	public int GetChangeCount()
+	{
+		return mOldTiles.size();
+	}
+}
@@ -1,19 +1,75 @@
 package truesculpt.managers;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
+import truesculpt.actions.ActionJournal;
 import truesculpt.actions.BaseAction;
+import truesculpt.actions.HistoryKeyframe;
+import truesculpt.actions.HistoryRefresh;
+import truesculpt.mesh.Mesh;
 import android.content.Context;
 
 //For undo redo and analytical description of sculpture
 public class ActionsManager extends BaseManager
 {
-	private final int MAX_CHANGE_COUNT = (int) 2e4;
+	// resident history is limited in bytes, older actions are spilled to a journal file limited by its own size
+	private int mRamBudget = 16 * 1024 * 1024;
+	private int mJournalMaxSize = 128 * 1024 * 1024;
+	private boolean mbQuantizeSculptDeltas = true;
+	private boolean mbAnalyticHistory = false;
 	private int mCurrChangeCount = 0;
+	private int mResidentBytes = 0;
+	private ActionJournal mJournal = null;
+
+	// full snapshots so that history jumps replay only a few actions
+	private final int KEYFRAME_ACTION_INTERVAL = 32;
+	private final int KEYFRAME_CHANGE_INTERVAL = (int) 2e5;
+	private final int MAX_KEYFRAMES = 8;
+	private final List<HistoryKeyframe> mKeyframes = new ArrayList<HistoryKeyframe>();// sorted by position
+	private int mActionsSinceKeyframe = 0;
+	private int mChangesSinceKeyframe = 0;
+	private int mBaseIndex = 0;// history position of the oldest undoable state
+	private final HistoryRefresh mRefresh = new HistoryRefresh();
 	private final List<BaseAction> mUndoActionsList = new ArrayList<BaseAction>();
 	private final List<BaseAction> mRedoActionsList = new ArrayList<BaseAction>();
 
+	// immutable copy of the lists for the UI thread, published after each change
+	public static class HistorySnapshot
+	{
+		private final BaseAction[] mUndoActions;
+		private final int mRedoCount;
+
+		HistorySnapshot(BaseAction[] undoActions, int nRedoCount)
+		{
+			mUndoActions = undoActions;
+			mRedoCount = nRedoCount;
+		}
+
+		public int GetUndoActionCount()
+		{
+			return mUndoActions.length;
+		}
+
+		public int GetRedoActionCount()
+		{
+			return mRedoCount;
+		}
+
+		public BaseAction GetUndoActionAt(int position)
+		{
+			BaseAction res = null;
+			if (position >= 0 && position < mUndoActions.length)
+			{
+				res = mUndoActions[position];
+			}
+			return res;
+		}
+	}
+
+	private volatile HistorySnapshot mSnapshot = new HistorySnapshot(new BaseAction[0], 0);
+
 	public ActionsManager(Context baseContext)
 	{
 		super(baseContext);
@@ -22,113 +78,605 @@ public class ActionsManager extends BaseManager
 	@Override
 	public void onCreate()
 	{
+		mbAnalyticHistory = getManagers().getOptionsManager().getAnalyticHistory();
+	}
 
+	// position in the undo list, done on mesh worker thread
+	public void Remove(final int position)
+	{
+		RunOnWorker(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				RemoveInternal(position);
+			}
+		});
 	}
 
-	public void Remove(int position)
+	private void RemoveInternal(int position)
 	{
-		BaseAction removedAction = mUndoActionsList.get(position);
-		mCurrChangeCount -= removedAction.GetChangeCount();
-		mUndoActionsList.remove(position);
+		if (position < mUndoActionsList.size())
+		{
+			int nRemovedPosition = GetCurrentPosition() - 1 - position;
+			BaseAction removedAction = mUndoActionsList.get(position);
+			Forget(removedAction);
+			mUndoActionsList.remove(position);
+			OnActionsRemoved(nRemovedPosition);
+		}
 		NotifyListeners();
 	}
 
-	public void RemoveUpTo(int position)
+	// action leaves history, memory and journal accounting
+	private void Forget(BaseAction action)
 	{
-		if (position < GetUndoActionCount())
+		mCurrChangeCount -= action.GetChangeCount();
+		if (action.IsResident())
 		{
+			mResidentBytes -= action.GetByteSize();
+		}
+		if (mJournal != null)
+		{
+			mJournal.Remove(action);
+		}
+	}
+
+	public void RemoveUpTo(final int position)
+	{
+		RunOnWorker(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				RemoveUpToInternal(position);
+			}
+		});
+	}
+
+	private void RemoveUpToInternal(int position)
+	{
+		if (position < mUndoActionsList.size())
+		{
+			int nRemovedPosition = GetCurrentPosition() - 1 - position;
 			for (int i = 0; i <= position; i++)
 			{
 				BaseAction removedAction = mUndoActionsList.get(0);
-				mCurrChangeCount -= removedAction.GetChangeCount();
+				Forget(removedAction);
 				mUndoActionsList.remove(0);
 			}
+			OnActionsRemoved(nRemovedPosition);
 		}
 		NotifyListeners();
 	}
 
+	// actions from nPosition were removed without being undone, mesh keeps its state as the new current one.
+	// Keyframes after them do not match history anymore, a fresh one anchors the current state.
+	private void OnActionsRemoved(int nPosition)
+	{
+		RemoveKeyframesOutside(mBaseIndex, nPosition);
+		CaptureKeyframe();
+		DropUnreachableActions();
+	}
+
 	@Override
 	public void onDestroy()
 	{
+		if (mJournal != null)
+		{
+			mJournal.Close();
+			mJournal = null;
+		}
+	}
 
+	// UI thread reads the last published state, lists are only changed on mesh worker thread
+	public HistorySnapshot getHistorySnapshot()
+	{
+		return mSnapshot;
 	}
 
 	public int GetUndoActionCount()
 	{
-		return mUndoActionsList.size();
+		return mSnapshot.GetUndoActionCount();
 	}
 
 	public int GetRedoActionCount()
 	{
-		return mRedoActionsList.size();
+		return mSnapshot.GetRedoActionCount();
 	}
 
 	public BaseAction GetUndoActionAt(int position)
 	{
-		BaseAction res = null;
+		return mSnapshot.GetUndoActionAt(position);
+	}
 
-		if (position < GetUndoActionCount())
+	// history lists are changed on mesh worker thread, or with mesh lock held while the worker waits
+	private void RunOnWorker(Runnable task)
+	{
+		MeshWorker worker = getManagers().getMeshManager().getWorker();
+		if (worker.IsWorkerThread() || Thread.holdsLock(worker.getMeshLock()))
+		{
+			task.run();
+		}
+		else
 		{
-			res = mUndoActionsList.get(position);
+			worker.PostTask(task);
 		}
+	}
 
-		return res;
+	// new state is published before observers are notified
+	@Override
+	public void NotifyListeners()
+	{
+		mSnapshot = new HistorySnapshot(mUndoActionsList.toArray(new BaseAction[mUndoActionsList.size()]), mRedoActionsList.size());
+		super.NotifyListeners();
 	}
 
 	public void AddUndoAction(BaseAction action)
 	{
 		action.setManagers(getManagers());
+		action.Seal();
+
+		// mesh is still in the state of the current position, new action is done after.
+		// Strokes cannot be undone without a previous keyframe.
+		boolean bNeedsBase = !action.CanUndoDirectly() && !HasKeyframeAtOrBefore(GetCurrentPosition());
+		if (bNeedsBase || mActionsSinceKeyframe >= KEYFRAME_ACTION_INTERVAL || mChangesSinceKeyframe >= KEYFRAME_CHANGE_INTERVAL)
+		{
+			CaptureKeyframe();
+		}
+		mActionsSinceKeyframe++;
+		mChangesSinceKeyframe += action.GetChangeCount();
 
 		// TODO optimize by avoiding offsetting (reverse list)
 		mUndoActionsList.add(0, action);// add at the top
 		mCurrChangeCount += action.GetChangeCount();
+		mResidentBytes += action.GetByteSize();
 
-		// history stripping
-		while (mCurrChangeCount > MAX_CHANGE_COUNT)
+		for (BaseAction removedAction : mRedoActionsList)
 		{
-			int nIndex = GetUndoActionCount() - 1;
-			BaseAction removedAction = mUndoActionsList.get(nIndex);
-			mCurrChangeCount -= removedAction.GetChangeCount();
-			mUndoActionsList.remove(nIndex);
+			Forget(removedAction);
 		}
+		mRedoActionsList.clear();// new branch no more needed
+		RemoveKeyframesOutside(mBaseIndex, GetCurrentPosition());
 
-		for (BaseAction removedAction : mRedoActionsList)
+		EnforceRamBudget();
+
+		NotifyListeners();
+	}
+
+	// oldest resident actions are spilled to journal, last action always stays resident
+	private void EnforceRamBudget()
+	{
+		int nOldBaseIndex = mBaseIndex;
+		int nIndex = mUndoActionsList.size() - 1;
+		while (mResidentBytes > mRamBudget && nIndex > 0)
 		{
-			mCurrChangeCount -= removedAction.GetChangeCount();
+			BaseAction action = mUndoActionsList.get(nIndex);
+			if (action.IsResident() && action.CanSpill())
+			{
+				if (!Spill(action))
+				{
+					// no journal or journal full of more recent actions, oldest history is lost
+					RemoveOldestAction();
+					nIndex = mUndoActionsList.size() - 1;
+					continue;
+				}
+			}
+			nIndex--;
 		}
-		mRedoActionsList.clear();// new branch no more needed
+
+		if (mBaseIndex != nOldBaseIndex)
+		{
+			DropUnreachableActions();
+		}
+	}
+
+	private boolean Spill(BaseAction action)
+	{
+		try
+		{
+			if (mJournal == null)
+			{
+				mJournal = new ActionJournal(getManagers().getFileManager().GetBaseFileName() + ActionJournal.FILE_NAME, mJournalMaxSize);
+			}
+
+			// records stay valid, an action read back before is released without writing
+			if (!mJournal.Contains(action))
+			{
+				while (!mJournal.Write(action))
+				{
+					BaseAction oldest = mUndoActionsList.get(mUndoActionsList.size() - 1);
+					if (oldest == action || !mJournal.Contains(oldest))
+					{
+						return false;
+					}
+					RemoveOldestAction();// frees journal space
+				}
+			}
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+			return false;
+		}
+
+		mResidentBytes -= action.GetByteSize();
+		action.ReleaseData();
+		mResidentBytes += action.GetByteSize();
+		return true;
+	}
+
+	private void RemoveOldestAction()
+	{
+		int nIndex = mUndoActionsList.size() - 1;
+		Forget(mUndoActionsList.get(nIndex));
+		mUndoActionsList.remove(nIndex);
+		mBaseIndex++;
+		RemoveKeyframesOutside(mBaseIndex, GetCurrentPosition() + mRedoActionsList.size());
+	}
+
+	// number of actions applied since history start
+	public int GetCurrentPosition()
+	{
+		return mBaseIndex + mUndoActionsList.size();
+	}
+
+	private void CaptureKeyframe()
+	{
+		Mesh mesh = getManagers().getMeshManager().getMesh();
+		if (mesh != null)
+		{
+			HistoryKeyframe keyframe = HistoryKeyframe.Capture(mesh, GetCurrentPosition());
+			mResidentBytes += keyframe.GetByteSize();
+
+			// sorted insertion, replaces a keyframe at same position
+			int nIndex = 0;
+			while (nIndex < mKeyframes.size() && mKeyframes.get(nIndex).getPosition() < keyframe.getPosition())
+			{
+				nIndex++;
+			}
+			if (nIndex < mKeyframes.size() && mKeyframes.get(nIndex).getPosition() == keyframe.getPosition())
+			{
+				mResidentBytes -= mKeyframes.get(nIndex).GetByteSize();
+				mKeyframes.set(nIndex, keyframe);
+			}
+			else
+			{
+				mKeyframes.add(nIndex, keyframe);
+			}
+
+			// base keyframe is kept for the oldest strokes, the evicted one leaves the smallest gap
+			if (mKeyframes.size() > MAX_KEYFRAMES)
+			{
+				int nEvicted = 1;
+				int nSmallestGap = Integer.MAX_VALUE;
+				for (int i = 1; i < mKeyframes.size() - 1; i++)
+				{
+					int nGap = mKeyframes.get(i + 1).getPosition() - mKeyframes.get(i - 1).getPosition();
+					if (nGap < nSmallestGap)
+					{
+						nSmallestGap = nGap;
+						nEvicted = i;
+					}
+				}
+				mResidentBytes -= mKeyframes.get(nEvicted).GetByteSize();
+				mKeyframes.remove(nEvicted);
+			}
+		}
+		mActionsSinceKeyframe = 0;
+		mChangesSinceKeyframe = 0;
+	}
+
+	// positions before a stroke older than the first keyframe cannot be reached anymore, their actions are dropped
+	private void DropUnreachableActions()
+	{
+		int nLimit = GetCurrentPosition();
+		if (!mKeyframes.isEmpty())
+		{
+			nLimit = Math.min(nLimit, mKeyframes.get(0).getPosition());
+		}
+		int nNewBaseIndex = mBaseIndex;
+		for (int i = mBaseIndex; i < nLimit; i++)
+		{
+			if (!GetActionFrom(i).CanUndoDirectly())
+			{
+				nNewBaseIndex = i + 1;
+			}
+		}
+		while (mBaseIndex < nNewBaseIndex)
+		{
+			RemoveOldestAction();
+		}
+	}
+
+	private boolean HasKeyframeAtOrBefore(int nPosition)
+	{
+		return !mKeyframes.isEmpty() && mKeyframes.get(0).getPosition() <= nPosition;
+	}
+
+	private void RemoveKeyframesOutside(int nMin, int nMax)
+	{
+		for (int i = mKeyframes.size() - 1; i >= 0; i--)
+		{
+			HistoryKeyframe keyframe = mKeyframes.get(i);
+			if (keyframe.getPosition() < nMin || keyframe.getPosition() > nMax)
+			{
+				mResidentBytes -= keyframe.GetByteSize();
+				mKeyframes.remove(i);
+			}
+		}
+	}
+
+	// action going from history position nPosition to nPosition+1
+	private BaseAction GetActionFrom(int nPosition)
+	{
+		int nCurrent = GetCurrentPosition();
+		if (nPosition < nCurrent)
+		{
+			return mUndoActionsList.get(nCurrent - 1 - nPosition);
+		}
+		return mRedoActionsList.get(nPosition - nCurrent);
+	}
+
+	private long GetChangeCountBetween(int nStart, int nEnd)
+	{
+		long nRes = 0;
+		for (int i = Math.min(nStart, nEnd); i < Math.max(nStart, nEnd); i++)
+		{
+			nRes += GetActionFrom(i).GetChangeCount();
+		}
+		return nRes;
+	}
+
+	// mesh changes between the two positions are all in keyframe values
+	private boolean IsCapturedBetween(int nStart, int nEnd)
+	{
+		for (int i = Math.min(nStart, nEnd); i < Math.max(nStart, nEnd); i++)
+		{
+			BaseAction action = GetActionFrom(i);
+			if (action.ChangesMesh() && !action.IsCapturedByKeyframe())
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// all actions between the two positions can be undone without keyframe
+	private boolean IsUndoableBetween(int nStart, int nEnd)
+	{
+		for (int i = Math.min(nStart, nEnd); i < Math.max(nStart, nEnd); i++)
+		{
+			if (!GetActionFrom(i).CanUndoDirectly())
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// undo up to the history list position included
+	public void UndoUpTo(final int position)
+	{
+		getManagers().getMeshManager().getWorker().PostTask(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				JumpToInternal(GetCurrentPosition() - (position + 1));
+			}
+		});
+	}
+
+	// any undo or redo position, done on mesh worker thread
+	public void JumpTo(final int nPosition)
+	{
+		getManagers().getMeshManager().getWorker().PostTask(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				JumpToInternal(nPosition);
+			}
+		});
+	}
+
+	// restores the cheapest keyframe if any, then replays the remaining actions, display is updated once at the end.
+	// Paths undoing strokes of the analytic history are not valid, nothing is done if no valid path is left.
+	private void JumpToInternal(int nPosition)
+	{
+		Mesh mesh = getManagers().getMeshManager().getMesh();
+		int nCurrent = GetCurrentPosition();
+		nPosition = Math.max(mBaseIndex, Math.min(nPosition, nCurrent + mRedoActionsList.size()));
+		if (nPosition == nCurrent || mesh == null)
+		{
+			return;
+		}
+
+		HistoryKeyframe bestKeyframe = null;
+		boolean bDirect = nPosition > nCurrent || IsUndoableBetween(nPosition, nCurrent);
+		long nBestCost = bDirect ? GetChangeCountBetween(nCurrent, nPosition) : Long.MAX_VALUE;
+		for (HistoryKeyframe keyframe : mKeyframes)
+		{
+			if (keyframe.getVertexCount() != mesh.getVertexCount() || !IsCapturedBetween(nCurrent, keyframe.getPosition()))
+			{
+				continue;
+			}
+			if (keyframe.getPosition() > nPosition && !IsUndoableBetween(nPosition, keyframe.getPosition()))
+			{
+				continue;
+			}
+			long nCost = mesh.getVertexCount() + GetChangeCountBetween(keyframe.getPosition(), nPosition);
+			if (nCost < nBestCost)
+			{
+				nBestCost = nCost;
+				bestKeyframe = keyframe;
+			}
+		}
+
+		if (bestKeyframe == null && !bDirect)
+		{
+			return;
+		}
+		if (bestKeyframe != null)
+		{
+			StepTo(bestKeyframe.getPosition(), true);
+			bestKeyframe.Restore(mesh);
+			mRefresh.MarkAll();
+		}
+		StepTo(nPosition, false);
+		mRefresh.Flush(mesh);
+
 		NotifyListeners();
 	}
 
+	// mesh changes are not applied if they are in the keyframe to be restored
+	private void StepTo(int nPosition, boolean bSkipCaptured)
+	{
+		while (GetCurrentPosition() > nPosition)
+		{
+			BaseAction action = mUndoActionsList.get(0);
+			mUndoActionsList.remove(0);
+			mRedoActionsList.add(0, action);
+			ApplyForJump(action, false, bSkipCaptured);
+		}
+		while (GetCurrentPosition() < nPosition)
+		{
+			BaseAction action = mRedoActionsList.get(0);
+			mRedoActionsList.remove(0);
+			mUndoActionsList.add(0, action);
+			ApplyForJump(action, true, bSkipCaptured);
+		}
+	}
+
+	private void ApplyForJump(BaseAction action, boolean bDo, boolean bSkipCaptured)
+	{
+		if (bSkipCaptured && action.ChangesMesh())
+		{
+			return;
+		}
+
+		boolean bPaged = !action.IsResident();
+		MakeResident(action);
+		if (!action.ApplyDeferred(bDo, mRefresh))
+		{
+			// replayed strokes pick and deform with up to date normals and octree
+			mRefresh.Flush(getManagers().getMeshManager().getMesh());
+			if (bDo)
+			{
+				action.DoAction();
+			}
+			else
+			{
+				action.UndoAction();
+			}
+		}
+		if (bPaged)
+		{
+			EnforceRamBudget();
+		}
+	}
+
+	// journal data paged back in before do or undo
+	private void MakeResident(BaseAction action)
+	{
+		if (!action.IsResident())
+		{
+			mResidentBytes -= action.GetByteSize();
+			mJournal.Read(action);
+			mResidentBytes += action.GetByteSize();
+		}
+	}
+
+	private final Runnable mRedoTask = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			RedoInternal();
+		}
+	};
+
+	private final Runnable mUndoTask = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			UndoInternal();
+		}
+	};
+
+	// mesh is only modified in mesh worker thread
 	public void Redo()
 	{
-		if (GetRedoActionCount() > 0)
+		getManagers().getMeshManager().getWorker().PostTask(mRedoTask);
+	}
+
+	public void Undo()
+	{
+		getManagers().getMeshManager().getWorker().PostTask(mUndoTask);
+	}
+
+	private void RedoInternal()
+	{
+		if (mRedoActionsList.size() > 0)
 		{
 			BaseAction action = mRedoActionsList.get(0);
 			mRedoActionsList.remove(0);
 			mUndoActionsList.add(0, action);// add at the top
+			MakeResident(action);
 			action.DoAction();
+			EnforceRamBudget();
 			NotifyListeners();
 		}
 	}
 
-	public void Undo()
+	private void UndoInternal()
 	{
-		if (GetUndoActionCount() > 0)
+		if (mUndoActionsList.size() > 0 && !mUndoActionsList.get(0).CanUndoDirectly())
+		{
+			JumpToInternal(GetCurrentPosition() - 1);
+		}
+		else if (mUndoActionsList.size() > 0)
 		{
 			BaseAction action = mUndoActionsList.get(0);
 			mUndoActionsList.remove(0);
 			mRedoActionsList.add(0, action);
+			MakeResident(action);
 			action.UndoAction();
+			EnforceRamBudget();
 			NotifyListeners();
 		}
 	}
 
 	public void ClearAll()
+	{
+		RunOnWorker(mClearAllTask);
+	}
+
+	private final Runnable mClearAllTask = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			ClearAllInternal();
+		}
+	};
+
+	private void ClearAllInternal()
 	{
 		mUndoActionsList.clear();
 		mRedoActionsList.clear();
 		mCurrChangeCount = 0;
+		mResidentBytes = 0;
+		mKeyframes.clear();
+		mActionsSinceKeyframe = 0;
+		mChangesSinceKeyframe = 0;
+		mBaseIndex = 0;
+		if (mJournal != null)
+		{
+			mJournal.Close();
+			mJournal = null;
+		}
 		NotifyListeners();
 	}
 
@@ -137,9 +685,57 @@ public class ActionsManager extends BaseManager
 		return mCurrChangeCount;
 	}
 
-	public int GetMaxChangeCount()
+	public int GetResidentBytes()
+	{
+		return mResidentBytes;
+	}
+
+	public int GetJournalBytes()
+	{
+		return mJournal != null ? mJournal.getLiveBytes() : 0;
+	}
+
+	public int getRamBudget()
+	{
+		return mRamBudget;
+	}
+
+	public void setRamBudget(int nRamBudget)
+	{
+		mRamBudget = nRamBudget;
+	}
+
+	public int getJournalMaxSize()
+	{
+		return mJournalMaxSize;
+	}
+
+	// used when the journal is created, after next ClearAll
+	public void setJournalMaxSize(int nJournalMaxSize)
+	{
+		mJournalMaxSize = nJournalMaxSize;
+	}
+
+	// sculpt actions store 16 bits displacements instead of new coords
+	public boolean getQuantizeSculptDeltas()
+	{
+		return mbQuantizeSculptDeltas;
+	}
+
+	public void setQuantizeSculptDeltas(boolean bQuantizeSculptDeltas)
+	{
+		mbQuantizeSculptDeltas = bQuantizeSculptDeltas;
+	}
+
+	// sculpt and paint strokes are stored as tool, camera and path, undo restores a keyframe and replays strokes
+	public boolean getAnalyticHistory()
+	{
+		return mbAnalyticHistory;
+	}
+
+	public void setAnalyticHistory(boolean bAnalyticHistory)
 	{
-		return MAX_CHANGE_COUNT;
+		mbAnalyticHistory = bAnalyticHistory;
 	}
 
 }
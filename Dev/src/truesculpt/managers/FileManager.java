@@ -34,6 +34,12 @@ public class FileManager extends BaseManager
 		return GetBaseFileName() + "Image.png";
 	}
 
+	// painted texture is stored next to the object file of the sculpture
+	public static String GetTextureFileName(String strObjFileName)
+	{
+		return new File(new File(strObjFileName).getParentFile(), "Texture.png").getAbsolutePath();
+	}
+
 	public static boolean CheckSculptureExist(String name)
 	{
 		boolean bRes = false;
@@ -150,8 +156,10 @@ public class FileManager extends BaseManager
 			File fileDir = new File(dir);
 			File fileMesh = new File(dir + "Mesh.obj");
 			File fileImage = new File(dir + "Image.png");
+			File fileTexture = new File(dir + "Texture.png");
 			fileMesh.delete();
 			fileImage.delete();
+			fileTexture.delete();
 			fileDir.delete();// dir must be emptied
 		}
 	}
@@ -1,10 +1,18 @@
 package truesculpt.managers;
 
 import java.io.IOException;
+import java.util.ArrayList;
 
 import javax.microedition.khronos.opengles.GL10;
 
+import truesculpt.actions.LayerChangeAction;
+import truesculpt.actions.SculptAction;
 import truesculpt.mesh.Mesh;
+import truesculpt.mesh.PaintTexture;
+import truesculpt.mesh.RenderFaceGroup;
+import truesculpt.mesh.SculptLayer;
+import truesculpt.mesh.Vertex;
+import truesculpt.renderer.ClusterCuller;
 import truesculpt.renderer.PickHighlight;
 import truesculpt.renderer.RayPickDebug;
 import truesculpt.utils.MatrixUtils;
@@ -15,7 +23,7 @@ import android.os.SystemClock;
 public class MeshManager extends BaseManager
 {
 	private String Name = "";
-	private boolean bInitOver = true;
+	private volatile boolean bInitOver = true;
 	float[] intersectPt = new float[3];
 
 	class MeshInitTask implements Runnable
@@ -42,14 +50,18 @@ public class MeshManager extends BaseManager
 	{
 		bInitOver = false;
 
-		try
+		synchronized (getWorker().getMeshLock())
 		{
-			mMesh = new Mesh(getManagers(), nSubdivionLevel);
-		}
-		catch (Exception e)
-		{
-			mMesh = null;
-			getManagers().getUtilsManager().ShowToastMessage("Not enough memory for such a subdivision level, please try a lower value");
+			RetireMesh();
+			try
+			{
+				mMesh = new Mesh(getManagers(), nSubdivionLevel);
+			}
+			catch (Exception e)
+			{
+				mMesh = null;
+				getManagers().getUtilsManager().ShowToastMessage("Not enough memory for such a subdivision level, please try a lower value");
+			}
 		}
 
 		getManagers().getUtilsManager();
@@ -64,16 +76,20 @@ public class MeshManager extends BaseManager
 	{
 		bInitOver = false;
 
-		mMesh = new Mesh(getManagers(), -1);
-		Name = name;
-
-		try
+		synchronized (getWorker().getMeshLock())
 		{
-			mMesh.ImportFromOBJ(getManagers().getFileManager().GetObjectFileName());
-		}
-		catch (IOException e)
-		{
-			e.printStackTrace();
+			RetireMesh();
+			mMesh = new Mesh(getManagers(), -1);
+			Name = name;
+
+			try
+			{
+				mMesh.ImportFromOBJ(getManagers().getFileManager().GetObjectFileName());
+			}
+			catch (IOException e)
+			{
+				e.printStackTrace();
+			}
 		}
 
 		bInitOver = true;
@@ -81,6 +97,12 @@ public class MeshManager extends BaseManager
 		NotifyListeners();
 	}
 
+	// GL objects of reset or replaced meshes, deleted by the GL thread at next draw
+	private final ArrayList<PaintTexture> mRetiredTextures = new ArrayList<PaintTexture>();
+	private final ArrayList<RenderFaceGroup> mRetiredRenderGroups = new ArrayList<RenderFaceGroup>();
+
+	private MeshWorker mWorker = null;
+
 	MeshInitTask mInitTask = new MeshInitTask();// TODO move in a panel to get a waiting spinner
 
 	long mLastPickDurationMs = -1;
@@ -103,21 +125,98 @@ public class MeshManager extends BaseManager
 		intersectPt[2] = 1f;
 	}
 
-	public void draw(GL10 gl)
+	public void draw(GL10 gl, ClusterCuller culler)
 	{
+		draw(gl, culler, true);
+	}
+
+	// debug geometry is left out of offscreen images
+	public void draw(GL10 gl, ClusterCuller culler, boolean bDrawDebug)
+	{
+		ReleaseRetiredGLResources(gl);
+
 		if (IsInitOver())
 		{
-			mMesh.draw(gl);
+			mMesh.PublishBounds();
+			mMesh.draw(gl, culler);
 
 			if (getManagers().getOptionsManager().getDisplayDebugInfos())
 			{
-				mMesh.drawNormals(gl);
-				mMesh.drawOctree(gl);
+				if (bDrawDebug)
+				{
+					mMesh.drawDebug(gl);
+				}
 
 				// pick debug
 				// mRay.draw(gl);
 				// mPickHighlight.draw(gl);
 			}
+			else
+			{
+				mMesh.ReleaseDebugGeometry();
+			}
+		}
+	}
+
+	// previous mesh is not drawn anymore, called with mesh lock
+	private void RetireMesh()
+	{
+		if (mMesh != null)
+		{
+			mMesh.RetireGLResources();
+		}
+	}
+
+	public void RetireGLResources(PaintTexture texture)
+	{
+		synchronized (mRetiredTextures)
+		{
+			mRetiredTextures.add(texture);
+		}
+	}
+
+	public void RetireGLResources(RenderFaceGroup renderGroup)
+	{
+		synchronized (mRetiredTextures)
+		{
+			mRetiredRenderGroups.add(renderGroup);
+		}
+	}
+
+	// GL context was recreated, ids of retired objects are not valid anymore
+	public void InvalidateGLResources()
+	{
+		if (mMesh != null)
+		{
+			mMesh.InvalidateGLResources();
+		}
+		synchronized (mRetiredTextures)
+		{
+			for (PaintTexture texture : mRetiredTextures)
+			{
+				texture.InvalidateTexture();
+			}
+			for (RenderFaceGroup renderGroup : mRetiredRenderGroups)
+			{
+				renderGroup.InvalidateGLResources();
+			}
+		}
+	}
+
+	private void ReleaseRetiredGLResources(GL10 gl)
+	{
+		synchronized (mRetiredTextures)
+		{
+			for (PaintTexture texture : mRetiredTextures)
+			{
+				texture.ReleaseTexture(gl);
+			}
+			mRetiredTextures.clear();
+			for (RenderFaceGroup renderGroup : mRetiredRenderGroups)
+			{
+				renderGroup.ReleaseGLResources(gl);
+			}
+			mRetiredRenderGroups.clear();
 		}
 	}
 
@@ -149,6 +248,7 @@ public class MeshManager extends BaseManager
 	@Override
 	public void onCreate()
 	{
+		getWorker().StartThread();
 		InitMeshThreaded(5, getManagers().getOptionsManager().getLastUsedFile());// TODO adapt init level to power of machine
 	}
 
@@ -171,11 +271,20 @@ public class MeshManager extends BaseManager
 	@Override
 	public void onDestroy()
 	{
+		getWorker().StopThread();
+	}
 
+	// all mesh modifications are serialized in this thread
+	public MeshWorker getWorker()
+	{
+		if (mWorker == null)
+		{
+			mWorker = new MeshWorker(getManagers());
+		}
+		return mWorker;
 	}
 
-	// TODO threaded to improve GUI reactivity
-	// pick is not an action
+	// pick is not an action, called from mesh worker thread or with its mesh lock
 	public int Pick(float screenX, float screenY, ToolsManager.ESymmetryMode symmetryMode)
 	{
 		int nIndex = -1;
@@ -261,7 +370,11 @@ public class MeshManager extends BaseManager
 	{
 		if (IsInitOver())
 		{
-			mMesh.ImportFromOBJ(objfilename);
+			synchronized (getWorker().getMeshLock())
+			{
+				mMesh.ImportFromOBJ(objfilename);
+				mMesh.PublishRenderData();
+			}
 		}
 	}
 
@@ -273,9 +386,82 @@ public class MeshManager extends BaseManager
 		}
 	}
 
+	// new layer becomes the target of next strokes
+	public void AddLayer(final String name)
+	{
+		getWorker().PostTask(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				if (IsInitOver())
+				{
+					mMesh.AddLayer(name);
+					NotifyListeners();
+				}
+			}
+		});
+	}
+
+	// layer weight slider or visibility toggle, undoable
+	public void SetLayerState(final SculptLayer layer, final float weight, final boolean bVisible)
+	{
+		getWorker().PostTask(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				if (IsInitOver())
+				{
+					LayerChangeAction action = new LayerChangeAction(layer, weight, bVisible);
+					getManagers().getActionsManager().AddUndoAction(action);
+					action.DoAction();
+				}
+			}
+		});
+	}
+
+	// Taubin smoothing of all unmasked vertices as one undoable sculpt action
+	public void SmoothAll(final int nIterations)
+	{
+		getWorker().PostTask(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				if (IsInitOver())
+				{
+					SculptAction action = new SculptAction();
+					for (Vertex vertex : mMesh.mVertexList)
+					{
+						if (!mMesh.getMask().IsMasked(vertex.Index))
+						{
+							action.AddNewVertexValue(vertex.Coord, vertex);
+						}
+					}
+					action.DoSmoothAll(mMesh, nIterations);
+					if (action.GetChangeCount() > 0)
+					{
+						getManagers().getActionsManager().AddUndoAction(action);
+						action.DoAction();
+					}
+				}
+			}
+		});
+	}
+
 	public Mesh getMesh()
 	{
 		return mMesh;
 	}
 
+	// end of a writer command, called with mesh lock held
+	public void PublishRenderData()
+	{
+		if (mMesh != null)
+		{
+			mMesh.PublishRenderData();
+		}
+	}
+
 }
@@ -0,0 +1,311 @@
+package truesculpt.managers;
+
+import truesculpt.main.Managers;
+import truesculpt.managers.ToolsManager.ESymmetryMode;
+import truesculpt.managers.ToolsManager.EToolMode;
+import truesculpt.tools.base.BaseTool;
+import truesculpt.tools.base.StrokeResampler;
+import android.util.Log;
+
+// Single writer thread for all mesh mutations, UI thread only enqueues and GL thread reads published render buffers
+public class MeshWorker implements Runnable
+{
+	public enum ECommandType
+	{
+		START, MOVE, STOP, TASK
+	};
+
+	private class Command
+	{
+		ECommandType mType = ECommandType.TASK;
+		float mX = 0;
+		float mY = 0;
+		Runnable mTask = null;
+	}
+
+	private final int INITIAL_QUEUED_COMMANDS = 32;
+
+	// preallocated ring buffer, no allocation per touch event. The UI thread never waits: moves are dropped
+	// when the queue is full, other commands grow it.
+	private Command[] mQueue = new Command[INITIAL_QUEUED_COMMANDS];
+	private int mHead = 0;
+	private int mCount = 0;
+	private final Object mQueueLock = new Object();
+
+	// held while a command mutates the mesh, for the rare readers outside of this thread
+	private final Object mMeshLock = new Object();
+
+	private final Command mCurrCommand = new Command();
+	private final StrokeResampler mStrokeResampler = new StrokeResampler();
+	private final float[] mPickPt = new float[3];
+	private BaseTool mStrokeTool = null;
+
+	private Thread mThread = null;
+	private volatile boolean mbRunning = false;
+
+	// touch down not picked yet, UI thread does not know whether it starts a stroke or a point of view change
+	private volatile boolean mbStartPending = false;
+	private volatile boolean mbStartCancelled = false;// second finger came first, gesture is a point of view change
+
+	private final Managers mManagers;
+
+	public MeshWorker(Managers managers)
+	{
+		mManagers = managers;
+		for (int i = 0; i < mQueue.length; i++)
+		{
+			mQueue[i] = new Command();
+		}
+	}
+
+	public void StartThread()
+	{
+		if (mThread == null)
+		{
+			mbRunning = true;
+			mThread = new Thread(null, this, "Mesh_Worker");
+			mThread.start();
+		}
+	}
+
+	public void StopThread()
+	{
+		mbRunning = false;
+		synchronized (mQueueLock)
+		{
+			mQueueLock.notifyAll();
+		}
+		mThread = null;
+	}
+
+	// mesh is picked by the worker, stroke starts on hit, tool mode goes to point of view otherwise
+	public void PostStart(float x, float y)
+	{
+		mbStartCancelled = false;
+		mbStartPending = true;
+		Enqueue(ECommandType.START, x, y, null);
+	}
+
+	public void CancelPendingStart()
+	{
+		if (mbStartPending)
+		{
+			mbStartCancelled = true;
+		}
+	}
+
+	public boolean IsStartPending()
+	{
+		return mbStartPending;
+	}
+
+	// consecutive moves are coalesced, latest position wins
+	public void PostMove(float x, float y)
+	{
+		Enqueue(ECommandType.MOVE, x, y, null);
+	}
+
+	public void PostStop(float x, float y)
+	{
+		Enqueue(ECommandType.STOP, x, y, null);
+	}
+
+	public void PostTask(Runnable task)
+	{
+		Enqueue(ECommandType.TASK, 0, 0, task);
+	}
+
+	public Object getMeshLock()
+	{
+		return mMeshLock;
+	}
+
+	public boolean IsWorkerThread()
+	{
+		return Thread.currentThread() == mThread;
+	}
+
+	private void Enqueue(ECommandType type, float x, float y, Runnable task)
+	{
+		synchronized (mQueueLock)
+		{
+			if (type == ECommandType.MOVE && mCount > 0)
+			{
+				Command last = mQueue[(mHead + mCount - 1) % mQueue.length];
+				if (last.mType == ECommandType.MOVE)
+				{
+					last.mX = x;
+					last.mY = y;
+					return;
+				}
+			}
+
+			if (mCount >= mQueue.length)
+			{
+				if (type == ECommandType.MOVE)
+				{
+					return;// worker is late, stroke path is resampled from next points
+				}
+				GrowQueue();
+			}
+
+			Command command = mQueue[(mHead + mCount) % mQueue.length];
+			command.mType = type;
+			command.mX = x;
+			command.mY = y;
+			command.mTask = task;
+			mCount++;
+
+			mQueueLock.notifyAll();
+		}
+	}
+
+	// called with queue lock held, pending commands are kept in order from the start of the new buffer
+	private void GrowQueue()
+	{
+		Command[] queue = new Command[mQueue.length * 2];
+		for (int i = 0; i < mCount; i++)
+		{
+			queue[i] = mQueue[(mHead + i) % mQueue.length];
+		}
+		for (int i = mCount; i < queue.length; i++)
+		{
+			queue[i] = new Command();
+		}
+		mQueue = queue;
+		mHead = 0;
+	}
+
+	@Override
+	public void run()
+	{
+		while (mbRunning)
+		{
+			synchronized (mQueueLock)
+			{
+				while (mCount == 0 && mbRunning)
+				{
+					try
+					{
+						mQueueLock.wait();
+					}
+					catch (InterruptedException e)
+					{
+						e.printStackTrace();
+					}
+				}
+				if (!mbRunning)
+				{
+					break;
+				}
+
+				// copy to free the slot for the UI thread
+				Command command = mQueue[mHead];
+				mCurrCommand.mType = command.mType;
+				mCurrCommand.mX = command.mX;
+				mCurrCommand.mY = command.mY;
+				mCurrCommand.mTask = command.mTask;
+				command.mTask = null;
+				mHead = (mHead + 1) % mQueue.length;
+				mCount--;
+			}
+
+			try
+			{
+				synchronized (mMeshLock)
+				{
+					Process(mCurrCommand);
+					mManagers.getMeshManager().PublishRenderData();
+				}
+			}
+			catch (Exception e)
+			{
+				Log.e("MESHWORKER", "Command " + mCurrCommand.mType + " failed");
+				e.printStackTrace();
+			}
+			mCurrCommand.mTask = null;
+		}
+	}
+
+	private void Process(Command command)
+	{
+		switch (command.mType)
+		{
+		case START:
+		{
+			// not tool pick, but mesh pick
+			int nRes = -1;
+			try
+			{
+				if (!mbStartCancelled)
+				{
+					nRes = mManagers.getMeshManager().Pick(command.mX, command.mY, ESymmetryMode.NONE);
+				}
+			}
+			finally
+			{
+				if (!mbStartCancelled)
+				{
+					mManagers.getToolsManager().setToolMode(nRes < 0 ? EToolMode.POV : EToolMode.SCULPT);
+				}
+				mbStartPending = false;
+			}
+			if (nRes >= 0)
+			{
+				mStrokeTool = mManagers.getToolsManager().getCurrentTool();
+				mStrokeTool.Start(command.mX, command.mY);
+				mStrokeTool.Pick(command.mX, command.mY);
+				mStrokeResampler.Begin(command.mX, command.mY, ComputeDabSpacing());
+			}
+			break;
+		}
+		case MOVE:
+		{
+			if (mStrokeTool != null)
+			{
+				PickStroke(command.mX, command.mY);
+			}
+			break;
+		}
+		case STOP:
+		{
+			if (mStrokeTool != null)
+			{
+				mStrokeTool.Stop(command.mX, command.mY);
+				mStrokeTool = null;
+			}
+			break;
+		}
+		case TASK:
+		{
+			command.mTask.run();
+			break;
+		}
+		}
+	}
+
+	// sculpting does not depend on touch event frequency, dabs are emitted at fixed spacing along the path
+	private void PickStroke(float x, float y)
+	{
+		if (mStrokeTool.RequiresStrokeResampling())
+		{
+			int nDabs = mStrokeResampler.AddPoint(x, y);
+			for (int i = 0; i < nDabs; i++)
+			{
+				mStrokeTool.Pick(mStrokeResampler.getDabX(i), mStrokeResampler.getDabY(i));
+			}
+		}
+		else
+		{
+			mStrokeTool.Pick(x, y);
+		}
+	}
+
+	// spacing is a fraction of the world radius, converted to pixels at the depth of the initial pick
+	private float ComputeDabSpacing()
+	{
+		mManagers.getMeshManager().getLastPickingPoint(mPickPt);
+		float fPixelsPerMeter = mManagers.getRendererManager().getMainRenderer().GetPixelsPerMeterAt(mPickPt);
+		return StrokeResampler.DEFAULT_SPACING_RATIO * mStrokeTool.getMaxDistance() * fPixelsPerMeter;
+	}
+}
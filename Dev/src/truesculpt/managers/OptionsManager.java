@@ -20,6 +20,11 @@ public class OptionsManager extends BaseManager
 
 	}
 
+	public boolean getAnalyticHistory()
+	{
+		return settings.getBoolean("AnalyticHistory", false);
+	}
+
 	public boolean getCheckUpdateAtStartup()
 	{
 		return settings.getBoolean("CheckUpdateAtStartup", false);
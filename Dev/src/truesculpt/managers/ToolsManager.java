@@ -1,12 +1,20 @@
 package truesculpt.managers;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.Future;
 
 import truesculpt.actions.ChangeToolAction;
 import truesculpt.tools.base.BaseTool;
+import truesculpt.tools.base.BrushAlpha;
 import truesculpt.tools.other.GrabTool;
+import truesculpt.tools.other.KelvinletTool;
+import truesculpt.tools.other.KelvinletTool.EKelvinletMode;
+import truesculpt.tools.other.MaskTool;
 import truesculpt.tools.other.PickColorTool;
 import truesculpt.tools.painting.ColorizeTool;
+import truesculpt.tools.painting.TexturePaintTool;
 import truesculpt.tools.sculpting.DrawTool;
 import truesculpt.tools.sculpting.FlattenTool;
 import truesculpt.tools.sculpting.InflateTool;
@@ -33,6 +41,11 @@ public class ToolsManager extends BaseManager
 		NONE, X, Y, Z
 	};
 
+	public enum EFalloffCurve
+	{
+		GAUSSIAN, QUADRATIC, LINEAR, SMOOTHSTEP, CIRCULAR, SPLINE
+	};
+
 	public class GlobalToolState
 	{
 		EToolMode m_toolmode;
@@ -43,6 +56,11 @@ public class ToolsManager extends BaseManager
 		float m_Radius;
 		float m_Strength;
 
+		public BaseTool getCurrentTool()
+		{
+			return mCurrentTool;
+		}
+
 		@Override
 		public String toString()
 		{
@@ -58,7 +76,7 @@ public class ToolsManager extends BaseManager
 	};
 
 	private int mColor = Color.HSVToColor(new float[] { 0f, 0.75f, 0.75f });
-	private EToolMode mMode = EToolMode.POV;
+	private volatile EToolMode mMode = EToolMode.POV;// set by mesh worker once touch down is picked
 	private EPovToolSubMode mPovSubMode = EPovToolSubMode.ROTATE;
 
 	private ESymmetryMode mSymmetryMode = ESymmetryMode.NONE;
@@ -67,6 +85,22 @@ public class ToolsManager extends BaseManager
 	private float mRadius = 20.0f;// pct
 	private float mStrength = 30.0f;// pct
 
+	// user defined falloff, values from center to border of the brush
+	private float[] mFalloffSplinePoints = new float[] { 1f, 0.95f, 0.6f, 0.2f, 0f };
+
+	// stamp brush shape, round brush if null, loaded once
+	private BrushAlpha mBrushAlpha = null;
+	private final HashMap<String, BrushAlpha> mBrushAlphaCache = new HashMap<String, BrushAlpha>();
+
+	// smoothing applied by sculpting tools after their own deformation
+	private float mAutoSmooth = 0.0f;// pct
+
+	// elastic tools behave as an incompressible material
+	private boolean mbVolumePreserving = false;
+
+	// sculpting tools stop faces from going through other faces
+	private boolean mbPreventSelfIntersection = false;
+
 	private BaseTool mCurrentTool = null;
 	private final ArrayList<BaseTool> mToolsLibrary = new ArrayList<BaseTool>();
 
@@ -84,6 +118,9 @@ public class ToolsManager extends BaseManager
 		mToolsLibrary.add(new InflateTool(getManagers()));
 		mToolsLibrary.add(new DrawTool(getManagers()));
 		mToolsLibrary.add(new GrabTool(getManagers()));
+		mToolsLibrary.add(new KelvinletTool(getManagers(), EKelvinletMode.GRAB));
+		mToolsLibrary.add(new KelvinletTool(getManagers(), EKelvinletMode.TWIST));
+		mToolsLibrary.add(new KelvinletTool(getManagers(), EKelvinletMode.SCALE));
 		mToolsLibrary.add(new SmoothTool(getManagers()));
 		mToolsLibrary.add(new FlattenTool(getManagers()));
 		// mToolsLibrary.add(new PinchTool(getManagers()));
@@ -92,7 +129,8 @@ public class ToolsManager extends BaseManager
 		mToolsLibrary.add(new NoiseTool(getManagers()));
 		mToolsLibrary.add(new PickColorTool(getManagers()));
 		mToolsLibrary.add(new ColorizeTool(getManagers()));
-		// mToolsLibrary.add(new TexturePaintTool(getManagers()));
+		mToolsLibrary.add(new MaskTool(getManagers()));
+		mToolsLibrary.add(new TexturePaintTool(getManagers()));
 		// mToolsLibrary.add(new BorderTool(getManagers()));
 		// mToolsLibrary.add(new HighlightTool(getManagers()));
 
@@ -141,6 +179,142 @@ public class ToolsManager extends BaseManager
 		return mMode;
 	}
 
+	public EFalloffCurve getFalloffCurve()
+	{
+		EFalloffCurve res = EFalloffCurve.QUADRATIC;
+		if (mCurrentTool != null)
+		{
+			res = mCurrentTool.getFalloffCurve();
+		}
+		return res;
+	}
+
+	// falloff is specific to each tool
+	public void setFalloffCurve(EFalloffCurve curve)
+	{
+		if (mCurrentTool != null && mCurrentTool.getFalloffCurve() != curve)
+		{
+			mCurrentTool.setFalloffCurve(curve);
+
+			NotifyListeners();
+		}
+	}
+
+	public float[] getFalloffSplinePoints()
+	{
+		return mFalloffSplinePoints;
+	}
+
+	// a new array is kept so that tools detect the change by reference
+	public void setFalloffSplinePoints(float[] points)
+	{
+		mFalloffSplinePoints = points.clone();
+
+		NotifyListeners();
+	}
+
+	public BrushAlpha getBrushAlpha()
+	{
+		return mBrushAlpha;
+	}
+
+	// available stamps in assets
+	public String[] getBrushAlphaNames()
+	{
+		String[] res = new String[0];
+		try
+		{
+			res = getbaseContext().getAssets().list(BrushAlpha.ASSETS_FOLDER);
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+		return res;
+	}
+
+	// null for round brush
+	public void setBrushAlpha(String name)
+	{
+		BrushAlpha alpha = null;
+		if (name != null)
+		{
+			alpha = mBrushAlphaCache.get(name);
+			if (alpha == null)
+			{
+				try
+				{
+					alpha = BrushAlpha.Load(getbaseContext().getAssets(), name);
+					mBrushAlphaCache.put(name, alpha);
+				}
+				catch (IOException e)
+				{
+					e.printStackTrace();
+				}
+			}
+		}
+
+		if (alpha != mBrushAlpha)
+		{
+			mBrushAlpha = alpha;
+
+			NotifyListeners();
+		}
+	}
+
+	public float getAutoSmooth()
+	{
+		return mAutoSmooth;
+	}
+
+	public void setAutoSmooth(float autoSmooth)
+	{
+		if (autoSmooth < 0)
+		{
+			autoSmooth = 0;
+		}
+		if (autoSmooth > 100)
+		{
+			autoSmooth = 100;
+		}
+		if (autoSmooth != mAutoSmooth)
+		{
+			mAutoSmooth = autoSmooth;
+
+			NotifyListeners();
+		}
+	}
+
+	public boolean getVolumePreserving()
+	{
+		return mbVolumePreserving;
+	}
+
+	public void setVolumePreserving(boolean bVolumePreserving)
+	{
+		if (bVolumePreserving != mbVolumePreserving)
+		{
+			mbVolumePreserving = bVolumePreserving;
+
+			NotifyListeners();
+		}
+	}
+
+	public boolean getPreventSelfIntersection()
+	{
+		return mbPreventSelfIntersection;
+	}
+
+	public void setPreventSelfIntersection(boolean bPreventSelfIntersection)
+	{
+		if (bPreventSelfIntersection != mbPreventSelfIntersection)
+		{
+			mbPreventSelfIntersection = bPreventSelfIntersection;
+
+			NotifyListeners();
+		}
+	}
+
 	public BaseTool getCurrentTool()
 	{
 		return mCurrentTool;
@@ -290,10 +464,20 @@ public class ToolsManager extends BaseManager
 		}
 	}
 
-	public void TakeGLScreenshot(String strSnapshotName)
+	// taken at next frame, listeners notification makes it drawn
+	public Future<String> TakeGLScreenshot(String strSnapshotName)
+	{
+		Future<String> future = getManagers().getRendererManager().getMainRenderer().TakeGLScreenshotOfNextFrame(strSnapshotName);
+		NotifyListeners();
+		return future;
+	}
+
+	// rendered by tiles at next frame, any size independent of screen
+	public Future<String> RenderHighResolution(String strFileName, int nWidth, int nHeight, int nSupersampling)
 	{
-		getManagers().getRendererManager().getMainRenderer().TakeGLScreenshotOfNextFrame(strSnapshotName);
+		Future<String> future = getManagers().getRendererManager().getMainRenderer().RenderHighResolution(strFileName, nWidth, nHeight, nSupersampling);
 		NotifyListeners();
+		return future;
 	}
 
 	public GlobalToolState GetGlobalToolState()
@@ -1,7 +1,6 @@
 package truesculpt.managers;
 
 import truesculpt.managers.ToolsManager.EPovToolSubMode;
-import truesculpt.managers.ToolsManager.ESymmetryMode;
 import truesculpt.managers.ToolsManager.EToolMode;
 import truesculpt.utils.MatrixUtils;
 import android.content.Context;
@@ -185,18 +184,9 @@ public class TouchManager extends BaseManager
 			initPOVValues(event, false);
 			getManagers().getToolsManager().setPovSubMode(EPovToolSubMode.ROTATE);
 
-			int nRes = getManagers().getMeshManager().Pick(x, y, ESymmetryMode.NONE);// not tool pick, but mesh pick
-			if (nRes < 0)
-			{
-				getManagers().getToolsManager().setToolMode(EToolMode.POV);
-			}
-			else
-			{
-				getManagers().getToolsManager().setToolMode(EToolMode.SCULPT);
-				getManagers().getToolsManager().getCurrentTool().Start(x, y);
-				getManagers().getToolsManager().getCurrentTool().Pick(x, y);
-			}
-
+			// worker picks the mesh and sets the tool mode, moves until then go to the worker and
+			// are ignored if nothing was picked, rotation is relative to this first point
+			getManagers().getMeshManager().getWorker().PostStart(x, y);
 			break;
 		}
 
@@ -217,6 +207,7 @@ public class TouchManager extends BaseManager
 			mRollInit = getManagers().getPointOfViewManager().getRollAngle();
 			mLastRollingOrientation = (float) Math.atan2(event.getY(1) - event.getY(0), event.getX(1) - event.getX(0));
 
+			getManagers().getMeshManager().getWorker().CancelPendingStart();
 			getManagers().getToolsManager().setToolMode(EToolMode.POV);// two fingers is always POV
 			getManagers().getToolsManager().setPovSubMode(EPovToolSubMode.ZOOM_PAN_ROLL);
 			break;
@@ -231,13 +222,23 @@ public class TouchManager extends BaseManager
 		case MotionEvent.ACTION_UP:
 		{
 			getManagers().getToolsManager().setPovSubMode(EPovToolSubMode.ROTATE);
-			getManagers().getToolsManager().getCurrentTool().Pick(x, y);
-			getManagers().getToolsManager().getCurrentTool().Stop(x, y);
+			MeshWorker worker = getManagers().getMeshManager().getWorker();
+			if (worker.IsStartPending() || getManagers().getToolsManager().getToolMode() == EToolMode.SCULPT)
+			{
+				worker.PostMove(x, y);
+			}
+			worker.PostStop(x, y);
 			mbInit = false;
 			break;
 		}
 		case MotionEvent.ACTION_MOVE:
 		{
+			if (getManagers().getMeshManager().getWorker().IsStartPending())
+			{
+				getManagers().getMeshManager().getWorker().PostMove(x, y);
+				break;
+			}
+
 			switch (getManagers().getToolsManager().getToolMode())
 			{
 			case POV:
@@ -280,7 +281,8 @@ public class TouchManager extends BaseManager
 
 			case SCULPT:
 			{
-				getManagers().getToolsManager().getCurrentTool().Pick(x, y);
+				// sculpting is done in mesh worker thread
+				getManagers().getMeshManager().getWorker().PostMove(x, y);
 				break;
 			}
 			}
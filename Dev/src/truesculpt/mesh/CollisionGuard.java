@@ -0,0 +1,394 @@
+package truesculpt.mesh;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+
+// Prevents a stroke from pushing faces through each other. Triangles moved by the last tool work are tested against
+// a BVH of the faces around the brush, offending vertices have their displacement from the stroke start halved
+// until no intersection is left, then reset. Neighborhood and BVH are kept for the whole stroke, new faces are
+// appended and the tree is refitted. Cost depends on the brush size, not on the mesh size.
+public class CollisionGuard
+{
+	private final int MAX_ITERATIONS = 4;// last one cancels the displacement
+	private final float MARGIN_RATIO = 0.25f;// neighborhood box growth relative to its size
+	private final int MAX_STROKE_FACES_RATIO = 4;// neighborhood restarts when much larger than the brush one
+
+	private int[] mGlobalToLocal = new int[0];// -1 outside of neighborhood
+	private int[] mGlobalToLocalFace = new int[0];
+	private final BitSet mFaceSet = new BitSet();
+	private final FaceBVH mBVH = new FaceBVH();
+
+	private int mVertexCount = 0;
+	private int[] mLocalToGlobal = new int[0];
+	private float[] mOrig = new float[0];// coords at stroke start
+	private float[] mTarget = new float[0];// values set by the tool
+	private float[] mPos = new float[0];// tested positions
+	private float[] mFactor = new float[0];// part of the displacement kept
+	private boolean[] mbMovable = new boolean[0];
+	private boolean[] mbOffending = new boolean[0];
+
+	private int mFaceCount = 0;
+	private int[] mLocalFaceToGlobal = new int[0];
+	private int[] mCorners = new int[0];
+	private boolean[] mbMovedFace = new boolean[0];
+
+	private int mMovableCount = 0;
+	private int[] mMovable = new int[0];// local indices moved by last tool work
+	private int mMovedFaceCount = 0;
+	private int[] mMovedFaces = new int[0];// local face indices with a movable corner
+
+	private int mClampedCount = 0;
+	private int[] mClamped = new int[0];// local indices
+
+	private final float[] mMin = new float[3];
+	private final float[] mMax = new float[3];
+	private final float[] mFaceMin = new float[3];
+	private final float[] mFaceMax = new float[3];
+	private final float[] temp = new float[3];
+
+	// moved are the vertices changed by last tool work, they are the only ones that can be clamped.
+	// Returns the number of clamped vertices, read with GetClampedVertexIndex and GetClampedPosition.
+	public int Resolve(Mesh mesh, Collection<Vertex> moved, SmoothingEngine.IPositionSource source)
+	{
+		ClearBatch();
+
+		if (moved.isEmpty())
+		{
+			return 0;
+		}
+		EnsureMeshCapacity(mesh);
+
+		// neighborhood box covers start and target positions of moved vertices
+		for (int k = 0; k < 3; k++)
+		{
+			mMin[k] = Float.MAX_VALUE;
+			mMax[k] = -Float.MAX_VALUE;
+		}
+		for (Vertex vertex : moved)
+		{
+			source.GetPosition(vertex, temp);
+			for (int k = 0; k < 3; k++)
+			{
+				mMin[k] = Math.min(mMin[k], Math.min(vertex.Coord[k], temp[k]));
+				mMax[k] = Math.max(mMax[k], Math.max(vertex.Coord[k], temp[k]));
+			}
+		}
+		float margin = MARGIN_RATIO * Math.max(mMax[0] - mMin[0], Math.max(mMax[1] - mMin[1], mMax[2] - mMin[2]));
+		for (int k = 0; k < 3; k++)
+		{
+			mMin[k] -= margin;
+			mMax[k] += margin;
+		}
+		mFaceSet.clear();
+		mesh.GetFacesInBox(mMin, mMax, mFaceSet);
+
+		// long strokes would make the neighborhood grow without limit
+		if (mFaceCount > MAX_STROKE_FACES_RATIO * mFaceSet.cardinality())
+		{
+			Clear();
+		}
+		for (int nFace = mFaceSet.nextSetBit(0); nFace >= 0; nFace = mFaceSet.nextSetBit(nFace + 1))
+		{
+			GetLocalFaceIndex(mesh, nFace, source);
+		}
+
+		// moved vertices restart from the values set by the tool
+		for (Vertex vertex : moved)
+		{
+			int nLocal = mGlobalToLocal[vertex.Index];
+			if (nLocal < 0)
+			{
+				continue;
+			}
+			source.GetPosition(vertex, temp);
+			int nOffset = nLocal * 3;
+			for (int k = 0; k < 3; k++)
+			{
+				mTarget[nOffset + k] = temp[k];
+				mPos[nOffset + k] = temp[k];
+			}
+			mFactor[nLocal] = 1;
+			mbMovable[nLocal] = true;
+			mMovable[mMovableCount++] = nLocal;
+
+			for (HalfEdge edge : vertex.OutLinkedEdges)
+			{
+				int nLocalFace = mGlobalToLocalFace[edge.Face];
+				if (nLocalFace >= 0 && !mbMovedFace[nLocalFace])
+				{
+					mbMovedFace[nLocalFace] = true;
+					mMovedFaces[mMovedFaceCount++] = nLocalFace;
+				}
+			}
+		}
+
+		mBVH.Update(mFaceCount, mCorners, mPos);
+
+		for (int nIteration = 0; nIteration < MAX_ITERATIONS; nIteration++)
+		{
+			if (!FindOffendingVertices())
+			{
+				break;
+			}
+
+			boolean bLast = nIteration == MAX_ITERATIONS - 1;
+			for (int j = 0; j < mMovableCount; j++)
+			{
+				int i = mMovable[j];
+				if (mbOffending[i])
+				{
+					mFactor[i] = bLast ? 0 : mFactor[i] * 0.5f;
+					for (int k = 0; k < 3; k++)
+					{
+						mPos[i * 3 + k] = mOrig[i * 3 + k] + (mTarget[i * 3 + k] - mOrig[i * 3 + k]) * mFactor[i];
+					}
+				}
+			}
+			mBVH.Refit(mPos);
+		}
+
+		// clamped positions are given back to the tool, they are its values for next batches
+		for (int j = 0; j < mMovableCount; j++)
+		{
+			int i = mMovable[j];
+			if (mFactor[i] < 1)
+			{
+				mClamped[mClampedCount++] = i;
+				for (int k = 0; k < 3; k++)
+				{
+					mTarget[i * 3 + k] = mPos[i * 3 + k];
+				}
+			}
+		}
+		return mClampedCount;
+	}
+
+	// end of stroke, neighborhood is forgotten
+	public void Clear()
+	{
+		ClearBatch();
+		for (int i = 0; i < mVertexCount; i++)
+		{
+			mGlobalToLocal[mLocalToGlobal[i]] = -1;
+		}
+		for (int i = 0; i < mFaceCount; i++)
+		{
+			mGlobalToLocalFace[mLocalFaceToGlobal[i]] = -1;
+		}
+		mVertexCount = 0;
+		mFaceCount = 0;
+		mBVH.Reset();// local faces are numbered again from 0
+	}
+
+	private void ClearBatch()
+	{
+		for (int j = 0; j < mMovableCount; j++)
+		{
+			mbMovable[mMovable[j]] = false;
+			mbOffending[mMovable[j]] = false;
+		}
+		for (int j = 0; j < mMovedFaceCount; j++)
+		{
+			mbMovedFace[mMovedFaces[j]] = false;
+		}
+		mMovableCount = 0;
+		mMovedFaceCount = 0;
+		mClampedCount = 0;
+	}
+
+	// moved faces against neighborhood, faces sharing a vertex are not tested
+	private boolean FindOffendingVertices()
+	{
+		boolean bRes = false;
+		for (int j = 0; j < mMovableCount; j++)
+		{
+			mbOffending[mMovable[j]] = false;
+		}
+
+		for (int n = 0; n < mMovedFaceCount; n++)
+		{
+			int i = mMovedFaces[n];
+			int a0 = mCorners[i * 3];
+			int a1 = mCorners[i * 3 + 1];
+			int a2 = mCorners[i * 3 + 2];
+			for (int k = 0; k < 3; k++)
+			{
+				mFaceMin[k] = Math.min(mPos[a0 * 3 + k], Math.min(mPos[a1 * 3 + k], mPos[a2 * 3 + k]));
+				mFaceMax[k] = Math.max(mPos[a0 * 3 + k], Math.max(mPos[a1 * 3 + k], mPos[a2 * 3 + k]));
+			}
+
+			int nCount = mBVH.Query(mFaceMin, mFaceMax);
+			for (int j = 0; j < nCount; j++)
+			{
+				int nOther = mBVH.getResult(j);
+				if (nOther == i || (mbMovedFace[nOther] && nOther < i))
+				{
+					continue;// pair already tested
+				}
+				int b0 = mCorners[nOther * 3];
+				int b1 = mCorners[nOther * 3 + 1];
+				int b2 = mCorners[nOther * 3 + 2];
+				if (a0 == b0 || a0 == b1 || a0 == b2 || a1 == b0 || a1 == b1 || a1 == b2 || a2 == b0 || a2 == b1 || a2 == b2)
+				{
+					continue;
+				}
+				if (MeshMathsUtils.triangle_triangle_intersect(mPos, a0 * 3, a1 * 3, a2 * 3, b0 * 3, b1 * 3, b2 * 3))
+				{
+					bRes |= MarkOffending(a0) | MarkOffending(a1) | MarkOffending(a2);
+					bRes |= MarkOffending(b0) | MarkOffending(b1) | MarkOffending(b2);
+				}
+			}
+		}
+		return bRes;
+	}
+
+	// only vertices that can still move back are marked
+	private boolean MarkOffending(int nLocal)
+	{
+		if (mbMovable[nLocal] && mFactor[nLocal] > 0)
+		{
+			mbOffending[nLocal] = true;
+			return true;
+		}
+		return false;
+	}
+
+	private int GetLocalFaceIndex(Mesh mesh, int nFace, SmoothingEngine.IPositionSource source)
+	{
+		int nLocalFace = mGlobalToLocalFace[nFace];
+		if (nLocalFace < 0)
+		{
+			Face face = mesh.mFaceList.get(nFace);
+			int c0 = GetLocalIndex(mesh, face.E0.V0, source);
+			int c1 = GetLocalIndex(mesh, face.E1.V0, source);
+			int c2 = GetLocalIndex(mesh, face.E2.V0, source);
+
+			nLocalFace = mFaceCount++;
+			EnsureFaceCapacity(mFaceCount);
+			mGlobalToLocalFace[nFace] = nLocalFace;
+			mLocalFaceToGlobal[nLocalFace] = nFace;
+			int nOffset = nLocalFace * 3;
+			mCorners[nOffset] = c0;
+			mCorners[nOffset + 1] = c1;
+			mCorners[nOffset + 2] = c2;
+			mbMovedFace[nLocalFace] = false;
+		}
+		return nLocalFace;
+	}
+
+	private int GetLocalIndex(Mesh mesh, int nVertexIndex, SmoothingEngine.IPositionSource source)
+	{
+		int nLocal = mGlobalToLocal[nVertexIndex];
+		if (nLocal < 0)
+		{
+			nLocal = mVertexCount++;
+			EnsureVertexCapacity(mVertexCount);
+			mGlobalToLocal[nVertexIndex] = nLocal;
+
+			Vertex vertex = mesh.mVertexList.get(nVertexIndex);
+			source.GetPosition(vertex, temp);
+			int nOffset = nLocal * 3;
+			for (int k = 0; k < 3; k++)
+			{
+				mOrig[nOffset + k] = vertex.Coord[k];
+				mTarget[nOffset + k] = temp[k];
+				mPos[nOffset + k] = temp[k];
+			}
+			mLocalToGlobal[nLocal] = nVertexIndex;
+			mFactor[nLocal] = 1;
+			mbMovable[nLocal] = false;
+			mbOffending[nLocal] = false;
+		}
+		return nLocal;
+	}
+
+	// global to local maps cover the whole mesh, allocated once per mesh size
+	private void EnsureMeshCapacity(Mesh mesh)
+	{
+		int nVertexCount = mesh.mVertexList.size();
+		int nFaceCount = mesh.mFaceList.size();
+		if (mGlobalToLocal.length < nVertexCount || mGlobalToLocalFace.length < nFaceCount)
+		{
+			Clear();
+			if (mGlobalToLocal.length < nVertexCount)
+			{
+				mGlobalToLocal = new int[nVertexCount];
+				Arrays.fill(mGlobalToLocal, -1);
+			}
+			if (mGlobalToLocalFace.length < nFaceCount)
+			{
+				mGlobalToLocalFace = new int[nFaceCount];
+				Arrays.fill(mGlobalToLocalFace, -1);
+			}
+		}
+	}
+
+	private void EnsureVertexCapacity(int nCount)
+	{
+		if (mLocalToGlobal.length < nCount)
+		{
+			int nNewSize = Math.max(nCount, mLocalToGlobal.length * 2);
+			mLocalToGlobal = Grow(mLocalToGlobal, nNewSize);
+			mMovable = Grow(mMovable, nNewSize);
+			mClamped = new int[nNewSize];
+			mOrig = Grow(mOrig, nNewSize * 3);
+			mTarget = Grow(mTarget, nNewSize * 3);
+			mPos = Grow(mPos, nNewSize * 3);
+			mFactor = Grow(mFactor, nNewSize);
+			mbMovable = Grow(mbMovable, nNewSize);
+			mbOffending = Grow(mbOffending, nNewSize);
+		}
+	}
+
+	private void EnsureFaceCapacity(int nCount)
+	{
+		if (mLocalFaceToGlobal.length < nCount)
+		{
+			int nNewSize = Math.max(nCount, mLocalFaceToGlobal.length * 2);
+			mLocalFaceToGlobal = Grow(mLocalFaceToGlobal, nNewSize);
+			mMovedFaces = Grow(mMovedFaces, nNewSize);
+			mCorners = Grow(mCorners, nNewSize * 3);
+			mbMovedFace = Grow(mbMovedFace, nNewSize);
+		}
+	}
+
+	private static int[] Grow(int[] array, int nSize)
+	{
+		int[] res = new int[nSize];
+		System.arraycopy(array, 0, res, 0, array.length);
+		return res;
+	}
+
+	private static float[] Grow(float[] array, int nSize)
+	{
+		float[] res = new float[nSize];
+		System.arraycopy(array, 0, res, 0, array.length);
+		return res;
+	}
+
+	private static boolean[] Grow(boolean[] array, int nSize)
+	{
+		boolean[] res = new boolean[nSize];
+		System.arraycopy(array, 0, res, 0, array.length);
+		return res;
+	}
+
+	public int getClampedCount()
+	{
+		return mClampedCount;
+	}
+
+	public int GetClampedVertexIndex(int i)
+	{
+		return mLocalToGlobal[mClamped[i]];
+	}
+
+	public void GetClampedPosition(int i, float[] res)
+	{
+		int nOffset = mClamped[i] * 3;
+		res[0] = mPos[nOffset];
+		res[1] = mPos[nOffset + 1];
+		res[2] = mPos[nOffset + 2];
+	}
+}
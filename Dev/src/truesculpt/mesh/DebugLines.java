@@ -0,0 +1,118 @@
+package truesculpt.mesh;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+
+import javax.microedition.khronos.opengles.GL10;
+
+// Debug display of vertex normals and octree nodes as line segments of one shared buffer drawn in a single call.
+// Built at first debug draw and released when debug display is turned off. Normals are rewritten for vertices
+// changed in drawn frames, node edges when the writer publishes another octree snapshot. GL thread only.
+class DebugLines
+{
+	private static final float NORMAL_LENGTH = 0.1f;
+	private static final int BOX_POINTS = 24;// 12 edges
+	private static final int BOX_FLOATS = 6;// min x,y,z max x,y,z
+
+	// normal lines of all groups first, then node edges
+	private FloatBuffer mLines = null;
+	private int mNormalPointCount = 0;
+	private int mBoxPointCount = 0;
+	private float[] mBoxes = null;// snapshot written in lines
+	private final float[] mPoint = new float[3];
+
+	public boolean IsBuilt()
+	{
+		return mLines != null;
+	}
+
+	public void draw(GL10 gl, ArrayList<RenderFaceGroup> groups, float[] boxes)
+	{
+		int nVertexCount = 0;
+		for (RenderFaceGroup group : groups)
+		{
+			nVertexCount += group.getVertexCount();
+		}
+		int nNormalPointCount = nVertexCount * 2;
+		int nBoxPointCount = boxes != null ? boxes.length / BOX_FLOATS * BOX_POINTS : 0;
+		int nFloatCount = (nNormalPointCount + nBoxPointCount) * 3;
+
+		boolean bAll = false;
+		if (mLines == null || mLines.capacity() < nFloatCount)
+		{
+			ByteBuffer bb = ByteBuffer.allocateDirect(nFloatCount * 3 / 2 * 4);// room for octree subdivisions
+			bb.order(ByteOrder.nativeOrder());
+			mLines = bb.asFloatBuffer();
+			bAll = true;
+		}
+
+		int nFirstLine = 0;
+		for (RenderFaceGroup group : groups)
+		{
+			group.UpdateNormalLines(mLines, nFirstLine, NORMAL_LENGTH, bAll);
+			nFirstLine += group.getVertexCount();
+		}
+
+		if (bAll || boxes != mBoxes || nNormalPointCount != mNormalPointCount)
+		{
+			PutBoxes(boxes, nNormalPointCount * 3);
+		}
+		mBoxes = boxes;
+		mNormalPointCount = nNormalPointCount;
+		mBoxPointCount = nBoxPointCount;
+
+		mLines.position(0);
+		gl.glVertexPointer(3, GL10.GL_FLOAT, 0, mLines);
+		gl.glDrawArrays(GL10.GL_LINES, 0, mNormalPointCount + mBoxPointCount);
+	}
+
+	// direct memory is given back, next draw builds all again
+	public void Release(ArrayList<RenderFaceGroup> groups)
+	{
+		if (mLines != null)
+		{
+			mLines = null;
+			mBoxes = null;
+			for (RenderFaceGroup group : groups)
+			{
+				group.ReleaseNormalLines();
+			}
+		}
+	}
+
+	// 12 edges of each box, pairs of corners differing by one coordinate
+	private void PutBoxes(float[] boxes, int nFirstFloat)
+	{
+		if (boxes == null)
+		{
+			return;
+		}
+		mLines.position(nFirstFloat);
+		for (int nBox = 0; nBox < boxes.length; nBox += BOX_FLOATS)
+		{
+			for (int nAxis = 0; nAxis < 3; nAxis++)
+			{
+				int nU = (nAxis + 1) % 3;
+				int nV = (nAxis + 2) % 3;
+				for (int nCorner = 0; nCorner < 4; nCorner++)
+				{
+					float u = boxes[nBox + nU + ((nCorner & 1) != 0 ? 3 : 0)];
+					float v = boxes[nBox + nV + ((nCorner & 2) != 0 ? 3 : 0)];
+					PutPoint(nAxis, boxes[nBox + nAxis], nU, u, nV, v);
+					PutPoint(nAxis, boxes[nBox + nAxis + 3], nU, u, nV, v);
+				}
+			}
+		}
+		mLines.position(0);
+	}
+
+	private void PutPoint(int nAxis, float a, int nU, float u, int nV, float v)
+	{
+		mPoint[nAxis] = a;
+		mPoint[nU] = u;
+		mPoint[nV] = v;
+		mLines.put(mPoint);
+	}
+}
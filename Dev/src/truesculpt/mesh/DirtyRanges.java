@@ -0,0 +1,125 @@
+package truesculpt.mesh;
+
+import java.util.Arrays;
+
+// Changed [min;max] element range per fixed size chunk of a buffer, scattered changes are uploaded
+// as a few sub ranges instead of one range spanning the whole buffer. Contiguous dirty chunks are merged.
+// No GL call here, uploads go through IRangeUploader.
+public class DirtyRanges
+{
+	public static final int CHUNK_ELEMENTS = 1024;
+
+	public interface IRangeUploader
+	{
+		public void Upload(int nFirstElement, int nElementCount);
+	}
+
+	private final int mElementCount;
+	private final int[] mMin;
+	private final int[] mMax;// -1 if chunk is clean
+	private int mDirtyChunkCount = 0;
+
+	public DirtyRanges(int nElementCount)
+	{
+		mElementCount = nElementCount;
+		int nChunkCount = (nElementCount + CHUNK_ELEMENTS - 1) / CHUNK_ELEMENTS;
+		mMin = new int[nChunkCount];
+		mMax = new int[nChunkCount];
+		Clear();
+	}
+
+	public void Mark(int nElement)
+	{
+		int nChunk = nElement / CHUNK_ELEMENTS;
+		if (mMax[nChunk] < 0)
+		{
+			mMin[nChunk] = nElement;
+			mMax[nChunk] = nElement;
+			mDirtyChunkCount++;
+		}
+		else if (nElement < mMin[nChunk])
+		{
+			mMin[nChunk] = nElement;
+		}
+		else if (nElement > mMax[nChunk])
+		{
+			mMax[nChunk] = nElement;
+		}
+	}
+
+	// [nFirst;nFirst+nCount[
+	public void MarkRange(int nFirst, int nCount)
+	{
+		if (nCount > 0)
+		{
+			int nLast = nFirst + nCount - 1;
+			for (int nChunk = nFirst / CHUNK_ELEMENTS; nChunk <= nLast / CHUNK_ELEMENTS; nChunk++)
+			{
+				Mark(Math.max(nFirst, nChunk * CHUNK_ELEMENTS));
+				Mark(Math.min(nLast, (nChunk + 1) * CHUNK_ELEMENTS - 1));
+			}
+		}
+	}
+
+	public void MarkAll()
+	{
+		MarkRange(0, mElementCount);
+	}
+
+	// union with ranges of a buffer of same size, other is not changed
+	public void Merge(DirtyRanges other)
+	{
+		for (int nChunk = 0; nChunk < mMax.length; nChunk++)
+		{
+			if (other.mMax[nChunk] >= 0)
+			{
+				Mark(other.mMin[nChunk]);
+				Mark(other.mMax[nChunk]);
+			}
+		}
+	}
+
+	public boolean IsEmpty()
+	{
+		return mDirtyChunkCount == 0;
+	}
+
+	public int getDirtyChunkCount()
+	{
+		return mDirtyChunkCount;
+	}
+
+	// one upload per dirty chunk or run of touching chunks, then clean, returns uploads count
+	public int Flush(IRangeUploader uploader)
+	{
+		int nUploads = 0;
+		int nChunk = 0;
+		while (mDirtyChunkCount > 0 && nChunk < mMax.length)
+		{
+			if (mMax[nChunk] < 0)
+			{
+				nChunk++;
+				continue;
+			}
+
+			int nFirst = mMin[nChunk];
+			int nLast = mMax[nChunk];
+			nChunk++;
+			while (nChunk < mMax.length && mMax[nChunk] >= 0 && mMin[nChunk] == nLast + 1)
+			{
+				nLast = mMax[nChunk];
+				nChunk++;
+			}
+			uploader.Upload(nFirst, nLast - nFirst + 1);
+			nUploads++;
+		}
+		Clear();
+		return nUploads;
+	}
+
+	public void Clear()
+	{
+		Arrays.fill(mMax, -1);
+		mDirtyChunkCount = 0;
+	}
+}
@@ -0,0 +1,298 @@
+package truesculpt.mesh;
+
+// Bounding volume hierarchy of a small set of triangles given as local corner indices in a packed xyz position array.
+// Built once by median split, then only refitted when positions move, topology of the tree is kept.
+// Faces appended after the build are tested linearly until they are numerous enough to pay for a rebuild.
+public class FaceBVH
+{
+	private final int MAX_LEAF_FACES = 4;
+	private final int REBUILD_RATIO = 4;// rebuild when appended faces exceed a quarter of the built ones
+
+	private int mFaceCount = 0;
+	private int mBuiltFaceCount = 0;
+	private int[] mCorners = null;// 3 local vertex indices per face, not owned
+	private float[] mPos = null;// not owned
+	private int[] mOrder = new int[0];// faces sorted by leaf
+	private float[] mCentroids = new float[0];
+
+	private int mNodeCount = 0;
+	private float[] mNodeBounds = new float[0];// min xyz, max xyz
+	private int[] mNodeLeft = new int[0];// -1 for leaves
+	private int[] mNodeRight = new int[0];
+	private int[] mNodeStart = new int[0];// range in mOrder
+	private int[] mNodeEnd = new int[0];
+
+	private int[] mStack = new int[64];
+	private int[] mResults = new int[64];
+	private int mResultCount = 0;
+
+	public void Build(int nFaceCount, int[] corners, float[] pos)
+	{
+		mFaceCount = nFaceCount;
+		mBuiltFaceCount = nFaceCount;
+		mCorners = corners;
+
+		if (mOrder.length < nFaceCount)
+		{
+			mOrder = new int[nFaceCount];
+			mCentroids = new float[nFaceCount * 3];
+		}
+		for (int i = 0; i < nFaceCount; i++)
+		{
+			mOrder[i] = i;
+			for (int k = 0; k < 3; k++)
+			{
+				mCentroids[i * 3 + k] = (pos[corners[i * 3] * 3 + k] + pos[corners[i * 3 + 1] * 3 + k] + pos[corners[i * 3 + 2] * 3 + k]) / 3;
+			}
+		}
+
+		int nMaxNodes = Math.max(1, 2 * nFaceCount);
+		if (mNodeLeft.length < nMaxNodes)
+		{
+			mNodeBounds = new float[nMaxNodes * 6];
+			mNodeLeft = new int[nMaxNodes];
+			mNodeRight = new int[nMaxNodes];
+			mNodeStart = new int[nMaxNodes];
+			mNodeEnd = new int[nMaxNodes];
+		}
+
+		mNodeCount = 0;
+		BuildNode(0, nFaceCount);
+		Refit(pos);
+	}
+
+	// faces are renumbered, next Update builds a new tree
+	public void Reset()
+	{
+		mFaceCount = 0;
+		mBuiltFaceCount = 0;
+		mNodeCount = 0;
+	}
+
+	// faces [0;nFaceCount[ with the first ones unchanged since last call, refits or rebuilds the tree
+	public void Update(int nFaceCount, int[] corners, float[] pos)
+	{
+		mCorners = corners;
+		if (nFaceCount < mBuiltFaceCount || nFaceCount - mBuiltFaceCount > mBuiltFaceCount / REBUILD_RATIO + MAX_LEAF_FACES)
+		{
+			Build(nFaceCount, corners, pos);
+		}
+		else
+		{
+			mFaceCount = nFaceCount;
+			Refit(pos);
+		}
+	}
+
+	// children are always created after their parent
+	private int BuildNode(int nStart, int nEnd)
+	{
+		int nNode = mNodeCount++;
+		mNodeStart[nNode] = nStart;
+		mNodeEnd[nNode] = nEnd;
+		mNodeLeft[nNode] = -1;
+		mNodeRight[nNode] = -1;
+
+		if (nEnd - nStart > MAX_LEAF_FACES)
+		{
+			// split on largest axis of centroids
+			float[] min = { Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE };
+			float[] max = { -Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE };
+			for (int i = nStart; i < nEnd; i++)
+			{
+				int nOffset = mOrder[i] * 3;
+				for (int k = 0; k < 3; k++)
+				{
+					min[k] = Math.min(min[k], mCentroids[nOffset + k]);
+					max[k] = Math.max(max[k], mCentroids[nOffset + k]);
+				}
+			}
+			int nAxis = 0;
+			if (max[1] - min[1] > max[nAxis] - min[nAxis])
+			{
+				nAxis = 1;
+			}
+			if (max[2] - min[2] > max[nAxis] - min[nAxis])
+			{
+				nAxis = 2;
+			}
+
+			int nMid = (nStart + nEnd) >>> 1;
+			SelectNth(nStart, nEnd - 1, nMid, nAxis);
+
+			int nLeft = BuildNode(nStart, nMid);
+			int nRight = BuildNode(nMid, nEnd);
+			mNodeLeft[nNode] = nLeft;
+			mNodeRight[nNode] = nRight;
+		}
+		return nNode;
+	}
+
+	// quickselect, faces in [nLow;nNth[ have smaller centroid than faces in [nNth;nHigh]
+	private void SelectNth(int nLow, int nHigh, int nNth, int nAxis)
+	{
+		while (nHigh > nLow)
+		{
+			float pivot = mCentroids[mOrder[(nLow + nHigh) >>> 1] * 3 + nAxis];
+			int i = nLow;
+			int j = nHigh;
+			while (i <= j)
+			{
+				while (mCentroids[mOrder[i] * 3 + nAxis] < pivot)
+				{
+					i++;
+				}
+				while (mCentroids[mOrder[j] * 3 + nAxis] > pivot)
+				{
+					j--;
+				}
+				if (i <= j)
+				{
+					int nTemp = mOrder[i];
+					mOrder[i] = mOrder[j];
+					mOrder[j] = nTemp;
+					i++;
+					j--;
+				}
+			}
+			if (nNth <= j)
+			{
+				nHigh = j;
+			}
+			else if (nNth >= i)
+			{
+				nLow = i;
+			}
+			else
+			{
+				break;
+			}
+		}
+	}
+
+	// bottom up update of boxes from new positions
+	public void Refit(float[] pos)
+	{
+		mPos = pos;
+		for (int nNode = mNodeCount - 1; nNode >= 0; nNode--)
+		{
+			int nBounds = nNode * 6;
+			int nLeft = mNodeLeft[nNode];
+			if (nLeft < 0)
+			{
+				for (int k = 0; k < 3; k++)
+				{
+					mNodeBounds[nBounds + k] = Float.MAX_VALUE;
+					mNodeBounds[nBounds + 3 + k] = -Float.MAX_VALUE;
+				}
+				for (int i = mNodeStart[nNode]; i < mNodeEnd[nNode]; i++)
+				{
+					int nFace = mOrder[i];
+					for (int c = 0; c < 3; c++)
+					{
+						int nPos = mCorners[nFace * 3 + c] * 3;
+						for (int k = 0; k < 3; k++)
+						{
+							mNodeBounds[nBounds + k] = Math.min(mNodeBounds[nBounds + k], pos[nPos + k]);
+							mNodeBounds[nBounds + 3 + k] = Math.max(mNodeBounds[nBounds + 3 + k], pos[nPos + k]);
+						}
+					}
+				}
+			}
+			else
+			{
+				int nLeftBounds = nLeft * 6;
+				int nRightBounds = mNodeRight[nNode] * 6;
+				for (int k = 0; k < 3; k++)
+				{
+					mNodeBounds[nBounds + k] = Math.min(mNodeBounds[nLeftBounds + k], mNodeBounds[nRightBounds + k]);
+					mNodeBounds[nBounds + 3 + k] = Math.max(mNodeBounds[nLeftBounds + 3 + k], mNodeBounds[nRightBounds + 3 + k]);
+				}
+			}
+		}
+	}
+
+	// faces whose box overlaps [min;max], read with getResultCount and getResult
+	public int Query(float[] min, float[] max)
+	{
+		mResultCount = 0;
+		if (mFaceCount == 0)
+		{
+			return 0;
+		}
+
+		// appended faces
+		for (int nFace = mBuiltFaceCount; nFace < mFaceCount; nFace++)
+		{
+			int p0 = mCorners[nFace * 3] * 3;
+			int p1 = mCorners[nFace * 3 + 1] * 3;
+			int p2 = mCorners[nFace * 3 + 2] * 3;
+			boolean bOverlap = true;
+			for (int k = 0; k < 3 && bOverlap; k++)
+			{
+				bOverlap = Math.min(mPos[p0 + k], Math.min(mPos[p1 + k], mPos[p2 + k])) <= max[k] && Math.max(mPos[p0 + k], Math.max(mPos[p1 + k], mPos[p2 + k])) >= min[k];
+			}
+			if (bOverlap)
+			{
+				AddResult(nFace);
+			}
+		}
+
+		int nStackSize = 0;
+		if (mNodeCount > 0)
+		{
+			mStack[nStackSize++] = 0;
+		}
+		while (nStackSize > 0)
+		{
+			int nNode = mStack[--nStackSize];
+			int nBounds = nNode * 6;
+			if (mNodeBounds[nBounds] > max[0] || mNodeBounds[nBounds + 1] > max[1] || mNodeBounds[nBounds + 2] > max[2] || mNodeBounds[nBounds + 3] < min[0] || mNodeBounds[nBounds + 4] < min[1] || mNodeBounds[nBounds + 5] < min[2])
+			{
+				continue;
+			}
+
+			if (mNodeLeft[nNode] < 0)
+			{
+				for (int i = mNodeStart[nNode]; i < mNodeEnd[nNode]; i++)
+				{
+					AddResult(mOrder[i]);
+				}
+			}
+			else
+			{
+				if (nStackSize + 2 > mStack.length)
+				{
+					int[] newStack = new int[mStack.length * 2];
+					System.arraycopy(mStack, 0, newStack, 0, nStackSize);
+					mStack = newStack;
+				}
+				mStack[nStackSize++] = mNodeLeft[nNode];
+				mStack[nStackSize++] = mNodeRight[nNode];
+			}
+		}
+		return mResultCount;
+	}
+
+	private void AddResult(int nFace)
+	{
+		if (mResultCount == mResults.length)
+		{
+			int[] newResults = new int[mResults.length * 2];
+			System.arraycopy(mResults, 0, newResults, 0, mResultCount);
+			mResults = newResults;
+		}
+		mResults[mResultCount++] = nFace;
+	}
+
+	public int getResultCount()
+	{
+		return mResultCount;
+	}
+
+	// local face index
+	public int getResult(int i)
+	{
+		return mResults[i];
+	}
+}
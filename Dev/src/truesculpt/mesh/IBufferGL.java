@@ -0,0 +1,19 @@
+package truesculpt.mesh;
+
+import java.nio.Buffer;
+
+// Buffer object calls used by VertexBufferObject, same signatures as GL11 so that uploads can be recorded without GPU
+public interface IBufferGL
+{
+	public void glGenBuffers(int n, int[] buffers, int offset);
+
+	public void glDeleteBuffers(int n, int[] buffers, int offset);
+
+	public void glBindBuffer(int target, int buffer);
+
+	public void glBufferData(int target, int size, Buffer data, int usage);
+
+	public void glBufferSubData(int target, int offset, int size, Buffer data);
+
+	public int glGetError();
+}
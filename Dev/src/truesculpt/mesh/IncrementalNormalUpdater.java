@@ -0,0 +1,234 @@
+package truesculpt.mesh;
+
+import java.util.Arrays;
+
+import truesculpt.utils.MatrixUtils;
+
+// Real normals for live stroke preview, only faces around moved vertices and their one ring are recomputed
+// Mesh coords and normals are untouched, final values are computed by the action at the end of the stroke
+public class IncrementalNormalUpdater
+{
+	private final Mesh mMesh;
+
+	private int mVertexCount = 0;
+	private int mFaceCount = 0;
+
+	// preview data, allocated at first stroke
+	private float[] mPreviewCoords = null;
+	private float[] mPreviewFaceNormals = null;// one raw cross product per face, same for its three corners
+
+	// bitsets over vertex and face indices
+	private long[] mHasPreviewCoord = null;
+	private long[] mDirtyVertices = null;
+	private long[] mHasPreviewFaceNormal = null;
+	private long[] mDirtyFaces = null;
+
+	// dirty vertices waiting for normal and render update
+	private int[] mDirtyQueue = null;
+	private int mDirtyQueueStart = 0;
+	private int mDirtyQueueEnd = 0;
+
+	private final float[] u = new float[3];
+	private final float[] v = new float[3];
+	private final float[] n = new float[3];
+	private final float[] faceNormal = new float[3];
+	private final float[] coord = new float[3];
+
+	public IncrementalNormalUpdater(Mesh mesh)
+	{
+		mMesh = mesh;
+	}
+
+	private void EnsureCapacity()
+	{
+		int nVertexCount = mMesh.mVertexList.size();
+		int nFaceCount = mMesh.mFaceList.size();
+		if (mPreviewCoords == null || nVertexCount != mVertexCount || nFaceCount != mFaceCount)
+		{
+			mVertexCount = nVertexCount;
+			mFaceCount = nFaceCount;
+
+			mPreviewCoords = new float[nVertexCount * 3];
+			mPreviewFaceNormals = new float[nFaceCount * 3];
+			mHasPreviewCoord = new long[(nVertexCount >> 6) + 1];
+			mDirtyVertices = new long[(nVertexCount >> 6) + 1];
+			mHasPreviewFaceNormal = new long[(nFaceCount >> 6) + 1];
+			mDirtyFaces = new long[(nFaceCount >> 6) + 1];
+			mDirtyQueue = new int[nVertexCount];
+			mDirtyQueueStart = 0;
+			mDirtyQueueEnd = 0;
+		}
+	}
+
+	static boolean GetBit(long[] bits, int nIndex)
+	{
+		return (bits[nIndex >> 6] & (1L << nIndex)) != 0;
+	}
+
+	static void SetBit(long[] bits, int nIndex)
+	{
+		bits[nIndex >> 6] |= (1L << nIndex);
+	}
+
+	static void ClearBit(long[] bits, int nIndex)
+	{
+		bits[nIndex >> 6] &= ~(1L << nIndex);
+	}
+
+	// new position of a vertex during the stroke, faces around and one ring are marked dirty
+	public void SetPreviewPosition(int nVertexIndex, float[] newCoord)
+	{
+		EnsureCapacity();
+
+		int nOffset = nVertexIndex * 3;
+		mPreviewCoords[nOffset] = newCoord[0];
+		mPreviewCoords[nOffset + 1] = newCoord[1];
+		mPreviewCoords[nOffset + 2] = newCoord[2];
+		SetBit(mHasPreviewCoord, nVertexIndex);
+
+		MarkVertexDirty(nVertexIndex);
+		Vertex vertex = mMesh.mVertexList.get(nVertexIndex);
+		for (HalfEdge edge : vertex.OutLinkedEdges)
+		{
+			SetBit(mDirtyFaces, edge.Face);
+			MarkVertexDirty(edge.V1);
+		}
+	}
+
+	private void MarkVertexDirty(int nVertexIndex)
+	{
+		if (!GetBit(mDirtyVertices, nVertexIndex))
+		{
+			SetBit(mDirtyVertices, nVertexIndex);
+			if (mDirtyQueueEnd == mDirtyQueue.length)
+			{
+				CompactQueue();
+			}
+			mDirtyQueue[mDirtyQueueEnd++] = nVertexIndex;
+		}
+	}
+
+	// a vertex is at most once in the queue so compacting always frees room
+	private void CompactQueue()
+	{
+		int nCount = mDirtyQueueEnd - mDirtyQueueStart;
+		System.arraycopy(mDirtyQueue, mDirtyQueueStart, mDirtyQueue, 0, nCount);
+		mDirtyQueueStart = 0;
+		mDirtyQueueEnd = nCount;
+	}
+
+	public int GetPendingCount()
+	{
+		return mPreviewCoords == null ? 0 : mDirtyQueueEnd - mDirtyQueueStart;
+	}
+
+	// recomputes normals of at most nBudget dirty vertices and publishes them, remaining ones are kept for next call
+	public int Update(int nBudget)
+	{
+		if (mPreviewCoords == null)
+		{
+			return 0;
+		}
+
+		int nProcessed = 0;
+		while (mDirtyQueueStart < mDirtyQueueEnd && nProcessed < nBudget)
+		{
+			int nVertexIndex = mDirtyQueue[mDirtyQueueStart++];
+			ClearBit(mDirtyVertices, nVertexIndex);
+
+			Vertex vertex = mMesh.mVertexList.get(nVertexIndex);
+
+			// same averaging as Mesh.ComputeVertexNormal
+			MatrixUtils.zero(n);
+			for (HalfEdge edge : vertex.OutLinkedEdges)
+			{
+				int nFace = edge.Face;
+				if (GetBit(mDirtyFaces, nFace))
+				{
+					ComputeFaceNormal(nFace);
+				}
+				if (GetBit(mHasPreviewFaceNormal, nFace))
+				{
+					int nOffset = nFace * 3;
+					n[0] += mPreviewFaceNormals[nOffset];
+					n[1] += mPreviewFaceNormals[nOffset + 1];
+					n[2] += mPreviewFaceNormals[nOffset + 2];
+				}
+				else
+				{
+					MatrixUtils.plus(edge.Normal, n, n);
+				}
+			}
+			MatrixUtils.normalize(n);
+
+			GetCoord(nVertexIndex, coord);
+			for (RenderFaceGroup renderGroup : mMesh.mRenderGroupList)
+			{
+				renderGroup.UpdateVertexValue(nVertexIndex, coord, n);
+			}
+
+			nProcessed++;
+		}
+
+		if (mDirtyQueueStart == mDirtyQueueEnd)
+		{
+			mDirtyQueueStart = 0;
+			mDirtyQueueEnd = 0;
+		}
+
+		return nProcessed;
+	}
+
+	private void GetCoord(int nVertexIndex, float[] res)
+	{
+		if (GetBit(mHasPreviewCoord, nVertexIndex))
+		{
+			int nOffset = nVertexIndex * 3;
+			res[0] = mPreviewCoords[nOffset];
+			res[1] = mPreviewCoords[nOffset + 1];
+			res[2] = mPreviewCoords[nOffset + 2];
+		}
+		else
+		{
+			MatrixUtils.copy(mMesh.mVertexList.get(nVertexIndex).Coord, res);
+		}
+	}
+
+	private final float[] A = new float[3];
+	private final float[] B = new float[3];
+	private final float[] C = new float[3];
+
+	private void ComputeFaceNormal(int nFaceIndex)
+	{
+		Face face = mMesh.mFaceList.get(nFaceIndex);
+		GetCoord(face.E0.V0, A);
+		GetCoord(face.E0.V1, B);
+		GetCoord(face.E1.V1, C);
+
+		MatrixUtils.minus(B, A, u);
+		MatrixUtils.minus(C, A, v);
+		MatrixUtils.cross(u, v, faceNormal);
+
+		int nOffset = nFaceIndex * 3;
+		mPreviewFaceNormals[nOffset] = faceNormal[0];
+		mPreviewFaceNormals[nOffset + 1] = faceNormal[1];
+		mPreviewFaceNormals[nOffset + 2] = faceNormal[2];
+
+		SetBit(mHasPreviewFaceNormal, nFaceIndex);
+		ClearBit(mDirtyFaces, nFaceIndex);
+	}
+
+	// end of stroke, action has applied real values
+	public void Reset()
+	{
+		if (mPreviewCoords != null)
+		{
+			Arrays.fill(mHasPreviewCoord, 0);
+			Arrays.fill(mDirtyVertices, 0);
+			Arrays.fill(mHasPreviewFaceNormal, 0);
+			Arrays.fill(mDirtyFaces, 0);
+			mDirtyQueueStart = 0;
+			mDirtyQueueEnd = 0;
+		}
+	}
+}
@@ -3,8 +3,10 @@ package truesculpt.mesh;
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertTrue;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
@@ -13,8 +15,13 @@ import javax.microedition.khronos.opengles.GL10;
 
 import junit.framework.Assert;
 import truesculpt.main.Managers;
+import truesculpt.managers.FileManager;
 import truesculpt.managers.ToolsManager;
+import truesculpt.renderer.ClusterCuller;
+import truesculpt.renderer.SoftwareRenderer;
 import truesculpt.utils.MatrixUtils;
+import truesculpt.utils.ParallelLoop;
+import android.graphics.Color;
 
 public class Mesh
 {
@@ -30,11 +37,41 @@ public class Mesh
 	private final float[] Ires = new float[3];
 	private final ArrayList<OctreeNode> BoxesToTest = new ArrayList<OctreeNode>();
 	private float mBoundingSphereRadius = 0.0f;
+	private volatile boolean mbBoundsChanged = false;// radius not yet published to point of view
 	private final HashSet<Integer> boxFaces = new HashSet<Integer>();
 	private final ArrayList<Vertex> verticesToTest = new ArrayList<Vertex>();
 	private final HashSet<Vertex> verticesAlreadyTested = new HashSet<Vertex>();
 
 	private final Managers mManagers;
+	private final IncrementalNormalUpdater mNormalUpdater = new IncrementalNormalUpdater(this);
+
+	// texture painting data, atlas is built or read with the mesh, texture is created at first paint
+	public static final int PAINT_TEXTURE_SIZE = 1024;
+	private UVAtlas mUVAtlas = null;
+	private volatile PaintTexture mPaintTexture = null;
+
+	private final VertexMask mMask = new VertexMask();
+
+	// sparse displacement layers, strokes go to active layer or to base shape if null
+	private final ArrayList<SculptLayer> mLayers = new ArrayList<SculptLayer>();
+	private SculptLayer mActiveLayer = null;
+	private float[] mRecompositeCoords = new float[0];
+	private final int PARALLEL_MIN_VERTICES = 2048;
+
+	// bulk update of moved vertices, bitsets and sorted lists over face and vertex indices
+	private long[] mDirtyFaceBits = new long[0];
+	private long[] mDirtyVertexBits = new long[0];
+	private int[] mDirtyFaces = new int[0];
+	private int[] mDirtyVertices = new int[0];
+	private float[] mDirtyCoords = new float[0];// coords and normals of dirty vertices, in list order
+	private float[] mDirtyNormals = new float[0];
+	private final float MASK_DISPLAY_DARKENING = 0.6f;
+
+	// debug display, octree changes counted by the writer and node bounds published as an immutable snapshot
+	private int mOctreeVersion = 0;
+	private int mDebugBoxesVersion = -1;
+	private volatile float[] mDebugBoxes = null;// min x,y,z max x,y,z per non empty node
+	private final DebugLines mDebugLines = new DebugLines();// GL thread
 
 	public Mesh(Managers managers, int nSubdivisionLevel)
 	{
@@ -55,6 +92,7 @@ public class Mesh
 		mRootBoxNode = new OctreeNode(null, new float[] { 0f, 0f, 0f }, 4f);
 		mRootBoxNode.Vertices.addAll(mVertexList);
 		mRootBoxNode.RecurseSubdivide();
+		mOctreeVersion++;
 		// CheckOctree();
 	}
 
@@ -117,6 +155,23 @@ public class Mesh
 		}
 	}
 
+	// normals, octree and display of the whole mesh, after all values were changed at once
+	public void UpdateAllVertices()
+	{
+		int nCount = mVertexList.size();
+		int[] indices = new int[nCount];
+		for (int i = 0; i < nCount; i++)
+		{
+			indices[i] = i;
+		}
+		UpdateMovedVertices(indices, nCount);
+
+		for (Vertex vertex : mVertexList)
+		{
+			UpdateVertexColor(vertex);
+		}
+	}
+
 	public void ComputeVertexNormal(Integer vertex)
 	{
 		ComputeVertexNormal(mVertexList.get(vertex));
@@ -153,6 +208,12 @@ public class Mesh
 	}
 
 	public void ComputeFaceEdgesNormal(Face face)
+	{
+		ComputeFaceEdgesNormal(face, u, v);
+	}
+
+	// temporaries given by caller, used from parallel loops
+	private void ComputeFaceEdgesNormal(Face face, float[] u, float[] v)
 	{
 		Vertex A = mVertexList.get(face.E0.V0);
 		Vertex B = mVertexList.get(face.E0.V1);
@@ -174,43 +235,102 @@ public class Mesh
 		MatrixUtils.cross(u, v, face.E2.Normal);
 	}
 
-	public void draw(GL10 gl)
+	// painted texture modulates lit vertex colors, white texels leave them unchanged
+	public void draw(GL10 gl, ClusterCuller culler)
 	{
+		PaintTexture texture = mPaintTexture;
+		if (texture != null)
+		{
+			texture.UploadDirtyTiles(gl);
+		}
+		boolean bTextured = texture != null && texture.getTextureID() > 0;
+		if (bTextured)
+		{
+			gl.glEnable(GL10.GL_TEXTURE_2D);
+			gl.glBindTexture(GL10.GL_TEXTURE_2D, texture.getTextureID());
+			gl.glTexEnvf(GL10.GL_TEXTURE_ENV, GL10.GL_TEXTURE_ENV_MODE, GL10.GL_MODULATE);
+		}
+
 		for (RenderFaceGroup renderGroup : mRenderGroupList)
 		{
-			renderGroup.draw(gl);
+			renderGroup.draw(gl, culler, bTextured);
+		}
+
+		if (bTextured)
+		{
+			gl.glBindTexture(GL10.GL_TEXTURE_2D, 0);
+			gl.glDisable(GL10.GL_TEXTURE_2D);
 		}
 	}
 
-	// TODO option to activate
-	public void drawNormals(GL10 gl)
+	// GL thread, normals and octree nodes as lines, octree snapshot is asked to the writer when lines are built
+	public void drawDebug(GL10 gl)
 	{
-		for (RenderFaceGroup renderGroup : mRenderGroupList)
+		if (!mDebugLines.IsBuilt())
 		{
-			// renderGroup.drawNormals(gl);
+			getManagers().getMeshManager().getWorker().PostTask(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					PublishDebugBoxes();
+				}
+			});
 		}
+		mDebugLines.draw(gl, mRenderGroupList, mDebugBoxes);
 	}
 
-	public void drawOctree(GL10 gl)
+	// GL thread, debug display is off
+	public void ReleaseDebugGeometry()
 	{
+		mDebugLines.Release(mRenderGroupList);
+	}
+
+	// mesh writer, bounds of non empty nodes copied when octree changed since last snapshot
+	private void PublishDebugBoxes()
+	{
+		if (mRootBoxNode == null || mDebugBoxesVersion == mOctreeVersion)
+		{
+			return;
+		}
 		ArrayList<OctreeNode> boxes = new ArrayList<OctreeNode>();
-		if (mRootBoxNode != null)
+		RecurseBoxes(mRootBoxNode, boxes);
+		int nCount = 0;
+		for (OctreeNode box : boxes)
 		{
-			RecurseBoxes(mRootBoxNode, boxes);
-			for (OctreeNode box : boxes)
+			if (!box.IsEmpty())
 			{
-				if (!box.IsEmpty())
-				{
-					box.draw(gl);
-				}
+				nCount++;
+			}
+		}
+		float[] snapshot = new float[nCount * 6];
+		int nPos = 0;
+		for (OctreeNode box : boxes)
+		{
+			if (!box.IsEmpty())
+			{
+				System.arraycopy(box.Min, 0, snapshot, nPos, 3);
+				System.arraycopy(box.Max, 0, snapshot, nPos + 3, 3);
+				nPos += 6;
 			}
 		}
+		mDebugBoxesVersion = mOctreeVersion;
+		mDebugBoxes = snapshot;
 	}
 
 	// From http://en.wikipedia.org/wiki/Wavefront_.obj_file
+	// painted texture is saved as a PNG next to the object file
 	public void ExportToOBJ(String strFileName)
 	{
 		MeshSerializer.Export(strFileName, this);
+		try
+		{
+			MeshSerializer.ExportTexture(FileManager.GetTextureFileName(strFileName), mPaintTexture);
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
 	}
 
 	private void FinalizeSphereInit()
@@ -276,6 +396,275 @@ public class Mesh
 		return mVertexList.size();
 	}
 
+	public IncrementalNormalUpdater getNormalUpdater()
+	{
+		return mNormalUpdater;
+	}
+
+	public VertexMask getMask()
+	{
+		mMask.EnsureCapacity(mVertexList.size());
+		return mMask;
+	}
+
+	public ArrayList<SculptLayer> getLayers()
+	{
+		return mLayers;
+	}
+
+	public SculptLayer AddLayer(String name)
+	{
+		SculptLayer layer = new SculptLayer(name);
+		mLayers.add(layer);
+		mActiveLayer = layer;
+		return layer;
+	}
+
+	public SculptLayer getActiveLayer()
+	{
+		return mActiveLayer;
+	}
+
+	public void setActiveLayer(SculptLayer layer)
+	{
+		mActiveLayer = layer;
+	}
+
+	// only vertices touched by the layer are moved
+	public void SetLayerState(SculptLayer layer, float weight, boolean bVisible)
+	{
+		float oldWeight = layer.getEffectiveWeight();
+		layer.setWeight(weight);
+		layer.setVisible(bVisible);
+		Recomposite(layer, layer.getEffectiveWeight() - oldWeight);
+	}
+
+	// new coords computed in parallel, normals and display updated once after all moves
+	private void Recomposite(final SculptLayer layer, final float deltaWeight)
+	{
+		final int nCount = layer.getCount();
+		if (nCount == 0 || deltaWeight == 0)
+		{
+			return;
+		}
+
+		if (mRecompositeCoords.length < nCount * 3)
+		{
+			mRecompositeCoords = new float[nCount * 3];
+		}
+		final float[] coords = mRecompositeCoords;
+		ParallelLoop.Run(nCount, PARALLEL_MIN_VERTICES, new ParallelLoop.IRangeTask()
+		{
+			@Override
+			public void Run(int nStart, int nEnd)
+			{
+				float[] offset = new float[3];
+				for (int i = nStart; i < nEnd; i++)
+				{
+					float[] coord = mVertexList.get(layer.getIndex(i)).Coord;
+					layer.GetOffset(i, offset);
+					coords[i * 3] = coord[0] + deltaWeight * offset[0];
+					coords[i * 3 + 1] = coord[1] + deltaWeight * offset[1];
+					coords[i * 3 + 2] = coord[2] + deltaWeight * offset[2];
+				}
+			}
+		});
+
+		int[] indices = new int[nCount];
+		for (int i = 0; i < nCount; i++)
+		{
+			indices[i] = layer.getIndex(i);
+			System.arraycopy(coords, i * 3, mVertexList.get(indices[i]).Coord, 0, 3);
+		}
+		UpdateMovedVertices(indices, nCount);
+	}
+
+	// normals of faces around moved vertices and of their one ring computed in parallel,
+	// then one copy per run of consecutive indices in render groups and a single octree and bounds refit
+	public void UpdateMovedVertices(int[] indices, int nCount)
+	{
+		if (nCount == 0)
+		{
+			return;
+		}
+		EnsureDirtyCapacity();
+
+		for (int i = 0; i < nCount; i++)
+		{
+			Vertex vertex = mVertexList.get(indices[i]);
+			IncrementalNormalUpdater.SetBit(mDirtyVertexBits, vertex.Index);
+			for (HalfEdge edge : vertex.OutLinkedEdges)
+			{
+				IncrementalNormalUpdater.SetBit(mDirtyFaceBits, edge.Face);
+				IncrementalNormalUpdater.SetBit(mDirtyVertexBits, edge.V1);
+			}
+		}
+		final int nFaceCount = GatherBits(mDirtyFaceBits, mDirtyFaces);
+		final int nVertexCount = GatherBits(mDirtyVertexBits, mDirtyVertices);
+		EnsureStagingCapacity(nVertexCount);
+
+		ParallelLoop.Run(nFaceCount, PARALLEL_MIN_VERTICES, new ParallelLoop.IRangeTask()
+		{
+			@Override
+			public void Run(int nStart, int nEnd)
+			{
+				float[] u = new float[3];
+				float[] v = new float[3];
+				for (int i = nStart; i < nEnd; i++)
+				{
+					ComputeFaceEdgesNormal(mFaceList.get(mDirtyFaces[i]), u, v);
+				}
+			}
+		});
+
+		ParallelLoop.Run(nVertexCount, PARALLEL_MIN_VERTICES, new ParallelLoop.IRangeTask()
+		{
+			@Override
+			public void Run(int nStart, int nEnd)
+			{
+				for (int i = nStart; i < nEnd; i++)
+				{
+					Vertex vertex = mVertexList.get(mDirtyVertices[i]);
+					ComputeVertexNormal(vertex);
+					System.arraycopy(vertex.Coord, 0, mDirtyCoords, i * 3, 3);
+					System.arraycopy(vertex.Normal, 0, mDirtyNormals, i * 3, 3);
+				}
+			}
+		});
+
+		for (RenderFaceGroup renderGroup : mRenderGroupList)
+		{
+			renderGroup.UpdateVertexValues(mDirtyVertices, nVertexCount, mDirtyCoords, mDirtyNormals);
+		}
+
+		// only moved vertices can change box or bounds, empty nodes are cleaned and bounds refit once
+		boolean bReboxed = false;
+		for (int i = 0; i < nCount; i++)
+		{
+			Vertex vertex = mVertexList.get(indices[i]);
+			if (vertex.Box != null)
+			{
+				vertex.Box.MarkBoundsDirty();
+				if (vertex.Box.Rebox(vertex))
+				{
+					bReboxed = true;
+				}
+			}
+		}
+		if (bReboxed)
+		{
+			mRootBoxNode.RecurseClean();
+			mOctreeVersion++;
+		}
+		UpdateBounds();
+	}
+
+	private void EnsureDirtyCapacity()
+	{
+		int nVertexCount = mVertexList.size();
+		int nFaceCount = mFaceList.size();
+		if (mDirtyVertices.length != nVertexCount || mDirtyFaces.length != nFaceCount)
+		{
+			mDirtyVertexBits = new long[(nVertexCount >> 6) + 1];
+			mDirtyFaceBits = new long[(nFaceCount >> 6) + 1];
+			mDirtyVertices = new int[nVertexCount];
+			mDirtyFaces = new int[nFaceCount];
+			mDirtyCoords = new float[0];
+			mDirtyNormals = new float[0];
+		}
+	}
+
+	// staging grows with the largest update, up to the whole mesh
+	private void EnsureStagingCapacity(int nDirtyVertexCount)
+	{
+		if (mDirtyCoords.length < nDirtyVertexCount * 3)
+		{
+			int nSize = Math.min(Math.max(nDirtyVertexCount, mDirtyCoords.length / 3 * 2), mVertexList.size()) * 3;
+			mDirtyCoords = new float[nSize];
+			mDirtyNormals = new float[nSize];
+		}
+	}
+
+	// set bits written in increasing order to list, bits are cleared
+	private static int GatherBits(long[] bits, int[] list)
+	{
+		int nCount = 0;
+		for (int nWord = 0; nWord < bits.length; nWord++)
+		{
+			long word = bits[nWord];
+			while (word != 0)
+			{
+				list[nCount++] = (nWord << 6) + Long.numberOfTrailingZeros(word);
+				word &= word - 1;
+			}
+			bits[nWord] = 0;
+		}
+		return nCount;
+	}
+
+	public UVAtlas getUVAtlas()
+	{
+		if (mUVAtlas == null)
+		{
+			mUVAtlas = new UVAtlas(this, PAINT_TEXTURE_SIZE);
+		}
+		return mUVAtlas;
+	}
+
+	// texture coordinates read from file, before render groups are built
+	void setUVAtlas(UVAtlas atlas)
+	{
+		mUVAtlas = atlas;
+	}
+
+	public PaintTexture getPaintTexture()
+	{
+		if (mPaintTexture == null)
+		{
+			mPaintTexture = new PaintTexture(PAINT_TEXTURE_SIZE, Color.WHITE);// white is neutral in modulate mode
+		}
+		return mPaintTexture;
+	}
+
+	// mesh writer, display changes made since last call become visible to the GL thread at once
+	public void PublishRenderData()
+	{
+		for (RenderFaceGroup renderGroup : mRenderGroupList)
+		{
+			renderGroup.Publish();
+		}
+		if (getManagers().getOptionsManager().getDisplayDebugInfos())
+		{
+			PublishDebugBoxes();
+		}
+	}
+
+	// mesh is reset or replaced, its GL objects are deleted by the GL thread at next draw
+	public void RetireGLResources()
+	{
+		if (mPaintTexture != null)
+		{
+			getManagers().getMeshManager().RetireGLResources(mPaintTexture);
+		}
+		for (RenderFaceGroup renderGroup : mRenderGroupList)
+		{
+			getManagers().getMeshManager().RetireGLResources(renderGroup);
+		}
+	}
+
+	// GL context was recreated, resources are uploaded again at next draw
+	public void InvalidateGLResources()
+	{
+		if (mPaintTexture != null)
+		{
+			mPaintTexture.InvalidateTexture();
+		}
+		for (RenderFaceGroup renderGroup : mRenderGroupList)
+		{
+			renderGroup.InvalidateGLResources();
+		}
+	}
+
 	public void ImportFromOBJ(String strFileName) throws IOException
 	{
 		Reset();
@@ -292,6 +681,12 @@ public class Mesh
 
 		mRenderGroupList.add(new RenderFaceGroup(this));
 
+		String strTextureFileName = FileManager.GetTextureFileName(strFileName);
+		if (new File(strTextureFileName).exists())
+		{
+			MeshSerializer.ImportTexture(strTextureFileName, getPaintTexture());
+		}
+
 		getManagers().getMeshManager().NotifyListeners();
 	}
 
@@ -524,7 +919,19 @@ public class Mesh
 	// vLast may be null (distance to point is computed), not VNew
 	public void GetVerticesAtDistanceFromSegment(Vertex vNew, Vertex vLast, float sqMaxDistance, HashSet<Vertex> res)
 	{
-		res.add(vNew);// add at least this point
+		GetVerticesAtDistanceFromSegment(vNew, vLast, sqMaxDistance, res, true);
+	}
+
+	// frozen vertices are crossed but not returned if bSkipMasked
+	public void GetVerticesAtDistanceFromSegment(Vertex vNew, Vertex vLast, float sqMaxDistance, HashSet<Vertex> res, boolean bSkipMasked)
+	{
+		VertexMask mask = getMask();
+		bSkipMasked &= !mask.IsEmpty();
+
+		if (!bSkipMasked || !mask.IsMasked(vNew.Index))
+		{
+			res.add(vNew);// add at least this point
+		}
 		vNew.mLastTempSqDistance = 0;
 		MatrixUtils.copy(vNew.Coord, vNew.mLastIntersectPt);
 
@@ -560,7 +967,10 @@ public class Mesh
 				{
 					currVertex.mLastTempSqDistance = currSqDistance;
 					MatrixUtils.copy(Ires, currVertex.mLastIntersectPt);
-					res.add(currVertex);
+					if (!bSkipMasked || !mask.IsMasked(currVertex.Index))
+					{
+						res.add(currVertex);
+					}
 
 					for (HalfEdge edge : currVertex.OutLinkedEdges)
 					{
@@ -577,13 +987,54 @@ public class Mesh
 		}
 	}
 
+	// faces around vertices of octree leaves overlapping [min;max], cost only depends on the size of the box
+	public void GetFacesInBox(float[] min, float[] max, BitSet res)
+	{
+		if (mRootBoxNode != null)
+		{
+			RecurseFacesInBox(mRootBoxNode, min, max, res);
+		}
+	}
+
+	private void RecurseFacesInBox(OctreeNode currBox, float[] min, float[] max, BitSet res)
+	{
+		if (currBox.Min[0] > max[0] || currBox.Min[1] > max[1] || currBox.Min[2] > max[2] || currBox.Max[0] < min[0] || currBox.Max[1] < min[1] || currBox.Max[2] < min[2])
+		{
+			return;
+		}
+
+		if (currBox.IsLeaf())
+		{
+			for (Vertex vertex : currBox.Vertices)
+			{
+				for (HalfEdge edge : vertex.OutLinkedEdges)
+				{
+					res.set(edge.Face);
+				}
+			}
+		}
+		else
+		{
+			for (OctreeNode box : currBox.NodeChilds)
+			{
+				RecurseFacesInBox(box, min, max, res);
+			}
+		}
+	}
+
 	// notification not done, to do in calling thread with post
 	private void Reset()
 	{
+		RetireGLResources();
 		mVertexList.clear();
 		mFaceList.clear();
 		mRenderGroupList.clear();
 		mRootBoxNode = null;
+		mUVAtlas = null;
+		mPaintTexture = null;
+		mMask.Clear();
+		mLayers.clear();
+		mActiveLayer = null;
 		getManagers().getActionsManager().ClearAll();
 		getManagers().getToolsManager().ClearAll();
 		System.gc();
@@ -648,36 +1099,75 @@ public class Mesh
 		}
 	}
 
-	public void UpdateVertexValue(Integer vertex)
+	public void UpdateVertexColor(Vertex vertex)
 	{
-		UpdateVertexValue(mVertexList.get(vertex));
+		int color = GetDisplayColor(vertex.Index, vertex.Color);
+		for (RenderFaceGroup renderGroup : mRenderGroupList)
+		{
+			renderGroup.UpdateVertexColor(vertex.Index, color);
+		}
 	}
 
-	private void UpdateVertexValue(Vertex vertex)
+	// copy of displayed geometry for CPU rendering, caller holds the mesh lock
+	public void CopyToSoftwareRenderer(SoftwareRenderer renderer)
 	{
-		vertex.Box.Reboxing(vertex);// update octree
+		int nVertexCount = mVertexList.size();
+		float[] coords = new float[nVertexCount * 3];
+		float[] normals = new float[nVertexCount * 3];
+		int[] colors = new int[nVertexCount];
+		for (Vertex vertex : mVertexList)
+		{
+			System.arraycopy(vertex.Coord, 0, coords, vertex.Index * 3, 3);
+			System.arraycopy(vertex.Normal, 0, normals, vertex.Index * 3, 3);
+			colors[vertex.Index] = GetDisplayColor(vertex.Index, vertex.Color);
+		}
 
-		for (RenderFaceGroup renderGroup : mRenderGroupList)
+		int nFaceCount = mFaceList.size();
+		int[] faces = new int[nFaceCount * 3];
+		for (int i = 0; i < nFaceCount; i++)
 		{
-			renderGroup.UpdateVertexValue(vertex.Index, vertex.Coord, vertex.Normal);
+			Face face = mFaceList.get(i);
+			faces[i * 3] = face.E0.V0;
+			faces[i * 3 + 1] = face.E1.V0;
+			faces[i * 3 + 2] = face.E2.V0;
 		}
-		UpdateBoudingSphereRadius(vertex.Coord);
+		renderer.SetGeometry(coords, normals, colors, nVertexCount, faces, nFaceCount);
 	}
 
-	public void UpdateVertexColor(Vertex vertex)
+	// masked vertices are displayed darker
+	public int GetDisplayColor(int nVertexIndex, int color)
 	{
-		for (RenderFaceGroup renderGroup : mRenderGroupList)
+		if (mMask.IsEmpty())
+		{
+			return color;
+		}
+		int value = mMask.GetValue(nVertexIndex);
+		if (value == 0)
+		{
+			return color;
+		}
+		float factor = 1 - MASK_DISPLAY_DARKENING * value / VertexMask.MAX_VALUE;
+		return Color.argb(Color.alpha(color), (int) (Color.red(color) * factor), (int) (Color.green(color) * factor), (int) (Color.blue(color) * factor));
+	}
+
+	// refit of dirty octree nodes only, point of view is not notified here
+	private void UpdateBounds()
+	{
+		mRootBoxNode.RefitBounds();
+		float radius = mRootBoxNode.BoundsMaxNorm;
+		if (radius != mBoundingSphereRadius)
 		{
-			renderGroup.UpdateVertexColor(vertex.Index, vertex.Color);
+			mBoundingSphereRadius = radius;
+			mbBoundsChanged = true;
 		}
 	}
 
-	private void UpdateBoudingSphereRadius(float[] val)
+	// called once per frame, camera limits follow the mesh without a notification per update
+	public void PublishBounds()
 	{
-		float norm = MatrixUtils.magnitude(val);
-		if (norm > mBoundingSphereRadius)
+		if (mbBoundsChanged)
 		{
-			mBoundingSphereRadius = norm;
+			mbBoundsChanged = false;
 			getManagers().getPointOfViewManager().setRmin(mBoundingSphereRadius);
 		}
 	}
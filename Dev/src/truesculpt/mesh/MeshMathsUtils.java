@@ -192,4 +192,60 @@ public class MeshMathsUtils
 		return ((tmin < t1) && (tmax > t0));
 	}
 
+	// Moller-Trumbore test of segment [P0;P1] against triangle interior, points are offsets in a packed xyz array.
+	// Contacts on the border are not counted so that touching triangles are not reported. No shared temporaries, thread safe.
+	public static boolean segment_triangle_intersect(float[] pos, int p0, int p1, int v0, int v1, int v2)
+	{
+		final float EPSILON = 1e-6f;
+
+		float dx = pos[p1] - pos[p0];
+		float dy = pos[p1 + 1] - pos[p0 + 1];
+		float dz = pos[p1 + 2] - pos[p0 + 2];
+		float e1x = pos[v1] - pos[v0];
+		float e1y = pos[v1 + 1] - pos[v0 + 1];
+		float e1z = pos[v1 + 2] - pos[v0 + 2];
+		float e2x = pos[v2] - pos[v0];
+		float e2y = pos[v2 + 1] - pos[v0 + 1];
+		float e2z = pos[v2 + 2] - pos[v0 + 2];
+
+		// p = d x e2
+		float px = dy * e2z - dz * e2y;
+		float py = dz * e2x - dx * e2z;
+		float pz = dx * e2y - dy * e2x;
+		float det = e1x * px + e1y * py + e1z * pz;
+		if (det > -SMALL_NUM && det < SMALL_NUM)
+		{
+			return false;// parallel or degenerate
+		}
+		float invDet = 1 / det;
+
+		float sx = pos[p0] - pos[v0];
+		float sy = pos[p0 + 1] - pos[v0 + 1];
+		float sz = pos[p0 + 2] - pos[v0 + 2];
+		float a = (sx * px + sy * py + sz * pz) * invDet;
+		if (a <= EPSILON || a >= 1 - EPSILON)
+		{
+			return false;
+		}
+
+		// q = s x e1
+		float qx = sy * e1z - sz * e1y;
+		float qy = sz * e1x - sx * e1z;
+		float qz = sx * e1y - sy * e1x;
+		float b = (dx * qx + dy * qy + dz * qz) * invDet;
+		if (b <= EPSILON || a + b >= 1 - EPSILON)
+		{
+			return false;
+		}
+
+		float t = (e2x * qx + e2y * qy + e2z * qz) * invDet;
+		return t > EPSILON && t < 1 - EPSILON;
+	}
+
+	// two non coplanar triangles intersect if an edge of one crosses the other one
+	public static boolean triangle_triangle_intersect(float[] pos, int a0, int a1, int a2, int b0, int b1, int b2)
+	{
+		return segment_triangle_intersect(pos, a0, a1, b0, b1, b2) || segment_triangle_intersect(pos, a1, a2, b0, b1, b2) || segment_triangle_intersect(pos, a2, a0, b0, b1, b2) || segment_triangle_intersect(pos, b0, b1, a0, a1, a2) || segment_triangle_intersect(pos, b1, b2, a0, a1, a2) || segment_triangle_intersect(pos, b2, b0, a0, a1, a2);
+	}
+
 }
@@ -1,15 +1,20 @@
 package truesculpt.mesh;
 
 import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.LineNumberReader;
+import java.util.ArrayList;
 import java.util.StringTokenizer;
 
 import truesculpt.utils.Utils;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 
 public class MeshSerializer
 {
@@ -19,6 +24,10 @@ public class MeshSerializer
 
 		LineNumberReader input = new LineNumberReader(new InputStreamReader(new FileInputStream(strFileName)));
 		String line = null;
+		ArrayList<Integer> maskedVertices = new ArrayList<Integer>();
+		ArrayList<Integer> maskValues = new ArrayList<Integer>();
+		ArrayList<Float> texCoords = new ArrayList<Float>();
+		ArrayList<Integer> faceTexCoords = new ArrayList<Integer>();// 3 per face, -1 if not given
 		try
 		{
 			int[] face = new int[3];
@@ -47,26 +56,31 @@ public class MeshSerializer
 							int color = Integer.parseInt(tok.nextToken());
 							vertex.Color = color;
 						}
+
+						if (tok.hasMoreTokens())// mask, only written for masked vertices
+						{
+							maskedVertices.add(vertex.Index);
+							maskValues.add(Integer.parseInt(tok.nextToken()));
+						}
 					}
 					else if (line.startsWith("vt "))
 					{
 						StringTokenizer tok = new StringTokenizer(line);
 						tok.nextToken();
-						coord[0] = Float.parseFloat(tok.nextToken());
-						coord[1] = Float.parseFloat(tok.nextToken());
-
-						// m.addTextureCoordinate(coord);
+						texCoords.add(Float.parseFloat(tok.nextToken()));
+						texCoords.add(Float.parseFloat(tok.nextToken()));
 					}
 					else if (line.startsWith("f "))
 					{
 						StringTokenizer tok = new StringTokenizer(line);
 						tok.nextToken();
-						Utils.parseIntTriple(tok.nextToken(), val);
-						face[0] = val[0];
-						Utils.parseIntTriple(tok.nextToken(), val);
-						face[1] = val[0];
-						Utils.parseIntTriple(tok.nextToken(), val);
-						face[2] = val[0];
+						for (int i = 0; i < 3; i++)
+						{
+							val[1] = -1;
+							Utils.parseIntTriple(tok.nextToken(), val);
+							face[i] = val[0];
+							faceTexCoords.add(val[1]);
+						}
 
 						mesh.mFaceList.add(new Face(face[0], face[1], face[2], mesh.mFaceList.size(), 0));
 					}
@@ -89,6 +103,82 @@ public class MeshSerializer
 			System.err.println("Error parsing file:");
 			System.err.println(input.getLineNumber() + " : " + line);
 		}
+
+		VertexMask mask = mesh.getMask();
+		for (int i = 0; i < maskedVertices.size(); i++)
+		{
+			mask.SetValue(maskedVertices.get(i), maskValues.get(i));
+		}
+
+		// painted texture needs the saved coordinates, they are computed again if one corner has none
+		int nCornerCount = mesh.mFaceList.size() * 3;
+		if (texCoords.size() > 0 && faceTexCoords.size() == nCornerCount)
+		{
+			float[] faceUVs = new float[nCornerCount * 2];
+			boolean bComplete = true;
+			for (int i = 0; i < nCornerCount && bComplete; i++)
+			{
+				int nTexCoord = faceTexCoords.get(i);
+				bComplete = nTexCoord >= 0 && nTexCoord * 2 + 1 < texCoords.size();
+				if (bComplete)
+				{
+					faceUVs[i * 2] = texCoords.get(nTexCoord * 2);
+					faceUVs[i * 2 + 1] = texCoords.get(nTexCoord * 2 + 1);
+				}
+			}
+			if (bComplete)
+			{
+				mesh.setUVAtlas(new UVAtlas(mesh, Mesh.PAINT_TEXTURE_SIZE, faceUVs));
+			}
+		}
+	}
+
+	// texture rows from first texel row, scaled if saved with another size
+	public static void ImportTexture(String strFileName, PaintTexture texture)
+	{
+		Bitmap bitmap = BitmapFactory.decodeFile(strFileName);
+		if (bitmap != null)
+		{
+			int nSize = texture.getSize();
+			if (bitmap.getWidth() != nSize || bitmap.getHeight() != nSize)
+			{
+				bitmap = Bitmap.createScaledBitmap(bitmap, nSize, nSize, true);
+			}
+			int[] pixels = new int[nSize * nSize];
+			bitmap.getPixels(pixels, 0, nSize, 0, 0, nSize, nSize);
+			bitmap.recycle();
+			texture.SetPixels(pixels);
+		}
+	}
+
+	// file of a previous save is removed if mesh is not painted
+	public static void ExportTexture(String strFileName, PaintTexture texture) throws IOException
+	{
+		if (texture == null)
+		{
+			File file = new File(strFileName);
+			if (file.exists())
+			{
+				file.delete();
+			}
+			return;
+		}
+
+		int nSize = texture.getSize();
+		int[] pixels = new int[nSize * nSize];
+		texture.GetPixels(pixels);
+		Bitmap bitmap = Bitmap.createBitmap(pixels, nSize, nSize, Bitmap.Config.ARGB_8888);
+
+		FileOutputStream fos = new FileOutputStream(strFileName);
+		try
+		{
+			bitmap.compress(Bitmap.CompressFormat.PNG, 100, fos);
+		}
+		finally
+		{
+			fos.close();
+			bitmap.recycle();
+		}
 	}
 
 	public static void Export(String strFileName, Mesh mesh)
@@ -102,14 +192,32 @@ public class MeshSerializer
 
 			file.write("\n");
 			file.write("# List of Vertices, with (x,y,z[,w]) coordinates, w is optional\n");
+			VertexMask mask = mesh.getMask();
 			for (Vertex vertex : mesh.mVertexList)
 			{
-				String str = "v " + String.valueOf(vertex.Coord[0]) + " " + String.valueOf(vertex.Coord[1]) + " " + String.valueOf(vertex.Coord[2]) + " " + String.valueOf(vertex.Color) + "\n";
+				String str = "v " + String.valueOf(vertex.Coord[0]) + " " + String.valueOf(vertex.Coord[1]) + " " + String.valueOf(vertex.Coord[2]) + " " + String.valueOf(vertex.Color);
+				int maskValue = mask.GetValue(vertex.Index);
+				if (maskValue > 0)
+				{
+					str += " " + String.valueOf(maskValue);
+				}
+				str += "\n";
 				file.write(str);
 			}
 
 			file.write("\n");
 			file.write("# Texture coordinates, in (u,v[,w]) coordinates, w is optional\n");
+			UVAtlas atlas = mesh.getUVAtlas();
+			float[] uvs = new float[6];
+			int nFaceCount = mesh.mFaceList.size();
+			for (int i = 0; i < nFaceCount; i++)
+			{
+				atlas.GetFaceUVs(i, uvs);
+				for (int j = 0; j < 3; j++)
+				{
+					file.write("vt " + String.valueOf(uvs[j * 2]) + " " + String.valueOf(uvs[j * 2 + 1]) + "\n");
+				}
+			}
 			file.write("\n");
 
 			file.write("# Normals in (x,y,z) form; normals might not be unit\n");
@@ -126,11 +234,12 @@ public class MeshSerializer
 				int n0 = face.E0.V0;
 				int n1 = face.E1.V0;
 				int n2 = face.E2.V0;
+				int nt = face.E0.Face * 3;// texture coordinates are per face corner
 
 				// A valid vertex index starts from 1 and match first vertex
 				// element of vertex list previously defined. Each face can
 				// contain more than three elements.
-				String str = "f " + String.valueOf(n0 + 1) + "//" + String.valueOf(n0 + 1) + " " + String.valueOf(n1 + 1) + "//" + String.valueOf(n1 + 1) + " " + String.valueOf(n2 + 1) + "//" + String.valueOf(n2 + 1) + "\n";
+				String str = "f " + String.valueOf(n0 + 1) + "/" + String.valueOf(nt + 1) + "/" + String.valueOf(n0 + 1) + " " + String.valueOf(n1 + 1) + "/" + String.valueOf(nt + 2) + "/" + String.valueOf(n1 + 1) + " " + String.valueOf(n2 + 1) + "/" + String.valueOf(nt + 3) + "/" + String.valueOf(n2 + 1) + "\n";
 
 				file.write(str);
 			}
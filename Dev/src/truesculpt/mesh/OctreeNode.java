@@ -1,13 +1,7 @@
 package truesculpt.mesh;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.FloatBuffer;
-import java.nio.ShortBuffer;
 import java.util.ArrayList;
 
-import javax.microedition.khronos.opengles.GL10;
-
 import truesculpt.utils.MatrixUtils;
 
 public class OctreeNode
@@ -20,10 +14,13 @@ public class OctreeNode
 	public float[] Max = new float[3];
 	public float Radius = -1;
 
-	private final float MAX_VERTICES = 100;
+	// bounds of the vertices under this node, only dirty nodes are refit
+	public final float[] BoundsMin = new float[3];
+	public final float[] BoundsMax = new float[3];
+	public float BoundsMaxNorm = 0;// farthest vertex from origin
+	private boolean mbBoundsDirty = true;// parents of a dirty node are dirty
 
-	private ShortBuffer mDrawIndexBuffer = null;
-	private FloatBuffer mDrawVertexBuffer = null;
+	private final float MAX_VERTICES = 100;
 
 	public void RecurseSubdivide()
 	{
@@ -108,28 +105,71 @@ public class OctreeNode
 		}
 	}
 
-	public void draw(GL10 gl)
-	{
-		mDrawIndexBuffer.position(0);
-		mDrawVertexBuffer.position(0);
-
-		gl.glFrontFace(GL10.GL_CCW);// counter clock wise is specific to previous format
-
-		gl.glVertexPointer(3, GL10.GL_FLOAT, 0, mDrawVertexBuffer);
-
-		gl.glDrawElements(GL10.GL_LINES, 24, GL10.GL_UNSIGNED_SHORT, mDrawIndexBuffer);
-	}
-
 	private void AddVertex(Vertex vertex)
 	{
 		Vertices.add(vertex);
 		vertex.Box = this;
+		MarkBoundsDirty();
 	}
 
 	private void RemoveVertex(Vertex vertex)
 	{
 		Vertices.remove(vertex);
 		vertex.Box = null;
+		MarkBoundsDirty();
+	}
+
+	// a vertex of this node moved or the node content changed
+	public void MarkBoundsDirty()
+	{
+		OctreeNode node = this;
+		while (node != null && !node.mbBoundsDirty)
+		{
+			node.mbBoundsDirty = true;
+			node = node.NodeParent;
+		}
+	}
+
+	public boolean HasBounds()
+	{
+		return BoundsMin[0] <= BoundsMax[0];
+	}
+
+	// bounds rebuilt from vertices and children, clean subtrees are kept as is
+	public void RefitBounds()
+	{
+		if (!mbBoundsDirty)
+		{
+			return;
+		}
+		mbBoundsDirty = false;
+
+		BoundsMin[0] = BoundsMin[1] = BoundsMin[2] = Float.MAX_VALUE;
+		BoundsMax[0] = BoundsMax[1] = BoundsMax[2] = -Float.MAX_VALUE;
+		BoundsMaxNorm = 0;
+		for (Vertex vertex : Vertices)
+		{
+			float[] coord = vertex.Coord;
+			for (int i = 0; i < 3; i++)
+			{
+				BoundsMin[i] = Math.min(BoundsMin[i], coord[i]);
+				BoundsMax[i] = Math.max(BoundsMax[i], coord[i]);
+			}
+			BoundsMaxNorm = Math.max(BoundsMaxNorm, MatrixUtils.magnitude(coord));
+		}
+		for (OctreeNode box : NodeChilds)
+		{
+			box.RefitBounds();
+			if (box.HasBounds())
+			{
+				for (int i = 0; i < 3; i++)
+				{
+					BoundsMin[i] = Math.min(BoundsMin[i], box.BoundsMin[i]);
+					BoundsMax[i] = Math.max(BoundsMax[i], box.BoundsMax[i]);
+				}
+				BoundsMaxNorm = Math.max(BoundsMaxNorm, box.BoundsMaxNorm);
+			}
+		}
 	}
 
 	public OctreeNode(OctreeNode parent, float[] center, float newRadius)
@@ -145,97 +185,6 @@ public class OctreeNode
 		MatrixUtils.copy(center, Max);
 		MatrixUtils.scalarAdd(Max, newRadius);
 
-		float[] temp = new float[3];
-		ByteBuffer ndvbb = ByteBuffer.allocateDirect(8 * 3 * 4);// normals
-																// contains 3
-																// elem (x,y,z)
-																// in float(4
-																// bytes)
-		ndvbb.order(ByteOrder.nativeOrder());
-		mDrawVertexBuffer = ndvbb.asFloatBuffer();
-
-		MatrixUtils.copy(Center, temp);
-		temp[0] += Radius;
-		temp[1] += Radius;
-		temp[2] += Radius;
-		mDrawVertexBuffer.put(temp);
-
-		MatrixUtils.copy(Center, temp);
-		temp[0] -= Radius;
-		temp[1] += Radius;
-		temp[2] += Radius;
-		mDrawVertexBuffer.put(temp);
-
-		MatrixUtils.copy(Center, temp);
-		temp[0] -= Radius;
-		temp[1] -= Radius;
-		temp[2] += Radius;
-		mDrawVertexBuffer.put(temp);
-
-		MatrixUtils.copy(Center, temp);
-		temp[0] += Radius;
-		temp[1] -= Radius;
-		temp[2] += Radius;
-		mDrawVertexBuffer.put(temp);
-
-		MatrixUtils.copy(Center, temp);
-		temp[0] += Radius;
-		temp[1] += Radius;
-		temp[2] -= Radius;
-		mDrawVertexBuffer.put(temp);
-
-		MatrixUtils.copy(Center, temp);
-		temp[0] -= Radius;
-		temp[1] += Radius;
-		temp[2] -= Radius;
-		mDrawVertexBuffer.put(temp);
-
-		MatrixUtils.copy(Center, temp);
-		temp[0] -= Radius;
-		temp[1] -= Radius;
-		temp[2] -= Radius;
-		mDrawVertexBuffer.put(temp);
-
-		MatrixUtils.copy(Center, temp);
-		temp[0] += Radius;
-		temp[1] -= Radius;
-		temp[2] -= Radius;
-		mDrawVertexBuffer.put(temp);
-
-		ByteBuffer ndibb = ByteBuffer.allocateDirect(24 * 2);// line are 2
-																// elements in
-																// short ( 2
-																// bytes )
-		ndibb.order(ByteOrder.nativeOrder());
-		mDrawIndexBuffer = ndibb.asShortBuffer();
-		mDrawIndexBuffer.put((short) 0);
-		mDrawIndexBuffer.put((short) 1);
-		mDrawIndexBuffer.put((short) 2);
-		mDrawIndexBuffer.put((short) 3);
-		mDrawIndexBuffer.put((short) 0);
-
-		mDrawIndexBuffer.put((short) 4);
-		mDrawIndexBuffer.put((short) 7);
-		mDrawIndexBuffer.put((short) 3);
-		mDrawIndexBuffer.put((short) 0);
-
-		mDrawIndexBuffer.put((short) 1);
-		mDrawIndexBuffer.put((short) 5);
-		mDrawIndexBuffer.put((short) 4);
-		mDrawIndexBuffer.put((short) 0);
-		mDrawIndexBuffer.put((short) 1);
-
-		mDrawIndexBuffer.put((short) 1);
-		mDrawIndexBuffer.put((short) 5);
-		mDrawIndexBuffer.put((short) 6);
-		mDrawIndexBuffer.put((short) 2);
-		mDrawIndexBuffer.put((short) 1);
-		mDrawIndexBuffer.put((short) 2);
-
-		mDrawIndexBuffer.put((short) 6);
-		mDrawIndexBuffer.put((short) 7);
-		mDrawIndexBuffer.put((short) 3);
-		mDrawIndexBuffer.put((short) 2);
 	}
 
 	public boolean IsVertexInsideBox(Vertex vertex)
@@ -257,45 +206,47 @@ public class OctreeNode
 		return Vertices.size() == 0;
 	}
 
-	public void Reboxing(Vertex vertex)
+	// vertex out of its box is moved to the node containing it, false if it stays here.
+	// Empty nodes are not cleaned, caller cleans once after a batch.
+	public boolean Rebox(Vertex vertex)
 	{
-		if (!IsVertexInsideBox(vertex))
+		if (IsVertexInsideBox(vertex))
 		{
-			// find parent going up
-			OctreeNode currBox = NodeParent;
-			while (currBox != null && !currBox.IsVertexInsideBox(vertex))
-			{
-				currBox = currBox.NodeParent;
-			}
-
-			if (currBox != null)
-			{
-				currBox.RecursePlaceVertexInChild(vertex);
-			}
+			return false;
+		}
 
-			RecurseClean();
+		OctreeNode currBox = NodeParent;
+		while (currBox != null && !currBox.IsVertexInsideBox(vertex))
+		{
+			currBox = currBox.NodeParent;
 		}
+		if (currBox == null)
+		{
+			return false;// out of root box, kept in last box
+		}
+
+		RemoveVertex(vertex);
+		currBox.PlaceVertex(vertex);
+		return true;
 	}
 
-	private void RecursePlaceVertexInChild(Vertex vertex)
+	private void PlaceVertex(Vertex vertex)
 	{
-		// find child going down
+		if (IsLeaf())
+		{
+			AddVertex(vertex);
+			RecurseSubdivide();
+			return;
+		}
 		for (OctreeNode box : NodeChilds)
 		{
 			if (box.IsVertexInsideBox(vertex))
 			{
-				if (box.IsLeaf())
-				{
-					box.AddVertex(vertex);
-					box.RecurseSubdivide();
-					break;
-				}
-				else
-				{
-					box.RecursePlaceVertexInChild(vertex);
-				}
+				box.PlaceVertex(vertex);
+				return;
 			}
 		}
+		AddVertex(vertex);// on a child boundary because of rounding
 	}
 
 	// resubdividing and box simplification routines called from time to time
@@ -325,9 +276,10 @@ public class OctreeNode
 			}
 		}
 
-		if (bAllChildsEmpty)
+		if (bAllChildsEmpty && !NodeChilds.isEmpty())
 		{
 			NodeChilds.clear();
+			MarkBoundsDirty();
 		}
 	}
 
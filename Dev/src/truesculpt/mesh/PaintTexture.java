@@ -0,0 +1,257 @@
+package truesculpt.mesh;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import javax.microedition.khronos.opengles.GL10;
+
+import android.graphics.Color;
+
+// RGBA paint texture stored tile by tile, a tile is contiguous in the direct buffer so it can be
+// uploaded with a single glTexSubImage2D without repacking. Only tiles changed since last frame are uploaded.
+// Painting and upload are synchronized on this object.
+public class PaintTexture
+{
+	public static final int TILE_SIZE = 64;
+	private static final int TILE_BYTES = TILE_SIZE * TILE_SIZE * 4;
+
+	private final int mSize;
+	private final int mTilesPerRow;
+	private final int mTileCount;
+
+	private final ByteBuffer mPixels;
+	private final long[] mDirtyTiles;
+	private int mDirtyCount = 0;
+
+	private final int[] mTextureID = new int[] { -1 };
+	private boolean mbReleased = false;// texture of a replaced mesh, never created again
+
+	// nSize is a multiple of TILE_SIZE and a power of two
+	public PaintTexture(int nSize, int nClearColor)
+	{
+		mSize = nSize;
+		mTilesPerRow = nSize / TILE_SIZE;
+		mTileCount = mTilesPerRow * mTilesPerRow;
+
+		mPixels = ByteBuffer.allocateDirect(nSize * nSize * 4);
+		mPixels.order(ByteOrder.nativeOrder());
+		mDirtyTiles = new long[(mTileCount >> 6) + 1];
+
+		// one cleared tile copied in bulk
+		byte[] tile = NewTileData();
+		for (int i = 0; i < TILE_BYTES; i += 4)
+		{
+			tile[i] = (byte) Color.red(nClearColor);
+			tile[i + 1] = (byte) Color.green(nClearColor);
+			tile[i + 2] = (byte) Color.blue(nClearColor);
+			tile[i + 3] = (byte) Color.alpha(nClearColor);
+		}
+		for (int nTile = 0; nTile < mTileCount; nTile++)
+		{
+			mPixels.put(tile);
+		}
+		mPixels.position(0);
+	}
+
+	public int GetTileIndex(int x, int y)
+	{
+		return (y / TILE_SIZE) * mTilesPerRow + (x / TILE_SIZE);
+	}
+
+	private int GetByteOffset(int x, int y)
+	{
+		int nTile = GetTileIndex(x, y);
+		return nTile * TILE_BYTES + ((y % TILE_SIZE) * TILE_SIZE + (x % TILE_SIZE)) * 4;
+	}
+
+	public int GetTexel(int x, int y)
+	{
+		int nOffset = GetByteOffset(x, y);
+		return Color.argb(mPixels.get(nOffset + 3) & 0xFF, mPixels.get(nOffset) & 0xFF, mPixels.get(nOffset + 1) & 0xFF, mPixels.get(nOffset + 2) & 0xFF);
+	}
+
+	// alpha [0;1] is the weight of color over current texel, tile is marked dirty
+	public void BlendTexel(int x, int y, int color, float alpha)
+	{
+		int nOffset = GetByteOffset(x, y);
+		BlendByte(nOffset, Color.red(color), alpha);
+		BlendByte(nOffset + 1, Color.green(color), alpha);
+		BlendByte(nOffset + 2, Color.blue(color), alpha);
+		BlendByte(nOffset + 3, Color.alpha(color), alpha);
+
+		MarkTileDirty(GetTileIndex(x, y));
+	}
+
+	private void BlendByte(int nOffset, int value, float alpha)
+	{
+		int curr = mPixels.get(nOffset) & 0xFF;
+		mPixels.put(nOffset, (byte) (curr + (int) ((value - curr) * alpha + 0.5f)));
+	}
+
+	public void MarkTileDirty(int nTile)
+	{
+		long mask = 1L << nTile;
+		if ((mDirtyTiles[nTile >> 6] & mask) == 0)
+		{
+			mDirtyTiles[nTile >> 6] |= mask;
+			mDirtyCount++;
+		}
+	}
+
+	public void CopyTile(int nTile, byte[] dst)
+	{
+		mPixels.position(nTile * TILE_BYTES);
+		mPixels.get(dst, 0, TILE_BYTES);
+		mPixels.position(0);
+	}
+
+	public void SetTile(int nTile, byte[] src)
+	{
+		mPixels.position(nTile * TILE_BYTES);
+		mPixels.put(src, 0, TILE_BYTES);
+		mPixels.position(0);
+
+		MarkTileDirty(nTile);
+	}
+
+	public static byte[] NewTileData()
+	{
+		return new byte[TILE_BYTES];
+	}
+
+	// row major ARGB copy of the whole texture, for saving
+	public void GetPixels(int[] argb)
+	{
+		byte[] tile = NewTileData();
+		synchronized (this)
+		{
+			for (int nTile = 0; nTile < mTileCount; nTile++)
+			{
+				CopyTile(nTile, tile);
+				int nFirst = (nTile / mTilesPerRow) * TILE_SIZE * mSize + (nTile % mTilesPerRow) * TILE_SIZE;
+				for (int i = 0; i < TILE_SIZE * TILE_SIZE; i++)
+				{
+					int nOffset = i * 4;
+					argb[nFirst + (i / TILE_SIZE) * mSize + i % TILE_SIZE] = Color.argb(tile[nOffset + 3] & 0xFF, tile[nOffset] & 0xFF, tile[nOffset + 1] & 0xFF, tile[nOffset + 2] & 0xFF);
+				}
+			}
+		}
+	}
+
+	// row major ARGB content replaces the whole texture, for loading
+	public void SetPixels(int[] argb)
+	{
+		byte[] tile = NewTileData();
+		synchronized (this)
+		{
+			for (int nTile = 0; nTile < mTileCount; nTile++)
+			{
+				int nFirst = (nTile / mTilesPerRow) * TILE_SIZE * mSize + (nTile % mTilesPerRow) * TILE_SIZE;
+				for (int i = 0; i < TILE_SIZE * TILE_SIZE; i++)
+				{
+					int color = argb[nFirst + (i / TILE_SIZE) * mSize + i % TILE_SIZE];
+					int nOffset = i * 4;
+					tile[nOffset] = (byte) Color.red(color);
+					tile[nOffset + 1] = (byte) Color.green(color);
+					tile[nOffset + 2] = (byte) Color.blue(color);
+					tile[nOffset + 3] = (byte) Color.alpha(color);
+				}
+				SetTile(nTile, tile);
+			}
+		}
+	}
+
+	// GL thread, creates the texture at first call then uploads tiles changed since last call, returns uploaded tiles count
+	public int UploadDirtyTiles(GL10 gl)
+	{
+		int nUploaded = 0;
+		synchronized (this)
+		{
+			if (mbReleased)
+			{
+				return 0;
+			}
+
+			if (mTextureID[0] < 0)
+			{
+				gl.glGenTextures(1, mTextureID, 0);
+				gl.glBindTexture(GL10.GL_TEXTURE_2D, mTextureID[0]);
+				gl.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_MIN_FILTER, GL10.GL_LINEAR);
+				gl.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_MAG_FILTER, GL10.GL_LINEAR);
+				gl.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_WRAP_S, GL10.GL_CLAMP_TO_EDGE);
+				gl.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_WRAP_T, GL10.GL_CLAMP_TO_EDGE);
+				gl.glTexImage2D(GL10.GL_TEXTURE_2D, 0, GL10.GL_RGBA, mSize, mSize, 0, GL10.GL_RGBA, GL10.GL_UNSIGNED_BYTE, null);
+
+				// everything to send
+				for (int i = 0; i < mTileCount; i++)
+				{
+					MarkTileDirty(i);
+				}
+			}
+
+			if (mDirtyCount > 0)
+			{
+				gl.glBindTexture(GL10.GL_TEXTURE_2D, mTextureID[0]);
+				for (int nTile = 0; nTile < mTileCount; nTile++)
+				{
+					if ((mDirtyTiles[nTile >> 6] & (1L << nTile)) != 0)
+					{
+						int x = (nTile % mTilesPerRow) * TILE_SIZE;
+						int y = (nTile / mTilesPerRow) * TILE_SIZE;
+						mPixels.position(nTile * TILE_BYTES);
+						gl.glTexSubImage2D(GL10.GL_TEXTURE_2D, 0, x, y, TILE_SIZE, TILE_SIZE, GL10.GL_RGBA, GL10.GL_UNSIGNED_BYTE, mPixels);
+						nUploaded++;
+					}
+				}
+				mPixels.position(0);
+				Arrays.fill(mDirtyTiles, 0);
+				mDirtyCount = 0;
+			}
+		}
+		return nUploaded;
+	}
+
+	// GL thread, texture of a replaced mesh is deleted and not uploaded anymore
+	public void ReleaseTexture(GL10 gl)
+	{
+		synchronized (this)
+		{
+			if (mTextureID[0] > 0)
+			{
+				gl.glDeleteTextures(1, mTextureID, 0);
+			}
+			mTextureID[0] = -1;
+			mbReleased = true;
+		}
+	}
+
+	// GL context was lost, texture will be recreated and fully uploaded
+	public void InvalidateTexture()
+	{
+		synchronized (this)
+		{
+			mTextureID[0] = -1;
+		}
+	}
+
+	public int getTextureID()
+	{
+		return mTextureID[0];
+	}
+
+	public int getTileCount()
+	{
+		return mTileCount;
+	}
+
+	public int getSize()
+	{
+		return mSize;
+	}
+
+	public int getDirtyTileCount()
+	{
+		return mDirtyCount;
+	}
+}
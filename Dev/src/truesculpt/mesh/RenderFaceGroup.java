@@ -4,70 +4,139 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.nio.ShortBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.microedition.khronos.opengles.GL10;
+import javax.microedition.khronos.opengles.GL11;
 
-import truesculpt.utils.Utils;
+import truesculpt.renderer.ClusterCuller;
+import truesculpt.utils.MatrixUtils;
 
+// Vertex data is triple buffered: the mesh writer fills its back frame and publishes it with an atomic swap,
+// the GL thread takes the latest published frame at draw. No lock is shared, a frame is never written while drawn.
 public class RenderFaceGroup
 {
-	private FloatBuffer mColorBuffer = null;
-	private ShortBuffer mIndexBuffer = null;
-	private FloatBuffer mVertexBuffer = null;
-	private FloatBuffer mNormalBuffer = null;
+	// interleaved vertex: float x,y,z, byte normal x,y,z and padding, unsigned byte r,g,b,a
+	public static final int VERTEX_STRIDE = 20;
+	private static final int NORMAL_OFFSET = 12;
+	private static final int COLOR_OFFSET = 16;
+	private static final float NORMAL_SCALE = 127f;
 
-	private ShortBuffer mDrawNormalIndexBuffer = null;
-	private FloatBuffer mDrawNormalVertexBuffer = null;
+	private static final int FRAME_COUNT = 3;
+	private static final int INDEX_MASK = 3;
+	private static final int FRESH = 4;// middle frame not taken by GL thread yet
+
+	private final RenderFrame[] mFrames = new RenderFrame[FRAME_COUNT];
+	private final AtomicInteger mMiddle = new AtomicInteger(1);
+	private int mBack = 0;// writer only
+	private int mFront = 2;// GL thread only
+	private long mWriteVersion = 0;
+	private boolean mbBackChanged = false;
+
+	private ShortBuffer mIndexBuffer = null;// not changed after construction
 
 	private int mFacesCount = 0;
-	private int mVertexCount = 0;
+	private int mVertexCount = 0;// render vertices, mesh vertices then their seam copies
+
+	// texture coordinates are given per face corner, a vertex on a chart border is drawn once per distinct (u,v).
+	// Copies are appended after mesh vertices and chained from their mesh vertex, updates are written to the whole chain.
+	private int mMeshVertexCount = 0;
+	private int[] mNextCopy = null;// next render vertex of same mesh vertex, -1 at end of chain
+	private FloatBuffer mTexCoordBuffer = null;// u,v per render vertex, not changed after construction
 
 	private Mesh mMesh = null;
-	float mNormalScaleFactor = 0.1f;
+
+	// GL11 buffer objects mirroring client buffers, client buffers are drawn directly on GL10 only devices
+	private VertexBufferObject mVertexVBO = null;
+	private VertexBufferObject mIndexVBO = null;
+	private VertexBufferObject mTexCoordVBO = null;
+	private final VertexBufferObject.GL11Adapter mGLAdapter = new VertexBufferObject.GL11Adapter();
+	private Boolean mbVBOSupported = null;// GL thread, checked once per context
+
+	// faces are sorted along a Morton curve of their centroid and cut in clusters of consecutive indices,
+	// each with a bounding sphere and a normal cone refit at draw when one of its vertices moved
+	public static final int CLUSTER_FACES = 512;
+	private int mClusterCount = 0;
+	private float[] mClusterSpheres = null;// x,y,z,radius
+	private float[] mClusterCones = null;// unit axis x,y,z, cosine of half angle
+	private long[] mDirtyClusters = null;// GL thread, merged from drawn frames
+	private int[] mVertexClusterStart = null;// clusters of vertex i are in [start[i];start[i+1][
+	private int[] mVertexClusters = null;
+
+	// refit temporaries, GL thread only
+	private final float[] mA = new float[3];
+	private final float[] mB = new float[3];
+	private final float[] mC = new float[3];
+	private final float[] mU = new float[3];
+	private final float[] mV = new float[3];
+	private final float[] mMin = new float[3];
+	private final float[] mMax = new float[3];
+	private final float[] mAxis = new float[3];
+
+	// debug normal lines, GL thread, vertices changed in drawn frames since lines were last written
+	private DirtyRanges mNormalLinesDirty = null;
+	private final NormalLinesWriter mNormalLinesWriter = new NormalLinesWriter();
+
+	// segment from drawn vertex along its normal, 2 points per vertex from line nFirstLine
+	private class NormalLinesWriter implements DirtyRanges.IRangeUploader
+	{
+		FloatBuffer mLines = null;
+		int mFirstLine = 0;
+		float mLength = 0;
+
+		@Override
+		public void Upload(int nFirstElement, int nElementCount)
+		{
+			ByteBuffer data = mFrames[mFront].mVertexData;
+			float scale = mLength / NORMAL_SCALE;
+			int nPos = (mFirstLine + nFirstElement) * 6;
+			for (int i = nFirstElement; i < nFirstElement + nElementCount; i++)
+			{
+				int nOffset = i * VERTEX_STRIDE;
+				float x = data.getFloat(nOffset);
+				float y = data.getFloat(nOffset + 4);
+				float z = data.getFloat(nOffset + 8);
+				mLines.put(nPos++, x);
+				mLines.put(nPos++, y);
+				mLines.put(nPos++, z);
+				mLines.put(nPos++, x + data.get(nOffset + NORMAL_OFFSET) * scale);
+				mLines.put(nPos++, y + data.get(nOffset + NORMAL_OFFSET + 1) * scale);
+				mLines.put(nPos++, z + data.get(nOffset + NORMAL_OFFSET + 2) * scale);
+			}
+		}
+	}
 
 	public RenderFaceGroup(Mesh mesh)
 	{
 		mMesh = mesh;
 
-		mVertexCount = mMesh.mVertexList.size();
-		ByteBuffer vbb = ByteBuffer.allocateDirect(mVertexCount * 3 * 4);// vertices
-																			// contains
-																			// 3
-																			// elem
-																			// (x,y,z)
-																			// in
-																			// float(4
-																			// bytes)
-		vbb.order(ByteOrder.nativeOrder());
-		mVertexBuffer = vbb.asFloatBuffer();
-		for (Vertex vertex : mMesh.mVertexList)
+		mMeshVertexCount = mMesh.mVertexList.size();
+		mFacesCount = mMesh.mFaceList.size();
+		int[] corners = SplitSeams(mMesh.getUVAtlas());
+		mClusterCount = (mFacesCount + CLUSTER_FACES - 1) / CLUSTER_FACES;
+		for (int i = 0; i < FRAME_COUNT; i++)
 		{
-			mVertexBuffer.put(vertex.Coord[0]);
-			mVertexBuffer.put(vertex.Coord[1]);
-			mVertexBuffer.put(vertex.Coord[2]);
-		}
-
-		ByteBuffer cbb = ByteBuffer.allocateDirect(mVertexCount * 4 * 4); // color
-																			// is
-																			// a
-																			// 4
-																			// elem
-																			// group
-																			// (RGBA)
-																			// in
-																			// float
-																			// (4
-																			// bytes)
-		cbb.order(ByteOrder.nativeOrder());
-		mColorBuffer = cbb.asFloatBuffer();
-		float[] VCol = new float[4];
+			mFrames[i] = new RenderFrame(mVertexCount, mClusterCount);
+		}
 		for (Vertex vertex : mMesh.mVertexList)
 		{
-			Utils.ColorIntToFloatVector(vertex.Color, VCol);
-			mColorBuffer.put(VCol);
+			int color = mMesh.GetDisplayColor(vertex.Index, vertex.Color);
+			for (int nRenderIndex = vertex.Index; nRenderIndex >= 0; nRenderIndex = mNextCopy[nRenderIndex])
+			{
+				PutCoord(nRenderIndex, vertex.Coord);
+				PutNormal(nRenderIndex, vertex.Normal);
+				PutColor(nRenderIndex, color);
+			}
+		}
+		for (int i = 0; i < FRAME_COUNT; i++)
+		{
+			if (i != mBack)
+			{
+				mFrames[i].CopyVertices(mFrames[mBack], 0, mVertexCount);
+			}
 		}
 
-		mFacesCount = mMesh.mFaceList.size();
 		ByteBuffer ibb = ByteBuffer.allocateDirect(mFacesCount * 3 * 2);// faces
 																		// are 3
 																		// vertex
@@ -83,115 +152,542 @@ public class RenderFaceGroup
 																		// )
 		ibb.order(ByteOrder.nativeOrder());
 		mIndexBuffer = ibb.asShortBuffer();
-		for (Face face : mMesh.mFaceList)
-		{
-			mIndexBuffer.put((short) face.E0.V0);
-			mIndexBuffer.put((short) face.E1.V0);
-			mIndexBuffer.put((short) face.E2.V0);
-		}
-
-		ByteBuffer nbb = ByteBuffer.allocateDirect(mVertexCount * 3 * 4);// normals
-																			// contains
-																			// 3
-																			// elem
-																			// (x,y,z)
-																			// in
-																			// float(4
-																			// bytes)
-		nbb.order(ByteOrder.nativeOrder());
-		mNormalBuffer = nbb.asFloatBuffer();
-		for (Vertex vertex : mMesh.mVertexList)
+		for (int nFace : SortFacesSpatially())
+		{
+			mIndexBuffer.put((short) corners[nFace * 3]);
+			mIndexBuffer.put((short) corners[nFace * 3 + 1]);
+			mIndexBuffer.put((short) corners[nFace * 3 + 2]);
+		}
+		BuildClusters();
+
+		mVertexVBO = new VertexBufferObject(GL11.GL_ARRAY_BUFFER, mFrames[mFront].mVertexData, VERTEX_STRIDE, 1, mVertexCount);
+		mIndexVBO = new VertexBufferObject(GL11.GL_ELEMENT_ARRAY_BUFFER, mIndexBuffer, 3, 2, mFacesCount);
+		mTexCoordVBO = new VertexBufferObject(GL11.GL_ARRAY_BUFFER, mTexCoordBuffer, 2, 4, mVertexCount);
+	}
+
+	// render vertex of each face corner, a mesh vertex gets one copy per other (u,v) given by its faces
+	private int[] SplitSeams(UVAtlas atlas)
+	{
+		int[] corners = new int[mFacesCount * 3];
+		boolean[] bAssigned = new boolean[mMeshVertexCount];
+		int nCapacity = mMeshVertexCount + mMeshVertexCount / 4 + 16;
+		int[] next = new int[nCapacity];
+		float[] uvs = new float[nCapacity * 2];
+		Arrays.fill(next, -1);
+
+		int nCount = mMeshVertexCount;
+		float[] faceUVs = new float[6];
+		for (int nFace = 0; nFace < mFacesCount; nFace++)
 		{
-			mNormalBuffer.put(vertex.Normal[0]);
-			mNormalBuffer.put(vertex.Normal[1]);
-			mNormalBuffer.put(vertex.Normal[2]);
-		}
-
-		// Beware memory consuming
-		ByteBuffer ndvbb = ByteBuffer.allocateDirect(mVertexCount * 2 * 3 * 4);// normals
-																				// contains
-																				// 3
-																				// elem
-																				// (x,y,z)
-																				// in
-																				// float(4
-																				// bytes)
-		ndvbb.order(ByteOrder.nativeOrder());
-		mDrawNormalVertexBuffer = ndvbb.asFloatBuffer();
+			Face face = mMesh.mFaceList.get(nFace);
+			atlas.GetFaceUVs(nFace, faceUVs);
+			for (int nCorner = 0; nCorner < 3; nCorner++)
+			{
+				int nVertex = nCorner == 0 ? face.E0.V0 : (nCorner == 1 ? face.E1.V0 : face.E2.V0);
+				float u = faceUVs[nCorner * 2];
+				float v = faceUVs[nCorner * 2 + 1];
+
+				int nRenderIndex = nVertex;
+				if (!bAssigned[nVertex])
+				{
+					bAssigned[nVertex] = true;
+					uvs[nVertex * 2] = u;
+					uvs[nVertex * 2 + 1] = v;
+				}
+				else
+				{
+					while (nRenderIndex >= 0 && (uvs[nRenderIndex * 2] != u || uvs[nRenderIndex * 2 + 1] != v))
+					{
+						nRenderIndex = next[nRenderIndex];
+					}
+					if (nRenderIndex < 0)
+					{
+						if (nCount == nCapacity)
+						{
+							nCapacity *= 2;
+							int[] grownNext = new int[nCapacity];
+							float[] grownUVs = new float[nCapacity * 2];
+							System.arraycopy(next, 0, grownNext, 0, nCount);
+							System.arraycopy(uvs, 0, grownUVs, 0, nCount * 2);
+							Arrays.fill(grownNext, nCount, nCapacity, -1);
+							next = grownNext;
+							uvs = grownUVs;
+						}
+						nRenderIndex = nCount++;
+						uvs[nRenderIndex * 2] = u;
+						uvs[nRenderIndex * 2 + 1] = v;
+						next[nRenderIndex] = next[nVertex];
+						next[nVertex] = nRenderIndex;
+					}
+				}
+				corners[nFace * 3 + nCorner] = nRenderIndex;
+			}
+		}
+
+		mVertexCount = nCount;
+		mNextCopy = new int[nCount];
+		System.arraycopy(next, 0, mNextCopy, 0, nCount);
+
+		ByteBuffer tbb = ByteBuffer.allocateDirect(nCount * 2 * 4);
+		tbb.order(ByteOrder.nativeOrder());
+		mTexCoordBuffer = tbb.asFloatBuffer();
+		mTexCoordBuffer.put(uvs, 0, nCount * 2);
+		mTexCoordBuffer.position(0);
+
+		return corners;
+	}
+
+	// face indices ordered by Morton code of centroid quantized on 10 bits per axis in mesh bounds
+	private int[] SortFacesSpatially()
+	{
+		float[] min = new float[] { Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE };
+		float[] max = new float[] { -Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE };
 		for (Vertex vertex : mMesh.mVertexList)
 		{
-			mDrawNormalVertexBuffer.put(vertex.Coord);
+			for (int i = 0; i < 3; i++)
+			{
+				min[i] = Math.min(min[i], vertex.Coord[i]);
+				max[i] = Math.max(max[i], vertex.Coord[i]);
+			}
+		}
 
-			mDrawNormalVertexBuffer.put(vertex.Coord[0] + vertex.Normal[0] * mNormalScaleFactor);
-			mDrawNormalVertexBuffer.put(vertex.Coord[1] + vertex.Normal[1] * mNormalScaleFactor);
-			mDrawNormalVertexBuffer.put(vertex.Coord[2] + vertex.Normal[2] * mNormalScaleFactor);
+		long[] keys = new long[mFacesCount];
+		for (int nFace = 0; nFace < mFacesCount; nFace++)
+		{
+			Face face = mMesh.mFaceList.get(nFace);
+			float[] a = mMesh.mVertexList.get(face.E0.V0).Coord;
+			float[] b = mMesh.mVertexList.get(face.E1.V0).Coord;
+			float[] c = mMesh.mVertexList.get(face.E2.V0).Coord;
+			int code = 0;
+			for (int i = 0; i < 3; i++)
+			{
+				float extent = max[i] - min[i];
+				float t = extent > 0 ? ((a[i] + b[i] + c[i]) / 3 - min[i]) / extent : 0;
+				code |= SpreadBits((int) (t * 1023)) << i;
+			}
+			keys[nFace] = ((long) code << 32) | nFace;
 		}
+		Arrays.sort(keys);
 
-		ByteBuffer ndibb = ByteBuffer.allocateDirect(mVertexCount * 2 * 2);// line
-																			// are
-																			// 2
-																			// elements
-																			// in
-																			// short
-																			// (
-																			// 2
-																			// bytes
-																			// )
-		ndibb.order(ByteOrder.nativeOrder());
-		mDrawNormalIndexBuffer = ndibb.asShortBuffer();
-		for (int i = 0; i < (mVertexCount * 2); i = i + 2)
+		int[] order = new int[mFacesCount];
+		for (int i = 0; i < mFacesCount; i++)
 		{
-			mDrawNormalIndexBuffer.put((short) i);
-			mDrawNormalIndexBuffer.put((short) (i + 1));
+			order[i] = (int) (keys[i] & 0xFFFFFFFFL);
 		}
+		return order;
 	}
 
-	public void draw(GL10 gl)
+	// 10 bits spread every 3 bits
+	private static int SpreadBits(int v)
 	{
-		synchronized (this)
+		v &= 0x3FF;
+		v = (v | (v << 16)) & 0x030000FF;
+		v = (v | (v << 8)) & 0x0300F00F;
+		v = (v | (v << 4)) & 0x030C30C3;
+		v = (v | (v << 2)) & 0x09249249;
+		return v;
+	}
+
+	// clusters of each vertex from sorted index buffer, a vertex is in a few neighbour clusters
+	private void BuildClusters()
+	{
+		mClusterSpheres = new float[mClusterCount * 4];
+		mClusterCones = new float[mClusterCount * 4];
+		mDirtyClusters = new long[(mClusterCount >> 6) + 1];
+
+		int[] lastCluster = new int[mVertexCount];
+		Arrays.fill(lastCluster, -1);
+		mVertexClusterStart = new int[mVertexCount + 1];
+		for (int i = 0; i < mFacesCount * 3; i++)
+		{
+			int nVertex = mIndexBuffer.get(i) & 0xFFFF;
+			int nCluster = i / 3 / CLUSTER_FACES;
+			if (lastCluster[nVertex] != nCluster)
+			{
+				lastCluster[nVertex] = nCluster;
+				mVertexClusterStart[nVertex + 1]++;
+			}
+		}
+		for (int i = 0; i < mVertexCount; i++)
 		{
-			// reinit position once here to avoid doing it in each update (but not
-			// great to do it here)
-			mVertexBuffer.position(0);
-			mColorBuffer.position(0);
-			mIndexBuffer.position(0);
-			mNormalBuffer.position(0);
+			mVertexClusterStart[i + 1] += mVertexClusterStart[i];
+		}
 
-			gl.glEnableClientState(GL10.GL_COLOR_ARRAY);
-			gl.glEnableClientState(GL10.GL_NORMAL_ARRAY);
+		mVertexClusters = new int[mVertexClusterStart[mVertexCount]];
+		int[] fill = new int[mVertexCount];
+		Arrays.fill(lastCluster, -1);
+		for (int i = 0; i < mFacesCount * 3; i++)
+		{
+			int nVertex = mIndexBuffer.get(i) & 0xFFFF;
+			int nCluster = i / 3 / CLUSTER_FACES;
+			if (lastCluster[nVertex] != nCluster)
+			{
+				lastCluster[nVertex] = nCluster;
+				mVertexClusters[mVertexClusterStart[nVertex] + fill[nVertex]++] = nCluster;
+			}
+		}
 
-			gl.glFrontFace(GL10.GL_CCW);// counter clock wise is specific to
-										// previous format
-			gl.glVertexPointer(3, GL10.GL_FLOAT, 0, mVertexBuffer);
-			gl.glColorPointer(4, GL10.GL_FLOAT, 0, mColorBuffer);
-			gl.glNormalPointer(GL10.GL_FLOAT, 0, mNormalBuffer);
+		for (int nCluster = 0; nCluster < mClusterCount; nCluster++)
+		{
+			IncrementalNormalUpdater.SetBit(mDirtyClusters, nCluster);
+		}
+	}
 
-			// Wireframe : use GL10.GL_LINES
-			gl.glDrawElements(GL10.GL_TRIANGLES, mFacesCount * 3, GL10.GL_UNSIGNED_SHORT, mIndexBuffer);
+	// writer side: changed vertex is to draw in back frame and to copy in other frames when they are taken back
+	private void MarkChanged(int nVertexIndex, boolean bMoved)
+	{
+		for (int i = 0; i < FRAME_COUNT; i++)
+		{
+			RenderFrame frame = mFrames[i];
+			boolean bBack = i == mBack;
+			DirtyRanges vertices = bBack ? frame.mChangedVertices : frame.mPendingVertices;
+			vertices.Mark(nVertexIndex);
+			if (bMoved)
+			{
+				long[] clusters = bBack ? frame.mChangedClusters : frame.mPendingClusters;
+				for (int j = mVertexClusterStart[nVertexIndex]; j < mVertexClusterStart[nVertexIndex + 1]; j++)
+				{
+					IncrementalNormalUpdater.SetBit(clusters, mVertexClusters[j]);
+				}
+			}
+		}
+		mbBackChanged = true;
+	}
+
+	// writer side, makes changes visible to the GL thread as one complete version then takes a frame back
+	// and brings it up to date. Nothing is done if back frame was not changed.
+	public void Publish()
+	{
+		if (!mbBackChanged)
+		{
+			return;
+		}
+		mbBackChanged = false;
+
+		RenderFrame published = mFrames[mBack];
+		published.mVersion = ++mWriteVersion;
+		mBack = mMiddle.getAndSet(mBack | FRESH) & INDEX_MASK;
+		mFrames[mBack].CatchUp(published);
+	}
+
+	// GL thread, latest published frame replaces the drawn one, its changes are merged in what remains to upload and refit
+	private void AcquireFront()
+	{
+		if ((mMiddle.get() & FRESH) == 0)
+		{
+			return;
+		}
+		mFront = mMiddle.getAndSet(mFront) & INDEX_MASK;
+
+		RenderFrame front = mFrames[mFront];
+		mVertexVBO.SetData(front.mVertexData);
+		mVertexVBO.MarkDirty(front.mChangedVertices);
+		if (mNormalLinesDirty != null)
+		{
+			mNormalLinesDirty.Merge(front.mChangedVertices);
+		}
+		front.mChangedVertices.Clear();
+		for (int i = 0; i < mDirtyClusters.length; i++)
+		{
+			mDirtyClusters[i] |= front.mChangedClusters[i];
+			front.mChangedClusters[i] = 0;
+		}
+	}
+
+	// version of the frame drawn, GL thread
+	public long getDrawnVersion()
+	{
+		return mFrames[mFront].mVersion;
+	}
+
+	// bounds recomputed from drawn frame for clusters whose vertices moved
+	private void RefitClusters()
+	{
+		for (int nWord = 0; nWord < mDirtyClusters.length; nWord++)
+		{
+			long word = mDirtyClusters[nWord];
+			while (word != 0)
+			{
+				RefitCluster((nWord << 6) + Long.numberOfTrailingZeros(word));
+				word &= word - 1;
+			}
+			mDirtyClusters[nWord] = 0;
+		}
+	}
+
+	private void RefitCluster(int nCluster)
+	{
+		int nFirst = nCluster * CLUSTER_FACES * 3;
+		int nEnd = Math.min((nCluster + 1) * CLUSTER_FACES, mFacesCount) * 3;
+
+		float[] a = mA;
+		float[] b = mB;
+		float[] c = mC;
+		float[] min = mMin;
+		float[] max = mMax;
+		float[] axis = mAxis;
+		Arrays.fill(min, Float.MAX_VALUE);
+		Arrays.fill(max, -Float.MAX_VALUE);
+		MatrixUtils.zero(axis);
+		for (int i = nFirst; i < nEnd; i += 3)
+		{
+			GetCoord(mIndexBuffer.get(i) & 0xFFFF, a);
+			GetCoord(mIndexBuffer.get(i + 1) & 0xFFFF, b);
+			GetCoord(mIndexBuffer.get(i + 2) & 0xFFFF, c);
+			for (int j = 0; j < 3; j++)
+			{
+				min[j] = Math.min(min[j], Math.min(a[j], Math.min(b[j], c[j])));
+				max[j] = Math.max(max[j], Math.max(a[j], Math.max(b[j], c[j])));
+			}
+			if (FaceNormal(a, b, c))
+			{
+				MatrixUtils.plus(axis, a, axis);
+			}
+		}
+
+		int nOffset = nCluster * 4;
+		float radius = 0;
+		for (int j = 0; j < 3; j++)
+		{
+			mClusterSpheres[nOffset + j] = (min[j] + max[j]) / 2;
+		}
+		for (int i = nFirst; i < nEnd; i++)
+		{
+			GetCoord(mIndexBuffer.get(i) & 0xFFFF, a);
+			float dx = a[0] - mClusterSpheres[nOffset];
+			float dy = a[1] - mClusterSpheres[nOffset + 1];
+			float dz = a[2] - mClusterSpheres[nOffset + 2];
+			radius = Math.max(radius, dx * dx + dy * dy + dz * dz);
+		}
+		mClusterSpheres[nOffset + 3] = (float) Math.sqrt(radius);
 
-			gl.glDisableClientState(GL10.GL_NORMAL_ARRAY);
-			gl.glDisableClientState(GL10.GL_COLOR_ARRAY);
+		// cone around mean normal, widest face gives the cutoff
+		float cutoff = -1;
+		if (MatrixUtils.magnitude(axis) > 0)
+		{
+			MatrixUtils.normalize(axis);
+			cutoff = 1;
+			for (int i = nFirst; i < nEnd; i += 3)
+			{
+				GetCoord(mIndexBuffer.get(i) & 0xFFFF, a);
+				GetCoord(mIndexBuffer.get(i + 1) & 0xFFFF, b);
+				GetCoord(mIndexBuffer.get(i + 2) & 0xFFFF, c);
+				if (FaceNormal(a, b, c))
+				{
+					cutoff = Math.min(cutoff, MatrixUtils.dot(a, axis));
+				}
+			}
 		}
+		System.arraycopy(axis, 0, mClusterCones, nOffset, 3);
+		mClusterCones[nOffset + 3] = cutoff;
+	}
+
+	private void GetCoord(int nVertexIndex, float[] res)
+	{
+		ByteBuffer data = mFrames[mFront].mVertexData;
+		int nOffset = nVertexIndex * VERTEX_STRIDE;
+		res[0] = data.getFloat(nOffset);
+		res[1] = data.getFloat(nOffset + 4);
+		res[2] = data.getFloat(nOffset + 8);
 	}
 
-	public void drawNormals(GL10 gl)
+	// unit normal of counter clockwise triangle written in a, false if degenerate
+	private boolean FaceNormal(float[] a, float[] b, float[] c)
 	{
-		synchronized (this)
+		MatrixUtils.minus(b, a, mU);
+		MatrixUtils.minus(c, a, mV);
+		MatrixUtils.cross(mU, mV, a);
+		if (MatrixUtils.magnitude(a) == 0)
 		{
-			mDrawNormalIndexBuffer.position(0);
-			mDrawNormalVertexBuffer.position(0);
+			return false;
+		}
+		MatrixUtils.normalize(a);
+		return true;
+	}
 
-			gl.glFrontFace(GL10.GL_CCW);// counter clock wise is specific to
-										// previous format
-			gl.glVertexPointer(3, GL10.GL_FLOAT, 0, mDrawNormalVertexBuffer);
+	public int getClusterCount()
+	{
+		return mClusterCount;
+	}
 
-			gl.glDrawElements(GL10.GL_LINES, mVertexCount * 2, GL10.GL_UNSIGNED_SHORT, mDrawNormalIndexBuffer);
+	// changes since last frame are sent once, false if buffer objects are not available.
+	// Texture coordinates are only sent once the mesh is painted.
+	private boolean UploadBuffers(GL11 gl, boolean bTextured)
+	{
+		mGLAdapter.setGL(gl);
+		mVertexVBO.Upload(mGLAdapter);
+		mIndexVBO.Upload(mGLAdapter);
+		boolean bRes = mVertexVBO.getBufferID() > 0 && mIndexVBO.getBufferID() > 0;
+		if (bTextured)
+		{
+			mTexCoordVBO.Upload(mGLAdapter);
+			bRes &= mTexCoordVBO.getBufferID() > 0;
 		}
+		return bRes;
 	}
 
-	public FloatBuffer getColorBuffer()
+	// GL context was lost, buffer objects will be recreated
+	public void InvalidateGLResources()
 	{
-		return mColorBuffer;
+		mVertexVBO.Invalidate();
+		mIndexVBO.Invalidate();
+		mTexCoordVBO.Invalidate();
+		mbVBOSupported = null;
+	}
+
+	// GL thread, group is not drawn anymore
+	public void ReleaseGLResources(GL10 gl)
+	{
+		if (gl instanceof GL11)
+		{
+			mGLAdapter.setGL((GL11) gl);
+			mVertexVBO.Release(mGLAdapter);
+			mIndexVBO.Release(mGLAdapter);
+			mTexCoordVBO.Release(mGLAdapter);
+		}
+	}
+
+	// clusters rejected by culler are skipped, consecutive visible clusters are drawn in one call. All drawn if culler is null.
+	// Texture coordinates are given if bTextured, texture is bound by caller.
+	public void draw(GL10 gl, ClusterCuller culler, boolean bTextured)
+	{
+		AcquireFront();
+
+		if (culler != null)
+		{
+			RefitClusters();
+		}
+
+		gl.glEnableClientState(GL10.GL_COLOR_ARRAY);
+		gl.glEnableClientState(GL10.GL_NORMAL_ARRAY);
+		if (bTextured)
+		{
+			gl.glEnableClientState(GL10.GL_TEXTURE_COORD_ARRAY);
+		}
+
+		gl.glFrontFace(GL10.GL_CCW);// counter clock wise is specific to
+									// previous format
+		if (mbVBOSupported == null)
+		{
+			mbVBOSupported = VertexBufferObject.IsSupported(gl);
+		}
+		boolean bUseVBO = mbVBOSupported && UploadBuffers((GL11) gl, bTextured);
+		if (bUseVBO)
+		{
+			GL11 gl11 = (GL11) gl;
+			if (bTextured)
+			{
+				mTexCoordVBO.Bind(mGLAdapter);
+				gl11.glTexCoordPointer(2, GL10.GL_FLOAT, 0, 0);
+			}
+			mVertexVBO.Bind(mGLAdapter);
+			gl11.glVertexPointer(3, GL10.GL_FLOAT, VERTEX_STRIDE, 0);
+			gl11.glNormalPointer(GL10.GL_BYTE, VERTEX_STRIDE, NORMAL_OFFSET);
+			gl11.glColorPointer(4, GL10.GL_UNSIGNED_BYTE, VERTEX_STRIDE, COLOR_OFFSET);
+			mIndexVBO.Bind(mGLAdapter);
+		}
+		else
+		{
+			// pointer is taken at buffer position
+			ByteBuffer data = mFrames[mFront].mVertexData;
+			data.position(0);
+			gl.glVertexPointer(3, GL10.GL_FLOAT, VERTEX_STRIDE, data);
+			data.position(NORMAL_OFFSET);
+			gl.glNormalPointer(GL10.GL_BYTE, VERTEX_STRIDE, data);
+			data.position(COLOR_OFFSET);
+			gl.glColorPointer(4, GL10.GL_UNSIGNED_BYTE, VERTEX_STRIDE, data);
+			data.position(0);
+			if (bTextured)
+			{
+				gl.glTexCoordPointer(2, GL10.GL_FLOAT, 0, mTexCoordBuffer);
+			}
+		}
+
+		int nCluster = 0;
+		while (nCluster < mClusterCount)
+		{
+			int nFirst = nCluster;
+			while (nCluster < mClusterCount && (culler == null || culler.IsVisible(mClusterSpheres, nCluster * 4, mClusterCones, nCluster * 4)))
+			{
+				nCluster++;
+			}
+			if (nCluster > nFirst)
+			{
+				DrawFaces(gl, bUseVBO, nFirst * CLUSTER_FACES, Math.min(nCluster * CLUSTER_FACES, mFacesCount));
+			}
+			else
+			{
+				nCluster++;// culled
+			}
+		}
+
+		if (bUseVBO)
+		{
+			// other objects are drawn from client arrays
+			((GL11) gl).glBindBuffer(GL11.GL_ARRAY_BUFFER, 0);
+			((GL11) gl).glBindBuffer(GL11.GL_ELEMENT_ARRAY_BUFFER, 0);
+		}
+		mIndexBuffer.position(0);
+
+		if (bTextured)
+		{
+			gl.glDisableClientState(GL10.GL_TEXTURE_COORD_ARRAY);
+		}
+		gl.glDisableClientState(GL10.GL_NORMAL_ARRAY);
+		gl.glDisableClientState(GL10.GL_COLOR_ARRAY);
+	}
+
+	// faces [nFirstFace;nEndFace[ of the sorted index buffer
+	private void DrawFaces(GL10 gl, boolean bUseVBO, int nFirstFace, int nEndFace)
+	{
+		int nIndexCount = (nEndFace - nFirstFace) * 3;
+		if (bUseVBO)
+		{
+			((GL11) gl).glDrawElements(GL10.GL_TRIANGLES, nIndexCount, GL10.GL_UNSIGNED_SHORT, nFirstFace * 3 * 2);
+		}
+		else
+		{
+			// Wireframe : use GL10.GL_LINES
+			mIndexBuffer.position(nFirstFace * 3);
+			gl.glDrawElements(GL10.GL_TRIANGLES, nIndexCount, GL10.GL_UNSIGNED_SHORT, mIndexBuffer);
+		}
+	}
+
+	// GL thread after draw, normal lines of vertices changed since last call are rewritten, all if bAll or first call
+	void UpdateNormalLines(FloatBuffer lines, int nFirstLine, float length, boolean bAll)
+	{
+		if (mNormalLinesDirty == null)
+		{
+			mNormalLinesDirty = new DirtyRanges(mVertexCount);
+			bAll = true;
+		}
+		if (bAll)
+		{
+			mNormalLinesDirty.MarkAll();
+		}
+		mNormalLinesWriter.mLines = lines;
+		mNormalLinesWriter.mFirstLine = nFirstLine;
+		mNormalLinesWriter.mLength = length;
+		mNormalLinesDirty.Flush(mNormalLinesWriter);
+		mNormalLinesWriter.mLines = null;
+	}
+
+	// debug display turned off, GL thread
+	void ReleaseNormalLines()
+	{
+		mNormalLinesDirty = null;
+	}
+
+	// render vertices, seam copies included
+	public int getVertexCount()
+	{
+		return mVertexCount;
+	}
+
+	// frame being drawn, GL thread only
+	public ByteBuffer getVertexData()
+	{
+		return mFrames[mFront].mVertexData;
 	}
 
 	public ShortBuffer getIndexBuffer()
@@ -199,52 +695,87 @@ public class RenderFaceGroup
 		return mIndexBuffer;
 	}
 
-	public FloatBuffer getNormalBuffer()
+	// absolute writes in back frame, buffer position is not used
+	private void PutCoord(int nVertexIndex, float[] coord)
 	{
-		return mNormalBuffer;
+		PutCoord(nVertexIndex, coord, 0);
 	}
 
-	public FloatBuffer getVertexBuffer()
+	private void PutCoord(int nVertexIndex, float[] coords, int nCoordOffset)
 	{
-		return mVertexBuffer;
+		ByteBuffer data = mFrames[mBack].mVertexData;
+		int nOffset = nVertexIndex * VERTEX_STRIDE;
+		data.putFloat(nOffset, coords[nCoordOffset]);
+		data.putFloat(nOffset + 4, coords[nCoordOffset + 1]);
+		data.putFloat(nOffset + 8, coords[nCoordOffset + 2]);
 	}
 
+	private void PutNormal(int nVertexIndex, float[] normal)
+	{
+		PutNormal(nVertexIndex, normal, 0);
+	}
+
+	// unit normal to signed normalized bytes
+	private void PutNormal(int nVertexIndex, float[] normals, int nNormalOffset)
+	{
+		ByteBuffer data = mFrames[mBack].mVertexData;
+		int nOffset = nVertexIndex * VERTEX_STRIDE + NORMAL_OFFSET;
+		data.put(nOffset, (byte) Math.round(normals[nNormalOffset] * NORMAL_SCALE));
+		data.put(nOffset + 1, (byte) Math.round(normals[nNormalOffset + 1] * NORMAL_SCALE));
+		data.put(nOffset + 2, (byte) Math.round(normals[nNormalOffset + 2] * NORMAL_SCALE));
+	}
+
+	// ARGB int to RGBA bytes
+	private void PutColor(int nVertexIndex, int color)
+	{
+		ByteBuffer data = mFrames[mBack].mVertexData;
+		int nOffset = nVertexIndex * VERTEX_STRIDE + COLOR_OFFSET;
+		data.put(nOffset, (byte) (color >> 16));
+		data.put(nOffset + 1, (byte) (color >> 8));
+		data.put(nOffset + 2, (byte) color);
+		data.put(nOffset + 3, (byte) (color >>> 24));
+	}
+
+	// Update methods are called from the mesh writer only with mesh vertex indices, changes are drawn after next Publish
 	public void UpdateVertexValue(int nVertexIndex, float[] val)
 	{
-		synchronized (this)
+		for (int nRenderIndex = nVertexIndex; nRenderIndex >= 0; nRenderIndex = mNextCopy[nRenderIndex])
 		{
-			mVertexBuffer.position(nVertexIndex * 3);
-			mVertexBuffer.put(val, 0, 3);
+			PutCoord(nRenderIndex, val);
+			MarkChanged(nRenderIndex, true);
 		}
 	}
 
 	public void UpdateVertexValue(int nVertexIndex, float[] val, float[] normal)
 	{
-		synchronized (this)
+		for (int nRenderIndex = nVertexIndex; nRenderIndex >= 0; nRenderIndex = mNextCopy[nRenderIndex])
 		{
-			mVertexBuffer.position(nVertexIndex * 3);
-			mVertexBuffer.put(val, 0, 3);
-
-			mNormalBuffer.position(nVertexIndex * 3);
-			mNormalBuffer.put(normal, 0, 3);
+			PutCoord(nRenderIndex, val);
+			PutNormal(nRenderIndex, normal);
+			MarkChanged(nRenderIndex, true);
+		}
+	}
 
-			// slow, activated only for debug
-			// mDrawNormalVertexBuffer.position(nVertexIndex*2*3);
-			// mDrawNormalVertexBuffer.put(val);
-			// mDrawNormalVertexBuffer.put(val[0]+normal[0]*mNormalScaleFactor);
-			// mDrawNormalVertexBuffer.put(val[1]+normal[1]*mNormalScaleFactor);
-			// mDrawNormalVertexBuffer.put(val[2]+normal[2]*mNormalScaleFactor);
+	// values packed in the order of sorted indices, sorted order keeps dirty chunk ranges tight
+	public void UpdateVertexValues(int[] sortedIndices, int nCount, float[] coords, float[] normals)
+	{
+		for (int i = 0; i < nCount; i++)
+		{
+			for (int nRenderIndex = sortedIndices[i]; nRenderIndex >= 0; nRenderIndex = mNextCopy[nRenderIndex])
+			{
+				PutCoord(nRenderIndex, coords, i * 3);
+				PutNormal(nRenderIndex, normals, i * 3);
+				MarkChanged(nRenderIndex, true);
+			}
 		}
 	}
 
 	public void UpdateVertexColor(int nVertexIndex, int color)
 	{
-		synchronized (this)
+		for (int nRenderIndex = nVertexIndex; nRenderIndex >= 0; nRenderIndex = mNextCopy[nRenderIndex])
 		{
-			mColorBuffer.position(nVertexIndex * 4);
-			float[] VCol = new float[4];
-			Utils.ColorIntToFloatVector(color, VCol);
-			mColorBuffer.put(VCol, 0, 4);
+			PutColor(nRenderIndex, color);
+			MarkChanged(nRenderIndex, false);
 		}
 	}
 }
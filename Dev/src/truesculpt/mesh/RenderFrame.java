@@ -0,0 +1,67 @@
+package truesculpt.mesh;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// One copy of the interleaved vertex data of a render group. A frame is owned by a single thread at a time,
+// the mesh writer fills it, then it is published and the GL thread draws it, ownership passes with an atomic swap.
+class RenderFrame implements DirtyRanges.IRangeUploader
+{
+	final ByteBuffer mVertexData;
+	long mVersion = 0;
+
+	// changes since this frame was last drawn, consumed by the GL thread when it takes the frame
+	final DirtyRanges mChangedVertices;
+	final long[] mChangedClusters;
+
+	// writer only: changes made in other frames since this one was last written, copied when it is taken back
+	final DirtyRanges mPendingVertices;
+	final long[] mPendingClusters;
+	private final ByteBuffer mCopyView;
+	private RenderFrame mCopySource = null;// only set during catch up
+
+	RenderFrame(int nVertexCount, int nClusterCount)
+	{
+		mVertexData = ByteBuffer.allocateDirect(nVertexCount * RenderFaceGroup.VERTEX_STRIDE);
+		mVertexData.order(ByteOrder.nativeOrder());
+		mCopyView = mVertexData.duplicate();
+
+		mChangedVertices = new DirtyRanges(nVertexCount);
+		mPendingVertices = new DirtyRanges(nVertexCount);
+		mChangedClusters = new long[(nClusterCount >> 6) + 1];
+		mPendingClusters = new long[(nClusterCount >> 6) + 1];
+	}
+
+	// bytes of [nFirst;nFirst+nCount[ vertices from source frame, positions of drawn buffers are not touched
+	void CopyVertices(RenderFrame source, int nFirst, int nCount)
+	{
+		ByteBuffer src = source.mCopyView;
+		src.limit((nFirst + nCount) * RenderFaceGroup.VERTEX_STRIDE);
+		src.position(nFirst * RenderFaceGroup.VERTEX_STRIDE);
+		mCopyView.position(nFirst * RenderFaceGroup.VERTEX_STRIDE);
+		mCopyView.put(src);
+		src.clear();
+		mCopyView.clear();
+	}
+
+	// brings this frame to the state of source, pending changes become changes to draw
+	void CatchUp(RenderFrame source)
+	{
+		mCopySource = source;
+		mPendingVertices.Flush(this);
+		mCopySource = null;
+		for (int i = 0; i < mPendingClusters.length; i++)
+		{
+			mChangedClusters[i] |= mPendingClusters[i];
+			mPendingClusters[i] = 0;
+		}
+		mVersion = source.mVersion;
+	}
+
+	@Override
+	public void Upload(int nFirstElement, int nElementCount)
+	{
+		CopyVertices(mCopySource, nFirstElement, nElementCount);
+		mChangedVertices.MarkRange(nFirstElement, nElementCount);
+	}
+}
@@ -0,0 +1,152 @@
+package truesculpt.mesh;
+
+// Displacement layer stored sparsely, sorted vertex indices with packed (x,y,z) offsets.
+// Vertex coords are the base shape plus the sum of all layer offsets scaled by their effective weight.
+public class SculptLayer
+{
+	private String mName;
+	private float mWeight = 1.0f;
+	private boolean mbVisible = true;
+
+	private int[] mIndices = new int[0];
+	private float[] mOffsets = new float[0];
+	private int mCount = 0;
+
+	public SculptLayer(String name)
+	{
+		mName = name;
+	}
+
+	public String getName()
+	{
+		return mName;
+	}
+
+	public void setName(String name)
+	{
+		mName = name;
+	}
+
+	public float getWeight()
+	{
+		return mWeight;
+	}
+
+	public boolean isVisible()
+	{
+		return mbVisible;
+	}
+
+	// weight used in coords, 0 if hidden
+	public float getEffectiveWeight()
+	{
+		return mbVisible ? mWeight : 0;
+	}
+
+	// mesh coords are not changed, use Mesh.SetLayerWeight
+	void setWeight(float weight)
+	{
+		mWeight = weight;
+	}
+
+	void setVisible(boolean bVisible)
+	{
+		mbVisible = bVisible;
+	}
+
+	// number of touched vertices
+	public int getCount()
+	{
+		return mCount;
+	}
+
+	public int getIndex(int i)
+	{
+		return mIndices[i];
+	}
+
+	public void GetOffset(int i, float[] res)
+	{
+		int nOffset = i * 3;
+		res[0] = mOffsets[nOffset];
+		res[1] = mOffsets[nOffset + 1];
+		res[2] = mOffsets[nOffset + 2];
+	}
+
+	// position in layer arrays, -1 if vertex is not touched by this layer
+	public int Find(int nVertexIndex)
+	{
+		int nLow = 0;
+		int nHigh = mCount - 1;
+		while (nLow <= nHigh)
+		{
+			int nMid = (nLow + nHigh) >>> 1;
+			int nCurr = mIndices[nMid];
+			if (nCurr < nVertexIndex)
+			{
+				nLow = nMid + 1;
+			}
+			else if (nCurr > nVertexIndex)
+			{
+				nHigh = nMid - 1;
+			}
+			else
+			{
+				return nMid;
+			}
+		}
+		return -1;
+	}
+
+	// adds scale * offsets of sorted indices, linear merge of both sorted arrays, entries back to zero are removed
+	public void AddOffsets(int[] sortedIndices, float[] offsets, int nCount, float scale)
+	{
+		int[] newIndices = new int[mCount + nCount];
+		float[] newOffsets = new float[(mCount + nCount) * 3];
+		int nNewCount = 0;
+
+		int i = 0;
+		int j = 0;
+		while (i < mCount || j < nCount)
+		{
+			int nOut = nNewCount * 3;
+			if (j >= nCount || (i < mCount && mIndices[i] < sortedIndices[j]))
+			{
+				newIndices[nNewCount] = mIndices[i];
+				System.arraycopy(mOffsets, i * 3, newOffsets, nOut, 3);
+				i++;
+			}
+			else
+			{
+				newIndices[nNewCount] = sortedIndices[j];
+				newOffsets[nOut] = offsets[j * 3] * scale;
+				newOffsets[nOut + 1] = offsets[j * 3 + 1] * scale;
+				newOffsets[nOut + 2] = offsets[j * 3 + 2] * scale;
+				if (i < mCount && mIndices[i] == sortedIndices[j])
+				{
+					newOffsets[nOut] += mOffsets[i * 3];
+					newOffsets[nOut + 1] += mOffsets[i * 3 + 1];
+					newOffsets[nOut + 2] += mOffsets[i * 3 + 2];
+					i++;
+				}
+				j++;
+			}
+
+			if (newOffsets[nOut] != 0 || newOffsets[nOut + 1] != 0 || newOffsets[nOut + 2] != 0)
+			{
+				nNewCount++;
+			}
+		}
+
+		mIndices = newIndices;
+		mOffsets = newOffsets;
+		mCount = nNewCount;
+	}
+
+	public void Clear()
+	{
+		mIndices = new int[0];
+		mOffsets = new float[0];
+		mCount = 0;
+	}
+}
@@ -0,0 +1,199 @@
+package truesculpt.mesh;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import truesculpt.utils.ParallelLoop;
+
+// Taubin lambda/mu smoothing of a region, neighbours outside of the region are fixed
+// Jacobi sweeps on double buffered packed positions, so result does not depend on vertex order
+public class SmoothingEngine
+{
+	public static final float DEFAULT_LAMBDA = 0.5f;
+	public static final float DEFAULT_MU = -0.53f;// slightly bigger than lambda to avoid shrinkage
+
+	private final int PARALLEL_MIN_VERTICES = 4096;
+
+	// position of a vertex as seen by the smoothing (coord or not yet applied value)
+	public interface IPositionSource
+	{
+		public void GetPosition(Vertex vertex, float[] res);
+	}
+
+	private int mVertexCount = 0;// smoothed vertices, first of local indices
+	private int mTotalCount = 0;// smoothed and fixed neighbours
+
+	private int[] mGlobalToLocal = new int[0];
+	private int[] mLocalToGlobal = new int[0];
+	private int[] mRingStart = new int[1];
+	private int[] mRingIndices = new int[0];
+	private float[] mWeights = new float[0];
+	private float[] mPosA = new float[0];
+	private float[] mPosB = new float[0];
+
+	private final float[] temp = new float[3];
+
+	private final SweepTask mSweepTask = new SweepTask();
+
+	private class SweepTask implements ParallelLoop.IRangeTask
+	{
+		float[] src;
+		float[] dst;
+		float factor;
+
+		@Override
+		public void Run(int nStart, int nEnd)
+		{
+			Sweep(src, dst, factor, nStart, nEnd);
+		}
+	}
+
+	// builds local indexing, one ring index arrays and packed positions, returns number of smoothed vertices
+	public int Setup(Mesh mesh, Collection<Vertex> region, IPositionSource source)
+	{
+		int nMeshVertexCount = mesh.mVertexList.size();
+		if (mGlobalToLocal.length != nMeshVertexCount)
+		{
+			mGlobalToLocal = new int[nMeshVertexCount];
+			Arrays.fill(mGlobalToLocal, -1);
+			mLocalToGlobal = new int[nMeshVertexCount];
+		}
+
+		mVertexCount = region.size();
+		if (mRingStart.length < mVertexCount + 1)
+		{
+			mRingStart = new int[mVertexCount + 1];
+			mWeights = new float[mVertexCount];
+		}
+
+		int nLocal = 0;
+		for (Vertex vertex : region)
+		{
+			mGlobalToLocal[vertex.Index] = nLocal;
+			mLocalToGlobal[nLocal] = vertex.Index;
+			mWeights[nLocal] = 1;
+			nLocal++;
+		}
+		mTotalCount = nLocal;
+
+		int nCursor = 0;
+		for (int i = 0; i < mVertexCount; i++)
+		{
+			Vertex vertex = mesh.mVertexList.get(mLocalToGlobal[i]);
+			mRingStart[i] = nCursor;
+			if (mRingIndices.length < nCursor + vertex.OutLinkedEdges.size())
+			{
+				int[] ringIndices = new int[(nCursor + vertex.OutLinkedEdges.size()) * 2];
+				System.arraycopy(mRingIndices, 0, ringIndices, 0, nCursor);
+				mRingIndices = ringIndices;
+			}
+			for (HalfEdge edge : vertex.OutLinkedEdges)
+			{
+				int nOther = mGlobalToLocal[edge.V1];
+				if (nOther < 0)
+				{
+					// fixed neighbour
+					nOther = mTotalCount++;
+					mGlobalToLocal[edge.V1] = nOther;
+					mLocalToGlobal[nOther] = edge.V1;
+				}
+				mRingIndices[nCursor++] = nOther;
+			}
+		}
+		mRingStart[mVertexCount] = nCursor;
+
+		if (mPosA.length < mTotalCount * 3)
+		{
+			mPosA = new float[mTotalCount * 3 * 2];
+			mPosB = new float[mTotalCount * 3 * 2];
+		}
+		for (int i = 0; i < mTotalCount; i++)
+		{
+			source.GetPosition(mesh.mVertexList.get(mLocalToGlobal[i]), temp);
+			int nOffset = i * 3;
+			mPosA[nOffset] = mPosB[nOffset] = temp[0];
+			mPosA[nOffset + 1] = mPosB[nOffset + 1] = temp[1];
+			mPosA[nOffset + 2] = mPosB[nOffset + 2] = temp[2];
+		}
+
+		// global to local is only needed during setup, cleaned for next call
+		for (int i = 0; i < mTotalCount; i++)
+		{
+			mGlobalToLocal[mLocalToGlobal[i]] = -1;
+		}
+
+		return mVertexCount;
+	}
+
+	public int GetVertexIndex(int nLocal)
+	{
+		return mLocalToGlobal[nLocal];
+	}
+
+	// [0;1] amount of smoothing for this vertex
+	public void SetWeight(int nLocal, float weight)
+	{
+		mWeights[nLocal] = weight;
+	}
+
+	// nIterations lambda/mu pairs, results stay in first buffer
+	public void Run(int nIterations, float lambda, float mu)
+	{
+		for (int i = 0; i < nIterations; i++)
+		{
+			RunSweep(mPosA, mPosB, lambda);
+			RunSweep(mPosB, mPosA, mu);
+		}
+	}
+
+	public void GetResult(int nLocal, float[] res)
+	{
+		int nOffset = nLocal * 3;
+		res[0] = mPosA[nOffset];
+		res[1] = mPosA[nOffset + 1];
+		res[2] = mPosA[nOffset + 2];
+	}
+
+	private void RunSweep(float[] src, float[] dst, float factor)
+	{
+		mSweepTask.src = src;
+		mSweepTask.dst = dst;
+		mSweepTask.factor = factor;
+		ParallelLoop.Run(mVertexCount, PARALLEL_MIN_VERTICES, mSweepTask);
+	}
+
+	// umbrella operator, reads only src so sweeps can be split between threads
+	private void Sweep(float[] src, float[] dst, float factor, int nStart, int nEnd)
+	{
+		for (int i = nStart; i < nEnd; i++)
+		{
+			int nRingStart = mRingStart[i];
+			int nRingEnd = mRingStart[i + 1];
+			int nOffset = i * 3;
+			if (nRingEnd == nRingStart)
+			{
+				dst[nOffset] = src[nOffset];
+				dst[nOffset + 1] = src[nOffset + 1];
+				dst[nOffset + 2] = src[nOffset + 2];
+				continue;
+			}
+
+			float x = 0;
+			float y = 0;
+			float z = 0;
+			for (int j = nRingStart; j < nRingEnd; j++)
+			{
+				int nOther = mRingIndices[j] * 3;
+				x += src[nOther];
+				y += src[nOther + 1];
+				z += src[nOther + 2];
+			}
+			float inv = 1.0f / (nRingEnd - nRingStart);
+			float w = factor * mWeights[i];
+
+			dst[nOffset] = src[nOffset] + w * (x * inv - src[nOffset]);
+			dst[nOffset + 1] = src[nOffset + 1] + w * (y * inv - src[nOffset + 1]);
+			dst[nOffset + 2] = src[nOffset + 2] + w * (z * inv - src[nOffset + 2]);
+		}
+	}
+}
@@ -0,0 +1,299 @@
+package truesculpt.mesh;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+// Automatic texture coordinates, faces are grouped in charts by dominant normal axis, each chart is projected
+// on the plane of its axis and charts are packed on shelves in the unit square
+public class UVAtlas
+{
+	private final float PADDING_TEXELS = 2;// gap between charts, brush splats are dilated by one texel
+	private final float GROW_FACTOR = 1.1f;
+
+	private final Mesh mMesh;
+	private final int mTextureSize;
+
+	private float[] mFaceUVs = null;// 3 corners (u,v) per face, same order as E0.V0, E1.V0, E2.V0
+	private int[] mFaceChart = null;
+	private int mChartCount = 0;
+
+	// per chart data in projected world units
+	private int[] mChartAxis = null;
+	private float[] mChartMin = null;
+	private float[] mChartSize = null;
+	private float[] mChartOffset = null;
+	private float mScale = 1;// world to uv, same for all charts to keep a constant texel density
+
+	private final float[] u = new float[3];
+	private final float[] v = new float[3];
+	private final float[] n = new float[3];
+
+	public UVAtlas(Mesh mesh, int nTextureSize)
+	{
+		mMesh = mesh;
+		mTextureSize = nTextureSize;
+
+		Build();
+	}
+
+	// texture coordinates read with the mesh, 3 corners (u,v) per face, charts are not known
+	public UVAtlas(Mesh mesh, int nTextureSize, float[] faceUVs)
+	{
+		mMesh = mesh;
+		mTextureSize = nTextureSize;
+		mFaceUVs = faceUVs;
+	}
+
+	private void Build()
+	{
+		int nFaceCount = mMesh.mFaceList.size();
+		mFaceUVs = new float[nFaceCount * 6];
+		mFaceChart = new int[nFaceCount];
+
+		SegmentCharts();
+		ComputeChartBounds();
+		PackCharts();
+		ComputeFaceUVs();
+	}
+
+	// 0..5 for +X,-X,+Y,-Y,+Z,-Z
+	private int GetDominantAxis(Face face)
+	{
+		float[] A = mMesh.mVertexList.get(face.E0.V0).Coord;
+		float[] B = mMesh.mVertexList.get(face.E1.V0).Coord;
+		float[] C = mMesh.mVertexList.get(face.E2.V0).Coord;
+		u[0] = B[0] - A[0];
+		u[1] = B[1] - A[1];
+		u[2] = B[2] - A[2];
+		v[0] = C[0] - A[0];
+		v[1] = C[1] - A[1];
+		v[2] = C[2] - A[2];
+		n[0] = u[1] * v[2] - u[2] * v[1];
+		n[1] = u[2] * v[0] - u[0] * v[2];
+		n[2] = u[0] * v[1] - u[1] * v[0];
+
+		int nAxis = 0;
+		for (int i = 1; i < 3; i++)
+		{
+			if (Math.abs(n[i]) > Math.abs(n[nAxis]))
+			{
+				nAxis = i;
+			}
+		}
+		return nAxis * 2 + (n[nAxis] < 0 ? 1 : 0);
+	}
+
+	// flood fill across neighbour edges while dominant axis stays the same, normals of a chart stay in a 55 deg cone
+	// around its axis so projection keeps triangle orientation
+	private void SegmentCharts()
+	{
+		int nFaceCount = mMesh.mFaceList.size();
+		int[] faceAxis = new int[nFaceCount];
+		for (int i = 0; i < nFaceCount; i++)
+		{
+			faceAxis[i] = GetDominantAxis(mMesh.mFaceList.get(i));
+		}
+
+		Arrays.fill(mFaceChart, -1);
+		int[] stack = new int[nFaceCount];
+		int[] chartAxis = new int[nFaceCount];
+		mChartCount = 0;
+		for (int nSeed = 0; nSeed < nFaceCount; nSeed++)
+		{
+			if (mFaceChart[nSeed] >= 0)
+			{
+				continue;
+			}
+
+			int nChart = mChartCount++;
+			int nAxis = faceAxis[nSeed];
+			chartAxis[nChart] = nAxis;
+
+			int nStackSize = 0;
+			stack[nStackSize++] = nSeed;
+			mFaceChart[nSeed] = nChart;
+			while (nStackSize > 0)
+			{
+				Face face = mMesh.mFaceList.get(stack[--nStackSize]);
+				nStackSize = PushNeighbour(face.E0, nChart, nAxis, faceAxis, stack, nStackSize);
+				nStackSize = PushNeighbour(face.E1, nChart, nAxis, faceAxis, stack, nStackSize);
+				nStackSize = PushNeighbour(face.E2, nChart, nAxis, faceAxis, stack, nStackSize);
+			}
+		}
+
+		mChartAxis = new int[mChartCount];
+		System.arraycopy(chartAxis, 0, mChartAxis, 0, mChartCount);
+	}
+
+	private int PushNeighbour(HalfEdge edge, int nChart, int nAxis, int[] faceAxis, int[] stack, int nStackSize)
+	{
+		if (edge.NeighbourEdge != null)
+		{
+			int nFace = edge.NeighbourEdge.Face;
+			if (mFaceChart[nFace] < 0 && faceAxis[nFace] == nAxis)
+			{
+				mFaceChart[nFace] = nChart;
+				stack[nStackSize++] = nFace;
+			}
+		}
+		return nStackSize;
+	}
+
+	// projection on the plane orthogonal to axis, u is mirrored for negative axes to keep faces CCW
+	private void Project(float[] coord, int nAxis, float[] res)
+	{
+		int nMain = nAxis / 2;
+		res[0] = coord[(nMain + 1) % 3];
+		res[1] = coord[(nMain + 2) % 3];
+		if ((nAxis & 1) != 0)
+		{
+			res[0] = -res[0];
+		}
+	}
+
+	private void ComputeChartBounds()
+	{
+		mChartMin = new float[mChartCount * 2];
+		mChartSize = new float[mChartCount * 2];
+		mChartOffset = new float[mChartCount * 2];
+		float[] chartMax = new float[mChartCount * 2];
+		Arrays.fill(mChartMin, Float.MAX_VALUE);
+		Arrays.fill(chartMax, -Float.MAX_VALUE);
+
+		int nFaceCount = mMesh.mFaceList.size();
+		for (int i = 0; i < nFaceCount; i++)
+		{
+			Face face = mMesh.mFaceList.get(i);
+			int nChart = mFaceChart[i];
+			ExtendBounds(face.E0.V0, nChart, chartMax);
+			ExtendBounds(face.E1.V0, nChart, chartMax);
+			ExtendBounds(face.E2.V0, nChart, chartMax);
+		}
+
+		for (int i = 0; i < mChartCount * 2; i++)
+		{
+			mChartSize[i] = chartMax[i] - mChartMin[i];
+		}
+	}
+
+	private void ExtendBounds(int nVertex, int nChart, float[] chartMax)
+	{
+		Project(mMesh.mVertexList.get(nVertex).Coord, mChartAxis[nChart], u);
+		int nOffset = nChart * 2;
+		mChartMin[nOffset] = Math.min(mChartMin[nOffset], u[0]);
+		mChartMin[nOffset + 1] = Math.min(mChartMin[nOffset + 1], u[1]);
+		chartMax[nOffset] = Math.max(chartMax[nOffset], u[0]);
+		chartMax[nOffset + 1] = Math.max(chartMax[nOffset + 1], u[1]);
+	}
+
+	// shelf packing of charts sorted by height, square side grows until everything fits
+	private void PackCharts()
+	{
+		Integer[] order = new Integer[mChartCount];
+		float area = 0;
+		for (int i = 0; i < mChartCount; i++)
+		{
+			order[i] = i;
+			area += mChartSize[i * 2] * mChartSize[i * 2 + 1];
+		}
+		Arrays.sort(order, new Comparator<Integer>()
+		{
+			@Override
+			public int compare(Integer chart1, Integer chart2)
+			{
+				return Float.compare(mChartSize[chart2 * 2 + 1], mChartSize[chart1 * 2 + 1]);
+			}
+		});
+
+		float side = (float) Math.sqrt(area);
+		for (int i = 0; i < mChartCount; i++)
+		{
+			side = Math.max(side, mChartSize[i * 2]);
+		}
+		if (side <= 0)
+		{
+			side = 1;
+		}
+
+		while (!TryPack(order, side))
+		{
+			side *= GROW_FACTOR;
+		}
+	}
+
+	private boolean TryPack(Integer[] order, float side)
+	{
+		float gap = side * PADDING_TEXELS / mTextureSize;
+		float x = gap;
+		float y = gap;
+		float shelfHeight = 0;
+		for (Integer nChart : order)
+		{
+			float width = mChartSize[nChart * 2];
+			float height = mChartSize[nChart * 2 + 1];
+			if (x + width + gap > side)
+			{
+				// new shelf
+				x = gap;
+				y += shelfHeight + gap;
+				shelfHeight = 0;
+			}
+			if (x + width + gap > side || y + height + gap > side)
+			{
+				return false;
+			}
+
+			mChartOffset[nChart * 2] = x / side;
+			mChartOffset[nChart * 2 + 1] = y / side;
+			x += width + gap;
+			shelfHeight = Math.max(shelfHeight, height);
+		}
+
+		mScale = 1 / side;
+		return true;
+	}
+
+	private void ComputeFaceUVs()
+	{
+		int nFaceCount = mMesh.mFaceList.size();
+		for (int i = 0; i < nFaceCount; i++)
+		{
+			Face face = mMesh.mFaceList.get(i);
+			SetCornerUV(i, 0, face.E0.V0);
+			SetCornerUV(i, 1, face.E1.V0);
+			SetCornerUV(i, 2, face.E2.V0);
+		}
+	}
+
+	private void SetCornerUV(int nFace, int nCorner, int nVertex)
+	{
+		int nChart = mFaceChart[nFace];
+		Project(mMesh.mVertexList.get(nVertex).Coord, mChartAxis[nChart], u);
+		int nChartOffset = nChart * 2;
+		int nOffset = nFace * 6 + nCorner * 2;
+		mFaceUVs[nOffset] = mChartOffset[nChartOffset] + (u[0] - mChartMin[nChartOffset]) * mScale;
+		mFaceUVs[nOffset + 1] = mChartOffset[nChartOffset + 1] + (u[1] - mChartMin[nChartOffset + 1]) * mScale;
+	}
+
+	// (u,v) of the three corners of the face in [0;1]
+	public void GetFaceUVs(int nFace, float[] res)
+	{
+		System.arraycopy(mFaceUVs, nFace * 6, res, 0, 6);
+	}
+
+	// -1 if texture coordinates were read
+	public int GetFaceChart(int nFace)
+	{
+		return mFaceChart != null ? mFaceChart[nFace] : -1;
+	}
+
+	public int getChartCount()
+	{
+		return mChartCount;
+	}
+
+	public int getTextureSize()
+	{
+		return mTextureSize;
+	}
+}
@@ -0,0 +1,208 @@
+package truesculpt.mesh;
+
+import java.nio.Buffer;
+
+import javax.microedition.khronos.opengles.GL10;
+import javax.microedition.khronos.opengles.GL11;
+
+// GL buffer object mirroring a direct client buffer. Changed elements are marked in dirty ranges
+// and sent with glBufferSubData at next upload, the whole buffer is sent at creation.
+// Marking and upload are done on the GL thread, the mirrored buffer can be replaced by another copy of same size.
+// A buffer that cannot be created keeps id 0 until invalidated, its owner draws from the client buffer.
+public class VertexBufferObject implements DirtyRanges.IRangeUploader
+{
+	private static final int MAX_PENDING_ERRORS = 16;// one per error flag of the implementation
+
+	private final int mTarget;
+	private Buffer mData;
+	private final int mComponents;// buffer units per element
+	private final int mComponentBytes;
+	private final int mElementCount;
+	private final DirtyRanges mDirty;
+
+	private final int[] mBufferID = new int[] { -1 };
+	private IBufferGL mGL = null;// only set during upload
+
+	public VertexBufferObject(int nTarget, Buffer data, int nComponents, int nComponentBytes, int nElementCount)
+	{
+		mTarget = nTarget;
+		mData = data;
+		mComponents = nComponents;
+		mComponentBytes = nComponentBytes;
+		mElementCount = nElementCount;
+		mDirty = new DirtyRanges(nElementCount);
+	}
+
+	public void MarkDirty(int nElement)
+	{
+		mDirty.Mark(nElement);
+	}
+
+	public void MarkDirtyRange(int nFirst, int nCount)
+	{
+		mDirty.MarkRange(nFirst, nCount);
+	}
+
+	public void MarkDirty(DirtyRanges ranges)
+	{
+		mDirty.Merge(ranges);
+	}
+
+	// next uploads read from data, only elements marked dirty are sent again
+	public void SetData(Buffer data)
+	{
+		mData = data;
+	}
+
+	// GL thread, creates the buffer at first call then sends dirty ranges, returns the number of sub data uploads
+	public int Upload(IBufferGL gl)
+	{
+		int nUploads = 0;
+		if (mBufferID[0] == 0)
+		{
+			mDirty.Clear();// creation failed, owner draws from client buffer
+		}
+		else if (mBufferID[0] < 0)
+		{
+			Create(gl);
+			mDirty.Clear();
+		}
+		else if (!mDirty.IsEmpty())
+		{
+			gl.glBindBuffer(mTarget, mBufferID[0]);
+			mGL = gl;
+			nUploads = mDirty.Flush(this);
+			mGL = null;
+		}
+		mData.position(0);
+		return nUploads;
+	}
+
+	// GL10 implementations may expose GL11 calls and throw, or fail without exception
+	private void Create(IBufferGL gl)
+	{
+		try
+		{
+			gl.glGenBuffers(1, mBufferID, 0);
+		}
+		catch (UnsupportedOperationException e)
+		{
+			mBufferID[0] = 0;
+		}
+		if (mBufferID[0] <= 0)
+		{
+			mBufferID[0] = 0;
+			return;
+		}
+
+		// pending errors of previous calls are cleared so that a failed allocation is detected
+		int nPending = 0;
+		while (nPending < MAX_PENDING_ERRORS && gl.glGetError() != GL10.GL_NO_ERROR)
+		{
+			nPending++;
+		}
+		gl.glBindBuffer(mTarget, mBufferID[0]);
+		mData.position(0);
+		gl.glBufferData(mTarget, mElementCount * mComponents * mComponentBytes, mData, GL11.GL_DYNAMIC_DRAW);
+		if (gl.glGetError() != GL10.GL_NO_ERROR)
+		{
+			gl.glBindBuffer(mTarget, 0);
+			gl.glDeleteBuffers(1, mBufferID, 0);
+			mBufferID[0] = 0;
+		}
+	}
+
+	@Override
+	public void Upload(int nFirstElement, int nElementCount)
+	{
+		mData.position(nFirstElement * mComponents);
+		mGL.glBufferSubData(mTarget, nFirstElement * mComponents * mComponentBytes, nElementCount * mComponents * mComponentBytes, mData);
+	}
+
+	public void Bind(IBufferGL gl)
+	{
+		gl.glBindBuffer(mTarget, mBufferID[0]);
+	}
+
+	// GL context was lost, buffer will be recreated and fully uploaded
+	public void Invalidate()
+	{
+		mBufferID[0] = -1;
+	}
+
+	// GL thread, owner is not drawn anymore
+	public void Release(IBufferGL gl)
+	{
+		if (mBufferID[0] > 0)
+		{
+			gl.glDeleteBuffers(1, mBufferID, 0);
+		}
+		mBufferID[0] = -1;
+	}
+
+	// buffer objects are core in OpenGL ES 1.1, an extension for 1.0
+	public static boolean IsSupported(GL10 gl)
+	{
+		if (!(gl instanceof GL11))
+		{
+			return false;
+		}
+		String strVersion = gl.glGetString(GL10.GL_VERSION);
+		String strExtensions = gl.glGetString(GL10.GL_EXTENSIONS);
+		boolean bVersion10 = strVersion == null || strVersion.contains("1.0");
+		boolean bExtension = strExtensions != null && strExtensions.contains("vertex_buffer_object");
+		return !bVersion10 || bExtension;
+	}
+
+	public int getBufferID()
+	{
+		return mBufferID[0];
+	}
+
+	// IBufferGL calls forwarded to a GL11 instance
+	public static class GL11Adapter implements IBufferGL
+	{
+		private GL11 mGL = null;
+
+		public void setGL(GL11 gl)
+		{
+			mGL = gl;
+		}
+
+		@Override
+		public void glGenBuffers(int n, int[] buffers, int offset)
+		{
+			mGL.glGenBuffers(n, buffers, offset);
+		}
+
+		@Override
+		public void glDeleteBuffers(int n, int[] buffers, int offset)
+		{
+			mGL.glDeleteBuffers(n, buffers, offset);
+		}
+
+		@Override
+		public void glBindBuffer(int target, int buffer)
+		{
+			mGL.glBindBuffer(target, buffer);
+		}
+
+		@Override
+		public void glBufferData(int target, int size, Buffer data, int usage)
+		{
+			mGL.glBufferData(target, size, data, usage);
+		}
+
+		@Override
+		public void glBufferSubData(int target, int offset, int size, Buffer data)
+		{
+			mGL.glBufferSubData(target, offset, size, data);
+		}
+
+		@Override
+		public int glGetError()
+		{
+			return mGL.glGetError();
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package truesculpt.mesh;
+
+import java.util.Arrays;
+
+// Frozen vertices, one bit per vertex index, with an optional 8 bits soft mask allocated at first partial value.
+// A vertex is frozen when its value is MAX_VALUE, tools scale their effect by GetFactor.
+public class VertexMask
+{
+	public static final int MAX_VALUE = 255;
+
+	private long[] mBits = new long[1];
+	private byte[] mSoftValues = null;
+	private int mVertexCount = 0;
+	private int mMaskedCount = 0;// vertices with a non zero value
+
+	public void EnsureCapacity(int nVertexCount)
+	{
+		if (nVertexCount != mVertexCount)
+		{
+			mVertexCount = nVertexCount;
+			mBits = new long[(nVertexCount >> 6) + 1];
+			mSoftValues = null;
+			mMaskedCount = 0;
+		}
+	}
+
+	public boolean IsEmpty()
+	{
+		return mMaskedCount == 0;
+	}
+
+	// frozen test, whole word is tested first so that unmasked areas cost a single read
+	public boolean IsMasked(int nIndex)
+	{
+		long word = mBits[nIndex >> 6];
+		return word != 0 && (word & (1L << nIndex)) != 0;
+	}
+
+	// [0;1] part of the tool effect applied to this vertex, 0 when frozen
+	public float GetFactor(int nIndex)
+	{
+		if (mMaskedCount == 0)
+		{
+			return 1;
+		}
+		if (IsMasked(nIndex))
+		{
+			return 0;
+		}
+		if (mSoftValues == null)
+		{
+			return 1;
+		}
+		return 1 - (mSoftValues[nIndex] & 0xFF) / (float) MAX_VALUE;
+	}
+
+	// [0;MAX_VALUE]
+	public int GetValue(int nIndex)
+	{
+		if (IsMasked(nIndex))
+		{
+			return MAX_VALUE;
+		}
+		if (mSoftValues == null)
+		{
+			return 0;
+		}
+		return mSoftValues[nIndex] & 0xFF;
+	}
+
+	// [0;MAX_VALUE], MAX_VALUE freezes the vertex
+	public void SetValue(int nIndex, int value)
+	{
+		if (value < 0)
+		{
+			value = 0;
+		}
+		if (value > MAX_VALUE)
+		{
+			value = MAX_VALUE;
+		}
+
+		int oldValue = GetValue(nIndex);
+		if (value == oldValue)
+		{
+			return;
+		}
+
+		if (value > 0 && value < MAX_VALUE && mSoftValues == null)
+		{
+			mSoftValues = new byte[mVertexCount];
+		}
+		if (mSoftValues != null)
+		{
+			mSoftValues[nIndex] = (byte) value;
+		}
+
+		if (value == MAX_VALUE)
+		{
+			mBits[nIndex >> 6] |= (1L << nIndex);
+		}
+		else
+		{
+			mBits[nIndex >> 6] &= ~(1L << nIndex);
+		}
+
+		if (oldValue == 0)
+		{
+			mMaskedCount++;
+		}
+		else if (value == 0)
+		{
+			mMaskedCount--;
+		}
+	}
+
+	public void Clear()
+	{
+		Arrays.fill(mBits, 0);
+		mSoftValues = null;
+		mMaskedCount = 0;
+	}
+}
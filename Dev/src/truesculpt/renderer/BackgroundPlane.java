@@ -58,6 +58,12 @@ public class BackgroundPlane
 	}
 
 	public void draw(GL10 gl)
+	{
+		draw(gl, -1, 1, -1, 1);
+	}
+
+	// only [left;right]x[bottom;top] part of the screen sized gradient fills the viewport, used by tiled rendering
+	public void draw(GL10 gl, float left, float right, float bottom, float top)
 	{
 		gl.glEnableClientState(GL10.GL_COLOR_ARRAY);
 		gl.glDisable(GL10.GL_LIGHTING);
@@ -68,7 +74,8 @@ public class BackgroundPlane
 		
 		gl.glMatrixMode(GL10.GL_PROJECTION);
 		gl.glPushMatrix();
-		gl.glLoadIdentity();	
+		gl.glLoadIdentity();
+		gl.glOrthof(left, right, bottom, top, -1, 1);
 		gl.glMatrixMode(GL10.GL_MODELVIEW);
 		gl.glLoadIdentity();
 
@@ -0,0 +1,140 @@
+package truesculpt.renderer;
+
+import android.opengl.Matrix;
+
+// Per frame visibility of render clusters, bounding sphere against view frustum and normal cone against eye position.
+// Planes and eye are in model space, set up on GL thread before mesh draw.
+public class ClusterCuller
+{
+	private final float[] mClip = new float[16];
+	private final float[] mPlanes = new float[6 * 4];
+	private final float[] mEye = new float[3];
+	private boolean mbEnabled = true;
+
+	// current frame counters and published values of last frame
+	private int mTested = 0;
+	private int mFrustumCulled = 0;
+	private int mBackfaceCulled = 0;
+	private volatile int mLastTested = 0;
+	private volatile int mLastFrustumCulled = 0;
+	private volatile int mLastBackfaceCulled = 0;
+
+	// model view is made of rotations and translations only
+	public void Setup(float[] modelView, float[] projection)
+	{
+		mLastTested = mTested;
+		mLastFrustumCulled = mFrustumCulled;
+		mLastBackfaceCulled = mBackfaceCulled;
+		mTested = 0;
+		mFrustumCulled = 0;
+		mBackfaceCulled = 0;
+
+		// planes from rows of projection * model view, matrices are column major
+		Matrix.multiplyMM(mClip, 0, projection, 0, modelView, 0);
+		for (int i = 0; i < 3; i++)
+		{
+			SetPlane(i * 2, i, 1);
+			SetPlane(i * 2 + 1, i, -1);
+		}
+
+		// eye is -R^T t
+		for (int j = 0; j < 3; j++)
+		{
+			mEye[j] = -(modelView[j * 4] * modelView[12] + modelView[j * 4 + 1] * modelView[13] + modelView[j * 4 + 2] * modelView[14]);
+		}
+	}
+
+	// row 3 plus or minus row nRow, normalized
+	private void SetPlane(int nPlane, int nRow, float sign)
+	{
+		int nOffset = nPlane * 4;
+		for (int nCol = 0; nCol < 4; nCol++)
+		{
+			mPlanes[nOffset + nCol] = mClip[nCol * 4 + 3] + sign * mClip[nCol * 4 + nRow];
+		}
+		float norm = (float) Math.sqrt(mPlanes[nOffset] * mPlanes[nOffset] + mPlanes[nOffset + 1] * mPlanes[nOffset + 1] + mPlanes[nOffset + 2] * mPlanes[nOffset + 2]);
+		for (int nCol = 0; nCol < 4; nCol++)
+		{
+			mPlanes[nOffset + nCol] /= norm;
+		}
+	}
+
+	// sphere is x,y,z,radius, cone is unit axis x,y,z and cosine of its half angle, cone of -1 is never culled
+	public boolean IsVisible(float[] spheres, int nSphereOffset, float[] cones, int nConeOffset)
+	{
+		mTested++;
+		if (!mbEnabled)
+		{
+			return true;
+		}
+
+		float x = spheres[nSphereOffset];
+		float y = spheres[nSphereOffset + 1];
+		float z = spheres[nSphereOffset + 2];
+		float r = spheres[nSphereOffset + 3];
+		for (int nPlane = 0; nPlane < 6; nPlane++)
+		{
+			int nOffset = nPlane * 4;
+			if (mPlanes[nOffset] * x + mPlanes[nOffset + 1] * y + mPlanes[nOffset + 2] * z + mPlanes[nOffset + 3] < -r)
+			{
+				mFrustumCulled++;
+				return false;
+			}
+		}
+
+		if (IsBackFacing(x, y, z, r, cones, nConeOffset))
+		{
+			mBackfaceCulled++;
+			return false;
+		}
+		return true;
+	}
+
+	// all faces turn their back to the eye if angle between axis and view direction plus cone and sphere half angles is below 90 degrees
+	private boolean IsBackFacing(float x, float y, float z, float r, float[] cones, int nConeOffset)
+	{
+		float cutoff = cones[nConeOffset + 3];
+		if (cutoff <= 0)
+		{
+			return false;
+		}
+
+		float vx = x - mEye[0];
+		float vy = y - mEye[1];
+		float vz = z - mEye[2];
+		float d = (float) Math.sqrt(vx * vx + vy * vy + vz * vz);
+		if (d <= r)
+		{
+			return false;
+		}
+
+		float cosView = (vx * cones[nConeOffset] + vy * cones[nConeOffset + 1] + vz * cones[nConeOffset + 2]) / d;
+		double angle = Math.acos(Math.max(-1, Math.min(1, cosView))) + Math.acos(cutoff) + Math.asin(r / d);
+		return angle < Math.PI / 2;
+	}
+
+	public boolean isEnabled()
+	{
+		return mbEnabled;
+	}
+
+	public void setEnabled(boolean bEnabled)
+	{
+		mbEnabled = bEnabled;
+	}
+
+	public int getLastTestedCount()
+	{
+		return mLastTested;
+	}
+
+	public int getLastFrustumCulledCount()
+	{
+		return mLastFrustumCulled;
+	}
+
+	public int getLastBackfaceCulledCount()
+	{
+		return mLastBackfaceCulled;
+	}
+}
@@ -1,15 +1,17 @@
 package truesculpt.renderer;
 
 import java.io.FileOutputStream;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.ShortBuffer;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 import javax.microedition.khronos.opengles.GL11;
 
 import truesculpt.main.Managers;
+import truesculpt.mesh.Mesh;
 import android.graphics.Bitmap;
 import android.opengl.GLSurfaceView;
 import android.opengl.GLU;
@@ -44,8 +46,21 @@ public class MainRenderer implements GLSurfaceView.Renderer
 	private float mPitch;
 	private float mRoll;
 
-	private boolean mbTakeScreenshot = false;
-	private String mStrSnapshotName = "";
+	private final ScreenshotPipeline mScreenshots = new ScreenshotPipeline();
+	private final ConcurrentLinkedQueue<TiledRenderJob> mTiledJobs = new ConcurrentLinkedQueue<TiledRenderJob>();
+	private TiledRenderJob mTiledJob = null;// GL thread, job being rendered
+	private final int MAX_TILES_PER_FRAME = 4;
+
+	// view is drawn when dirty only, set by the view owner so that tiled jobs get their next frames
+	private volatile Runnable mRenderRequest = null;
+	private final Runnable mRequestRenderTask = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			RequestRender();
+		}
+	};
 
 	private float mScreenAspectRatio = -1;
 	private final float mFovY_deg = 50f;
@@ -53,8 +68,10 @@ public class MainRenderer implements GLSurfaceView.Renderer
 	private final float mZfar = 10f;
 
 	private final float[] mModelView = new float[16];
+	private volatile float[] mModelViewSnapshot = new float[16];// new array at each change, read by other threads
 	private final int[] mViewPort = new int[4];
 	private final float[] mProjection = new float[16];
+	private final ClusterCuller mCuller = new ClusterCuller();
 
 	public MainRenderer(Managers managers)
 	{
@@ -72,11 +89,42 @@ public class MainRenderer implements GLSurfaceView.Renderer
 		return mManagers;
 	}
 
+	// null once the view is gone
+	public void setRenderRequest(Runnable renderRequest)
+	{
+		mRenderRequest = renderRequest;
+	}
+
+	// any thread
+	public void RequestRender()
+	{
+		Runnable renderRequest = mRenderRequest;
+		if (renderRequest != null)
+		{
+			renderRequest.run();
+		}
+	}
+
+	public ClusterCuller getClusterCuller()
+	{
+		return mCuller;
+	}
+
 	@Override
 	public void onDrawFrame(GL10 gl)
 	{
 		long tStart = SystemClock.uptimeMillis();
 
+		// offscreen images are drawn in back buffer before the displayed frame, a few tiles per frame
+		if (mTiledJob == null)
+		{
+			mTiledJob = mTiledJobs.poll();
+		}
+		if (mTiledJob != null && RenderTiles(gl, mTiledJob))
+		{
+			mTiledJob = null;
+		}
+
 		gl.glClear(GL10.GL_COLOR_BUFFER_BIT | GL10.GL_DEPTH_BUFFER_BIT);
 
 		gl.glMatrixMode(GL10.GL_MODELVIEW);
@@ -96,6 +144,7 @@ public class MainRenderer implements GLSurfaceView.Renderer
 		
 		// only if point of view changed
 		setCurrentModelView(gl);
+		mCuller.Setup(mModelView, mProjection);
 
 		// if (getManagers().getOptionsManager().getDisplayDebugInfos())// TODO use cache
 		if (true)
@@ -104,7 +153,7 @@ public class MainRenderer implements GLSurfaceView.Renderer
 		}
 
 		// main draw call
-		getManagers().getMeshManager().draw(gl);
+		getManagers().getMeshManager().draw(gl, mCuller);
 
 		mToolOverlay.draw(gl, mManagers);
 
@@ -112,67 +161,19 @@ public class MainRenderer implements GLSurfaceView.Renderer
 
 		gl.glDisableClientState(GL10.GL_VERTEX_ARRAY);
 
-		if (mbTakeScreenshot)
+		if (mScreenshots.HasPendingRequests())
 		{
-			TakeGLScreenshot(gl);
-			mbTakeScreenshot = false;
+			mScreenshots.ReadPixels(gl, mViewPort[2], mViewPort[3]);
 		}
 
-		long tStop = SystemClock.uptimeMillis();
-		mLastFrameDurationMs = tStop - tStart;
-	}
-
-	public void TakeGLScreenshot(GL10 gl)
-	{
-		if (mStrSnapshotName != "")
+		// tiles left are drawn at next frame, a job waiting for a band is woken up by the encoder
+		if (mTiledJob != null ? mTiledJob.PollBand() != null : !mTiledJobs.isEmpty())
 		{
-			getManagers().getUsageStatisticsManager().TrackEvent("Screenshot", "Count", 0);
-
-			int[] mViewPort = new int[4];
-			GL11 gl2 = (GL11) gl;
-			gl2.glGetIntegerv(GL11.GL_VIEWPORT, mViewPort, 0);
-
-			int width = mViewPort[2];
-			int height = mViewPort[3];
-
-			int size = width * height;
-			ByteBuffer buf = ByteBuffer.allocateDirect(size * 4);
-			buf.order(ByteOrder.nativeOrder());
-			gl.glReadPixels(0, 0, width, height, GL10.GL_RGBA, GL10.GL_UNSIGNED_BYTE, buf);
-			int data[] = new int[size];
-			buf.asIntBuffer().get(data);
-			buf = null;
-			Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.RGB_565);
-			bitmap.setPixels(data, size - width, -width, 0, 0, width, height);
-			data = null;
-
-			short sdata[] = new short[size];
-			ShortBuffer sbuf = ShortBuffer.wrap(sdata);
-			bitmap.copyPixelsToBuffer(sbuf);
-			for (int i = 0; i < size; ++i)
-			{
-				// BGR-565 to RGB-565
-				short v = sdata[i];
-				sdata[i] = (short) ((v & 0x1f) << 11 | v & 0x7e0 | (v & 0xf800) >> 11);
-			}
-			sbuf.rewind();
-			bitmap.copyPixelsFromBuffer(sbuf);
-
-			try
-			{
-				FileOutputStream fos = new FileOutputStream(mStrSnapshotName);
-				bitmap.compress(Bitmap.CompressFormat.PNG, 100, fos);
-				fos.flush();
-				fos.close();
-			}
-			catch (Exception e)
-			{
-				e.printStackTrace();
-				return;
-			}
-
-			mStrSnapshotName = "";// reset
+			RequestRender();
 		}
+
+		long tStop = SystemClock.uptimeMillis();
+		mLastFrameDurationMs = tStop - tStart;
 	}
 
 	public void onPointOfViewChange()
@@ -224,6 +225,9 @@ public class MainRenderer implements GLSurfaceView.Renderer
 		gl.glHint(GL10.GL_PERSPECTIVE_CORRECTION_HINT, GL10.GL_FASTEST);
 
 		gl.glClearColor(0, 0, 0, 0);
+
+		// textures and buffers of previous context are lost
+		getManagers().getMeshManager().InvalidateGLResources();
 		
 		gl.glEnable(GL10.GL_LIGHTING);
 		gl.glEnable(GL10.GL_LIGHT0);
@@ -253,10 +257,125 @@ public class MainRenderer implements GLSurfaceView.Renderer
 		gl.glBlendFunc(GL10.GL_SRC_ALPHA, GL10.GL_ONE_MINUS_SRC_ALPHA);
 	}
 
-	public void TakeGLScreenshotOfNextFrame(String strSnapshotName)
+	// current point of view rendered on CPU with the display lighting, GL surface does not need to be alive
+	public void RenderThumbnail(int nWidth, int nHeight, int[] pixels)
 	{
-		mStrSnapshotName = strSnapshotName;
-		this.mbTakeScreenshot = true;
+		SoftwareRenderer renderer = new SoftwareRenderer(nWidth, nHeight);
+		renderer.SetLight(lightPos, lightAmbient, lightDiffuse, lightSpecular, matSpecular, fShininess);
+
+		Mesh mesh = getManagers().getMeshManager().getMesh();
+		if (mesh != null)
+		{
+			synchronized (getManagers().getMeshManager().getWorker().getMeshLock())
+			{
+				mesh.CopyToSoftwareRenderer(renderer);
+			}
+		}
+
+		// same frustum as display, aspect ratio of the thumbnail
+		float[] projection = new float[16];
+		float top = (float) (mZnear * Math.tan(Math.PI / 180 * mFovY_deg / 2));
+		float right = top * nWidth / nHeight;
+		Matrix.frustumM(projection, 0, -right, right, -top, top, mZnear, mZfar);
+
+		renderer.Render(mModelViewSnapshot, projection, pixels);
+	}
+
+	// file is complete when returning
+	public void SaveThumbnail(String strFileName, int nWidth, int nHeight) throws IOException
+	{
+		int[] pixels = new int[nWidth * nHeight];
+		RenderThumbnail(nWidth, nHeight, pixels);
+		Bitmap bitmap = Bitmap.createBitmap(pixels, nWidth, nHeight, Bitmap.Config.ARGB_8888);
+
+		FileOutputStream fos = new FileOutputStream(strFileName);
+		try
+		{
+			bitmap.compress(Bitmap.CompressFormat.PNG, 100, fos);
+			fos.flush();
+		}
+		finally
+		{
+			fos.close();
+		}
+	}
+
+	// image of any size from current point of view, rendered at next frame by tiles, nSupersampling is 1 for no antialiasing
+	public Future<String> RenderHighResolution(String strFileName, int nWidth, int nHeight, int nSupersampling)
+	{
+		TiledRenderJob job = new TiledRenderJob(strFileName, nWidth, nHeight, nSupersampling);
+		job.setOnBandFreed(mRequestRenderTask);
+		mTiledJobs.add(job);
+		return job.getFuture();
+	}
+
+	// background and mesh only, each tile uses its part of display frustum and background gradient.
+	// Rendering stops after a few tiles or when no band is free, it is resumed at next frame. True once job is over.
+	private boolean RenderTiles(GL10 gl, TiledRenderJob job)
+	{
+		if (!job.IsBegun())
+		{
+			job.Begin(mViewPort[2], mViewPort[3], mModelView);
+		}
+		float[] frustum = new float[4];
+		float[] window = new float[4];
+
+		boolean bDone = false;
+		for (int nTile = 0; nTile < MAX_TILES_PER_FRAME && !bDone; nTile++)
+		{
+			int[] band = job.PollBand();
+			if (band == null)
+			{
+				break;// encoder is late
+			}
+
+			int x0 = job.getTileX();
+			int y0 = job.getTileY();
+			int nTileWidth = job.getCurrentTileWidth();
+			int nTileHeight = job.getCurrentTileHeight();
+			gl.glViewport(0, 0, nTileWidth, nTileHeight);
+			gl.glClear(GL10.GL_COLOR_BUFFER_BIT | GL10.GL_DEPTH_BUFFER_BIT);
+			gl.glEnableClientState(GL10.GL_VERTEX_ARRAY);
+
+			job.GetTileWindow(x0, y0, nTileWidth, nTileHeight, window);
+			mBackgroundPlane.draw(gl, window[0], window[1], window[2], window[3]);
+
+			job.GetTileFrustum(mFovY_deg, mZnear, x0, y0, nTileWidth, nTileHeight, frustum);
+			gl.glMatrixMode(GL10.GL_PROJECTION);
+			gl.glLoadIdentity();
+			gl.glFrustumf(frustum[0], frustum[1], frustum[2], frustum[3], mZnear, mZfar);
+			gl.glMatrixMode(GL10.GL_MODELVIEW);
+			gl.glLoadMatrixf(job.getModelView(), 0);
+			getManagers().getMeshManager().draw(gl, null, false);
+
+			gl.glDisableClientState(GL10.GL_VERTEX_ARRAY);
+			gl.glReadPixels(0, 0, nTileWidth, nTileHeight, GL10.GL_RGBA, GL10.GL_UNSIGNED_BYTE, job.getTilePixels());
+			job.CopyTile(band, x0, nTileWidth, nTileHeight);
+			bDone = job.NextTile();
+		}
+		if (bDone)
+		{
+			job.End();
+		}
+
+		// display state back
+		gl.glViewport(mViewPort[0], mViewPort[1], mViewPort[2], mViewPort[3]);
+		gl.glMatrixMode(GL10.GL_PROJECTION);
+		gl.glLoadMatrixf(mProjection, 0);
+		gl.glMatrixMode(GL10.GL_MODELVIEW);
+		return bDone;
+	}
+
+	// future gives the file name once encoded
+	public Future<String> TakeGLScreenshotOfNextFrame(String strSnapshotName)
+	{
+		return TakeGLScreenshotOfNextFrame(strSnapshotName, Bitmap.CompressFormat.PNG, 100);
+	}
+
+	public Future<String> TakeGLScreenshotOfNextFrame(String strSnapshotName, Bitmap.CompressFormat format, int nQuality)
+	{
+		getManagers().getUsageStatisticsManager().TrackEvent("Screenshot", "Count", 0);
+		return mScreenshots.Request(strSnapshotName, format, nQuality);
 	}
 
 	public void onToolChange()
@@ -270,6 +389,14 @@ public class MainRenderer implements GLSurfaceView.Renderer
 	{
 		GL11 gl2 = (GL11) gl;
 		gl2.glGetFloatv(GL11.GL_MODELVIEW_MATRIX, mModelView, 0);
+
+		// published for other threads only when changed
+		if (!Arrays.equals(mModelView, mModelViewSnapshot))
+		{
+			float[] snapshot = new float[16];
+			System.arraycopy(mModelView, 0, snapshot, 0, 16);
+			mModelViewSnapshot = snapshot;
+		}
 	}
 
 	public void setCurrentProjection(GL10 gl)
@@ -301,11 +428,42 @@ public class MainRenderer implements GLSurfaceView.Renderer
 	private static final float[] normalizedInPoint = new float[4];
 	private static final float[] outPoint = new float[4];
 
+	// camera recorded with a stroke, used instead of the displayed one while the stroke is replayed
+	private final float[] mOverrideModelView = new float[16];
+	private final float[] mOverrideProjection = new float[16];
+	private final int[] mOverrideViewPort = new int[4];
+	private volatile boolean mbCameraOverride = false;
+
+	public void GetCamera(float[] modelView, float[] projection, int[] viewPort)
+	{
+		System.arraycopy(mModelView, 0, modelView, 0, 16);
+		System.arraycopy(mProjection, 0, projection, 0, 16);
+		System.arraycopy(mViewPort, 0, viewPort, 0, 4);
+	}
+
+	// picking and world coords use this camera until ClearCameraOverride, display is not changed
+	public void SetCameraOverride(float[] modelView, float[] projection, int[] viewPort)
+	{
+		System.arraycopy(modelView, 0, mOverrideModelView, 0, 16);
+		System.arraycopy(projection, 0, mOverrideProjection, 0, 16);
+		System.arraycopy(viewPort, 0, mOverrideViewPort, 0, 4);
+		mbCameraOverride = true;
+	}
+
+	public void ClearCameraOverride()
+	{
+		mbCameraOverride = false;
+	}
+
 	public void GetWorldCoords(float[] worldPos, float touchX, float touchY, float z)
 	{
+		float[] modelView = mbCameraOverride ? mOverrideModelView : mModelView;
+		float[] projection = mbCameraOverride ? mOverrideProjection : mProjection;
+		int[] viewPort = mbCameraOverride ? mOverrideViewPort : mViewPort;
+
 		// SCREEN height & width (ej: 320 x 480)
-		float screenW = mViewPort[2];
-		float screenH = mViewPort[3];
+		float screenW = viewPort[2];
+		float screenH = viewPort[3];
 
 		// Invert y coordinate, as android uses
 		// top-left, and ogl bottom-left.
@@ -324,7 +482,7 @@ public class MainRenderer implements GLSurfaceView.Renderer
 		 */
 		// MatrixUtils.PrintMat("Proj", mProjection);
 		// MatrixUtils.PrintMat("Model", mModelView);
-		Matrix.multiplyMM(transformMatrix, 0, mProjection, 0, mModelView, 0);
+		Matrix.multiplyMM(transformMatrix, 0, projection, 0, modelView, 0);
 		Matrix.invertM(invertedMatrix, 0, transformMatrix, 0);
 
 		/*
@@ -346,6 +504,22 @@ public class MainRenderer implements GLSurfaceView.Renderer
 		worldPos[2] = outPoint[2] / outPoint[3];
 	}
 
+	// screen size in pixels of one meter at the depth of worldPos
+	public float GetPixelsPerMeterAt(float[] worldPos)
+	{
+		float[] modelView = mbCameraOverride ? mOverrideModelView : mModelView;
+		float[] projection = mbCameraOverride ? mOverrideProjection : mProjection;
+		int[] viewPort = mbCameraOverride ? mOverrideViewPort : mViewPort;
+
+		// eye space depth, matrices are column major
+		float w = -(modelView[2] * worldPos[0] + modelView[6] * worldPos[1] + modelView[10] * worldPos[2] + modelView[14]);
+		if (w < mZnear)
+		{
+			w = mZnear;
+		}
+		return viewPort[3] * 0.5f * projection[5] / w;
+	}
+
 	public float[] GetModelViewMatrix()
 	{
 		return mModelView;
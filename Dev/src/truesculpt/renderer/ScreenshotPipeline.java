@@ -0,0 +1,167 @@
+package truesculpt.renderer;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import javax.microedition.khronos.opengles.GL10;
+
+import android.graphics.Bitmap;
+
+// Screenshots of displayed frames. The GL thread only reads pixels in a pooled buffer at the end of a frame,
+// conversion and encoding run on a background thread, callers wait on a future of the written file name.
+public class ScreenshotPipeline
+{
+	private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+	private static final int MAX_POOLED_BUFFERS = 2;
+
+	private class Request implements Callable<String>
+	{
+		final String mFileName;
+		final Bitmap.CompressFormat mFormat;
+		final int mQuality;
+		final FutureTask<String> mFuture = new FutureTask<String>(this);
+
+		// set by GL thread before encoding is scheduled
+		ByteBuffer mPixels = null;
+		int mWidth = 0;
+		int mHeight = 0;
+
+		Request(String strFileName, Bitmap.CompressFormat format, int nQuality)
+		{
+			mFileName = strFileName;
+			mFormat = format;
+			mQuality = nQuality;
+		}
+
+		@Override
+		public String call() throws IOException
+		{
+			try
+			{
+				Encode(this);
+			}
+			finally
+			{
+				ReleaseBuffer(mPixels);
+				mPixels = null;
+			}
+			return mFileName;
+		}
+	}
+
+	private final ConcurrentLinkedQueue<Request> mPending = new ConcurrentLinkedQueue<Request>();
+	private final ExecutorService mEncoder = Executors.newSingleThreadExecutor();
+
+	// read buffers are shared by GL and encoder threads, conversion buffers are encoder only
+	private final ArrayList<ByteBuffer> mFreeBuffers = new ArrayList<ByteBuffer>();
+	private int[] mArgb = null;
+	private Bitmap mBitmap = null;
+
+	// taken from the next drawn frame
+	public Future<String> Request(String strFileName, Bitmap.CompressFormat format, int nQuality)
+	{
+		Request request = new Request(strFileName, format, nQuality);
+		mPending.add(request);
+		return request.mFuture;
+	}
+
+	public boolean HasPendingRequests()
+	{
+		return !mPending.isEmpty();
+	}
+
+	// GL thread, end of frame, one read per pending request
+	public void ReadPixels(GL10 gl, int nWidth, int nHeight)
+	{
+		Request request = mPending.poll();
+		while (request != null)
+		{
+			ByteBuffer pixels = ObtainBuffer(nWidth * nHeight * 4);
+			gl.glReadPixels(0, 0, nWidth, nHeight, GL10.GL_RGBA, GL10.GL_UNSIGNED_BYTE, pixels);
+			request.mPixels = pixels;
+			request.mWidth = nWidth;
+			request.mHeight = nHeight;
+			mEncoder.execute(request.mFuture);
+
+			request = mPending.poll();
+		}
+	}
+
+	// encoder thread, RGBA rows from bottom to ARGB bitmap from top
+	private void Encode(Request request) throws IOException
+	{
+		int nWidth = request.mWidth;
+		int nHeight = request.mHeight;
+		int nSize = nWidth * nHeight;
+		if (mArgb == null || mArgb.length < nSize)
+		{
+			mArgb = new int[nSize];
+		}
+		request.mPixels.position(0);
+		request.mPixels.asIntBuffer().get(mArgb, 0, nSize);
+		for (int i = 0; i < nSize; i++)
+		{
+			mArgb[i] = 0xFF000000 | (mArgb[i] >>> 8);// big endian view gives RGBA, frame alpha is not kept
+		}
+
+		if (mBitmap == null || mBitmap.getWidth() != nWidth || mBitmap.getHeight() != nHeight)
+		{
+			mBitmap = Bitmap.createBitmap(nWidth, nHeight, Bitmap.Config.ARGB_8888);
+		}
+		mBitmap.setPixels(mArgb, nSize - nWidth, -nWidth, 0, 0, nWidth, nHeight);
+
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(request.mFileName), OUTPUT_BUFFER_SIZE);
+		try
+		{
+			mBitmap.compress(request.mFormat, request.mQuality, out);
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	private ByteBuffer ObtainBuffer(int nBytes)
+	{
+		synchronized (mFreeBuffers)
+		{
+			for (int i = 0; i < mFreeBuffers.size(); i++)
+			{
+				if (mFreeBuffers.get(i).capacity() == nBytes)
+				{
+					return mFreeBuffers.remove(i);
+				}
+			}
+		}
+		ByteBuffer buffer = ByteBuffer.allocateDirect(nBytes);
+		buffer.order(ByteOrder.BIG_ENDIAN);
+		return buffer;
+	}
+
+	private void ReleaseBuffer(ByteBuffer buffer)
+	{
+		if (buffer != null)
+		{
+			synchronized (mFreeBuffers)
+			{
+				if (mFreeBuffers.size() >= MAX_POOLED_BUFFERS)
+				{
+					mFreeBuffers.remove(0);// oldest size is less likely to be asked again
+				}
+				buffer.clear();
+				mFreeBuffers.add(buffer);
+			}
+		}
+	}
+}
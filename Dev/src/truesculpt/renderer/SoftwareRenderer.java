@@ -0,0 +1,296 @@
+package truesculpt.renderer;
+
+import java.util.Arrays;
+
+import truesculpt.utils.ParallelLoop;
+
+// CPU triangle rasterizer giving the same picture as the GL view: depth buffer, back face culling,
+// one light computed per vertex like GL_LIGHT0 with color material, Gouraud colors and background gradient.
+// Geometry is copied at setup so rendering does not hold the mesh, no GL or Android dependency.
+public class SoftwareRenderer
+{
+	private static final float GLOBAL_AMBIENT = 0.2f;// GL default light model ambient
+	private static final int MIN_PARALLEL_VERTICES = 4096;
+	private static final int MIN_PARALLEL_ROWS = 32;
+
+	private final int mWidth;
+	private final int mHeight;
+	private final float[] mDepth;
+
+	// light in eye space
+	private final float[] mLightPos = new float[] { 0, 0, 1, 0 };
+	private final float[] mLightAmbient = new float[3];
+	private final float[] mLightDiffuse = new float[] { 1, 1, 1 };
+	private final float[] mSpecular = new float[3];// light specular times material specular
+	private float mShininess = 0;
+
+	// geometry
+	private int mVertexCount = 0;
+	private float[] mCoords = null;
+	private float[] mNormals = null;
+	private int[] mColors = null;
+	private int mFaceCount = 0;
+	private int[] mFaces = null;
+
+	// transformed vertices, screen x and y with origin at top left, z in [-1;1], lit color in [0;255]
+	private float[] mScreen = null;
+	private float[] mLit = null;
+	private boolean[] mbClipped = null;
+
+	private final float[] mModelView = new float[16];
+	private final float[] mProjection = new float[16];
+	private int[] mPixels = null;
+
+	public SoftwareRenderer(int nWidth, int nHeight)
+	{
+		mWidth = nWidth;
+		mHeight = nHeight;
+		mDepth = new float[nWidth * nHeight];
+	}
+
+	public int getWidth()
+	{
+		return mWidth;
+	}
+
+	public int getHeight()
+	{
+		return mHeight;
+	}
+
+	// same parameters as glLightfv and glMaterialfv, light position is given in eye space
+	public void SetLight(float[] lightPos, float[] lightAmbient, float[] lightDiffuse, float[] lightSpecular, float[] matSpecular, float fShininess)
+	{
+		System.arraycopy(lightPos, 0, mLightPos, 0, 4);
+		for (int i = 0; i < 3; i++)
+		{
+			mLightAmbient[i] = lightAmbient[i];
+			mLightDiffuse[i] = lightDiffuse[i];
+			mSpecular[i] = lightSpecular[i] * matSpecular[i];
+		}
+		mShininess = fShininess;
+	}
+
+	// x,y,z per vertex, ARGB colors, 3 counter clockwise vertex indices per face. Arrays are kept, not copied.
+	public void SetGeometry(float[] coords, float[] normals, int[] colors, int nVertexCount, int[] faces, int nFaceCount)
+	{
+		mCoords = coords;
+		mNormals = normals;
+		mColors = colors;
+		mVertexCount = nVertexCount;
+		mFaces = faces;
+		mFaceCount = nFaceCount;
+
+		if (mbClipped == null || mbClipped.length < nVertexCount)
+		{
+			mScreen = new float[nVertexCount * 3];
+			mLit = new float[nVertexCount * 3];
+			mbClipped = new boolean[nVertexCount];
+		}
+	}
+
+	// column major GL matrices, pixels are ARGB with first row at top of image
+	public void Render(float[] modelView, float[] projection, int[] pixels)
+	{
+		System.arraycopy(modelView, 0, mModelView, 0, 16);
+		System.arraycopy(projection, 0, mProjection, 0, 16);
+		mPixels = pixels;
+
+		ParallelLoop.Run(mVertexCount, MIN_PARALLEL_VERTICES, new ParallelLoop.IRangeTask()
+		{
+			@Override
+			public void Run(int nStart, int nEnd)
+			{
+				TransformVertices(nStart, nEnd);
+			}
+		});
+
+		// each band of rows rasterizes all faces with its own part of color and depth buffers
+		ParallelLoop.Run(mHeight, MIN_PARALLEL_ROWS, new ParallelLoop.IRangeTask()
+		{
+			@Override
+			public void Run(int nStart, int nEnd)
+			{
+				ClearRows(nStart, nEnd);
+				for (int nFace = 0; nFace < mFaceCount; nFace++)
+				{
+					RasterizeFace(nFace, nStart, nEnd);
+				}
+			}
+		});
+
+		mPixels = null;
+	}
+
+	private void TransformVertices(int nStart, int nEnd)
+	{
+		float[] m = mModelView;
+		float[] p = mProjection;
+		for (int i = nStart; i < nEnd; i++)
+		{
+			int nOffset = i * 3;
+			float x = mCoords[nOffset];
+			float y = mCoords[nOffset + 1];
+			float z = mCoords[nOffset + 2];
+
+			// eye space, modelview is a rigid transform so normals use its rotation part
+			float ex = m[0] * x + m[4] * y + m[8] * z + m[12];
+			float ey = m[1] * x + m[5] * y + m[9] * z + m[13];
+			float ez = m[2] * x + m[6] * y + m[10] * z + m[14];
+			float nx = m[0] * mNormals[nOffset] + m[4] * mNormals[nOffset + 1] + m[8] * mNormals[nOffset + 2];
+			float ny = m[1] * mNormals[nOffset] + m[5] * mNormals[nOffset + 1] + m[9] * mNormals[nOffset + 2];
+			float nz = m[2] * mNormals[nOffset] + m[6] * mNormals[nOffset + 1] + m[10] * mNormals[nOffset + 2];
+			Light(i, ex, ey, ez, nx, ny, nz);
+
+			float cx = p[0] * ex + p[4] * ey + p[8] * ez + p[12];
+			float cy = p[1] * ex + p[5] * ey + p[9] * ez + p[13];
+			float cz = p[2] * ex + p[6] * ey + p[10] * ez + p[14];
+			float cw = p[3] * ex + p[7] * ey + p[11] * ez + p[15];
+
+			// faces crossing the near plane are dropped, not clipped
+			mbClipped[i] = cz < -cw || cw <= 0;
+			if (!mbClipped[i])
+			{
+				mScreen[nOffset] = (cx / cw + 1) * 0.5f * mWidth;
+				mScreen[nOffset + 1] = (1 - cy / cw) * 0.5f * mHeight;
+				mScreen[nOffset + 2] = cz / cw;
+			}
+		}
+	}
+
+	// fixed pipeline equation for one light, ambient and diffuse material follow vertex color, viewer at infinity
+	private void Light(int i, float ex, float ey, float ez, float nx, float ny, float nz)
+	{
+		float lx = mLightPos[0];
+		float ly = mLightPos[1];
+		float lz = mLightPos[2];
+		if (mLightPos[3] != 0)
+		{
+			lx = lx / mLightPos[3] - ex;
+			ly = ly / mLightPos[3] - ey;
+			lz = lz / mLightPos[3] - ez;
+		}
+		float lNorm = (float) Math.sqrt(lx * lx + ly * ly + lz * lz);
+		float nNorm = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+		float diffuse = 0;
+		float specular = 0;
+		if (lNorm > 0 && nNorm > 0)
+		{
+			lx /= lNorm;
+			ly /= lNorm;
+			lz /= lNorm;
+			nx /= nNorm;
+			ny /= nNorm;
+			nz /= nNorm;
+			diffuse = Math.max(0, nx * lx + ny * ly + nz * lz);
+			if (diffuse > 0)
+			{
+				float hx = lx;
+				float hy = ly;
+				float hz = lz + 1;
+				float hNorm = (float) Math.sqrt(hx * hx + hy * hy + hz * hz);
+				float nDotH = Math.max(0, (nx * hx + ny * hy + nz * hz) / hNorm);
+				specular = (float) Math.pow(nDotH, mShininess);
+			}
+		}
+
+		int color = mColors[i];
+		int nOffset = i * 3;
+		for (int c = 0; c < 3; c++)
+		{
+			float channel = ((color >> (16 - c * 8)) & 0xFF) / 255f;
+			float value = channel * (GLOBAL_AMBIENT + mLightAmbient[c] + mLightDiffuse[c] * diffuse) + mSpecular[c] * specular;
+			mLit[nOffset + c] = Math.min(1, value) * 255;
+		}
+	}
+
+	// same linear gradient as BackgroundPlane: black at top left, white at bottom right
+	private void ClearRows(int nStart, int nEnd)
+	{
+		Arrays.fill(mDepth, nStart * mWidth, nEnd * mWidth, Float.MAX_VALUE);
+		for (int y = nStart; y < nEnd; y++)
+		{
+			float v = 1 - (y + 0.5f) / mHeight;
+			for (int x = 0; x < mWidth; x++)
+			{
+				float u = (x + 0.5f) / mWidth;
+				int gray = (int) ((0.5f + 0.5f * u - 0.5f * v) * 255);
+				mPixels[y * mWidth + x] = 0xFF000000 | (gray << 16) | (gray << 8) | gray;
+			}
+		}
+	}
+
+	// pixels whose center is in face, limited to rows [nRowStart;nRowEnd[
+	private void RasterizeFace(int nFace, int nRowStart, int nRowEnd)
+	{
+		int i0 = mFaces[nFace * 3];
+		int i1 = mFaces[nFace * 3 + 1];
+		int i2 = mFaces[nFace * 3 + 2];
+		if (mbClipped[i0] || mbClipped[i1] || mbClipped[i2])
+		{
+			return;
+		}
+
+		float x0 = mScreen[i0 * 3];
+		float y0 = mScreen[i0 * 3 + 1];
+		float x1 = mScreen[i1 * 3];
+		float y1 = mScreen[i1 * 3 + 1];
+		float x2 = mScreen[i2 * 3];
+		float y2 = mScreen[i2 * 3 + 1];
+
+		// y is down on screen, counter clockwise front faces have a negative area
+		float area = (x1 - x0) * (y2 - y0) - (x2 - x0) * (y1 - y0);
+		if (area >= 0)
+		{
+			return;
+		}
+
+		int nMinY = Math.max(nRowStart, (int) Math.ceil(Math.min(y0, Math.min(y1, y2)) - 0.5f));
+		int nMaxY = Math.min(nRowEnd - 1, (int) Math.floor(Math.max(y0, Math.max(y1, y2)) - 0.5f));
+		int nMinX = Math.max(0, (int) Math.ceil(Math.min(x0, Math.min(x1, x2)) - 0.5f));
+		int nMaxX = Math.min(mWidth - 1, (int) Math.floor(Math.max(x0, Math.max(x1, x2)) - 0.5f));
+		if (nMinY > nMaxY || nMinX > nMaxX)
+		{
+			return;
+		}
+
+		// barycentric weights are affine in screen space, stepped along rows
+		float invArea = 1 / area;
+		float dw0dx = -(y2 - y1) * invArea;
+		float dw1dx = -(y0 - y2) * invArea;
+		float dw2dx = -(y1 - y0) * invArea;
+
+		float z0 = mScreen[i0 * 3 + 2];
+		float z1 = mScreen[i1 * 3 + 2];
+		float z2 = mScreen[i2 * 3 + 2];
+
+		for (int y = nMinY; y <= nMaxY; y++)
+		{
+			float py = y + 0.5f;
+			float px = nMinX + 0.5f;
+			float w0 = ((x2 - x1) * (py - y1) - (y2 - y1) * (px - x1)) * invArea;
+			float w1 = ((x0 - x2) * (py - y2) - (y0 - y2) * (px - x2)) * invArea;
+			float w2 = ((x1 - x0) * (py - y0) - (y1 - y0) * (px - x0)) * invArea;
+
+			int nPixel = y * mWidth + nMinX;
+			for (int x = nMinX; x <= nMaxX; x++, nPixel++, w0 += dw0dx, w1 += dw1dx, w2 += dw2dx)
+			{
+				if (w0 < 0 || w1 < 0 || w2 < 0)
+				{
+					continue;
+				}
+				float z = w0 * z0 + w1 * z1 + w2 * z2;
+				if (z > mDepth[nPixel])
+				{
+					continue;
+				}
+				mDepth[nPixel] = z;
+
+				int r = (int) (w0 * mLit[i0 * 3] + w1 * mLit[i1 * 3] + w2 * mLit[i2 * 3]);
+				int g = (int) (w0 * mLit[i0 * 3 + 1] + w1 * mLit[i1 * 3 + 1] + w2 * mLit[i2 * 3 + 1]);
+				int b = (int) (w0 * mLit[i0 * 3 + 2] + w1 * mLit[i1 * 3 + 2] + w2 * mLit[i2 * 3 + 2]);
+				mPixels[nPixel] = 0xFF000000 | (r << 16) | (g << 8) | b;
+			}
+		}
+	}
+}
@@ -0,0 +1,316 @@
+package truesculpt.renderer;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import truesculpt.utils.PngStreamWriter;
+
+// Image larger than the viewport rendered as horizontal bands of viewport sized tiles, each tile with its own
+// sub frustum of the display frustum. Bands are averaged over supersampling blocks and streamed to a PNG encoder
+// on a background thread, only two bands are in memory. Tiles are rendered a few per frame, the job keeps
+// the position of the next tile and the point of view of its start.
+public class TiledRenderJob
+{
+	private static final int MAX_BAND_PIXELS = 1024 * 1024;
+	private static final int BAND_COUNT = 2;
+	private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+	private static ExecutorService sEncoder = null;
+
+	private final String mFileName;
+	private final int mWidth;
+	private final int mHeight;
+	private final int mSupersampling;
+	private final int mRenderWidth;
+	private final int mRenderHeight;
+
+	private int mTileWidth = 0;
+	private int mBandHeight = 0;
+	private boolean mbBegun = false;
+	private final float[] mModelView = new float[16];
+	private BlockingQueue<int[]> mFreeBands = null;
+	private ByteBuffer mTilePixels = null;
+	private IntBuffer mTileInts = null;
+
+	// GL thread, next tile and the band it is copied in
+	private int mTileX = 0;
+	private int mTileY = 0;
+	private int[] mBand = null;
+	private Runnable mOnBandFreed = null;
+
+	// encoder thread
+	private PngStreamWriter mWriter = null;
+	private byte[] mRow = null;
+	private int[] mSums = null;
+	private IOException mError = null;
+
+	private final FutureTask<String> mFuture = new FutureTask<String>(new Callable<String>()
+	{
+		@Override
+		public String call() throws IOException
+		{
+			if (mWriter != null)
+			{
+				mWriter.Close();
+			}
+			if (mError != null)
+			{
+				throw mError;
+			}
+			return mFileName;
+		}
+	});
+
+	// nSupersampling pixels rendered per side of an output pixel, 1 for none
+	public TiledRenderJob(String strFileName, int nWidth, int nHeight, int nSupersampling)
+	{
+		mFileName = strFileName;
+		mWidth = nWidth;
+		mHeight = nHeight;
+		mSupersampling = Math.max(1, nSupersampling);
+		mRenderWidth = nWidth * mSupersampling;
+		mRenderHeight = nHeight * mSupersampling;
+	}
+
+	private static synchronized ExecutorService GetEncoder()
+	{
+		if (sEncoder == null)
+		{
+			sEncoder = Executors.newSingleThreadExecutor();
+		}
+		return sEncoder;
+	}
+
+	// encoder thread, called each time a band can be used again by the GL thread
+	public void setOnBandFreed(Runnable onBandFreed)
+	{
+		mOnBandFreed = onBandFreed;
+	}
+
+	// file name once written and closed
+	public Future<String> getFuture()
+	{
+		return mFuture;
+	}
+
+	public int getRenderWidth()
+	{
+		return mRenderWidth;
+	}
+
+	public int getRenderHeight()
+	{
+		return mRenderHeight;
+	}
+
+	// GL thread, tile size from viewport, bands are cut on supersampling blocks
+	public void Begin(int nViewportWidth, int nViewportHeight, float[] modelView)
+	{
+		mbBegun = true;
+		System.arraycopy(modelView, 0, mModelView, 0, 16);
+
+		mTileWidth = Math.min(nViewportWidth, mRenderWidth);
+		int nBandHeight = Math.min(nViewportHeight, Math.max(1, MAX_BAND_PIXELS / mRenderWidth));
+		mBandHeight = Math.max(mSupersampling, nBandHeight / mSupersampling * mSupersampling);
+		mBandHeight = Math.min(mBandHeight, mRenderHeight);
+
+		mTilePixels = ByteBuffer.allocateDirect(mTileWidth * mBandHeight * 4);
+		mTilePixels.order(ByteOrder.BIG_ENDIAN);// RGBA in ints
+		mTileInts = mTilePixels.asIntBuffer();
+		mFreeBands = new ArrayBlockingQueue<int[]>(BAND_COUNT);
+		for (int i = 0; i < BAND_COUNT; i++)
+		{
+			mFreeBands.add(new int[mRenderWidth * mBandHeight]);
+		}
+	}
+
+	public boolean IsBegun()
+	{
+		return mbBegun;
+	}
+
+	// point of view when the job was begun
+	public float[] getModelView()
+	{
+		return mModelView;
+	}
+
+	public int getTileWidth()
+	{
+		return mTileWidth;
+	}
+
+	public int getTileX()
+	{
+		return mTileX;
+	}
+
+	public int getTileY()
+	{
+		return mTileY;
+	}
+
+	// size of next tile, clipped to the image
+	public int getCurrentTileWidth()
+	{
+		return Math.min(mTileWidth, mRenderWidth - mTileX);
+	}
+
+	public int getCurrentTileHeight()
+	{
+		return Math.min(mBandHeight, mRenderHeight - mTileY);
+	}
+
+	public int getBandHeight()
+	{
+		return mBandHeight;
+	}
+
+	// sub frustum of the full image frustum, x and y of tile in render pixels from top left
+	public void GetTileFrustum(float fovY_deg, float zNear, int x0, int y0, int nTileWidth, int nTileHeight, float[] frustum)
+	{
+		float top = (float) (zNear * Math.tan(Math.PI / 180 * fovY_deg / 2));
+		float right = top * mRenderWidth / mRenderHeight;
+		frustum[0] = -right + 2 * right * x0 / mRenderWidth;
+		frustum[1] = -right + 2 * right * (x0 + nTileWidth) / mRenderWidth;
+		frustum[2] = top - 2 * top * (y0 + nTileHeight) / mRenderHeight;
+		frustum[3] = top - 2 * top * y0 / mRenderHeight;
+	}
+
+	// same rectangle in normalized device coords of the full image
+	public void GetTileWindow(int x0, int y0, int nTileWidth, int nTileHeight, float[] window)
+	{
+		window[0] = -1 + 2f * x0 / mRenderWidth;
+		window[1] = -1 + 2f * (x0 + nTileWidth) / mRenderWidth;
+		window[2] = 1 - 2f * (y0 + nTileHeight) / mRenderHeight;
+		window[3] = 1 - 2f * y0 / mRenderHeight;
+	}
+
+	// GL thread, band of next tile, null while the encoder holds all bands
+	public int[] PollBand()
+	{
+		if (mBand == null)
+		{
+			mBand = mFreeBands.poll();
+		}
+		return mBand;
+	}
+
+	// GL thread, after the copy of current tile. Band goes to the encoder after its last tile, true once all are done
+	public boolean NextTile()
+	{
+		mTileX += mTileWidth;
+		if (mTileX >= mRenderWidth)
+		{
+			SubmitBand(mBand, getCurrentTileHeight());
+			mBand = null;
+			mTileX = 0;
+			mTileY += mBandHeight;
+		}
+		return mTileY >= mRenderHeight;
+	}
+
+	// buffer for glReadPixels of a tile, rows from bottom
+	public ByteBuffer getTilePixels()
+	{
+		mTilePixels.position(0);
+		return mTilePixels;
+	}
+
+	// read tile rows put top down in band at column x0
+	public void CopyTile(int[] band, int x0, int nTileWidth, int nTileHeight)
+	{
+		for (int r = 0; r < nTileHeight; r++)
+		{
+			mTileInts.position(r * nTileWidth);
+			mTileInts.get(band, (nTileHeight - 1 - r) * mRenderWidth + x0, nTileWidth);
+		}
+		mTileInts.position(0);
+	}
+
+	// band of nRows render rows goes to the encoder, band is given back once encoded
+	private void SubmitBand(final int[] band, final int nRows)
+	{
+		GetEncoder().execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					if (mError == null)
+					{
+						EncodeBand(band, nRows);
+					}
+				}
+				catch (IOException e)
+				{
+					mError = e;
+				}
+				finally
+				{
+					mFreeBands.add(band);
+					if (mOnBandFreed != null)
+					{
+						mOnBandFreed.run();
+					}
+				}
+			}
+		});
+	}
+
+	// GL thread, after last band, future is done once file is closed
+	public void End()
+	{
+		mTilePixels = null;
+		mTileInts = null;
+		GetEncoder().execute(mFuture);
+	}
+
+	// encoder thread, box filter over supersampling blocks
+	private void EncodeBand(int[] band, int nRows) throws IOException
+	{
+		if (mWriter == null)
+		{
+			mWriter = new PngStreamWriter(new BufferedOutputStream(new FileOutputStream(mFileName), OUTPUT_BUFFER_SIZE), mWidth, mHeight);
+			mRow = new byte[mWidth * 3];
+			mSums = new int[mWidth * 3];
+		}
+
+		int s = mSupersampling;
+		int nSamples = s * s;
+		for (int y = 0; y < nRows; y += s)
+		{
+			Arrays.fill(mSums, 0);
+			for (int sy = 0; sy < s; sy++)
+			{
+				int nOffset = (y + sy) * mRenderWidth;
+				for (int x = 0; x < mRenderWidth; x++)
+				{
+					int rgba = band[nOffset + x];
+					int nSum = (x / s) * 3;
+					mSums[nSum] += rgba >>> 24;
+					mSums[nSum + 1] += (rgba >>> 16) & 0xFF;
+					mSums[nSum + 2] += (rgba >>> 8) & 0xFF;
+				}
+			}
+			for (int i = 0; i < mRow.length; i++)
+			{
+				mRow[i] = (byte) (mSums[i] / nSamples);
+			}
+			mWriter.WriteRow(mRow);
+		}
+	}
+}
@@ -1,10 +1,18 @@
 package truesculpt.tools.base;
 
+import java.util.Random;
+
 import truesculpt.actions.BaseAction;
+import truesculpt.actions.StrokeAction;
 import truesculpt.main.Managers;
 import truesculpt.main.R;
+import truesculpt.managers.ActionsManager;
+import truesculpt.managers.ToolsManager.EFalloffCurve;
 import truesculpt.managers.ToolsManager.ESymmetryMode;
 import truesculpt.mesh.Mesh;
+import truesculpt.mesh.Vertex;
+import truesculpt.renderer.MainRenderer;
+import truesculpt.utils.MatrixUtils;
 import android.os.SystemClock;
 import android.util.FloatMath;
 
@@ -21,14 +29,35 @@ abstract public class BaseTool implements ITools
 	protected float mSquareMaxDistance = -1;
 	protected float mMaxDistance = -1;
 
-	protected float mSigma = -1;
-	protected float mMaxGaussian = -1;
-	protected final float FWHM = (float) (2f * Math.sqrt(2 * Math.log(2f)));// full width at half maximum
-	protected final static float oneoversqrttwopi = (float) (1f / Math.sqrt(2f * Math.PI));
+	protected final int PREVIEW_NORMALS_BUDGET = 4000;// vertices updated per pick
+
+	private EFalloffCurve mFalloffCurve = null;
+	protected final FalloffTable mFalloff = new FalloffTable();
+
+	// settings of current stroke, from tools manager or from the replayed stroke
+	protected ToolParameters mParameters = null;
+
+	// stamp brush, weights the falloff curve once placed for current pick
+	private BrushAlpha mBrushAlpha = null;
+	private boolean mbBrushAlphaPlaced = false;
+	private int mBrushAlphaLevel = 0;
+	private final float[] mBrushCenter = new float[3];
+	private final float[] mBrushAxisU = new float[3];
+	private final float[] mBrushAxisV = new float[3];
+	private final float[] mBrushTemp = new float[3];
+
+	// random values of a stroke come from its seed so that the stroke can be replayed
+	private static final Random sSeedGenerator = new Random();
+	protected final Random mRandom = new Random();
+
+	// analytic history, stroke path recorded while sculpting, or stroke being replayed
+	private StrokeAction mStroke = null;
+	private StrokeAction mReplayedStroke = null;
 
 	public BaseTool(Managers managers)
 	{
 		mManagers = managers;
+		mFalloffCurve = GetDefaultFalloffCurve();
 	}
 
 	@Override
@@ -38,11 +67,50 @@ abstract public class BaseTool implements ITools
 
 		mAction = null;
 
-		mSquareMaxDistance = (float) Math.pow((MAX_RADIUS - MIN_RADIUS) * getManagers().getToolsManager().getRadius() / 100f + MIN_RADIUS, 2);
+		mStroke = null;
+		if (mReplayedStroke != null)
+		{
+			mParameters = mReplayedStroke.getParameters();
+			mRandom.setSeed(mReplayedStroke.getSeed());
+		}
+		else
+		{
+			mParameters = new ToolParameters(getManagers().getToolsManager(), this);
+			long seed = sSeedGenerator.nextLong();
+			mRandom.setSeed(seed);
+			if (getManagers().getActionsManager().getAnalyticHistory())
+			{
+				mStroke = new StrokeAction(getManagers().getToolsManager(), mParameters, getManagers().getRendererManager().getMainRenderer(), seed, xScreen, yScreen);
+			}
+		}
+
+		mSquareMaxDistance = (float) Math.pow((MAX_RADIUS - MIN_RADIUS) * mParameters.getRadius() / 100f + MIN_RADIUS, 2);
 		mMaxDistance = FloatMath.sqrt(mSquareMaxDistance);
 
-		mSigma = (mMaxDistance / 1.2f) / FWHM;
-		mMaxGaussian = Gaussian(mSigma, 0);
+		// rebuilt only if radius or curve changed
+		mFalloff.Setup(mParameters.getFalloffCurve(), mParameters.getFalloffSplinePoints(), mSquareMaxDistance);
+
+		mBrushAlpha = mParameters.getBrushAlpha();
+		mbBrushAlphaPlaced = false;
+	}
+
+	// same calls as mesh worker for the recorded path, result is applied without new history entry
+	public void Replay(StrokeAction stroke)
+	{
+		mReplayedStroke = stroke;
+		try
+		{
+			Start(stroke.getStartX(), stroke.getStartY());
+			for (int i = 0; i < stroke.getPointCount(); i++)
+			{
+				Pick(stroke.getX(i), stroke.getY(i));
+			}
+			Stop(stroke.getStopX(), stroke.getStopY());
+		}
+		finally
+		{
+			mReplayedStroke = null;
+		}
 	}
 
 	abstract protected void PickInternal(float xScreen, float yScreen, ESymmetryMode mode);
@@ -52,8 +120,13 @@ abstract public class BaseTool implements ITools
 	{
 		tSculptStart = SystemClock.uptimeMillis();
 
+		if (mStroke != null)
+		{
+			mStroke.AddPoint(xScreen, yScreen);
+		}
+
 		// symmetry handling
-		switch (getManagers().getToolsManager().getSymmetryMode())
+		switch (mParameters.getSymmetryMode())
 		{
 		case NONE:
 			// nop
@@ -80,17 +153,153 @@ abstract public class BaseTool implements ITools
 	{
 		if (mAction != null)
 		{
-			getManagers().getActionsManager().AddUndoAction(mAction);
+			ActionsManager actionsManager = getManagers().getActionsManager();
+			if (mReplayedStroke != null)
+			{
+				mAction.setManagers(getManagers());// replayed stroke is already in history
+			}
+			else if (mStroke != null && StrokeAction.CanReplace(mAction, mMesh))
+			{
+				// history keeps the stroke description, vertex changes are dropped once done
+				mStroke.SetStop(xScreen, yScreen);
+				mStroke.setChangeCount(mAction.GetChangeCount());
+				actionsManager.AddUndoAction(mStroke);
+				mAction.setManagers(getManagers());
+			}
+			else
+			{
+				actionsManager.AddUndoAction(mAction);
+			}
+			if (mMesh != null)
+			{
+				mMesh.getNormalUpdater().Reset();// real values are computed by the action
+			}
 			mAction.DoAction();
 			mAction = null;
 		}
 
+		mStroke = null;
 		mMesh = null;
 	}
 
-	protected static float Gaussian(float sigma, float sqDist)
+	// vertex is not moved before the end of the stroke, only displayed with its real normal
+	protected void PreviewVertexValue(Vertex vertex, float[] newCoord)
+	{
+		mMesh.getNormalUpdater().SetPreviewPosition(vertex.Index, newCoord);
+	}
+
+	// [0;1] deformation factor, 1 at center, 0 at border of the brush
+	protected float Falloff(float sqDistance)
+	{
+		return mFalloff.GetValue(sqDistance);
+	}
+
+	// falloff of the vertex distance, times stamp value if placed, reduced by mask
+	protected float Falloff(Vertex vertex)
+	{
+		float res;
+		if (mbBrushAlphaPlaced)
+		{
+			float[] coord = vertex.Coord;
+			res = Falloff(coord[0] - mBrushCenter[0], coord[1] - mBrushCenter[1], coord[2] - mBrushCenter[2]);
+		}
+		else
+		{
+			res = mFalloff.GetValue(vertex.mLastTempSqDistance);
+		}
+		return res * MaskFactor(vertex);
+	}
+
+	// falloff at offset from brush center times stamp value. With a stamp the curve spans the bounding circle
+	// of the stamp square, corners are faded instead of cut.
+	protected float Falloff(float dx, float dy, float dz)
+	{
+		float sqDistance = dx * dx + dy * dy + dz * dz;
+		if (!mbBrushAlphaPlaced)
+		{
+			return mFalloff.GetValue(sqDistance);
+		}
+		return mFalloff.GetValue(sqDistance * mSquareMaxDistance / GetSquareGatherDistance()) * BrushShape(dx, dy, dz);
+	}
+
+	// squared radius of vertices given to the tool, half diagonal of the stamp square when placed
+	protected float GetSquareGatherDistance()
+	{
+		return mbBrushAlphaPlaced ? 2 * mSquareMaxDistance : mSquareMaxDistance;
+	}
+
+	// stamp is put on the plane tangent to the surface at center, u axis follows the screen horizontal
+	protected void PlaceBrushAlpha(float xScreen, float yScreen, float[] center, float[] normal, float averageEdgeLength)
 	{
-		return (float) (oneoversqrttwopi / sigma * Math.exp(-sqDist / (2 * sigma * sigma)));
+		mbBrushAlphaPlaced = false;
+		if (mBrushAlpha == null)
+		{
+			return;
+		}
+
+		MainRenderer renderer = getManagers().getRendererManager().getMainRenderer();
+		renderer.GetWorldCoords(mBrushAxisU, xScreen, yScreen, 0);
+		renderer.GetWorldCoords(mBrushTemp, xScreen + 10, yScreen, 0);
+		MatrixUtils.minus(mBrushTemp, mBrushAxisU, mBrushAxisU);
+
+		// projection on tangent plane
+		MatrixUtils.copy(normal, mBrushTemp);
+		MatrixUtils.normalize(mBrushTemp);
+		float dot = MatrixUtils.dot(mBrushAxisU, mBrushTemp);
+		mBrushAxisU[0] -= dot * mBrushTemp[0];
+		mBrushAxisU[1] -= dot * mBrushTemp[1];
+		mBrushAxisU[2] -= dot * mBrushTemp[2];
+		if (MatrixUtils.magnitude(mBrushAxisU) == 0)
+		{
+			return;// surface seen from the side
+		}
+		MatrixUtils.normalize(mBrushAxisU);
+		MatrixUtils.cross(mBrushTemp, mBrushAxisU, mBrushAxisV);
+
+		// one sample per vertex across the brush diameter
+		float samplesAcross = Math.max(1, 2 * mMaxDistance / averageEdgeLength);
+		mBrushAlphaLevel = mBrushAlpha.GetLevelForFootprint(mBrushAlpha.getSize() / samplesAcross);
+
+		MatrixUtils.copy(center, mBrushCenter);
+		mbBrushAlphaPlaced = true;
+	}
+
+	// [0;1] stamp value at offset from brush center, 1 without stamp
+	protected float BrushShape(float dx, float dy, float dz)
+	{
+		if (!mbBrushAlphaPlaced)
+		{
+			return 1;
+		}
+		float u = (dx * mBrushAxisU[0] + dy * mBrushAxisU[1] + dz * mBrushAxisU[2]) / mMaxDistance;
+		float v = (dx * mBrushAxisV[0] + dy * mBrushAxisV[1] + dz * mBrushAxisV[2]) / mMaxDistance;
+		return mBrushAlpha.Sample(mBrushAlphaLevel, u, v);
+	}
+
+	protected boolean IsBrushAlphaPlaced()
+	{
+		return mbBrushAlphaPlaced;
+	}
+
+	// [0;1] part of the tool effect allowed by the mask, 1 if vertex is not masked
+	protected float MaskFactor(Vertex vertex)
+	{
+		return mMesh.getMask().GetFactor(vertex.Index);
+	}
+
+	protected EFalloffCurve GetDefaultFalloffCurve()
+	{
+		return EFalloffCurve.QUADRATIC;
+	}
+
+	public EFalloffCurve getFalloffCurve()
+	{
+		return mFalloffCurve;
+	}
+
+	public void setFalloffCurve(EFalloffCurve curve)
+	{
+		mFalloffCurve = curve;
 	}
 
 	protected Managers getManagers()
@@ -103,6 +312,11 @@ abstract public class BaseTool implements ITools
 		return mLastSculptDurationMs;
 	}
 
+	public float getMaxDistance()
+	{
+		return mMaxDistance;
+	}
+
 	@Override
 	public String GetName()
 	{
@@ -138,4 +352,11 @@ abstract public class BaseTool implements ITools
 	{
 		return false;
 	}
+
+	// dabs at fixed spacing along the stroke, tools following the finger directly return false
+	@Override
+	public boolean RequiresStrokeResampling()
+	{
+		return true;
+	}
 }
@@ -0,0 +1,154 @@
+package truesculpt.tools.base;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import android.content.res.AssetManager;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Color;
+
+// Stamp brush shape, image luminance converted once into mipmapped float height tables sampled bilinearly
+public class BrushAlpha
+{
+	public static final String ASSETS_FOLDER = "stamps";
+	private static final int MAX_SIZE = 256;
+
+	private final String mName;
+	private final float[][] mLevels;
+	private final int[] mLevelSizes;
+
+	private BrushAlpha(String name, float[] heights, int nSize)
+	{
+		mName = name;
+
+		int nLevelCount = 1;
+		for (int n = nSize; n > 1; n >>= 1)
+		{
+			nLevelCount++;
+		}
+		mLevels = new float[nLevelCount][];
+		mLevelSizes = new int[nLevelCount];
+		mLevels[0] = heights;
+		mLevelSizes[0] = nSize;
+
+		// 2x2 box filter
+		for (int nLevel = 1; nLevel < nLevelCount; nLevel++)
+		{
+			int nPrevSize = mLevelSizes[nLevel - 1];
+			int nCurrSize = nPrevSize / 2;
+			float[] prev = mLevels[nLevel - 1];
+			float[] curr = new float[nCurrSize * nCurrSize];
+			for (int y = 0; y < nCurrSize; y++)
+			{
+				for (int x = 0; x < nCurrSize; x++)
+				{
+					int nPrev = (y * 2) * nPrevSize + x * 2;
+					curr[y * nCurrSize + x] = 0.25f * (prev[nPrev] + prev[nPrev + 1] + prev[nPrev + nPrevSize] + prev[nPrev + nPrevSize + 1]);
+				}
+			}
+			mLevels[nLevel] = curr;
+			mLevelSizes[nLevel] = nCurrSize;
+		}
+	}
+
+	// image is resized to a power of two, white is full height
+	public static BrushAlpha Load(AssetManager assets, String name) throws IOException
+	{
+		InputStream stream = assets.open(ASSETS_FOLDER + "/" + name);
+		Bitmap bitmap = null;
+		try
+		{
+			bitmap = BitmapFactory.decodeStream(stream);
+		}
+		finally
+		{
+			stream.close();
+		}
+		if (bitmap == null)
+		{
+			throw new IOException("Cannot decode brush alpha " + name);
+		}
+
+		int nSize = 1;
+		while (nSize * 2 <= Math.min(Math.max(bitmap.getWidth(), bitmap.getHeight()), MAX_SIZE))
+		{
+			nSize *= 2;
+		}
+		if (bitmap.getWidth() != nSize || bitmap.getHeight() != nSize)
+		{
+			Bitmap scaled = Bitmap.createScaledBitmap(bitmap, nSize, nSize, true);
+			bitmap.recycle();
+			bitmap = scaled;
+		}
+
+		int[] pixels = new int[nSize * nSize];
+		bitmap.getPixels(pixels, 0, nSize, 0, 0, nSize, nSize);
+		bitmap.recycle();
+
+		float[] heights = new float[nSize * nSize];
+		for (int i = 0; i < pixels.length; i++)
+		{
+			int color = pixels[i];
+			float luminance = (0.299f * Color.red(color) + 0.587f * Color.green(color) + 0.114f * Color.blue(color)) / 255f;
+			heights[i] = luminance * Color.alpha(color) / 255f;
+		}
+
+		return new BrushAlpha(name, heights, nSize);
+	}
+
+	public String getName()
+	{
+		return mName;
+	}
+
+	public int getSize()
+	{
+		return mLevelSizes[0];
+	}
+
+	public int getLevelCount()
+	{
+		return mLevels.length;
+	}
+
+	// smallest level where distance between two samples is no more than two texels, texelsPerSample is at full resolution
+	public int GetLevelForFootprint(float texelsPerSample)
+	{
+		int nLevel = 0;
+		while (texelsPerSample >= 2 && nLevel < mLevels.length - 1)
+		{
+			texelsPerSample *= 0.5f;
+			nLevel++;
+		}
+		return nLevel;
+	}
+
+	// u and v in [-1;1] over the brush square, 0 outside
+	public float Sample(int nLevel, float u, float v)
+	{
+		if (u <= -1 || u >= 1 || v <= -1 || v >= 1)
+		{
+			return 0;
+		}
+
+		int nSize = mLevelSizes[nLevel];
+		float[] table = mLevels[nLevel];
+
+		// texel centers at half integers
+		float x = (u + 1) * 0.5f * nSize - 0.5f;
+		float y = (v + 1) * 0.5f * nSize - 0.5f;
+		int x0 = (int) Math.floor(x);
+		int y0 = (int) Math.floor(y);
+		float fx = x - x0;
+		float fy = y - y0;
+		int x1 = Math.min(x0 + 1, nSize - 1);
+		int y1 = Math.min(y0 + 1, nSize - 1);
+		x0 = Math.max(x0, 0);
+		y0 = Math.max(y0, 0);
+
+		float top = table[y0 * nSize + x0] * (1 - fx) + table[y0 * nSize + x1] * fx;
+		float bottom = table[y1 * nSize + x0] * (1 - fx) + table[y1 * nSize + x1] * fx;
+		return top * (1 - fy) + bottom * fy;
+	}
+}
@@ -0,0 +1,128 @@
+package truesculpt.tools.base;
+
+import truesculpt.managers.ToolsManager.EFalloffCurve;
+
+// Precomputed falloff curve, indexed by normalized squared distance to avoid sqrt and exp per vertex
+public class FalloffTable
+{
+	public static final int TABLE_SIZE = 1024;
+
+	private final float[] mTable = new float[TABLE_SIZE + 1];// last sample is the border of the brush
+
+	private EFalloffCurve mCurve = null;
+	private float[] mSplinePoints = null;
+	private float mSquareMaxDistance = -1;
+	private float mIndexScale = 0;
+
+	private static final float FWHM = (float) (2f * Math.sqrt(2 * Math.log(2f)));// full width at half maximum
+	private static final float GAUSSIAN_FACTOR = (1.2f * FWHM) * (1.2f * FWHM) / 2f;// sigma is (radius / 1.2) / FWHM
+
+	// Table samples are only recomputed if curve changed, radius change only updates the index scale
+	public void Setup(EFalloffCurve curve, float[] splinePoints, float squareMaxDistance)
+	{
+		if (curve != mCurve || (curve == EFalloffCurve.SPLINE && splinePoints != mSplinePoints))
+		{
+			mCurve = curve;
+			mSplinePoints = splinePoints;
+			Rebuild();
+		}
+
+		if (squareMaxDistance != mSquareMaxDistance)
+		{
+			mSquareMaxDistance = squareMaxDistance;
+			mIndexScale = squareMaxDistance > 0 ? TABLE_SIZE / squareMaxDistance : 0;
+		}
+	}
+
+	private void Rebuild()
+	{
+		for (int i = 0; i <= TABLE_SIZE; i++)
+		{
+			float t = (float) i / TABLE_SIZE;// normalized squared distance [0;1]
+			mTable[i] = saturate(Evaluate(mCurve, mSplinePoints, t));
+		}
+		mTable[TABLE_SIZE] = 0;// nothing moves at the border
+	}
+
+	// value of the curve at normalized squared distance t, 1 at center
+	public static float Evaluate(EFalloffCurve curve, float[] splinePoints, float t)
+	{
+		float res = 0;
+		float r = (float) Math.sqrt(t);// normalized distance [0;1]
+		switch (curve)
+		{
+		case GAUSSIAN:
+			res = (float) Math.exp(-t * GAUSSIAN_FACTOR);
+			break;
+		case QUADRATIC:
+			res = 1 - t;
+			break;
+		case LINEAR:
+			res = 1 - r;
+			break;
+		case SMOOTHSTEP:
+			res = 1 - r * r * (3 - 2 * r);
+			break;
+		case CIRCULAR:
+			// quarter of circle, as blender sphere falloff
+			res = (float) Math.sqrt(1 - t);
+			break;
+		case SPLINE:
+			res = EvaluateSpline(splinePoints, r);
+			break;
+		}
+		return res;
+	}
+
+	// Catmull-Rom through uniformly spaced control values, first is center and last is border
+	private static float EvaluateSpline(float[] points, float r)
+	{
+		if (points == null || points.length == 0)
+		{
+			return 1 - r * r;// quadratic fallback
+		}
+		int n = points.length;
+		if (n == 1)
+		{
+			return points[0];
+		}
+
+		float pos = r * (n - 1);
+		int i1 = (int) pos;
+		if (i1 >= n - 1)
+		{
+			return points[n - 1];
+		}
+		float u = pos - i1;
+
+		float p0 = points[Math.max(i1 - 1, 0)];
+		float p1 = points[i1];
+		float p2 = points[i1 + 1];
+		float p3 = points[Math.min(i1 + 2, n - 1)];
+
+		return 0.5f * ((2 * p1) + (-p0 + p2) * u + (2 * p0 - 5 * p1 + 4 * p2 - p3) * u * u + (-p0 + 3 * p1 - 3 * p2 + p3) * u * u * u);
+	}
+
+	private static float saturate(float value)
+	{
+		if (value < 0) return 0;
+		if (value > 1) return 1;
+		return value;
+	}
+
+	// sqDistance is the real squared distance to pick, 0 outside of the radius
+	public float GetValue(float sqDistance)
+	{
+		int nIndex = (int) (sqDistance * mIndexScale);
+		if (nIndex < 0 || nIndex > TABLE_SIZE)
+		{
+			return 0;
+		}
+		return mTable[nIndex];
+	}
+
+	public EFalloffCurve getCurve()
+	{
+		return mCurve;
+	}
+}
@@ -23,4 +23,6 @@ public interface ITools
 	abstract public boolean RequiresColor();
 
 	abstract public boolean RequiresSymmetry();
+
+	abstract public boolean RequiresStrokeResampling();
 }
@@ -2,11 +2,20 @@ package truesculpt.tools.base;
 
 import truesculpt.actions.SculptAction;
 import truesculpt.main.Managers;
+import truesculpt.mesh.CollisionGuard;
+import truesculpt.mesh.SmoothingEngine;
+import truesculpt.mesh.Vertex;
 
 public abstract class SculptingTool extends SelectionTool
 {
 	public final static float MAX_DEFORMATION = 0.2f;
 	protected float mMaxDeformation = -1;
+	protected float mAutoSmooth = 0;
+	protected boolean mbPreventSelfIntersection = false;
+
+	private final int AUTOSMOOTH_ITERATIONS = 2;
+	private final SmoothingEngine mSmoother = new SmoothingEngine();
+	private final CollisionGuard mCollisionGuard = new CollisionGuard();
 
 	protected final float[] VOffset = new float[3];
 	protected final float[] VNormal = new float[3];
@@ -21,11 +30,75 @@ public abstract class SculptingTool extends SelectionTool
 	{
 		super.Start(xScreen, yScreen);
 
-		mMaxDeformation = getManagers().getToolsManager().getStrength() / 100.0f * MAX_DEFORMATION;// strength is -100 to 100
+		mMaxDeformation = mParameters.getStrength() / 100.0f * MAX_DEFORMATION;// strength is -100 to 100
+		mAutoSmooth = mParameters.getAutoSmooth() / 100.0f;
+		mbPreventSelfIntersection = mParameters.getPreventSelfIntersection();
+		mCollisionGuard.Clear();
 
 		mAction = new SculptAction();
 	}
 
+	@Override
+	public void Stop(float xScreen, float yScreen)
+	{
+		super.Stop(xScreen, yScreen);
+
+		mCollisionGuard.Clear();
+	}
+
+	@Override
+	protected void PostWork()
+	{
+		if (mAutoSmooth > 0)
+		{
+			SmoothRegion(AUTOSMOOTH_ITERATIONS, mAutoSmooth);
+		}
+		if (mbPreventSelfIntersection)
+		{
+			ClampSelfIntersections();
+		}
+	}
+
+	// picked vertices moving faces through other faces are moved back toward their stroke start position
+	protected void ClampSelfIntersections()
+	{
+		SculptAction action = (SculptAction) mAction;
+		int nCount = mCollisionGuard.Resolve(mMesh, mVerticesRes, action);
+		for (int i = 0; i < nCount; i++)
+		{
+			Vertex vertex = mMesh.mVertexList.get(mCollisionGuard.GetClampedVertexIndex(i));
+			mCollisionGuard.GetClampedPosition(i, VOffset);
+			action.AddNewVertexValue(VOffset, vertex);
+
+			// preview with real normals
+			PreviewVertexValue(vertex, VOffset);
+		}
+	}
+
+	// Taubin smoothing of picked vertices, starts from values already set by this stroke
+	protected void SmoothRegion(int nIterations, float strength)
+	{
+		SculptAction action = (SculptAction) mAction;
+		int nCount = mSmoother.Setup(mMesh, mVerticesRes, action);
+		for (int i = 0; i < nCount; i++)
+		{
+			Vertex vertex = mMesh.mVertexList.get(mSmoother.GetVertexIndex(i));
+			mSmoother.SetWeight(i, strength * Falloff(vertex));
+		}
+
+		mSmoother.Run(nIterations, SmoothingEngine.DEFAULT_LAMBDA, SmoothingEngine.DEFAULT_MU);
+
+		for (int i = 0; i < nCount; i++)
+		{
+			Vertex vertex = mMesh.mVertexList.get(mSmoother.GetVertexIndex(i));
+			mSmoother.GetResult(i, VOffset);
+			action.AddNewVertexValue(VOffset, vertex);
+
+			// preview with real normals
+			PreviewVertexValue(vertex, VOffset);
+		}
+	}
+
 	@Override
 	public boolean RequiresToolOverlay()
 	{
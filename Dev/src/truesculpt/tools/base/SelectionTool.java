@@ -6,7 +6,9 @@ import truesculpt.actions.SelectAction;
 import truesculpt.main.Managers;
 import truesculpt.managers.ToolsManager.ESymmetryMode;
 import truesculpt.mesh.Face;
+import truesculpt.mesh.HalfEdge;
 import truesculpt.mesh.Vertex;
+import truesculpt.utils.MatrixUtils;
 
 public abstract class SelectionTool extends BaseTool
 {
@@ -20,6 +22,9 @@ public abstract class SelectionTool extends BaseTool
 	protected Vertex mOrigVertex = null;
 	protected int nOrigVertex = -1;
 
+	private final float[] mPickPt = new float[3];
+	private final float[] mEdgeTemp = new float[3];
+
 	public SelectionTool(Managers managers)
 	{
 		super(managers);
@@ -27,6 +32,33 @@ public abstract class SelectionTool extends BaseTool
 
 	abstract protected void Work();
 
+	private float GetAverageEdgeLength(Vertex vertex)
+	{
+		float res = 0;
+		for (HalfEdge edge : vertex.OutLinkedEdges)
+		{
+			MatrixUtils.minus(mMesh.mVertexList.get(edge.V1).Coord, vertex.Coord, mEdgeTemp);
+			res += MatrixUtils.magnitude(mEdgeTemp);
+		}
+		if (vertex.OutLinkedEdges.size() > 0)
+		{
+			res /= vertex.OutLinkedEdges.size();
+		}
+		return res;
+	}
+
+	// frozen vertices are not given to Work
+	protected boolean SkipsMaskedVertices()
+	{
+		return true;
+	}
+
+	// called after main tool work on the same vertices
+	protected void PostWork()
+	{
+
+	}
+
 	private void ResetData()
 	{
 		// last distance reset
@@ -81,12 +113,19 @@ public abstract class SelectionTool extends BaseTool
 				currLastVertex = mLastVertexSymmetry;
 			}
 
-			mMesh.GetVerticesAtDistanceFromSegment(mOrigVertex, currLastVertex, mSquareMaxDistance, mVerticesRes);
+			// stamp is placed first, its square is gathered up to the corners
+			getManagers().getMeshManager().getLastPickingPoint(mPickPt);
+			PlaceBrushAlpha(xScreen, yScreen, mPickPt, mOrigVertex.Normal, GetAverageEdgeLength(mOrigVertex));
+
+			mMesh.GetVerticesAtDistanceFromSegment(mOrigVertex, currLastVertex, GetSquareGatherDistance(), mVerticesRes, SkipsMaskedVertices());
 
 			mCumulatedVerticesRes.addAll(mVerticesRes);// shared for symmetry and regular pick
 
 			// Main tool call
 			Work();
+			PostWork();
+
+			mMesh.getNormalUpdater().Update(PREVIEW_NORMALS_BUDGET);
 
 			if (mode != ESymmetryMode.NONE)
 			{
@@ -0,0 +1,98 @@
+package truesculpt.tools.base;
+
+import android.util.FloatMath;
+
+// Emits dabs at fixed spacing along the finger path, independently of touch event frequency
+public class StrokeResampler
+{
+	public static final float DEFAULT_SPACING_RATIO = 0.25f;// fraction of brush radius between two dabs
+	public static final int MAX_DABS_PER_EVENT = 8;// bounds the work done for a burst of moves
+	private final float MIN_SPACING = 1f;// pixels
+
+	private float mSpacing = MIN_SPACING;// pixels
+	private float mLastX = -1;
+	private float mLastY = -1;
+	private float mDistanceSinceLastDab = 0;
+
+	private final float[] mDabsX = new float[MAX_DABS_PER_EVENT];
+	private final float[] mDabsY = new float[MAX_DABS_PER_EVENT];
+	private int mDabCount = 0;
+
+	// first dab is the touch down point, picked directly by the caller
+	public void Begin(float xScreen, float yScreen, float spacing)
+	{
+		mSpacing = Math.max(spacing, MIN_SPACING);
+		mLastX = xScreen;
+		mLastY = yScreen;
+		mDistanceSinceLastDab = 0;
+		mDabCount = 0;
+	}
+
+	// returns number of dabs to apply, coalesced if the finger moved more than MAX_DABS_PER_EVENT spacings
+	public int AddPoint(float xScreen, float yScreen)
+	{
+		mDabCount = 0;
+
+		float dx = xScreen - mLastX;
+		float dy = yScreen - mLastY;
+		float segLength = FloatMath.sqrt(dx * dx + dy * dy);
+		if (segLength <= 0)
+		{
+			return 0;// redundant event, nothing to do
+		}
+
+		float totalDistance = mDistanceSinceLastDab + segLength;
+		float step = mSpacing;
+		int nDabs = (int) (totalDistance / step);
+		if (nDabs > MAX_DABS_PER_EVENT)
+		{
+			// burst, spread a bounded number of dabs along the path
+			nDabs = MAX_DABS_PER_EVENT;
+			step = totalDistance / nDabs;
+		}
+
+		float pos = step - mDistanceSinceLastDab;// position along segment of first dab
+		for (int i = 0; i < nDabs; i++)
+		{
+			float t = pos / segLength;
+			mDabsX[i] = mLastX + dx * t;
+			mDabsY[i] = mLastY + dy * t;
+			pos += step;
+		}
+		mDabCount = nDabs;
+
+		if (nDabs > 0)
+		{
+			mDistanceSinceLastDab = segLength - (pos - step);
+		}
+		else
+		{
+			mDistanceSinceLastDab = totalDistance;
+		}
+
+		mLastX = xScreen;
+		mLastY = yScreen;
+
+		return mDabCount;
+	}
+
+	public int getDabCount()
+	{
+		return mDabCount;
+	}
+
+	public float getDabX(int nIndex)
+	{
+		return mDabsX[nIndex];
+	}
+
+	public float getDabY(int nIndex)
+	{
+		return mDabsY[nIndex];
+	}
+
+	public float getSpacing()
+	{
+		return mSpacing;
+	}
+}
@@ -0,0 +1,91 @@
+package truesculpt.tools.base;
+
+import truesculpt.managers.ToolsManager;
+import truesculpt.managers.ToolsManager.EFalloffCurve;
+import truesculpt.managers.ToolsManager.ESymmetryMode;
+
+// Settings read by a tool during a stroke, taken once at stroke start. Replayed strokes give their recorded copy
+// to the tool so that the global tool state is never changed by a replay.
+public class ToolParameters
+{
+	private final float mRadius;
+	private final float mStrength;
+	private final int mColor;
+	private final ESymmetryMode mSymmetryMode;
+	private final float mAutoSmooth;
+	private final EFalloffCurve mFalloffCurve;
+	private final float[] mFalloffSplinePoints;
+	private final BrushAlpha mBrushAlpha;// immutable
+	private final boolean mbVolumePreserving;
+	private final boolean mbPreventSelfIntersection;
+
+	public ToolParameters(ToolsManager toolsManager, BaseTool tool)
+	{
+		mRadius = toolsManager.getRadius();
+		mStrength = toolsManager.getStrength();
+		mColor = toolsManager.getColor();
+		mSymmetryMode = toolsManager.getSymmetryMode();
+		mAutoSmooth = toolsManager.getAutoSmooth();
+		mFalloffCurve = tool.getFalloffCurve();
+		mFalloffSplinePoints = toolsManager.getFalloffSplinePoints();// never modified, a change is a new array
+		mBrushAlpha = toolsManager.getBrushAlpha();
+		mbVolumePreserving = toolsManager.getVolumePreserving();
+		mbPreventSelfIntersection = toolsManager.getPreventSelfIntersection();
+	}
+
+	public float getRadius()
+	{
+		return mRadius;
+	}
+
+	public float getStrength()
+	{
+		return mStrength;
+	}
+
+	public int getColor()
+	{
+		return mColor;
+	}
+
+	public ESymmetryMode getSymmetryMode()
+	{
+		return mSymmetryMode;
+	}
+
+	public float getAutoSmooth()
+	{
+		return mAutoSmooth;
+	}
+
+	public EFalloffCurve getFalloffCurve()
+	{
+		return mFalloffCurve;
+	}
+
+	public float[] getFalloffSplinePoints()
+	{
+		return mFalloffSplinePoints;
+	}
+
+	public BrushAlpha getBrushAlpha()
+	{
+		return mBrushAlpha;
+	}
+
+	public boolean getVolumePreserving()
+	{
+		return mbVolumePreserving;
+	}
+
+	public boolean getPreventSelfIntersection()
+	{
+		return mbPreventSelfIntersection;
+	}
+
+	// stroke history size estimation
+	public int GetByteSize()
+	{
+		return (8 + mFalloffSplinePoints.length) * 4;
+	}
+}
@@ -5,9 +5,9 @@ import java.util.HashSet;
 import truesculpt.actions.SculptAction;
 import truesculpt.main.Managers;
 import truesculpt.main.R;
+import truesculpt.managers.ToolsManager.EFalloffCurve;
 import truesculpt.managers.ToolsManager.ESymmetryMode;
 import truesculpt.mesh.Face;
-import truesculpt.mesh.RenderFaceGroup;
 import truesculpt.mesh.Vertex;
 import truesculpt.tools.base.BaseTool;
 import truesculpt.utils.MatrixUtils;
@@ -17,7 +17,6 @@ public class GrabTool extends BaseTool
 	protected final HashSet<Vertex> mVerticesRes = new HashSet<Vertex>();
 	protected final HashSet<Vertex> mVerticesResSymmetry = new HashSet<Vertex>();
 	protected final float[] VOffset = new float[3];
-	protected final float[] VNormal = new float[3];
 	protected final float[] VScreenXNormal = new float[3];
 	protected final float[] VScreenYNormal = new float[3];
 	protected final float[] tempX = new float[3];
@@ -89,16 +88,7 @@ public class GrabTool extends BaseTool
 
 			for (Vertex vertex : currVerticesRes)
 			{
-				// Gaussian
-				float newOffsetFactor = Gaussian(mSigma, vertex.mLastTempSqDistance) / mMaxGaussian;
-
-				// Quadratic
-				// newOffsetFactor = 1 - (vertex.mLastTempSqDistance / mSquareMaxDistance);
-
-				// Linear
-				// newOffsetFactor = (float) (1 - Math.sqrt(vertex.mLastTempSqDistance / mSquareMaxDistance));
-
-				newOffsetFactor = MatrixUtils.saturateBetween0And1(newOffsetFactor);
+				float newOffsetFactor = Falloff(vertex);
 
 				MatrixUtils.copy(VScreenXNormal, tempX);
 				MatrixUtils.scalarMultiply(tempX, newOffsetFactor * distX / mPixelRatio);
@@ -126,15 +116,12 @@ public class GrabTool extends BaseTool
 				// Do only at the end to optimize memory usage, not needed for intermediary results
 				((SculptAction) mAction).AddNewVertexValue(VOffset, vertex);
 
-				// preview, todo preview normals
-				MatrixUtils.copy(vertex.Normal, VNormal);
-				MatrixUtils.scalarMultiply(VNormal, newOffsetFactor);
-				for (RenderFaceGroup renderGroup : mMesh.mRenderGroupList)
-				{
-					renderGroup.UpdateVertexValue(vertex.Index, VOffset, VNormal);
-				}
+				// preview with real normals
+				PreviewVertexValue(vertex, VOffset);
 			}
 
+			mMesh.getNormalUpdater().Update(PREVIEW_NORMALS_BUDGET);
+
 			getManagers().getMeshManager().NotifyListeners();
 		}
 
@@ -160,6 +147,12 @@ public class GrabTool extends BaseTool
 
 	}
 
+	@Override
+	protected EFalloffCurve GetDefaultFalloffCurve()
+	{
+		return EFalloffCurve.GAUSSIAN;
+	}
+
 	@Override
 	public int GetIcon()
 	{
@@ -190,6 +183,12 @@ public class GrabTool extends BaseTool
 		return false;
 	}
 
+	@Override
+	public boolean RequiresStrokeResampling()
+	{
+		return false;
+	}
+
 	@Override
 	public boolean RequiresSymmetry()
 	{
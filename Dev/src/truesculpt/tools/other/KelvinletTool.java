@@ -0,0 +1,377 @@
+package truesculpt.tools.other;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+
+import truesculpt.actions.SculptAction;
+import truesculpt.main.Managers;
+import truesculpt.main.R;
+import truesculpt.managers.ToolsManager.ESymmetryMode;
+import truesculpt.mesh.Face;
+import truesculpt.mesh.Vertex;
+import truesculpt.renderer.MainRenderer;
+import truesculpt.tools.base.BaseTool;
+import truesculpt.utils.MatrixUtils;
+import truesculpt.utils.ParallelLoop;
+
+// Elastic deformation with closed form regularized Kelvinlets (de Goes and James 2017), no solver needed.
+// Brush radius is the cutoff region, eps is a fraction of it and the response is faded to zero at the cutoff.
+public class KelvinletTool extends BaseTool
+{
+	public enum EKelvinletMode
+	{
+		GRAB, TWIST, SCALE
+	};
+
+	private final float EPSILON_RATIO = 0.35f;// regularization radius relative to cutoff
+	private final float POISSON_RATIO = 0.3f;
+	private final float INCOMPRESSIBLE_POISSON_RATIO = 0.5f;// volume preserving material
+	private final float PIXEL_RATIO = 500;// for 1 meter displacement
+	private final float TWIST_PIXEL_RATIO = 200;// for 1 radian
+	private final int PARALLEL_MIN_VERTICES = 2048;
+
+	private final EKelvinletMode mMode;
+
+	// material constants, shear modulus is 1 as it is normalized away
+	private float a = 0;
+	private float b = 0;
+	private float c = 0;
+	private float mEpsilon = 0;
+	private float mScaleNormalization = 1;
+
+	private final Region mRegion = new Region();
+	private final Region mRegionSymmetry = new Region();
+
+	private final float[] VScreenXNormal = new float[3];
+	private final float[] VScreenYNormal = new float[3];
+	private final float[] VScreenZNormal = new float[3];
+	private final float[] temp = new float[3];
+	private final float[] VOffset = new float[3];
+	private final float[] mForce = new float[3];// grab displacement or twist axis times angle
+	private float mScale = 0;
+	private float mxOrig = -1;
+	private float myOrig = -1;
+
+	private class Region
+	{
+		final HashSet<Vertex> mVertices = new HashSet<Vertex>();
+		final ArrayList<Vertex> mList = new ArrayList<Vertex>();
+		final float[] mCenter = new float[3];
+		float[] mNewCoords = new float[0];
+
+		void Clear()
+		{
+			for (Vertex vertex : mVertices)
+			{
+				vertex.mLastTempSqDistance = -1.f;
+			}
+			mVertices.clear();
+			mList.clear();
+		}
+	}
+
+	private class EvaluateTask implements ParallelLoop.IRangeTask
+	{
+		Region mCurrRegion;
+		final float[] mCurrForce = new float[3];
+
+		@Override
+		public void Run(int nStart, int nEnd)
+		{
+			float[] r = new float[3];
+			float[] u = new float[3];
+			for (int i = nStart; i < nEnd; i++)
+			{
+				float[] coord = mCurrRegion.mList.get(i).Coord;
+				MatrixUtils.minus(coord, mCurrRegion.mCenter, r);
+				Evaluate(r, mCurrForce, u);
+				int nOffset = i * 3;
+				mCurrRegion.mNewCoords[nOffset] = coord[0] + u[0];
+				mCurrRegion.mNewCoords[nOffset + 1] = coord[1] + u[1];
+				mCurrRegion.mNewCoords[nOffset + 2] = coord[2] + u[2];
+			}
+		}
+	}
+
+	private final EvaluateTask mEvaluateTask = new EvaluateTask();
+
+	public KelvinletTool(Managers managers, EKelvinletMode mode)
+	{
+		super(managers);
+		mMode = mode;
+	}
+
+	@Override
+	public void Start(float xScreen, float yScreen)
+	{
+		super.Start(xScreen, yScreen);
+
+		mAction = new SculptAction();
+
+		mRegion.Clear();
+		mRegionSymmetry.Clear();
+
+		float nu = mParameters.getVolumePreserving() ? INCOMPRESSIBLE_POISSON_RATIO : POISSON_RATIO;
+		a = 1 / (4 * (float) Math.PI);
+		b = a / (4 * (1 - nu));
+		c = 2 / (3 * a - 2 * b);
+		mEpsilon = EPSILON_RATIO * mMaxDistance;
+
+		// scale strength relative to a fully compressible material, incompressible material cannot be scaled
+		mScaleNormalization = 2 - 1 / (1 - nu);
+	}
+
+	@Override
+	protected void PickInternal(float xScreen, float yScreen, ESymmetryMode mode)
+	{
+		Region region = mode != ESymmetryMode.NONE ? mRegionSymmetry : mRegion;
+
+		// region and center are fixed at first pick
+		if (region.mVertices.size() == 0)
+		{
+			if (mMesh != null)
+			{
+				int nTriangleIndex = getManagers().getMeshManager().Pick(xScreen, yScreen, mode);
+				if (nTriangleIndex >= 0)
+				{
+					Face face = mMesh.mFaceList.get(nTriangleIndex);
+					mMesh.GetVerticesAtDistanceFromSegment(mMesh.mVertexList.get(face.E0.V0), null, mSquareMaxDistance, region.mVertices);
+					region.mList.addAll(region.mVertices);
+					if (region.mNewCoords.length < region.mList.size() * 3)
+					{
+						region.mNewCoords = new float[region.mList.size() * 3];
+					}
+					getManagers().getMeshManager().getLastPickingPoint(region.mCenter);
+
+					mxOrig = xScreen;
+					myOrig = yScreen;
+				}
+			}
+		}
+
+		if (mAction != null && region.mList.size() > 0)
+		{
+			ComputeForce(xScreen, yScreen, mode);
+
+			// closed form per vertex, evaluated in parallel then pushed to the action
+			mEvaluateTask.mCurrRegion = region;
+			MatrixUtils.copy(mForce, mEvaluateTask.mCurrForce);
+			int nCount = region.mList.size();
+			ParallelLoop.Run(nCount, PARALLEL_MIN_VERTICES, mEvaluateTask);
+
+			for (int i = 0; i < nCount; i++)
+			{
+				Vertex vertex = region.mList.get(i);
+				int nOffset = i * 3;
+				float maskFactor = MaskFactor(vertex);
+				VOffset[0] = vertex.Coord[0] + (region.mNewCoords[nOffset] - vertex.Coord[0]) * maskFactor;
+				VOffset[1] = vertex.Coord[1] + (region.mNewCoords[nOffset + 1] - vertex.Coord[1]) * maskFactor;
+				VOffset[2] = vertex.Coord[2] + (region.mNewCoords[nOffset + 2] - vertex.Coord[2]) * maskFactor;
+
+				((SculptAction) mAction).AddNewVertexValue(VOffset, vertex);
+
+				// preview with real normals
+				PreviewVertexValue(vertex, VOffset);
+			}
+
+			mMesh.getNormalUpdater().Update(PREVIEW_NORMALS_BUDGET);
+
+			getManagers().getMeshManager().NotifyListeners();
+		}
+	}
+
+	// finger offset since touch down converted in the screen plane
+	private void ComputeForce(float xScreen, float yScreen, ESymmetryMode mode)
+	{
+		float distX = xScreen - mxOrig;
+		float distY = -(yScreen - myOrig);// y is inverted compared to opengl
+
+		MainRenderer renderer = getManagers().getRendererManager().getMainRenderer();
+		renderer.GetWorldCoords(VScreenXNormal, xScreen, yScreen, 0);
+		renderer.GetWorldCoords(temp, xScreen + 10, yScreen, 0);
+		MatrixUtils.minus(temp, VScreenXNormal, VScreenXNormal);
+		MatrixUtils.normalize(VScreenXNormal);
+
+		renderer.GetWorldCoords(VScreenYNormal, xScreen, yScreen, 0);
+		renderer.GetWorldCoords(temp, xScreen, yScreen - 10, 0);// y is inverted compared to opengl
+		MatrixUtils.minus(temp, VScreenYNormal, VScreenYNormal);
+		MatrixUtils.normalize(VScreenYNormal);
+
+		switch (mMode)
+		{
+		case GRAB:
+		{
+			for (int i = 0; i < 3; i++)
+			{
+				mForce[i] = (VScreenXNormal[i] * distX + VScreenYNormal[i] * distY) / PIXEL_RATIO;
+			}
+			// displacement is mirrored
+			switch (mode)
+			{
+			case X:
+				mForce[0] *= -1;
+				break;
+			case Y:
+				mForce[1] *= -1;
+				break;
+			case Z:
+				mForce[2] *= -1;
+				break;
+			}
+			break;
+		}
+		case TWIST:
+		{
+			// around view axis, horizontal move gives angle
+			MatrixUtils.cross(VScreenXNormal, VScreenYNormal, VScreenZNormal);
+			MatrixUtils.copy(VScreenZNormal, mForce);
+			MatrixUtils.scalarMultiply(mForce, distX / TWIST_PIXEL_RATIO);
+			// rotation axis is a pseudo vector, mirror flips the other components
+			switch (mode)
+			{
+			case X:
+				mForce[1] *= -1;
+				mForce[2] *= -1;
+				break;
+			case Y:
+				mForce[0] *= -1;
+				mForce[2] *= -1;
+				break;
+			case Z:
+				mForce[0] *= -1;
+				mForce[1] *= -1;
+				break;
+			}
+			break;
+		}
+		case SCALE:
+		{
+			// vertical move, up grows
+			mScale = distY / PIXEL_RATIO / mMaxDistance;
+			break;
+		}
+		}
+	}
+
+	// displacement u at offset r from center, normalized so that force is the displacement at center (grab),
+	// the rotation angle (twist) or the relative growth (scale) near the center
+	private void Evaluate(float[] r, float[] force, float[] u)
+	{
+		float sqR = r[0] * r[0] + r[1] * r[1] + r[2] * r[2];
+		float sqEps = mEpsilon * mEpsilon;
+		float rEps = (float) Math.sqrt(sqR + sqEps);
+		float rEps3 = rEps * rEps * rEps;
+
+		float window = 1 - sqR / mSquareMaxDistance;// fades to zero at cutoff
+		if (window <= 0)
+		{
+			MatrixUtils.zero(u);
+			return;
+		}
+		window *= window;
+
+		switch (mMode)
+		{
+		case GRAB:
+		{
+			float dot = r[0] * force[0] + r[1] * force[1] + r[2] * force[2];
+			float factorI = c * mEpsilon * ((a - b) / rEps + a * sqEps / (2 * rEps3));
+			float factorRR = c * mEpsilon * b / rEps3 * dot;
+			for (int i = 0; i < 3; i++)
+			{
+				u[i] = window * (factorI * force[i] + factorRR * r[i]);
+			}
+			break;
+		}
+		case TWIST:
+		{
+			float rEps5 = rEps3 * rEps * rEps;
+			float factor = 2 * sqEps * mEpsilon / 5 * (1 / rEps3 + 3 * sqEps / (2 * rEps5));
+			MatrixUtils.cross(force, r, u);
+			MatrixUtils.scalarMultiply(u, window * factor);
+			break;
+		}
+		case SCALE:
+		{
+			float rEps5 = rEps3 * rEps * rEps;
+			float factor = 2 * sqEps * mEpsilon / 5 * (1 / rEps3 + 3 * sqEps / (2 * rEps5));
+			float s = window * factor * mScale * mScaleNormalization;
+			u[0] = s * r[0];
+			u[1] = s * r[1];
+			u[2] = s * r[2];
+			break;
+		}
+		}
+	}
+
+	@Override
+	public void Stop(float xScreen, float yScreen)
+	{
+		super.Stop(xScreen, yScreen);
+
+		mRegion.Clear();
+		mRegionSymmetry.Clear();
+	}
+
+	@Override
+	public int GetIcon()
+	{
+		int res = R.drawable.grab;
+		switch (mMode)
+		{
+		case TWIST:
+			res = R.drawable.twist;
+			break;
+		case SCALE:
+			res = R.drawable.scale;
+			break;
+		}
+		return res;
+	}
+
+	@Override
+	public String GetName()
+	{
+		String res = "Elastic grab";
+		switch (mMode)
+		{
+		case TWIST:
+			res = "Twist";
+			break;
+		case SCALE:
+			res = "Elastic scale";
+			break;
+		}
+		return res;
+	}
+
+	@Override
+	public boolean RequiresStrength()
+	{
+		return false;
+	}
+
+	@Override
+	public boolean RequiresRadius()
+	{
+		return true;
+	}
+
+	@Override
+	public boolean RequiresColor()
+	{
+		return false;
+	}
+
+	@Override
+	public boolean RequiresStrokeResampling()
+	{
+		return false;
+	}
+
+	@Override
+	public boolean RequiresSymmetry()
+	{
+		return true;
+	}
+}
@@ -0,0 +1,70 @@
+package truesculpt.tools.other;
+
+import truesculpt.actions.MaskAction;
+import truesculpt.main.Managers;
+import truesculpt.main.R;
+import truesculpt.mesh.Vertex;
+import truesculpt.mesh.VertexMask;
+import truesculpt.tools.base.SelectionTool;
+
+// Freezes vertices against sculpting and painting, negative strength unmasks
+public class MaskTool extends SelectionTool
+{
+	private float mMaskStrength = 0;// [-1;1]
+
+	public MaskTool(Managers managers)
+	{
+		super(managers);
+	}
+
+	@Override
+	public void Start(float xScreen, float yScreen)
+	{
+		super.Start(xScreen, yScreen);
+
+		mAction = new MaskAction();
+		mMaskStrength = mParameters.getStrength() / 100.0f;// strength is -100 to 100
+	}
+
+	// mask is applied live, display only depends on it
+	@Override
+	protected void Work()
+	{
+		VertexMask mask = mMesh.getMask();
+		for (Vertex vertex : mVerticesRes)
+		{
+			int oldValue = mask.GetValue(vertex.Index);
+			int newValue = oldValue + (int) (Falloff(vertex.mLastTempSqDistance) * mMaskStrength * VertexMask.MAX_VALUE);
+			mask.SetValue(vertex.Index, newValue);
+
+			((MaskAction) mAction).AddVertexMaskChange(vertex.Index, oldValue, mask.GetValue(vertex.Index));
+
+			mMesh.UpdateVertexColor(vertex);
+		}
+	}
+
+	// masked vertices must be reachable to be unmasked
+	@Override
+	protected boolean SkipsMaskedVertices()
+	{
+		return false;
+	}
+
+	@Override
+	public int GetIcon()
+	{
+		return R.drawable.flag;
+	}
+
+	@Override
+	public String GetName()
+	{
+		return "Mask";
+	}
+
+	@Override
+	public boolean RequiresStrength()
+	{
+		return true;
+	}
+}
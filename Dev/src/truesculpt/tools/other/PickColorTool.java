@@ -60,6 +60,12 @@ public class PickColorTool extends BaseTool
 		return true;
 	}
 
+	@Override
+	public boolean RequiresStrokeResampling()
+	{
+		return false;
+	}
+
 	@Override
 	public boolean RequiresSymmetry()
 	{
@@ -3,6 +3,7 @@ package truesculpt.tools.painting;
 import truesculpt.actions.ColorizeAction;
 import truesculpt.main.Managers;
 import truesculpt.main.R;
+import truesculpt.managers.ToolsManager.EFalloffCurve;
 import truesculpt.mesh.RenderFaceGroup;
 import truesculpt.mesh.Vertex;
 import truesculpt.tools.base.PaintingTool;
@@ -24,7 +25,7 @@ public class ColorizeTool extends PaintingTool
 	{
 		super.Start(xScreen, yScreen);
 
-		mTargetColor = getManagers().getToolsManager().getColor();
+		mTargetColor = mParameters.getColor();
 		Color.colorToHSV(mTargetColor, VTargetCol);
 	}
 
@@ -33,17 +34,10 @@ public class ColorizeTool extends PaintingTool
 	{
 		for (Vertex vertex : mVerticesRes)
 		{
-			float currSqDist = vertex.mLastTempSqDistance;
-
 			Color.colorToHSV(vertex.Color, VNewCol);
 
-			// barycenter of colors
-			float alpha = 0;
-			float sqOffset = mSquareMaxDistance / 2;
-			if (currSqDist > sqOffset)
-			{
-				alpha = ((currSqDist - sqOffset)) / (mSquareMaxDistance - sqOffset);// [0;1]
-			}
+			// barycenter of colors, masked vertices keep their color
+			float alpha = 1 - Falloff(vertex);
 
 			// float temp = circularInterp(VNewCol[2], VTargetCol[2], alpha, 1);
 			// Log.i("COLORIZETOOL", VNewCol[2] + " to " + VTargetCol[2] + ", with alpha " + alpha + " = " + temp);
@@ -61,7 +55,7 @@ public class ColorizeTool extends PaintingTool
 			// preview
 			for (RenderFaceGroup renderGroup : mMesh.mRenderGroupList)
 			{
-				renderGroup.UpdateVertexColor(vertex.Index, newColor);
+				renderGroup.UpdateVertexColor(vertex.Index, mMesh.GetDisplayColor(vertex.Index, newColor));
 			}
 		}
 	}
@@ -116,6 +110,13 @@ public class ColorizeTool extends PaintingTool
 		return res;
 	}
 
+	// plain color in the center part of the brush
+	@Override
+	protected EFalloffCurve GetDefaultFalloffCurve()
+	{
+		return EFalloffCurve.SMOOTHSTEP;
+	}
+
 	@Override
 	public int GetIcon()
 	{
@@ -1,19 +1,184 @@
 package truesculpt.tools.painting;
 
+import truesculpt.actions.TexturePaintAction;
 import truesculpt.main.Managers;
 import truesculpt.main.R;
+import truesculpt.mesh.Face;
+import truesculpt.mesh.HalfEdge;
+import truesculpt.mesh.PaintTexture;
+import truesculpt.mesh.UVAtlas;
+import truesculpt.mesh.Vertex;
+import truesculpt.mesh.VertexMask;
 import truesculpt.tools.base.PaintingTool;
+import android.util.FloatMath;
 
+// Paints in the texture instead of vertex colors, detail does not depend on mesh density
 public class TexturePaintTool extends PaintingTool
 {
+	private final float DILATION_TEXELS = 1;// covers chart borders against bilinear filtering
+
+	private int mTargetColor = 0;
+	private UVAtlas mAtlas = null;
+	private PaintTexture mTexture = null;
+
+	private int[] mFaceStamp = null;// faces already splatted for current dab
+	private int mStamp = 0;
+
+	private final float[] mPickPt = new float[3];
+	private final float[] mUVs = new float[6];
+	private final float[] P = new float[3];
+
 	public TexturePaintTool(Managers managers)
 	{
 		super(managers);
 	}
 
+	@Override
+	public void Start(float xScreen, float yScreen)
+	{
+		super.Start(xScreen, yScreen);
+
+		mTargetColor = mParameters.getColor();
+
+		if (mMesh != null)
+		{
+			mAtlas = mMesh.getUVAtlas();// built at first use
+			mTexture = mMesh.getPaintTexture();
+			mAction = new TexturePaintAction(mTexture);
+
+			int nFaceCount = mMesh.mFaceList.size();
+			if (mFaceStamp == null || mFaceStamp.length != nFaceCount)
+			{
+				mFaceStamp = new int[nFaceCount];
+				mStamp = 0;
+			}
+		}
+	}
+
 	@Override
 	protected void Work()
 	{
+		getManagers().getMeshManager().getLastPickingPoint(mPickPt);
+
+		mStamp++;
+		synchronized (mTexture)
+		{
+			// picked face is always painted, even if brush is smaller than triangle
+			SplatFaceOnce(mTriangleIndex);
+			for (Vertex vertex : mVerticesRes)
+			{
+				for (HalfEdge edge : vertex.OutLinkedEdges)
+				{
+					SplatFaceOnce(edge.Face);
+				}
+			}
+		}
+	}
+
+	private void SplatFaceOnce(int nFace)
+	{
+		if (mFaceStamp[nFace] != mStamp)
+		{
+			mFaceStamp[nFace] = mStamp;
+			SplatFace(nFace);
+		}
+	}
+
+	// rasterizes the face in texture space, texel 3D position is interpolated to compute the brush falloff
+	private void SplatFace(int nFace)
+	{
+		Face face = mMesh.mFaceList.get(nFace);
+		float[] A = mMesh.mVertexList.get(face.E0.V0).Coord;
+		float[] B = mMesh.mVertexList.get(face.E1.V0).Coord;
+		float[] C = mMesh.mVertexList.get(face.E2.V0).Coord;
+
+		// mask is interpolated inside the face
+		VertexMask mask = mMesh.getMask();
+		float maskA = mask.GetFactor(face.E0.V0);
+		float maskB = mask.GetFactor(face.E1.V0);
+		float maskC = mask.GetFactor(face.E2.V0);
+		if (maskA == 0 && maskB == 0 && maskC == 0)
+		{
+			return;
+		}
+
+		mAtlas.GetFaceUVs(nFace, mUVs);
+		int nSize = mTexture.getSize();
+		float x0 = mUVs[0] * nSize;
+		float y0 = mUVs[1] * nSize;
+		float x1 = mUVs[2] * nSize;
+		float y1 = mUVs[3] * nSize;
+		float x2 = mUVs[4] * nSize;
+		float y2 = mUVs[5] * nSize;
+
+		float area = (x1 - x0) * (y2 - y0) - (x2 - x0) * (y1 - y0);
+		if (area == 0)
+		{
+			return;
+		}
+		float invArea = 1 / area;
+		float absArea = Math.abs(area);
+
+		// barycentric limits for a point at DILATION_TEXELS outside of each edge
+		float lim0 = -DILATION_TEXELS * Length(x2 - x1, y2 - y1) / absArea;
+		float lim1 = -DILATION_TEXELS * Length(x0 - x2, y0 - y2) / absArea;
+		float lim2 = -DILATION_TEXELS * Length(x1 - x0, y1 - y0) / absArea;
+
+		int xMin = Math.max(0, (int) (Math.min(x0, Math.min(x1, x2)) - DILATION_TEXELS));
+		int yMin = Math.max(0, (int) (Math.min(y0, Math.min(y1, y2)) - DILATION_TEXELS));
+		int xMax = Math.min(nSize - 1, (int) (Math.max(x0, Math.max(x1, x2)) + DILATION_TEXELS));
+		int yMax = Math.min(nSize - 1, (int) (Math.max(y0, Math.max(y1, y2)) + DILATION_TEXELS));
+
+		TexturePaintAction action = (TexturePaintAction) mAction;
+		for (int y = yMin; y <= yMax; y++)
+		{
+			float py = y + 0.5f;// texel center
+			for (int x = xMin; x <= xMax; x++)
+			{
+				float px = x + 0.5f;
+
+				float b0 = ((x2 - x1) * (py - y1) - (y2 - y1) * (px - x1)) * invArea;
+				float b1 = ((x0 - x2) * (py - y2) - (y0 - y2) * (px - x2)) * invArea;
+				float b2 = ((x1 - x0) * (py - y0) - (y1 - y0) * (px - x0)) * invArea;
+				if (b0 < lim0 || b1 < lim1 || b2 < lim2)
+				{
+					continue;
+				}
+
+				// dilated texels take position of closest point in triangle
+				b0 = Math.max(b0, 0);
+				b1 = Math.max(b1, 0);
+				b2 = Math.max(b2, 0);
+				float invSum = 1 / (b0 + b1 + b2);
+				P[0] = (b0 * A[0] + b1 * B[0] + b2 * C[0]) * invSum - mPickPt[0];
+				P[1] = (b0 * A[1] + b1 * B[1] + b2 * C[1]) * invSum - mPickPt[1];
+				P[2] = (b0 * A[2] + b1 * B[2] + b2 * C[2]) * invSum - mPickPt[2];
+
+				float alpha = Falloff(P[0], P[1], P[2]);
+				alpha *= (b0 * maskA + b1 * maskB + b2 * maskC) * invSum;
+				if (alpha > 0)
+				{
+					action.SaveOriginalTile(mTexture.GetTileIndex(x, y));
+					mTexture.BlendTexel(x, y, mTargetColor, alpha);
+				}
+			}
+		}
+	}
+
+	private static float Length(float dx, float dy)
+	{
+		return FloatMath.sqrt(dx * dx + dy * dy);
+	}
+
+	@Override
+	public void Stop(float xScreen, float yScreen)
+	{
+		if (mAction instanceof TexturePaintAction)
+		{
+			((TexturePaintAction) mAction).SaveNewTiles();
+		}
+
+		super.Stop(xScreen, yScreen);
 	}
 
 	@Override
@@ -3,7 +3,6 @@ package truesculpt.tools.sculpting;
 import truesculpt.actions.SculptAction;
 import truesculpt.main.Managers;
 import truesculpt.main.R;
-import truesculpt.mesh.RenderFaceGroup;
 import truesculpt.mesh.Vertex;
 import truesculpt.tools.base.SculptingTool;
 import truesculpt.utils.MatrixUtils;
@@ -40,19 +39,14 @@ public class FlattenTool extends SculptingTool
 			MatrixUtils.copy(averageNormal, VOffset);
 
 			MatrixUtils.minus(averageTarget, vertex.Coord, temp);
-			float newOffsetFactor = MatrixUtils.dot(VOffset, temp) * (1 - vertex.mLastTempSqDistance / mSquareMaxDistance);
+			float newOffsetFactor = MatrixUtils.dot(VOffset, temp) * Falloff(vertex);
 			MatrixUtils.scalarMultiply(VOffset, newOffsetFactor);
 
 			MatrixUtils.plus(VOffset, vertex.Coord, VOffset);
 			((SculptAction) mAction).AddNewVertexValue(VOffset, vertex);
 
-			// preview
-			MatrixUtils.copy(vertex.Normal, VNormal);
-			MatrixUtils.scalarMultiply(VNormal, newOffsetFactor);
-			for (RenderFaceGroup renderGroup : mMesh.mRenderGroupList)
-			{
-				renderGroup.UpdateVertexValue(vertex.Index, VOffset, VNormal);
-			}
+			// preview with real normals
+			PreviewVertexValue(vertex, VOffset);
 		}
 	}
 
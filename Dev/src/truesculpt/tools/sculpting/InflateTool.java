@@ -3,7 +3,6 @@ package truesculpt.tools.sculpting;
 import truesculpt.actions.SculptAction;
 import truesculpt.main.Managers;
 import truesculpt.main.R;
-import truesculpt.mesh.RenderFaceGroup;
 import truesculpt.mesh.Vertex;
 import truesculpt.tools.base.SculptingTool;
 import truesculpt.utils.MatrixUtils;
@@ -25,27 +24,15 @@ public class InflateTool extends SculptingTool
 			MatrixUtils.normalize(VNormal);
 			MatrixUtils.copy(VNormal, VOffset);
 
-			float newOffsetFactor = 1;
-
-			// Gaussian
-			// newOffsetFactor= (Gaussian(sigma, vertex.mLastTempSqDistance) / maxGaussian * fMaxDeformation);
-
-			// Linear
-			newOffsetFactor = (1 - (vertex.mLastTempSqDistance / mSquareMaxDistance));
-
-			newOffsetFactor = MatrixUtils.saturateBetween0And1(newOffsetFactor);
+			float newOffsetFactor = Falloff(vertex);
 
 			MatrixUtils.scalarMultiply(VOffset, newOffsetFactor * mMaxDeformation);
 
 			MatrixUtils.plus(VOffset, vertex.Coord, VOffset);
 			((SculptAction) mAction).AddNewVertexValue(VOffset, vertex);
 
-			// preview
-			MatrixUtils.scalarMultiply(VNormal, 1 - newOffsetFactor);
-			for (RenderFaceGroup renderGroup : mMesh.mRenderGroupList)
-			{
-				renderGroup.UpdateVertexValue(vertex.Index, VOffset, VNormal);
-			}
+			// preview with real normals
+			PreviewVertexValue(vertex, VOffset);
 		}
 	}
 
@@ -61,14 +48,4 @@ public class InflateTool extends SculptingTool
 		return "Inflate";
 	}
 
-	@Override
-	public void Stop(float xScreen, float yScreen)
-	{
-		// if (mAction != null)
-		// {
-		// ((SculptAction) mAction).DoSmoothAll(mMesh);// just a test
-		// }
-
-		super.Stop(xScreen, yScreen);
-	}
 }
@@ -1,11 +1,8 @@
 package truesculpt.tools.sculpting;
 
-import java.util.Random;
-
 import truesculpt.actions.SculptAction;
 import truesculpt.main.Managers;
 import truesculpt.main.R;
-import truesculpt.mesh.RenderFaceGroup;
 import truesculpt.mesh.Vertex;
 import truesculpt.tools.base.SculptingTool;
 import truesculpt.utils.MatrixUtils;
@@ -19,8 +16,6 @@ public class NoiseTool extends SculptingTool
 
 	}
 
-	private final Random mGenerator = new Random();
-
 	@Override
 	protected void Work()
 	{
@@ -28,20 +23,15 @@ public class NoiseTool extends SculptingTool
 		{
 			MatrixUtils.copy(vertex.Normal, VOffset);
 
-			float newOffsetFactor = mGenerator.nextFloat();// -1 to 1
+			float newOffsetFactor = mRandom.nextFloat() * Falloff(vertex);// 0 to 1
 
 			MatrixUtils.scalarMultiply(VOffset, newOffsetFactor * mMaxDeformation);
 
 			MatrixUtils.plus(VOffset, vertex.Coord, VOffset);
 			((SculptAction) mAction).AddNewVertexValue(VOffset, vertex);
 
-			// preview
-			MatrixUtils.copy(vertex.Normal, VNormal);
-			MatrixUtils.scalarMultiply(VNormal, 1 - newOffsetFactor);
-			for (RenderFaceGroup renderGroup : mMesh.mRenderGroupList)
-			{
-				renderGroup.UpdateVertexValue(vertex.Index, VOffset, VNormal);
-			}
+			// preview with real normals
+			PreviewVertexValue(vertex, VOffset);
 		}
 	}
 
@@ -4,7 +4,6 @@ import truesculpt.actions.SculptAction;
 import truesculpt.main.Managers;
 import truesculpt.main.R;
 import truesculpt.mesh.HalfEdge;
-import truesculpt.mesh.RenderFaceGroup;
 import truesculpt.mesh.Vertex;
 import truesculpt.tools.base.SculptingTool;
 import truesculpt.utils.MatrixUtils;
@@ -55,15 +54,19 @@ public class PinchTool extends SculptingTool
 				MatrixUtils.copy(vertex.mLastIntersectPt, VOffset);
 			}
 
-			((SculptAction) mAction).AddNewVertexValue(VOffset, vertex);
-
-			// preview
-			MatrixUtils.copy(vertex.Normal, VNormal);
-			MatrixUtils.scalarMultiply(VNormal, 1 - vertex.mLastTempSqDistance / mSquareMaxDistance);
-			for (RenderFaceGroup renderGroup : mMesh.mRenderGroupList)
+			// vertices far from center or partially masked move only part of the way
+			float factor = Falloff(vertex);
+			if (factor < 1)
 			{
-				renderGroup.UpdateVertexValue(vertex.Index, VOffset, VNormal);
+				MatrixUtils.minus(VOffset, vertex.Coord, VOffset);
+				MatrixUtils.scalarMultiply(VOffset, factor);
+				MatrixUtils.plus(VOffset, vertex.Coord, VOffset);
 			}
+
+			((SculptAction) mAction).AddNewVertexValue(VOffset, vertex);
+
+			// preview with real normals
+			PreviewVertexValue(vertex, VOffset);
 		}
 	}
 
@@ -1,13 +1,9 @@
 package truesculpt.tools.sculpting;
 
-import truesculpt.actions.SculptAction;
 import truesculpt.main.Managers;
 import truesculpt.main.R;
-import truesculpt.mesh.HalfEdge;
-import truesculpt.mesh.RenderFaceGroup;
-import truesculpt.mesh.Vertex;
 import truesculpt.tools.base.SculptingTool;
-import truesculpt.utils.MatrixUtils;
+import android.util.FloatMath;
 
 public class SmoothTool extends SculptingTool
 {
@@ -16,30 +12,26 @@ public class SmoothTool extends SculptingTool
 		super(managers);
 	}
 
-	// TODO take radius into account and average further
+	private final int MIN_ITERATIONS = 2;
+	private final int MAX_ITERATIONS = 20;
+
+	// iterations grow with the number of vertices across the brush so that large radii smooth as much as small ones
 	@Override
 	protected void Work()
 	{
-		for (Vertex vertex : mVerticesRes)
-		{
-			// Place at average position of all surrounding points
-			MatrixUtils.zero(VOffset);
-			for (HalfEdge edge : vertex.OutLinkedEdges)
-			{
-				MatrixUtils.plus(mMesh.mVertexList.get(edge.V1).Coord, VOffset, VOffset);
-			}
-			MatrixUtils.scalarMultiply(VOffset, 1.0f / vertex.OutLinkedEdges.size());
-
-			((SculptAction) mAction).AddNewVertexValue(VOffset, vertex);
-
-			// preview
-			MatrixUtils.copy(vertex.Normal, VNormal);
-			MatrixUtils.scalarMultiply(VNormal, vertex.mLastTempSqDistance / mSquareMaxDistance);
-			for (RenderFaceGroup renderGroup : mMesh.mRenderGroupList)
-			{
-				renderGroup.UpdateVertexValue(vertex.Index, VOffset, VNormal);
-			}
-		}
+		int nIterations = (int) (FloatMath.sqrt(mVerticesRes.size()) / 2);
+		nIterations = Math.max(MIN_ITERATIONS, Math.min(MAX_ITERATIONS, nIterations));
+
+		SmoothRegion(nIterations, 1.0f);
+	}
+
+	// already smoothing, collision pass is kept
+	@Override
+	public void Start(float xScreen, float yScreen)
+	{
+		super.Start(xScreen, yScreen);
+
+		mAutoSmooth = 0;
 	}
 
 	@Override
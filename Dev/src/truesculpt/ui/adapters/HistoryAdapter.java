@@ -3,6 +3,7 @@ package truesculpt.ui.adapters;
 import truesculpt.actions.BaseAction;
 import truesculpt.main.R;
 import truesculpt.managers.ActionsManager;
+import truesculpt.managers.ActionsManager.HistorySnapshot;
 import android.content.Context;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -24,23 +25,34 @@ public class HistoryAdapter extends BaseAdapter
 
 	ActionsManager mActionsManager = null;
 
+	// history state shown, only replaced before data set change notification
+	HistorySnapshot mSnapshot = null;
+
 	public HistoryAdapter(Context context, ActionsManager manager)
 	{
 		mActionsManager = manager;
+		mSnapshot = manager.getHistorySnapshot();
 		inflater = LayoutInflater.from(context);
 	}
 
+	// takes the last state published by the mesh worker
+	public void UpdateSnapshot()
+	{
+		mSnapshot = mActionsManager.getHistorySnapshot();
+		notifyDataSetChanged();
+	}
+
 	@Override
 	public int getCount()
 	{
-		int n = mActionsManager.GetUndoActionCount();
+		int n = mSnapshot.GetUndoActionCount();
 		return n;
 	}
 
 	@Override
 	public Object getItem(int position)
 	{
-		Object obj = mActionsManager.GetUndoActionAt(position);
+		Object obj = mSnapshot.GetUndoActionAt(position);
 		return obj;
 	}
 
@@ -69,7 +81,7 @@ public class HistoryAdapter extends BaseAdapter
 			holder = (ViewHolder) convertView.getTag();
 		}
 
-		BaseAction action = mActionsManager.GetUndoActionAt(position);
+		BaseAction action = mSnapshot.GetUndoActionAt(position);
 		holder.title.setText(action.GetActionName());
 		holder.description.setText(action.getDescription());
 		holder.image.setImageResource(action.GetImageResourceID());
@@ -77,4 +89,4 @@ public class HistoryAdapter extends BaseAdapter
 		return convertView;
 	}
 
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -3,6 +3,7 @@ package truesculpt.ui.panels;
 import truesculpt.main.Managers;
 import truesculpt.main.R;
 import truesculpt.main.TrueSculptApp;
+import truesculpt.renderer.ClusterCuller;
 import truesculpt.utils.Utils;
 import android.app.Activity;
 import android.os.Bundle;
@@ -54,7 +55,10 @@ public class DebugPanel extends Activity
 		int nFaces = getManagers().getMeshManager().getFacesCount();
 		msg = "Number of vertices = " + Integer.toString(nVertex) + "\n";
 		msg += "Number of faces = " + Integer.toString(nFaces) + "\n";
-		msg += "Undo stack change count = " + Integer.toString((int) (getManagers().getActionsManager().GetCurrentChangeCount() / 1e3)) + "k / " + Integer.toString((int) (getManagers().getActionsManager().GetMaxChangeCount() / 1e3)) + "k";
+		msg += "Undo stack change count = " + Integer.toString((int) (getManagers().getActionsManager().GetCurrentChangeCount() / 1e3)) + "k\n";
+		msg += "Undo stack memory = " + Integer.toString((int) (getManagers().getActionsManager().GetResidentBytes() / 1e6)) + " Mo / " + Integer.toString((int) (getManagers().getActionsManager().getRamBudget() / 1e6)) + " Mo, journal = " + Integer.toString((int) (getManagers().getActionsManager().GetJournalBytes() / 1e6)) + " Mo\n";
+		ClusterCuller culler = getManagers().getRendererManager().getMainRenderer().getClusterCuller();
+		msg += "Clusters tested = " + Integer.toString(culler.getLastTestedCount()) + ", frustum culled = " + Integer.toString(culler.getLastFrustumCulledCount()) + ", back facing culled = " + Integer.toString(culler.getLastBackfaceCulledCount());
 		meshStatText.setText(msg);
 
 		TextView memoryUsageText = (TextView) findViewById(R.id.MemoryUsageText);
@@ -15,6 +15,7 @@ import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
 import android.widget.AdapterView;
+import android.widget.AdapterView.AdapterContextMenuInfo;
 import android.widget.AdapterView.OnItemClickListener;
 import android.widget.ImageButton;
 import android.widget.ListView;
@@ -133,6 +134,7 @@ public class HistoryPanel extends Activity implements Observer
 	@Override
 	public boolean onContextItemSelected(MenuItem item)
 	{
+		AdapterContextMenuInfo info = (AdapterContextMenuInfo) item.getMenuInfo();
 
 		switch (item.getItemId())
 		{
@@ -142,8 +144,7 @@ public class HistoryPanel extends Activity implements Observer
 			// through observable
 			return true;
 		case R.id.undo_up_to_this_point:
-			// TODO use undo functions
-			// getManagers().getActionsManager().RemoveUpTo(info.position);
+			getManagers().getActionsManager().UndoUpTo(info.position);// update through observable
 			return true;
 		default:
 			return super.onContextItemSelected(item);
@@ -153,7 +154,7 @@ public class HistoryPanel extends Activity implements Observer
 	@Override
 	public void update(Observable observable, Object data)
 	{
-		adapter.notifyDataSetChanged();
+		adapter.UpdateSnapshot();
 		UpdateButtonsView();
 	}
 
@@ -56,6 +56,10 @@ public class OptionsPanel extends PreferenceActivity
 		{
 			getManagers().getPointOfViewManager().resetPOV();
 		}
+		if (preference.getKey().equalsIgnoreCase("AnalyticHistory"))
+		{
+			getManagers().getActionsManager().setAnalyticHistory(getManagers().getOptionsManager().getAnalyticHistory());
+		}
 		if (preference.getKey().equalsIgnoreCase("FullScreenApplication"))
 		{
 			String msg = getString(R.string.you_need_to_restart_the_application_for_this_option_to_be_taken_into_account);
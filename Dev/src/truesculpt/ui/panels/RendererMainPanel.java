@@ -103,6 +103,14 @@ public class RendererMainPanel extends Activity implements Observer
 		mGLSurfaceView.setDebugFlags(GLSurfaceView.DEBUG_CHECK_GL_ERROR);
 		mGLSurfaceView.setRenderer(getManagers().getRendererManager().getMainRenderer());
 		mGLSurfaceView.setRenderMode(GLSurfaceView.RENDERMODE_WHEN_DIRTY);
+		getManagers().getRendererManager().getMainRenderer().setRenderRequest(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				mGLSurfaceView.requestRender();
+			}
+		});
 
 		getManagers().getPointOfViewManager().addObserver(this);
 		getManagers().getMeshManager().addObserver(this);
@@ -590,6 +598,7 @@ public class RendererMainPanel extends Activity implements Observer
 		getManagers().getMeshManager().deleteObserver(RendererMainPanel.this);
 		getManagers().getToolsManager().deleteObserver(RendererMainPanel.this);
 		getManagers().getActionsManager().deleteObserver(this);
+		getManagers().getRendererManager().getMainRenderer().setRenderRequest(null);
 
 		getManagers().Destroy();
 	}
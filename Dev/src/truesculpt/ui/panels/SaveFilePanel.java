@@ -1,7 +1,10 @@
 package truesculpt.ui.panels;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import truesculpt.main.Managers;
 import truesculpt.main.R;
@@ -12,6 +15,7 @@ import android.app.Activity;
 import android.app.AlertDialog;
 import android.app.Dialog;
 import android.app.ProgressDialog;
+import android.app.WallpaperManager;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.media.MediaPlayer;
@@ -25,6 +29,9 @@ import android.widget.EditText;
 
 public class SaveFilePanel extends Activity implements Runnable
 {
+	private static final int THUMBNAIL_SIZE = 512;
+	private static final int WALLPAPER_SUPERSAMPLING = 2;
+
 	private EditText mEditNameText;
 	private Button mSaveBtn;
 	private Button mShareBtn;
@@ -134,7 +141,7 @@ public class SaveFilePanel extends Activity implements Runnable
 					@Override
 					public void run()
 					{
-						String strSnapshotFileName = MakeSnapshot();
+						String strSnapshotFileName = MakeWallpaperSnapshot();
 
 						try
 						{
@@ -193,28 +200,51 @@ public class SaveFilePanel extends Activity implements Runnable
 	{
 		String strSnapshotFileName = getManagers().getFileManager().CreateSnapshotFileName();
 
-		getManagers().getToolsManager().TakeGLScreenshot(strSnapshotFileName);
-		WaitForSnapshot(strSnapshotFileName);
+		// file is written and closed when future is done
+		Future<String> snapshot = getManagers().getToolsManager().TakeGLScreenshot(strSnapshotFileName);
+		try
+		{
+			snapshot.get();
+		}
+		catch (InterruptedException e)
+		{
+			e.printStackTrace();
+		}
+		catch (ExecutionException e)
+		{
+			e.printStackTrace();
+		}
 
 		return strSnapshotFileName;
 	}
 
-	private static void WaitForSnapshot(String strSnapshotFileName)
+	// antialiased image at the size asked by the wallpaper manager
+	private String MakeWallpaperSnapshot()
 	{
-		// wait for async snapshot to be taken
-		File snapshotFile = new File(strSnapshotFileName);
-		while (!snapshotFile.exists())
+		WallpaperManager wallpaperManager = WallpaperManager.getInstance(this);
+		int nWidth = wallpaperManager.getDesiredMinimumWidth();
+		int nHeight = wallpaperManager.getDesiredMinimumHeight();
+		if (nWidth <= 0 || nHeight <= 0)
 		{
-			try
-			{
-				Thread.sleep(100);
-			}
-			catch (InterruptedException e)
-			{
-				e.printStackTrace();
-			}
+			return MakeSnapshot();
+		}
+
+		String strSnapshotFileName = getManagers().getFileManager().CreateSnapshotFileName();
+		Future<String> snapshot = getManagers().getToolsManager().RenderHighResolution(strSnapshotFileName, nWidth, nHeight, WALLPAPER_SUPERSAMPLING);
+		try
+		{
+			snapshot.get();
+		}
+		catch (InterruptedException e)
+		{
+			e.printStackTrace();
 		}
-		// file is not necessarily closed
+		catch (ExecutionException e)
+		{
+			e.printStackTrace();
+		}
+
+		return strSnapshotFileName;
 	}
 
 	public Managers getManagers()
@@ -286,19 +316,15 @@ public class SaveFilePanel extends Activity implements Runnable
 			getManagers().getMeshManager().ExportToOBJ(strObjFileName);
 		}
 
+		// thumbnail is rendered on CPU, saving does not wait for a displayed frame
 		String strPictureFileName = getManagers().getFileManager().GetImageFileName();
-		getManagers().getToolsManager().TakeGLScreenshot(strPictureFileName);
-		File snapshotFile = new File(strPictureFileName);
-		while (!snapshotFile.exists())
+		try
 		{
-			try
-			{
-				Thread.sleep(500);
-			}
-			catch (InterruptedException e)
-			{
-				e.printStackTrace();
-			}
+			getManagers().getRendererManager().getMainRenderer().SaveThumbnail(strPictureFileName, THUMBNAIL_SIZE, THUMBNAIL_SIZE);
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
 		}
 
 		getManagers().getUtilsManager().ShowToastMessage("Sculpture successfully exported to " + strBaseFileName);
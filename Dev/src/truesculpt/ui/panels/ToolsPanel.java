@@ -8,9 +8,11 @@ import java.util.Observer;
 import truesculpt.main.Managers;
 import truesculpt.main.R;
 import truesculpt.main.TrueSculptApp;
+import truesculpt.managers.ToolsManager.EFalloffCurve;
 import truesculpt.managers.ToolsManager.ESymmetryMode;
 import truesculpt.managers.UtilsManager;
 import truesculpt.tools.base.BaseTool;
+import truesculpt.tools.base.BrushAlpha;
 import truesculpt.ui.dialogs.ColorPickerDialog.OnColorChangedListener;
 import truesculpt.ui.views.ColorPickerView;
 import android.app.Activity;
@@ -22,6 +24,9 @@ import android.widget.AdapterView;
 import android.widget.AdapterView.OnItemSelectedListener;
 import android.widget.ArrayAdapter;
 import android.widget.Button;
+import android.widget.CheckBox;
+import android.widget.CompoundButton;
+import android.widget.CompoundButton.OnCheckedChangeListener;
 import android.widget.SeekBar;
 import android.widget.SeekBar.OnSeekBarChangeListener;
 import android.widget.SimpleAdapter;
@@ -37,6 +42,17 @@ public class ToolsPanel extends Activity implements Observer
 	private TextView mStrengthText;
 	private Spinner mToolSpinner;
 	private Spinner mSymmetrySpinner;
+	private SeekBar mAutoSmoothSeekBar;
+	private TextView mAutoSmoothText;
+	private Spinner mFalloffSpinner;
+	private View mFalloffSplineLayout;
+	private final SeekBar[] mFalloffSplineBars = new SeekBar[5];
+	private Spinner mBrushAlphaSpinner;
+	private String[] mBrushAlphaNames = null;
+	private CheckBox mVolumePreservingCheck;
+	private CheckBox mPreventSelfIntersectionCheck;
+
+	private final int SMOOTH_ALL_ITERATIONS = 4;
 
 	public Managers getManagers()
 	{
@@ -169,6 +185,60 @@ public class ToolsPanel extends Activity implements Observer
 		mStrengthSeekBar.setMax(200);// -100 to 100 pct
 		mStrengthText = (TextView) findViewById(R.id.StrengthText);
 
+		mAutoSmoothSeekBar = (SeekBar) findViewById(R.id.AutoSmoothBar);
+		mAutoSmoothSeekBar.setOnSeekBarChangeListener(new OnSeekBarChangeListener()
+		{
+			@Override
+			public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser)
+			{
+				getManagers().getToolsManager().setAutoSmooth(progress);
+			}
+
+			@Override
+			public void onStartTrackingTouch(SeekBar seekBar)
+			{
+			}
+
+			@Override
+			public void onStopTrackingTouch(SeekBar seekBar)
+			{
+				getManagers().getToolsManager().setAutoSmooth(seekBar.getProgress());
+			}
+		});
+		mAutoSmoothSeekBar.setMax(100);// 0 to 100 pct
+		mAutoSmoothText = (TextView) findViewById(R.id.AutoSmoothText);
+
+		Button smoothAllButton = (Button) findViewById(R.id.SmoothAllBtn);
+		smoothAllButton.setOnClickListener(new View.OnClickListener()
+		{
+			@Override
+			public void onClick(View v)
+			{
+				getManagers().getMeshManager().SmoothAll(SMOOTH_ALL_ITERATIONS);
+				finish();
+			}
+		});
+
+		mVolumePreservingCheck = (CheckBox) findViewById(R.id.VolumePreservingCheck);
+		mVolumePreservingCheck.setOnCheckedChangeListener(new OnCheckedChangeListener()
+		{
+			@Override
+			public void onCheckedChanged(CompoundButton buttonView, boolean isChecked)
+			{
+				getManagers().getToolsManager().setVolumePreserving(isChecked);
+			}
+		});
+
+		mPreventSelfIntersectionCheck = (CheckBox) findViewById(R.id.PreventSelfIntersectionCheck);
+		mPreventSelfIntersectionCheck.setOnCheckedChangeListener(new OnCheckedChangeListener()
+		{
+			@Override
+			public void onCheckedChanged(CompoundButton buttonView, boolean isChecked)
+			{
+				getManagers().getToolsManager().setPreventSelfIntersection(isChecked);
+			}
+		});
+
 		mColorPickerView = (ColorPickerView) findViewById(R.id.ColorPickerView);
 		mColorPickerView.SetColor(getManagers().getToolsManager().getColor());
 		mColorPickerView.setOnClickListener(new View.OnClickListener()
@@ -239,9 +309,111 @@ public class ToolsPanel extends Activity implements Observer
 		mSymmetrySpinner = (Spinner) findViewById(R.id.SymmetrySpinner);
 		InitSymmetrySpinner(mSymmetrySpinner, this);
 
+		mFalloffSpinner = (Spinner) findViewById(R.id.FalloffSpinner);
+		InitFalloffSpinner(mFalloffSpinner, this);
+
+		// control values of the custom curve, used when custom falloff is selected
+		mFalloffSplineLayout = findViewById(R.id.FalloffSplineLayout);
+		int[] splineBarIds = new int[] { R.id.FalloffSpline0, R.id.FalloffSpline1, R.id.FalloffSpline2, R.id.FalloffSpline3, R.id.FalloffSpline4 };
+		for (int i = 0; i < mFalloffSplineBars.length; i++)
+		{
+			mFalloffSplineBars[i] = (SeekBar) findViewById(splineBarIds[i]);
+			mFalloffSplineBars[i].setMax(100);
+			mFalloffSplineBars[i].setOnSeekBarChangeListener(new OnSeekBarChangeListener()
+			{
+				@Override
+				public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser)
+				{
+					if (fromUser)
+					{
+						UpdateFalloffSplinePoints();
+					}
+				}
+
+				@Override
+				public void onStartTrackingTouch(SeekBar seekBar)
+				{
+				}
+
+				@Override
+				public void onStopTrackingTouch(SeekBar seekBar)
+				{
+					UpdateFalloffSplinePoints();
+				}
+			});
+		}
+
+		mBrushAlphaSpinner = (Spinner) findViewById(R.id.BrushAlphaSpinner);
+		InitBrushAlphaSpinner();
+
 		UpdateView();
 	}
 
+	// round brush first, then stamps found in assets
+	private void InitBrushAlphaSpinner()
+	{
+		mBrushAlphaNames = getManagers().getToolsManager().getBrushAlphaNames();
+		ArrayList<String> items = new ArrayList<String>();
+		items.add(getString(R.string.nobrushalpha));
+		for (String name : mBrushAlphaNames)
+		{
+			items.add(name.substring(0, name.lastIndexOf('.') > 0 ? name.lastIndexOf('.') : name.length()));
+		}
+		ArrayAdapter<String> adapter = new ArrayAdapter<String>(this, android.R.layout.simple_spinner_item, items);
+		adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+		mBrushAlphaSpinner.setAdapter(adapter);
+		mBrushAlphaSpinner.setOnItemSelectedListener(new OnItemSelectedListener()
+		{
+			@Override
+			public void onItemSelected(AdapterView<?> arg0, View arg1, int arg2, long arg3)
+			{
+				getManagers().getToolsManager().setBrushAlpha(arg2 > 0 ? mBrushAlphaNames[arg2 - 1] : null);
+			}
+
+			@Override
+			public void onNothingSelected(AdapterView<?> arg0)
+			{
+
+			}
+		});
+	}
+
+	private void UpdateFalloffSplinePoints()
+	{
+		float[] points = new float[mFalloffSplineBars.length];
+		for (int i = 0; i < points.length; i++)
+		{
+			points[i] = mFalloffSplineBars[i].getProgress() / 100f;
+		}
+		getManagers().getToolsManager().setFalloffSplinePoints(points);
+	}
+
+	// falloff of current tool, items are in EFalloffCurve order
+	private static void InitFalloffSpinner(Spinner falloffSpinner, final Context context)
+	{
+		ArrayAdapter adapter = ArrayAdapter.createFromResource(context, R.array.falloff_curves, android.R.layout.simple_spinner_item);
+		adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+		falloffSpinner.setAdapter(adapter);
+		falloffSpinner.setOnItemSelectedListener(new OnItemSelectedListener()
+		{
+			@Override
+			public void onItemSelected(AdapterView<?> arg0, View arg1, int arg2, long arg3)
+			{
+				EFalloffCurve[] curves = EFalloffCurve.values();
+				if (arg3 >= 0 && arg3 < curves.length)
+				{
+					((TrueSculptApp) (context.getApplicationContext())).getManagers().getToolsManager().setFalloffCurve(curves[(int) arg3]);
+				}
+			}
+
+			@Override
+			public void onNothingSelected(AdapterView<?> arg0)
+			{
+
+			}
+		});
+	}
+
 	private static void InitSymmetrySpinner(Spinner symSpinner, final Context context)
 	{
 		ArrayAdapter adapter = ArrayAdapter.createFromResource(context, R.array.symmetry, android.R.layout.simple_spinner_item);
@@ -317,9 +489,36 @@ public class ToolsPanel extends Activity implements Observer
 		mRadiusSeekBar.setProgress((int) fRadius);
 		mRadiusText.setText("Radius = " + Integer.toString((int) fRadius) + " %");
 
+		float fAutoSmooth = getManagers().getToolsManager().getAutoSmooth();
+		mAutoSmoothSeekBar.setProgress((int) fAutoSmooth);
+		mAutoSmoothText.setText(getString(R.string.autosmooth) + " = " + Integer.toString((int) fAutoSmooth) + " %");
+
+		mVolumePreservingCheck.setChecked(getManagers().getToolsManager().getVolumePreserving());
+		mPreventSelfIntersectionCheck.setChecked(getManagers().getToolsManager().getPreventSelfIntersection());
+
 		mColorPickerView.SetColor(getManagers().getToolsManager().getColor());
 
 		UpdateToolSpinner(mToolSpinner, this);
 		UpdateSymmetrySpinner(mSymmetrySpinner, this);
+
+		EFalloffCurve curve = getManagers().getToolsManager().getFalloffCurve();
+		mFalloffSpinner.setSelection(curve.ordinal());
+		mFalloffSplineLayout.setVisibility(curve == EFalloffCurve.SPLINE ? View.VISIBLE : View.GONE);
+		float[] points = getManagers().getToolsManager().getFalloffSplinePoints();
+		for (int i = 0; i < mFalloffSplineBars.length && i < points.length; i++)
+		{
+			mFalloffSplineBars[i].setProgress(Math.round(points[i] * 100));
+		}
+
+		int nBrushAlphaIndex = 0;
+		BrushAlpha brushAlpha = getManagers().getToolsManager().getBrushAlpha();
+		for (int i = 0; brushAlpha != null && i < mBrushAlphaNames.length; i++)
+		{
+			if (mBrushAlphaNames[i].equals(brushAlpha.getName()))
+			{
+				nBrushAlphaIndex = i + 1;
+			}
+		}
+		mBrushAlphaSpinner.setSelection(nBrushAlphaIndex);
 	}
 }
@@ -0,0 +1,90 @@
+package truesculpt.utils;
+
+import java.util.Arrays;
+
+// Non negative int keys to int slots, open addressing with linear probing, no boxing
+public class IntSlotMap
+{
+	private static final int EMPTY = -1;
+
+	private int[] mKeys;
+	private int[] mValues;
+	private int mSize = 0;
+	private int mMask;
+
+	public IntSlotMap()
+	{
+		Allocate(16);
+	}
+
+	private void Allocate(int nCapacity)
+	{
+		mKeys = new int[nCapacity];
+		mValues = new int[nCapacity];
+		Arrays.fill(mKeys, EMPTY);
+		mMask = nCapacity - 1;
+		mSize = 0;
+	}
+
+	private static int Hash(int nKey)
+	{
+		int h = nKey * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	// -1 if not found
+	public int Get(int nKey)
+	{
+		int i = Hash(nKey) & mMask;
+		while (mKeys[i] != EMPTY)
+		{
+			if (mKeys[i] == nKey)
+			{
+				return mValues[i];
+			}
+			i = (i + 1) & mMask;
+		}
+		return -1;
+	}
+
+	public void Put(int nKey, int nValue)
+	{
+		if ((mSize + 1) * 2 > mKeys.length)
+		{
+			int[] oldKeys = mKeys;
+			int[] oldValues = mValues;
+			Allocate(oldKeys.length * 2);
+			for (int j = 0; j < oldKeys.length; j++)
+			{
+				if (oldKeys[j] != EMPTY)
+				{
+					Put(oldKeys[j], oldValues[j]);
+				}
+			}
+		}
+
+		int i = Hash(nKey) & mMask;
+		while (mKeys[i] != EMPTY)
+		{
+			if (mKeys[i] == nKey)
+			{
+				mValues[i] = nValue;
+				return;
+			}
+			i = (i + 1) & mMask;
+		}
+		mKeys[i] = nKey;
+		mValues[i] = nValue;
+		mSize++;
+	}
+
+	public int size()
+	{
+		return mSize;
+	}
+
+	public void Clear()
+	{
+		Allocate(16);
+	}
+}
@@ -0,0 +1,117 @@
+package truesculpt.utils;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Splits an index range between a shared pool of threads and waits for the end of all chunks.
+// First failure of a chunk is thrown again in the calling thread once all chunks are over.
+public class ParallelLoop
+{
+	public static final int THREAD_COUNT = Runtime.getRuntime().availableProcessors();
+	private static ExecutorService sPool = null;
+
+	public interface IRangeTask
+	{
+		// [nStart;nEnd[ , chunks are disjoint and may run concurrently
+		public void Run(int nStart, int nEnd);
+	}
+
+	private static class Chunk implements Runnable
+	{
+		private final IRangeTask mTask;
+		private final int mStart;
+		private final int mEnd;
+		private final CountDownLatch mLatch;
+		private final AtomicReference<Throwable> mFailure;
+
+		Chunk(IRangeTask task, int nStart, int nEnd, CountDownLatch latch, AtomicReference<Throwable> failure)
+		{
+			mTask = task;
+			mStart = nStart;
+			mEnd = nEnd;
+			mLatch = latch;
+			mFailure = failure;
+		}
+
+		@Override
+		public void run()
+		{
+			try
+			{
+				mTask.Run(mStart, mEnd);
+			}
+			catch (Throwable t)
+			{
+				mFailure.compareAndSet(null, t);
+			}
+			finally
+			{
+				mLatch.countDown();
+			}
+		}
+	}
+
+	private static synchronized ExecutorService GetPool()
+	{
+		if (sPool == null)
+		{
+			sPool = Executors.newFixedThreadPool(THREAD_COUNT);
+		}
+		return sPool;
+	}
+
+	// runs in calling thread if range is smaller than nMinParallelCount
+	public static void Run(int nCount, int nMinParallelCount, IRangeTask task)
+	{
+		if (nCount < nMinParallelCount || THREAD_COUNT < 2)
+		{
+			task.Run(0, nCount);
+			return;
+		}
+
+		int nChunk = (nCount + THREAD_COUNT - 1) / THREAD_COUNT;
+		int nChunkCount = (nCount + nChunk - 1) / nChunk;
+		CountDownLatch latch = new CountDownLatch(nChunkCount);
+		AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		ExecutorService pool = GetPool();
+		for (int nStart = 0; nStart < nCount; nStart += nChunk)
+		{
+			pool.execute(new Chunk(task, nStart, Math.min(nStart + nChunk, nCount), latch, failure));
+		}
+
+		// chunks write in caller data, they are always waited for. Interruption is kept for the caller.
+		boolean bInterrupted = false;
+		while (true)
+		{
+			try
+			{
+				latch.await();
+				break;
+			}
+			catch (InterruptedException e)
+			{
+				bInterrupted = true;
+			}
+		}
+		if (bInterrupted)
+		{
+			Thread.currentThread().interrupt();
+		}
+
+		Throwable t = failure.get();
+		if (t instanceof RuntimeException)
+		{
+			throw (RuntimeException) t;
+		}
+		else if (t instanceof Error)
+		{
+			throw (Error) t;
+		}
+		else if (t != null)
+		{
+			throw new RuntimeException(t);
+		}
+	}
+}
@@ -0,0 +1,146 @@
+package truesculpt.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+// 8 bits RGB PNG written row by row from top, compressed data is cut in IDAT chunks as it comes
+// so that images larger than memory can be encoded.
+public class PngStreamWriter
+{
+	private static final byte[] SIGNATURE = new byte[] { (byte) 137, 80, 78, 71, 13, 10, 26, 10 };
+	private static final int CHUNK_SIZE = 64 * 1024;
+
+	// deflated bytes buffered and written as IDAT chunks
+	private static class ChunkOutputStream extends OutputStream
+	{
+		private final PngStreamWriter mWriter;
+		private final byte[] mBuffer = new byte[CHUNK_SIZE];
+		private int mCount = 0;
+
+		ChunkOutputStream(PngStreamWriter writer)
+		{
+			mWriter = writer;
+		}
+
+		@Override
+		public void write(int b) throws IOException
+		{
+			if (mCount == mBuffer.length)
+			{
+				flush();
+			}
+			mBuffer[mCount++] = (byte) b;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException
+		{
+			while (len > 0)
+			{
+				if (mCount == mBuffer.length)
+				{
+					flush();
+				}
+				int n = Math.min(len, mBuffer.length - mCount);
+				System.arraycopy(b, off, mBuffer, mCount, n);
+				mCount += n;
+				off += n;
+				len -= n;
+			}
+		}
+
+		@Override
+		public void flush() throws IOException
+		{
+			if (mCount > 0)
+			{
+				mWriter.WriteChunk("IDAT", mBuffer, mCount);
+				mCount = 0;
+			}
+		}
+	}
+
+	private final OutputStream mOut;
+	private final int mWidth;
+	private final int mHeight;
+	private final Deflater mDeflater = new Deflater();
+	private final DeflaterOutputStream mData;
+	private final CRC32 mCrc = new CRC32();
+	private final byte[] mHeader = new byte[8];
+	private int mRowCount = 0;
+
+	public PngStreamWriter(OutputStream out, int nWidth, int nHeight) throws IOException
+	{
+		mOut = out;
+		mWidth = nWidth;
+		mHeight = nHeight;
+		mData = new DeflaterOutputStream(new ChunkOutputStream(this), mDeflater, CHUNK_SIZE);
+
+		mOut.write(SIGNATURE);
+		byte[] ihdr = new byte[13];
+		PutInt(ihdr, 0, nWidth);
+		PutInt(ihdr, 4, nHeight);
+		ihdr[8] = 8;// bit depth
+		ihdr[9] = 2;// truecolor
+		ihdr[10] = 0;// deflate
+		ihdr[11] = 0;// adaptive filtering
+		ihdr[12] = 0;// no interlace
+		WriteChunk("IHDR", ihdr, ihdr.length);
+	}
+
+	// r,g,b bytes of one row, no filtering
+	public void WriteRow(byte[] rgb) throws IOException
+	{
+		if (mRowCount >= mHeight)
+		{
+			throw new IllegalStateException("All rows already written");
+		}
+		mData.write(0);
+		mData.write(rgb, 0, mWidth * 3);
+		mRowCount++;
+	}
+
+	// ends compressed data and image, underlying stream is closed
+	public void Close() throws IOException
+	{
+		try
+		{
+			mData.finish();
+			mData.flush();
+			WriteChunk("IEND", new byte[0], 0);
+		}
+		finally
+		{
+			mDeflater.end();
+			mOut.close();
+		}
+	}
+
+	private void WriteChunk(String type, byte[] data, int nLength) throws IOException
+	{
+		PutInt(mHeader, 0, nLength);
+		for (int i = 0; i < 4; i++)
+		{
+			mHeader[4 + i] = (byte) type.charAt(i);
+		}
+		mOut.write(mHeader, 0, 8);
+		mOut.write(data, 0, nLength);
+
+		mCrc.reset();
+		mCrc.update(mHeader, 4, 4);
+		mCrc.update(data, 0, nLength);
+		PutInt(mHeader, 0, (int) mCrc.getValue());
+		mOut.write(mHeader, 0, 4);
+	}
+
+	private static void PutInt(byte[] b, int nOffset, int value)
+	{
+		b[nOffset] = (byte) (value >>> 24);
+		b[nOffset + 1] = (byte) (value >>> 16);
+		b[nOffset + 2] = (byte) (value >>> 8);
+		b[nOffset + 3] = (byte) value;
+	}
+}
@@ -0,0 +1,218 @@
+package truesculpt.mesh;
+
+import java.nio.Buffer;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+
+import javax.microedition.khronos.opengles.GL10;
+import javax.microedition.khronos.opengles.GL11;
+
+import junit.framework.TestCase;
+
+// Dirty range merging and sub data offsets, checked against recorded buffer calls without GPU
+public class VertexBufferObjectTest extends TestCase
+{
+	private static final int COMPONENTS = 3;
+	private static final int COMPONENT_BYTES = 4;
+	private static final int ELEMENT_BYTES = COMPONENTS * COMPONENT_BYTES;
+	private static final int ELEMENT_COUNT = 4 * DirtyRanges.CHUNK_ELEMENTS;
+
+	// calls as strings, sub data also records the client buffer position
+	private static class RecordingGL implements IBufferGL
+	{
+		final ArrayList<String> mCalls = new ArrayList<String>();
+		int mNextID = 1;
+		int mError = GL10.GL_NO_ERROR;
+		boolean mbFailBufferData = false;
+
+		@Override
+		public void glGenBuffers(int n, int[] buffers, int offset)
+		{
+			mCalls.add("gen");
+			for (int i = 0; i < n; i++)
+			{
+				buffers[offset + i] = mNextID > 0 ? mNextID++ : 0;
+			}
+		}
+
+		@Override
+		public void glDeleteBuffers(int n, int[] buffers, int offset)
+		{
+			mCalls.add("delete " + buffers[offset]);
+		}
+
+		@Override
+		public void glBindBuffer(int target, int buffer)
+		{
+			mCalls.add("bind " + buffer);
+		}
+
+		@Override
+		public void glBufferData(int target, int size, Buffer data, int usage)
+		{
+			mCalls.add("data " + size);
+			if (mbFailBufferData)
+			{
+				mError = GL10.GL_OUT_OF_MEMORY;
+			}
+		}
+
+		@Override
+		public void glBufferSubData(int target, int offset, int size, Buffer data)
+		{
+			mCalls.add("sub " + offset + " " + size + " at " + data.position());
+		}
+
+		@Override
+		public int glGetError()
+		{
+			int nError = mError;
+			mError = GL10.GL_NO_ERROR;
+			return nError;
+		}
+
+		ArrayList<String> TakeCalls(String strPrefix)
+		{
+			ArrayList<String> res = new ArrayList<String>();
+			for (String call : mCalls)
+			{
+				if (call.startsWith(strPrefix))
+				{
+					res.add(call);
+				}
+			}
+			mCalls.clear();
+			return res;
+		}
+	}
+
+	private RecordingGL mGL;
+	private VertexBufferObject mVBO;
+
+	@Override
+	protected void setUp()
+	{
+		mGL = new RecordingGL();
+		mVBO = new VertexBufferObject(GL11.GL_ARRAY_BUFFER, FloatBuffer.allocate(ELEMENT_COUNT * COMPONENTS), COMPONENTS, COMPONENT_BYTES, ELEMENT_COUNT);
+	}
+
+	private static String Sub(int nFirst, int nCount)
+	{
+		return "sub " + nFirst * ELEMENT_BYTES + " " + nCount * ELEMENT_BYTES + " at " + nFirst * COMPONENTS;
+	}
+
+	public void testCreationSendsWholeBuffer()
+	{
+		mVBO.MarkDirty(5);
+		assertEquals(0, mVBO.Upload(mGL));
+		assertEquals(1, mVBO.getBufferID());
+		assertEquals("[gen, bind 1, data " + ELEMENT_COUNT * ELEMENT_BYTES + "]", mGL.TakeCalls("").toString());
+
+		// marks done before creation are in the full upload
+		assertEquals(0, mVBO.Upload(mGL));
+		assertTrue(mGL.TakeCalls("sub").isEmpty());
+	}
+
+	public void testScatteredChangesAreSentPerChunk()
+	{
+		mVBO.Upload(mGL);
+		mGL.mCalls.clear();
+
+		mVBO.MarkDirty(7);
+		mVBO.MarkDirty(3);
+		mVBO.MarkDirty(2 * DirtyRanges.CHUNK_ELEMENTS + 10);
+		assertEquals(2, mVBO.Upload(mGL));
+
+		ArrayList<String> calls = mGL.TakeCalls("sub");
+		assertEquals(2, calls.size());
+		assertEquals(Sub(3, 5), calls.get(0));
+		assertEquals(Sub(2 * DirtyRanges.CHUNK_ELEMENTS + 10, 1), calls.get(1));
+
+		// ranges are clean after upload
+		assertEquals(0, mVBO.Upload(mGL));
+	}
+
+	public void testTouchingChunksAreMerged()
+	{
+		mVBO.Upload(mGL);
+		mGL.mCalls.clear();
+
+		int nFirst = DirtyRanges.CHUNK_ELEMENTS - 20;
+		mVBO.MarkDirtyRange(nFirst, DirtyRanges.CHUNK_ELEMENTS + 40);
+		assertEquals(1, mVBO.Upload(mGL));
+		assertEquals("[" + Sub(nFirst, DirtyRanges.CHUNK_ELEMENTS + 40) + "]", mGL.TakeCalls("sub").toString());
+	}
+
+	public void testChunksWithGapAreNotMerged()
+	{
+		mVBO.Upload(mGL);
+		mGL.mCalls.clear();
+
+		mVBO.MarkDirty(DirtyRanges.CHUNK_ELEMENTS - 2);
+		mVBO.MarkDirty(DirtyRanges.CHUNK_ELEMENTS + 1);
+		assertEquals(2, mVBO.Upload(mGL));
+
+		ArrayList<String> calls = mGL.TakeCalls("sub");
+		assertEquals(Sub(DirtyRanges.CHUNK_ELEMENTS - 2, 1), calls.get(0));
+		assertEquals(Sub(DirtyRanges.CHUNK_ELEMENTS + 1, 1), calls.get(1));
+	}
+
+	public void testMergedRangesOfOtherBuffer()
+	{
+		mVBO.Upload(mGL);
+		mGL.mCalls.clear();
+
+		DirtyRanges other = new DirtyRanges(ELEMENT_COUNT);
+		other.Mark(100);
+		other.Mark(110);
+		other.Mark(3 * DirtyRanges.CHUNK_ELEMENTS);
+		mVBO.MarkDirty(other);
+		assertEquals(2, other.getDirtyChunkCount());
+
+		assertEquals(2, mVBO.Upload(mGL));
+		ArrayList<String> calls = mGL.TakeCalls("sub");
+		assertEquals(Sub(100, 11), calls.get(0));
+		assertEquals(Sub(3 * DirtyRanges.CHUNK_ELEMENTS, 1), calls.get(1));
+	}
+
+	public void testFailedGenerationFallsBackToClientBuffer()
+	{
+		mGL.mNextID = 0;
+		mVBO.Upload(mGL);
+		assertEquals(0, mVBO.getBufferID());
+		assertEquals("[gen]", mGL.TakeCalls("").toString());
+
+		mVBO.MarkDirty(1);
+		assertEquals(0, mVBO.Upload(mGL));
+		assertTrue(mGL.TakeCalls("").isEmpty());
+	}
+
+	public void testFailedAllocationDeletesBuffer()
+	{
+		mGL.mbFailBufferData = true;
+		mVBO.Upload(mGL);
+		assertEquals(0, mVBO.getBufferID());
+		assertEquals("[delete 1]", mGL.TakeCalls("delete").toString());
+	}
+
+	public void testReleaseDeletesBufferOnce()
+	{
+		mVBO.Upload(mGL);
+		mGL.mCalls.clear();
+
+		mVBO.Release(mGL);
+		mVBO.Release(mGL);
+		assertEquals("[delete 1]", mGL.TakeCalls("").toString());
+	}
+
+	public void testInvalidatedBufferIsRecreated()
+	{
+		mVBO.Upload(mGL);
+		mVBO.Invalidate();
+		mGL.mCalls.clear();
+
+		mVBO.Upload(mGL);
+		assertEquals(2, mVBO.getBufferID());
+		assertEquals("[gen]", mGL.TakeCalls("gen").toString());
+	}
+}
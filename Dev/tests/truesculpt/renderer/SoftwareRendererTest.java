@@ -0,0 +1,161 @@
+package truesculpt.renderer;
+
+import junit.framework.TestCase;
+
+// Small meshes drawn with identity matrices, so that normalized device coordinates are given directly.
+// Light gives back vertex colors unchanged: global ambient plus diffuse is 1 on faces toward the viewer.
+public class SoftwareRendererTest extends TestCase
+{
+	private static final int SIZE = 16;
+	private static final int RED = 0xFFC00000;
+	private static final int GREEN = 0xFF00C000;
+	private static final int BLUE = 0xFF0000C0;
+
+	private static final float[] IDENTITY = new float[] { 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1 };
+
+	private SoftwareRenderer mRenderer;
+	private final int[] mPixels = new int[SIZE * SIZE];
+
+	@Override
+	protected void setUp()
+	{
+		mRenderer = new SoftwareRenderer(SIZE, SIZE);
+		float[] zero = new float[] { 0, 0, 0, 0 };
+		mRenderer.SetLight(new float[] { 0, 0, 1, 0 }, zero, new float[] { 0.8f, 0.8f, 0.8f, 1 }, zero, zero, 0);
+	}
+
+	// normals toward the viewer
+	private void Render(float[] coords, int[] colors, int[] faces)
+	{
+		int nVertexCount = coords.length / 3;
+		float[] normals = new float[coords.length];
+		for (int i = 0; i < nVertexCount; i++)
+		{
+			normals[i * 3 + 2] = 1;
+		}
+		mRenderer.SetGeometry(coords, normals, colors, nVertexCount, faces, faces.length / 3);
+		mRenderer.Render(IDENTITY, IDENTITY, mPixels);
+	}
+
+	private int GetPixel(int x, int y)
+	{
+		return mPixels[y * SIZE + x];
+	}
+
+	private static int Background(int x, int y)
+	{
+		float u = (x + 0.5f) / SIZE;
+		float v = 1 - (y + 0.5f) / SIZE;
+		int gray = (int) ((0.5f + 0.5f * u - 0.5f * v) * 255);
+		return 0xFF000000 | (gray << 16) | (gray << 8) | gray;
+	}
+
+	private static void AssertColor(int expected, int actual, int nTolerance)
+	{
+		for (int nShift = 0; nShift <= 16; nShift += 8)
+		{
+			int e = (expected >> nShift) & 0xFF;
+			int a = (actual >> nShift) & 0xFF;
+			assertTrue("expected " + Integer.toHexString(expected) + " got " + Integer.toHexString(actual), Math.abs(e - a) <= nTolerance);
+		}
+		assertEquals(0xFF, (actual >>> 24));
+	}
+
+	// lower left half of the screen, counter clockwise
+	public void testCoverage()
+	{
+		float[] coords = new float[] { -1, -1, 0, 1, -1, 0, -1, 1, 0 };
+		Render(coords, new int[] { RED, RED, RED }, new int[] { 0, 1, 2 });
+
+		int nCovered = 0;
+		for (int y = 0; y < SIZE; y++)
+		{
+			for (int x = 0; x < SIZE; x++)
+			{
+				// distance to the diagonal in pixels, centers on the diagonal are on an edge
+				int nSide = x + (SIZE - 1 - y) - (SIZE - 1);
+				if (nSide < 0)
+				{
+					AssertColor(RED, GetPixel(x, y), 1);
+				}
+				else if (nSide > 0)
+				{
+					assertEquals(Background(x, y), GetPixel(x, y));
+				}
+				if (GetPixel(x, y) != Background(x, y))
+				{
+					nCovered++;
+				}
+			}
+		}
+		int nInside = SIZE * (SIZE - 1) / 2;
+		assertTrue(nCovered >= nInside && nCovered <= nInside + SIZE);
+	}
+
+	public void testBackFacesAreCulled()
+	{
+		float[] coords = new float[] { -1, -1, 0, 1, -1, 0, -1, 1, 0 };
+		Render(coords, new int[] { RED, RED, RED }, new int[] { 0, 2, 1 });
+
+		for (int y = 0; y < SIZE; y++)
+		{
+			for (int x = 0; x < SIZE; x++)
+			{
+				assertEquals(Background(x, y), GetPixel(x, y));
+			}
+		}
+	}
+
+	// two full screen quads, the nearer one has the smaller z whatever the drawing order
+	public void testDepth()
+	{
+		float[] coords = new float[] { -1, -1, 0.5f, 1, -1, 0.5f, 1, 1, 0.5f, -1, 1, 0.5f, -1, -1, -0.5f, 1, -1, -0.5f, 1, 1, -0.5f, -1, 1, -0.5f };
+		int[] colors = new int[] { RED, RED, RED, RED, GREEN, GREEN, GREEN, GREEN };
+
+		Render(coords, colors, new int[] { 0, 1, 2, 0, 2, 3, 4, 5, 6, 4, 6, 7 });
+		for (int i = 0; i < mPixels.length; i++)
+		{
+			AssertColor(GREEN, mPixels[i], 1);
+		}
+
+		Render(coords, colors, new int[] { 4, 5, 6, 4, 6, 7, 0, 1, 2, 0, 2, 3 });
+		for (int i = 0; i < mPixels.length; i++)
+		{
+			AssertColor(GREEN, mPixels[i], 1);
+		}
+	}
+
+	// colors are interpolated with the barycentric weights of pixel centers
+	public void testGouraudColors()
+	{
+		float[] coords = new float[] { -1, -1, 0, 1, -1, 0, 0, 1, 0 };
+		int[] colors = new int[] { RED, GREEN, BLUE };
+		Render(coords, colors, new int[] { 0, 1, 2 });
+
+		int nChecked = 0;
+		for (int y = 0; y < SIZE; y++)
+		{
+			for (int x = 0; x < SIZE; x++)
+			{
+				float px = (x + 0.5f) / SIZE * 2 - 1;
+				float py = 1 - (y + 0.5f) / SIZE * 2;
+
+				// weights of (-1,-1), (1,-1) and (0,1)
+				float w2 = (py + 1) / 2;
+				float w1 = (px + 1 - w2) / 2;
+				float w0 = 1 - w1 - w2;
+				if (w0 < 0.01f || w1 < 0.01f || w2 < 0.01f)
+				{
+					continue;
+				}
+
+				int r = (int) (w0 * 0xC0);
+				int g = (int) (w1 * 0xC0);
+				int b = (int) (w2 * 0xC0);
+				AssertColor(0xFF000000 | (r << 16) | (g << 8) | b, GetPixel(x, y), 2);
+				nChecked++;
+			}
+		}
+		assertTrue(nChecked > SIZE * SIZE / 4);
+	}
+}